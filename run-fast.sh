@@ -0,0 +1,49 @@
+#!/bin/bash
+
+# File Manager Fast Start Script
+# Runs the AOT-processed jar (mvn -Pfast package) with the "fast" profile and a
+# class data sharing (CDS) archive. The first run is a training run that starts
+# the context once, records the loaded classes and exits; later runs map them
+# from the archive. The training run needs the database, like a normal start.
+
+set -e
+
+echo "🚀 Starting File Manager (fast start)..."
+echo "========================================"
+
+# Colors for output
+GREEN='\033[0;32m'
+BLUE='\033[0;34m'
+NC='\033[0m' # No Color
+
+print_status() {
+    echo -e "${BLUE}[INFO]${NC} $1"
+}
+
+print_success() {
+    echo -e "${GREEN}[SUCCESS]${NC} $1"
+}
+
+if [ ! -d target/spring-aot ]; then
+    print_status "Building the AOT-processed jar..."
+    ./mvnw -B -q -Pfast -DskipTests package
+fi
+
+JAR_FILE=$(find target -maxdepth 1 -name "*.jar" -type f | grep -v "original" | head -n 1)
+CDS_DIR=target/cds
+JAVA_OPTS="-Dspring.aot.enabled=true -Dspring.profiles.active=fast"
+
+if [ ! -f "$CDS_DIR/application.jsa" ]; then
+    print_status "Extracting $JAR_FILE and creating the CDS archive..."
+    rm -rf "$CDS_DIR"
+    java -Djarmode=tools -jar "$JAR_FILE" extract --destination "$CDS_DIR"
+    java -XX:ArchiveClassesAtExit="$CDS_DIR/application.jsa" -Dspring.context.exit=onRefresh $JAVA_OPTS \
+        -jar "$CDS_DIR/$(basename "$JAR_FILE")"
+    print_success "CDS archive created"
+fi
+
+print_status "Starting application on http://localhost:8080"
+echo ""
+
+# Delete target/cds after rebuilding the jar; an archive from another jar is ignored
+exec java -XX:SharedArchiveFile="$CDS_DIR/application.jsa" $JAVA_OPTS "$@" -jar "$CDS_DIR/$(basename "$JAR_FILE")"
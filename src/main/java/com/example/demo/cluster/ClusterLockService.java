@@ -0,0 +1,215 @@
+package com.example.demo.cluster;
+
+import com.example.demo.config.ClusterConfig;
+import com.example.demo.exception.LockTimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Named locks shared by every node, kept as leases in the cluster_locks table of
+// the primary database that all nodes already share. A lock is taken by
+// inserting its row; a node that died holding one is taken over once the lease
+// expires. Threads of one node first queue on a local lock for the same name so
+// that only one of them polls the table at a time.
+//
+// Held leases are renewed every lock-renew-interval-ms, so a lock outlives the
+// TTL as long as its node does. A node that stalls past the TTL can still lose
+// its lease; work that must not land after that calls Lease.checkHeld() in the
+// transaction that commits it.
+//
+// Leases are stamped with each node's clock, so node clocks must agree to well
+// within lock-ttl-ms. Locks are not reentrant: don't take the same name twice
+// on one thread.
+@Service
+public class ClusterLockService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClusterLockService.class);
+
+    private static final long MIN_BACKOFF_MS = 5;
+    private static final long MAX_BACKOFF_MS = 200;
+
+    static final String ACQUIRE_SQL = "INSERT INTO cluster_locks (lock_name, owner, expires_at) VALUES (?, ?, ?)";
+    static final String TAKE_OVER_SQL = "UPDATE cluster_locks SET owner = ?, expires_at = ? " +
+            "WHERE lock_name = ? AND expires_at < ?";
+    static final String RELEASE_SQL = "DELETE FROM cluster_locks WHERE lock_name = ? AND owner = ?";
+    static final String RENEW_SQL = "UPDATE cluster_locks SET expires_at = ? WHERE lock_name = ? AND owner = ?";
+    static final String OWNER_SQL = "SELECT owner FROM cluster_locks WHERE lock_name = ? FOR UPDATE";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ClusterConfig config;
+    private final Map<String, LocalLock> localLocks = new ConcurrentHashMap<>();
+    private final Set<Lease> held = ConcurrentHashMap.newKeySet();
+
+    public ClusterLockService(JdbcTemplate jdbcTemplate, ClusterConfig config) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.config = config;
+    }
+
+    // Blocks up to lock-wait-ms; release the lease with try-with-resources
+    public Lease lock(String name) {
+        return acquire(name, config.getLockWaitMs());
+    }
+
+    // Takes the lock only if it is free right now; null when another thread or node holds it
+    public Lease tryLock(String name) {
+        try {
+            return acquire(name, 0);
+        } catch (LockTimeoutException held) {
+            return null;
+        }
+    }
+
+    private Lease acquire(String name, long waitMs) {
+        long deadline = System.currentTimeMillis() + waitMs;
+        LocalLock local = localLocks.compute(name, (key, existing) -> {
+            LocalLock entry = existing != null ? existing : new LocalLock();
+            entry.users++;
+            return entry;
+        });
+        try {
+            if (!local.lock.tryLock(waitMs, TimeUnit.MILLISECONDS)) {
+                forget(name);
+                throw new LockTimeoutException("Timed out waiting for " + name);
+            }
+        } catch (InterruptedException ex) {
+            forget(name);
+            Thread.currentThread().interrupt();
+            throw new LockTimeoutException("Interrupted waiting for " + name);
+        }
+
+        try {
+            String owner = config.getNodeId() + ":" + UUID.randomUUID();
+            long backoff = MIN_BACKOFF_MS;
+            while (!tryAcquire(name, owner)) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new LockTimeoutException("Timed out waiting for " + name + ", held by another node");
+                }
+                Thread.sleep(Math.min(backoff, remaining));
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+            }
+            Lease lease = new Lease(name, owner, local);
+            held.add(lease);
+            return lease;
+        } catch (InterruptedException ex) {
+            unlockLocal(name, local);
+            Thread.currentThread().interrupt();
+            throw new LockTimeoutException("Interrupted waiting for " + name);
+        } catch (RuntimeException ex) {
+            unlockLocal(name, local);
+            throw ex;
+        }
+    }
+
+    // The lock that serializes deletes, restores and new versions of one file
+    public Lease lockFile(Long fileId) {
+        return lock("file:" + fileId);
+    }
+
+    // Pushes back the expiry of every lease this node holds. A lease found taken
+    // over is marked lost, so its holder fails at checkHeld() instead of
+    // committing alongside the new owner.
+    @Scheduled(fixedDelayString = "${file.cluster.lock-renew-interval-ms:10000}")
+    public void renewHeldLeases() {
+        for (Lease lease : held) {
+            try {
+                if (jdbcTemplate.update(RENEW_SQL, System.currentTimeMillis() + config.getLockTtlMs(),
+                        lease.name, lease.owner) == 0) {
+                    lease.lost = true;
+                    held.remove(lease);
+                    logger.warn("Lock {} was taken over while held here", lease.name);
+                }
+            } catch (RuntimeException ex) {
+                // Tried again next round, well before the lease runs out
+                logger.warn("Could not renew lock {}", lease.name, ex);
+            }
+        }
+    }
+
+    private boolean tryAcquire(String name, String owner) {
+        long now = System.currentTimeMillis();
+        long expiresAt = now + config.getLockTtlMs();
+        try {
+            jdbcTemplate.update(ACQUIRE_SQL, name, owner, expiresAt);
+            return true;
+        } catch (DataIntegrityViolationException held) {
+            if (jdbcTemplate.update(TAKE_OVER_SQL, owner, expiresAt, name, now) == 1) {
+                logger.warn("Took over expired lock {}", name);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private void unlockLocal(String name, LocalLock local) {
+        local.lock.unlock();
+        forget(name);
+    }
+
+    // Drops the local lock of a name once no thread holds or waits for it
+    private void forget(String name) {
+        localLocks.computeIfPresent(name, (key, entry) -> --entry.users == 0 ? null : entry);
+    }
+
+    // Guarded by the map's compute; users counts holders and waiters
+    private static final class LocalLock {
+        final ReentrantLock lock = new ReentrantLock();
+        int users;
+    }
+
+    public final class Lease implements AutoCloseable {
+        private final String name;
+        private final String owner;
+        private final LocalLock local;
+        private volatile boolean lost;
+        private boolean released;
+
+        private Lease(String name, String owner, LocalLock local) {
+            this.name = name;
+            this.owner = owner;
+            this.local = local;
+        }
+
+        // Call inside the transaction that commits the guarded work: fails if the
+        // lease was taken over, and otherwise locks its row so no other node can
+        // take it over before the commit
+        public void checkHeld() {
+            List<String> owners = lost ? List.of() : jdbcTemplate.queryForList(OWNER_SQL, String.class, name);
+            if (owners.isEmpty() || !owner.equals(owners.get(0))) {
+                lost = true;
+                throw new LockTimeoutException("Lost " + name + " to another node before the work was committed");
+            }
+        }
+
+        @Override
+        public void close() {
+            if (released) {
+                return;
+            }
+            released = true;
+            held.remove(this);
+            try {
+                if (jdbcTemplate.update(RELEASE_SQL, name, owner) == 0) {
+                    logger.warn("Lock {} expired before it was released; the operation took longer than the lease",
+                            name);
+                }
+            } catch (RuntimeException ex) {
+                // The lease expires on its own
+                logger.warn("Could not release lock {}", name, ex);
+            } finally {
+                unlockLocal(name, local);
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.demo.cluster;
+
+import java.nio.charset.StandardCharsets;
+
+// A small notification sent between nodes. Messages are hints (cache
+// invalidations, change feed events, quota usage); correctness never depends on delivery.
+public class ClusterMessage {
+
+    public static final String INVALIDATE_METADATA = "INVALIDATE_METADATA";
+    public static final String INVALIDATE_CONTENT = "INVALIDATE_CONTENT";
+    public static final String FILE_EVENT = "FILE_EVENT";
+    public static final String STORAGE_USED = "STORAGE_USED";
+
+    private final String origin;
+    private final String type;
+    private final String key;
+    private final String value;
+
+    public ClusterMessage(String origin, String type, String key, String value) {
+        this.origin = origin;
+        this.type = type;
+        this.key = key;
+        this.value = value != null ? value : "";
+    }
+
+    // Tab-separated; none of the fields can contain a tab
+    public byte[] encode() {
+        return String.join("\t", origin, type, key, value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static ClusterMessage decode(byte[] data, int length) {
+        String[] parts = new String(data, 0, length, StandardCharsets.UTF_8).split("\t", -1);
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("Malformed cluster message");
+        }
+        return new ClusterMessage(parts[0], parts[1], parts[2], parts[3]);
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.demo.cluster;
+
+import java.util.function.Consumer;
+
+// Best-effort fan-out of ClusterMessages to the other nodes. A node never
+// receives its own messages.
+public interface ClusterTransport extends AutoCloseable {
+
+    String getNodeId();
+
+    void broadcast(String type, String key, String value);
+
+    void subscribe(Consumer<ClusterMessage> handler);
+
+    @Override
+    void close();
+}
@@ -0,0 +1,137 @@
+package com.example.demo.cluster;
+
+import com.example.demo.config.ClusterConfig;
+import com.example.demo.config.ReadYourWritesContext;
+import com.example.demo.model.File;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// Node-local caches for file rows (by id) and small blobs (by path) that stay
+// coherent across the cluster: every invalidation is applied here and broadcast
+// to the other nodes. Broadcasts can be lost, so entries also expire after
+// cache-ttl-ms, which bounds how stale another node's copy can get.
+//
+// A load that started before an invalidation must not put its result back
+// afterwards; each map keeps a generation that invalidations bump, and a put
+// is dropped when the generation has moved since the load began. Rows are
+// loaded from the primary: a replica that is behind would hand back the row
+// as it was before the invalidation, and it would be kept for the whole TTL.
+@Component
+public class FileCache {
+
+    private final ClusterTransport transport;
+    private final ClusterConfig config;
+    private final Lru<Long, File> metadata;
+    private final Lru<String, byte[]> content;
+
+    public FileCache(ClusterTransport transport, ClusterConfig config) {
+        this.transport = transport;
+        this.config = config;
+        this.metadata = new Lru<>(config.getMetadataCacheSize());
+        this.content = new Lru<>(config.getContentCacheBytes());
+        transport.subscribe(this::onMessage);
+    }
+
+    // The active file row, or whatever the loader returns (null is not cached)
+    public File getFile(Long id, Supplier<File> loader) {
+        return metadata.get(id, () -> ReadYourWritesContext.onPrimary(loader), 1);
+    }
+
+    // Blob content when it is small enough to keep; larger blobs are loaded every time
+    public byte[] getContent(String filePath, long size, Supplier<byte[]> loader) {
+        if (size > config.getContentCacheMaxEntryBytes()) {
+            return loader.get();
+        }
+        return content.get(filePath, loader, Math.max(1, size));
+    }
+
+    public void invalidateFile(Long id) {
+        metadata.remove(id);
+        transport.broadcast(ClusterMessage.INVALIDATE_METADATA, String.valueOf(id), null);
+    }
+
+    public void invalidateContent(String filePath) {
+        if (filePath == null) {
+            return;
+        }
+        content.remove(filePath);
+        transport.broadcast(ClusterMessage.INVALIDATE_CONTENT, filePath, null);
+    }
+
+    private void onMessage(ClusterMessage message) {
+        if (ClusterMessage.INVALIDATE_METADATA.equals(message.getType())) {
+            metadata.remove(Long.valueOf(message.getKey()));
+        } else if (ClusterMessage.INVALIDATE_CONTENT.equals(message.getType())) {
+            content.remove(message.getKey());
+        }
+    }
+
+    // Access-ordered map bounded by total weight (entries or bytes)
+    private final class Lru<K, V> {
+        private final long capacity;
+        private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long weight;
+        private long generation;
+
+        Lru(long capacity) {
+            this.capacity = capacity;
+        }
+
+        V get(K key, Supplier<V> loader, long entryWeight) {
+            long startGeneration;
+            synchronized (this) {
+                Entry<V> entry = entries.get(key);
+                if (entry != null && entry.expiresAt > System.currentTimeMillis()) {
+                    return entry.value;
+                }
+                startGeneration = generation;
+            }
+            V value = loader.get();
+            if (value == null || entryWeight > capacity) {
+                return value;
+            }
+            synchronized (this) {
+                if (generation == startGeneration) {
+                    Entry<V> previous = entries.put(key,
+                            new Entry<>(value, entryWeight, System.currentTimeMillis() + config.getCacheTtlMs()));
+                    weight += entryWeight - (previous != null ? previous.weight : 0);
+                    evict();
+                }
+            }
+            return value;
+        }
+
+        synchronized void remove(K key) {
+            generation++;
+            Entry<V> removed = entries.remove(key);
+            if (removed != null) {
+                weight -= removed.weight;
+            }
+        }
+
+        private void evict() {
+            Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+            while (weight > capacity && iterator.hasNext()) {
+                Map.Entry<K, Entry<V>> eldest = iterator.next();
+                weight -= eldest.getValue().weight;
+                iterator.remove();
+            }
+        }
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long weight;
+        private final long expiresAt;
+
+        Entry(V value, long weight, long expiresAt) {
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
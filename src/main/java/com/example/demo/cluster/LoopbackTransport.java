@@ -0,0 +1,30 @@
+package com.example.demo.cluster;
+
+import java.util.function.Consumer;
+
+// Single-node deployments: there is nobody to tell
+public class LoopbackTransport implements ClusterTransport {
+
+    private final String nodeId;
+
+    public LoopbackTransport(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void broadcast(String type, String key, String value) {
+    }
+
+    @Override
+    public void subscribe(Consumer<ClusterMessage> handler) {
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.demo.cluster;
+
+import com.example.demo.config.ReadYourWritesContext;
+import com.example.demo.model.File;
+import com.example.demo.model.FileEvent;
+import com.example.demo.repository.FileRepository;
+import com.example.demo.service.FileEventPublisher;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Feeds changes made on other nodes into this node's change feed, so a client
+// sees every upload and delete no matter which node it is connected to. Only
+// the event type and file id travel over the transport; the row is read back
+// from the primary because a replica may not have it yet.
+@Component
+public class RemoteFileEventRelay {
+
+    private static final Logger logger = LoggerFactory.getLogger(RemoteFileEventRelay.class);
+
+    private final FileRepository fileRepository;
+    private final FileEventPublisher fileEventPublisher;
+    private final ThreadPoolExecutor executor;
+
+    public RemoteFileEventRelay(ClusterTransport transport, FileRepository fileRepository,
+                                FileEventPublisher fileEventPublisher) {
+        this.fileRepository = fileRepository;
+        this.fileEventPublisher = fileEventPublisher;
+        // Keeps database reads off the transport's receive thread
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(10000),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "cluster-events");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        transport.subscribe(this::onMessage);
+    }
+
+    private void onMessage(ClusterMessage message) {
+        if (!ClusterMessage.FILE_EVENT.equals(message.getType())) {
+            return;
+        }
+        try {
+            executor.execute(() -> relay(message.getValue(), Long.valueOf(message.getKey())));
+        } catch (RejectedExecutionException ex) {
+            // Subscribers that miss events reconcile on their next reload
+            logger.warn("Dropped remote file event for {}", message.getKey());
+        }
+    }
+
+    private void relay(String type, Long fileId) {
+        File file = null;
+        if (!FileEvent.DELETED.equals(type)) {
+            ReadYourWritesContext.requirePrimary();
+            try {
+                file = fileRepository.findById(fileId).orElse(null);
+            } catch (RuntimeException ex) {
+                logger.warn("Could not load file {} for a remote {} event", fileId, type, ex);
+                return;
+            } finally {
+                ReadYourWritesContext.clear();
+            }
+            if (file == null) {
+                return;
+            }
+        }
+        fileEventPublisher.publishLocal(type, fileId, file);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+}
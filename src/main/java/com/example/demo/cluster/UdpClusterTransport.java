@@ -0,0 +1,104 @@
+package com.example.demo.cluster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+// Sends each message as one UDP datagram to every configured peer. Good enough
+// for a handful of nodes on one network, and for several JVMs on one machine
+// (each on its own port). Datagrams can be lost; caches bound the damage with
+// a TTL and locks don't rely on messages at all.
+public class UdpClusterTransport implements ClusterTransport {
+
+    private static final Logger logger = LoggerFactory.getLogger(UdpClusterTransport.class);
+
+    private static final int MAX_DATAGRAM = 1400;
+
+    private final String nodeId;
+    private final DatagramSocket socket;
+    private final List<InetSocketAddress> peers = new ArrayList<>();
+    private final List<Consumer<ClusterMessage>> handlers = new CopyOnWriteArrayList<>();
+    private final Thread receiver;
+    private volatile boolean running = true;
+
+    public UdpClusterTransport(String nodeId, int port, List<String> peerAddresses) throws SocketException {
+        this.nodeId = nodeId;
+        this.socket = new DatagramSocket(port);
+        for (String peer : peerAddresses) {
+            int colon = peer.lastIndexOf(':');
+            if (colon < 0) {
+                throw new IllegalArgumentException("Peer must be host:port, got " + peer);
+            }
+            peers.add(new InetSocketAddress(peer.substring(0, colon).trim(),
+                    Integer.parseInt(peer.substring(colon + 1).trim())));
+        }
+        this.receiver = new Thread(this::receive, "cluster-udp-" + port);
+        this.receiver.setDaemon(true);
+        this.receiver.start();
+        logger.info("Cluster node {} listening on UDP {} with {} peers", nodeId, port, peers.size());
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void broadcast(String type, String key, String value) {
+        byte[] data = new ClusterMessage(nodeId, type, key, value).encode();
+        if (data.length > MAX_DATAGRAM) {
+            logger.warn("Dropping oversized cluster message {} ({} bytes)", type, data.length);
+            return;
+        }
+        for (InetSocketAddress peer : peers) {
+            try {
+                socket.send(new DatagramPacket(data, data.length, peer));
+            } catch (IOException ex) {
+                logger.debug("Could not reach cluster peer {}: {}", peer, ex.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<ClusterMessage> handler) {
+        handlers.add(handler);
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        socket.close();
+    }
+
+    private void receive() {
+        byte[] buffer = new byte[MAX_DATAGRAM];
+        while (running) {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                socket.receive(packet);
+                ClusterMessage message = ClusterMessage.decode(packet.getData(), packet.getLength());
+                if (nodeId.equals(message.getOrigin())) {
+                    continue;
+                }
+                for (Consumer<ClusterMessage> handler : handlers) {
+                    handler.accept(message);
+                }
+            } catch (IOException ex) {
+                if (running) {
+                    logger.warn("Cluster receive failed", ex);
+                }
+            } catch (RuntimeException ex) {
+                logger.warn("Could not handle cluster message", ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "file.admission")
+public class AdmissionConfig {
+
+    private boolean enabled = true;
+    private long windowMs = 1000; // how often each lane's limit is re-evaluated
+    private int minWindowSamples = 10; // completed requests needed before a window counts
+    private double tolerance = 1.5; // latency may grow by this factor over its baseline before limits shrink
+    private long maxRetryAfterSeconds = 30;
+
+    // Uploads, new versions and downloads
+    private Lane heavy = new Lane(8, 2, 32, 32, 5000);
+
+    // Everything else under /api (metadata, listing, search, stats)
+    private Lane light = new Lane(32, 8, 128, 64, 500);
+
+    // Getters and Setters
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getWindowMs() {
+        return windowMs;
+    }
+
+    public void setWindowMs(long windowMs) {
+        this.windowMs = windowMs;
+    }
+
+    public int getMinWindowSamples() {
+        return minWindowSamples;
+    }
+
+    public void setMinWindowSamples(int minWindowSamples) {
+        this.minWindowSamples = minWindowSamples;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    public void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    public long getMaxRetryAfterSeconds() {
+        return maxRetryAfterSeconds;
+    }
+
+    public void setMaxRetryAfterSeconds(long maxRetryAfterSeconds) {
+        this.maxRetryAfterSeconds = maxRetryAfterSeconds;
+    }
+
+    public Lane getHeavy() {
+        return heavy;
+    }
+
+    public void setHeavy(Lane heavy) {
+        this.heavy = heavy;
+    }
+
+    public Lane getLight() {
+        return light;
+    }
+
+    public void setLight(Lane light) {
+        this.light = light;
+    }
+
+    // Concurrency limit and queue of one class of requests
+    public static class Lane {
+        private int initialLimit;
+        private int minLimit;
+        private int maxLimit;
+        private int queueSize; // requests waiting for a slot; beyond that they are turned away at once
+        private long queueTimeoutMs; // longest a request waits for a slot
+
+        public Lane() {
+        }
+
+        public Lane(int initialLimit, int minLimit, int maxLimit, int queueSize, long queueTimeoutMs) {
+            this.initialLimit = initialLimit;
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            this.queueSize = queueSize;
+            this.queueTimeoutMs = queueTimeoutMs;
+        }
+
+        public int getInitialLimit() {
+            return initialLimit;
+        }
+
+        public void setInitialLimit(int initialLimit) {
+            this.initialLimit = initialLimit;
+        }
+
+        public int getMinLimit() {
+            return minLimit;
+        }
+
+        public void setMinLimit(int minLimit) {
+            this.minLimit = minLimit;
+        }
+
+        public int getMaxLimit() {
+            return maxLimit;
+        }
+
+        public void setMaxLimit(int maxLimit) {
+            this.maxLimit = maxLimit;
+        }
+
+        public int getQueueSize() {
+            return queueSize;
+        }
+
+        public void setQueueSize(int queueSize) {
+            this.queueSize = queueSize;
+        }
+
+        public long getQueueTimeoutMs() {
+            return queueTimeoutMs;
+        }
+
+        public void setQueueTimeoutMs(long queueTimeoutMs) {
+            this.queueTimeoutMs = queueTimeoutMs;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.demo.config;
+
+import com.example.demo.service.AdaptiveLimiter;
+import com.example.demo.service.AdmissionControl;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Holds each /api request until its lane has a free slot. Runs before the
+// multipart body is parsed, so a rejected upload is never read. A full queue is
+// answered with 429, a request that waited out its queue timeout with 503; both
+// carry Retry-After.
+public class AdmissionControlFilter extends OncePerRequestFilter {
+
+    private final AdmissionControl admissionControl;
+
+    public AdmissionControlFilter(AdmissionControl admissionControl) {
+        this.admissionControl = admissionControl;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        AdmissionControl.Lane lane = admissionControl.classify(request.getMethod(), path);
+        if (lane == AdmissionControl.Lane.EXEMPT) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        AdaptiveLimiter limiter = admissionControl.limiter(lane);
+        CompletableFuture<Boolean> slot = limiter.acquire();
+        boolean admitted;
+        try {
+            admitted = slot.get(admissionControl.queueTimeoutMs(lane), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            if (limiter.cancel(slot)) {
+                reject(response, lane, HttpStatus.SERVICE_UNAVAILABLE);
+                return;
+            }
+            // Granted just as the wait ran out
+            admitted = slot.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            if (!limiter.cancel(slot)) {
+                limiter.release();
+            }
+            reject(response, lane, HttpStatus.SERVICE_UNAVAILABLE);
+            return;
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException(ex.getCause());
+        }
+        if (!admitted) {
+            reject(response, lane, HttpStatus.TOO_MANY_REQUESTS);
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            limiter.release(System.nanoTime() - start, admissionControl.cost(lane, transferredBytes(request, response)));
+        }
+    }
+
+    private long transferredBytes(HttpServletRequest request, HttpServletResponse response) {
+        if ("POST".equals(request.getMethod())) {
+            return request.getContentLengthLong();
+        }
+        String length = response.getHeader(HttpHeaders.CONTENT_LENGTH);
+        try {
+            return length != null ? Long.parseLong(length) : -1L;
+        } catch (NumberFormatException ex) {
+            return -1L;
+        }
+    }
+
+    private void reject(HttpServletResponse response, AdmissionControl.Lane lane, HttpStatus status)
+            throws IOException {
+        byte[] body = admissionControl.rejectionBody(status == HttpStatus.TOO_MANY_REQUESTS);
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(admissionControl.retryAfterSeconds(lane)));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "file.archive")
+public class ArchiveConfig {
+
+    private int pageSize = 500; // files per rows entry and per import batch
+    private int readThreads = 8; // blobs read in parallel during an export
+    private int writeThreads = 8; // blobs written in parallel during an import
+    private long bufferBytes = 64 * 1024 * 1024; // blob bytes held in memory ahead of the archive stream
+    private int windowEntries = 1024; // blobs and pages queued ahead of the archive stream
+    private int blobCompressionLevel = 0; // 0 stores blobs as they are; most uploads are compressed already
+
+    // Getters and Setters
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public int getReadThreads() {
+        return readThreads;
+    }
+
+    public void setReadThreads(int readThreads) {
+        this.readThreads = readThreads;
+    }
+
+    public int getWriteThreads() {
+        return writeThreads;
+    }
+
+    public void setWriteThreads(int writeThreads) {
+        this.writeThreads = writeThreads;
+    }
+
+    public long getBufferBytes() {
+        return bufferBytes;
+    }
+
+    public void setBufferBytes(long bufferBytes) {
+        this.bufferBytes = bufferBytes;
+    }
+
+    public int getWindowEntries() {
+        return windowEntries;
+    }
+
+    public void setWindowEntries(int windowEntries) {
+        this.windowEntries = windowEntries;
+    }
+
+    public int getBlobCompressionLevel() {
+        return blobCompressionLevel;
+    }
+
+    public void setBlobCompressionLevel(int blobCompressionLevel) {
+        this.blobCompressionLevel = blobCompressionLevel;
+    }
+}
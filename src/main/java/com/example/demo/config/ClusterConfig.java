@@ -0,0 +1,114 @@
+package com.example.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+@Configuration
+@ConfigurationProperties(prefix = "file.cluster")
+public class ClusterConfig {
+
+    private String nodeId = UUID.randomUUID().toString().substring(0, 8);
+    private String transport = "loopback"; // loopback (single node) or udp
+    private int port = 9700; // UDP port this node listens on
+    private List<String> peers = new ArrayList<>(); // host:port of the other nodes
+    private long lockTtlMs = 30000; // a lock held longer than this by a dead node is taken over
+    private long lockRenewIntervalMs = 10000; // held leases are extended this often; keep well below lock-ttl-ms
+    private long lockWaitMs = 10000;
+    private int metadataCacheSize = 10000; // entries
+    private long contentCacheBytes = 16 * 1024 * 1024;
+    private long contentCacheMaxEntryBytes = 256 * 1024;
+    private long cacheTtlMs = 60000; // bounds staleness if an invalidation is lost
+
+    // Getters and Setters
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public String getTransport() {
+        return transport;
+    }
+
+    public void setTransport(String transport) {
+        this.transport = transport;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public List<String> getPeers() {
+        return peers;
+    }
+
+    public void setPeers(List<String> peers) {
+        this.peers = peers;
+    }
+
+    public long getLockTtlMs() {
+        return lockTtlMs;
+    }
+
+    public void setLockTtlMs(long lockTtlMs) {
+        this.lockTtlMs = lockTtlMs;
+    }
+
+    public long getLockRenewIntervalMs() {
+        return lockRenewIntervalMs;
+    }
+
+    public void setLockRenewIntervalMs(long lockRenewIntervalMs) {
+        this.lockRenewIntervalMs = lockRenewIntervalMs;
+    }
+
+    public long getLockWaitMs() {
+        return lockWaitMs;
+    }
+
+    public void setLockWaitMs(long lockWaitMs) {
+        this.lockWaitMs = lockWaitMs;
+    }
+
+    public int getMetadataCacheSize() {
+        return metadataCacheSize;
+    }
+
+    public void setMetadataCacheSize(int metadataCacheSize) {
+        this.metadataCacheSize = metadataCacheSize;
+    }
+
+    public long getContentCacheBytes() {
+        return contentCacheBytes;
+    }
+
+    public void setContentCacheBytes(long contentCacheBytes) {
+        this.contentCacheBytes = contentCacheBytes;
+    }
+
+    public long getContentCacheMaxEntryBytes() {
+        return contentCacheMaxEntryBytes;
+    }
+
+    public void setContentCacheMaxEntryBytes(long contentCacheMaxEntryBytes) {
+        this.contentCacheMaxEntryBytes = contentCacheMaxEntryBytes;
+    }
+
+    public long getCacheTtlMs() {
+        return cacheTtlMs;
+    }
+
+    public void setCacheTtlMs(long cacheTtlMs) {
+        this.cacheTtlMs = cacheTtlMs;
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.demo.config;
+
+import com.example.demo.cluster.ClusterTransport;
+import com.example.demo.cluster.LoopbackTransport;
+import com.example.demo.cluster.UdpClusterTransport;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.SocketException;
+
+@Configuration
+public class ClusterTransportConfig {
+
+    @Bean(destroyMethod = "close")
+    public ClusterTransport clusterTransport(ClusterConfig clusterConfig) throws SocketException {
+        if ("udp".equalsIgnoreCase(clusterConfig.getTransport())) {
+            return new UdpClusterTransport(clusterConfig.getNodeId(), clusterConfig.getPort(),
+                    clusterConfig.getPeers());
+        }
+        return new LoopbackTransport(clusterConfig.getNodeId());
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.demo.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+public class DataSourceRoutingConfig {
+
+    private ReadReplicaRoutingDataSource routingDataSource;
+
+    // Bound the way Boot binds its own pool, so spring.datasource.hikari.* still applies
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource primary = properties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        primary.setPoolName("primary");
+        return primary;
+    }
+
+    @Bean
+    public ReadReplicaRoutingDataSource routingDataSource(HikariDataSource primaryDataSource,
+                                                          ReplicaDataSourceConfig replicaConfig) {
+        List<DataSource> replicas = new ArrayList<>();
+        for (int i = 0; i < replicaConfig.getReplicas().size(); i++) {
+            ReplicaDataSourceConfig.Replica replica = replicaConfig.getReplicas().get(i);
+            HikariDataSource dataSource = DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .url(replica.getUrl())
+                    .username(replica.getUsername())
+                    .password(replica.getPassword())
+                    .build();
+            dataSource.setPoolName("replica-" + i);
+            dataSource.setReadOnly(true);
+            // Don't block startup on a replica that is down; the health check will notice
+            dataSource.setInitializationFailTimeout(-1);
+            // Fail over to the primary quickly instead of waiting out Hikari's 30 s default
+            dataSource.setConnectionTimeout(replicaConfig.getReplicaConnectionTimeoutMs());
+            replicas.add(dataSource);
+        }
+
+        this.routingDataSource = new ReadReplicaRoutingDataSource(primaryDataSource, replicas);
+        return this.routingDataSource;
+    }
+
+    // The lazy proxy defers the physical connection until the first statement, by
+    // which point the transaction's read-only flag has been bound to the thread.
+    @Bean
+    @Primary
+    public DataSource dataSource(ReadReplicaRoutingDataSource routingDataSource) {
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    @Bean
+    public FilterRegistrationBean<ReadYourWritesFilter> readYourWritesFilter(ReplicaDataSourceConfig replicaConfig) {
+        FilterRegistrationBean<ReadYourWritesFilter> registration =
+                new FilterRegistrationBean<>(new ReadYourWritesFilter(replicaConfig.getReadYourWritesWindowMs()));
+        registration.addUrlPatterns("/api/*");
+        return registration;
+    }
+
+    @Scheduled(fixedDelayString = "${file.datasource.health-check-interval-ms:10000}")
+    public void checkReplicaHealth() {
+        if (routingDataSource != null && !routingDataSource.getReplicaKeys().isEmpty()) {
+            routingDataSource.checkReplicas();
+        }
+    }
+}
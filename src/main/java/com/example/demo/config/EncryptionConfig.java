@@ -0,0 +1,96 @@
+package com.example.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "file.encryption")
+public class EncryptionConfig {
+
+    private boolean enabled = false; // encrypt new blobs; existing blobs are read either way
+    private int segmentSize = 64 * 1024; // plaintext bytes per authenticated segment
+
+    // Master key, either inline (base64 of 16, 24 or 32 bytes) ...
+    private String masterKey;
+    private String masterKeyId = "default"; // recorded in each blob to catch a wrong key early
+
+    // ... or from a keystore (PKCS12 or JCEKS) holding an AES secret key
+    private String keystorePath;
+    private String keystoreType = "PKCS12";
+    private String keystorePassword;
+    private String keyAlias;
+    private String keyPassword; // defaults to the keystore password
+
+    // Getters and Setters
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    public String getMasterKey() {
+        return masterKey;
+    }
+
+    public void setMasterKey(String masterKey) {
+        this.masterKey = masterKey;
+    }
+
+    public String getMasterKeyId() {
+        return masterKeyId;
+    }
+
+    public void setMasterKeyId(String masterKeyId) {
+        this.masterKeyId = masterKeyId;
+    }
+
+    public String getKeystorePath() {
+        return keystorePath;
+    }
+
+    public void setKeystorePath(String keystorePath) {
+        this.keystorePath = keystorePath;
+    }
+
+    public String getKeystoreType() {
+        return keystoreType;
+    }
+
+    public void setKeystoreType(String keystoreType) {
+        this.keystoreType = keystoreType;
+    }
+
+    public String getKeystorePassword() {
+        return keystorePassword;
+    }
+
+    public void setKeystorePassword(String keystorePassword) {
+        this.keystorePassword = keystorePassword;
+    }
+
+    public String getKeyAlias() {
+        return keyAlias;
+    }
+
+    public void setKeyAlias(String keyAlias) {
+        this.keyAlias = keyAlias;
+    }
+
+    public String getKeyPassword() {
+        return keyPassword;
+    }
+
+    public void setKeyPassword(String keyPassword) {
+        this.keyPassword = keyPassword;
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "file.gc")
+public class FileGcConfig {
+
+    private boolean enabled = true;
+    private Duration retention = Duration.ofDays(7); // deleted files can be restored until then
+    private long intervalMs = 60000;
+    private int batchSize = 200;
+    private int maxBatchesPerRun = 50;
+    private long maxDeletesPerSecond = 100;
+    private double maxLoadPerCore = 1.0; // skip a run while the system is busier than this
+    private String rowAction = "purge"; // purge or archive (append rows to .archive/*.jsonl, then purge)
+    private Duration changeRetention = Duration.ofDays(30); // restores and purges kept for incremental exports
+
+    // Getters and Setters
+    public Duration getChangeRetention() {
+        return changeRetention;
+    }
+
+    public void setChangeRetention(Duration changeRetention) {
+        this.changeRetention = changeRetention;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Duration getRetention() {
+        return retention;
+    }
+
+    public void setRetention(Duration retention) {
+        this.retention = retention;
+    }
+
+    public long getIntervalMs() {
+        return intervalMs;
+    }
+
+    public void setIntervalMs(long intervalMs) {
+        this.intervalMs = intervalMs;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getMaxBatchesPerRun() {
+        return maxBatchesPerRun;
+    }
+
+    public void setMaxBatchesPerRun(int maxBatchesPerRun) {
+        this.maxBatchesPerRun = maxBatchesPerRun;
+    }
+
+    public long getMaxDeletesPerSecond() {
+        return maxDeletesPerSecond;
+    }
+
+    public void setMaxDeletesPerSecond(long maxDeletesPerSecond) {
+        this.maxDeletesPerSecond = maxDeletesPerSecond;
+    }
+
+    public double getMaxLoadPerCore() {
+        return maxLoadPerCore;
+    }
+
+    public void setMaxLoadPerCore(double maxLoadPerCore) {
+        this.maxLoadPerCore = maxLoadPerCore;
+    }
+
+    public String getRowAction() {
+        return rowAction;
+    }
+
+    public void setRowAction(String rowAction) {
+        this.rowAction = rowAction;
+    }
+
+    public boolean isArchiveRows() {
+        return "archive".equalsIgnoreCase(rowAction);
+    }
+}
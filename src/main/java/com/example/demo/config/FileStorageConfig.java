@@ -1,8 +1,12 @@
 package com.example.demo.config;
 
+import com.example.demo.service.ContentSniffer;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.HashSet;
+import java.util.Set;
+
 @Configuration
 @ConfigurationProperties(prefix = "file")
 public class FileStorageConfig {
@@ -14,6 +18,14 @@ public class FileStorageConfig {
         "text/plain", "application/json", 
         "application/pdf", "text/csv"
     };
+    private Set<String> allowedTypeSet = toTypeSet(allowedTypes);
+    
+    // Per-user limits; 0 disables a limit. Uploads without a userId share user 0.
+    private long userQuotaBytes = 0;
+    private long uploadRateBytesPerSecond = 0;
+    private long downloadRateBytesPerSecond = 0;
+    private long rateLimitBurstSeconds = 5; // bucket capacity = rate * burst seconds
+    private long quotaResyncIntervalMs = 300000; // storage counters are corrected from the database this often
     
     // Getters and Setters
     public String getUploadDir() {
@@ -38,16 +50,64 @@ public class FileStorageConfig {
     
     public void setAllowedTypes(String[] allowedTypes) {
         this.allowedTypes = allowedTypes;
+        this.allowedTypeSet = toTypeSet(allowedTypes);
+    }
+    
+    public long getUserQuotaBytes() {
+        return userQuotaBytes;
+    }
+    
+    public void setUserQuotaBytes(long userQuotaBytes) {
+        this.userQuotaBytes = userQuotaBytes;
+    }
+    
+    public long getUploadRateBytesPerSecond() {
+        return uploadRateBytesPerSecond;
+    }
+    
+    public void setUploadRateBytesPerSecond(long uploadRateBytesPerSecond) {
+        this.uploadRateBytesPerSecond = uploadRateBytesPerSecond;
+    }
+    
+    public long getDownloadRateBytesPerSecond() {
+        return downloadRateBytesPerSecond;
+    }
+    
+    public void setDownloadRateBytesPerSecond(long downloadRateBytesPerSecond) {
+        this.downloadRateBytesPerSecond = downloadRateBytesPerSecond;
+    }
+    
+    public long getRateLimitBurstSeconds() {
+        return rateLimitBurstSeconds;
+    }
+    
+    public void setRateLimitBurstSeconds(long rateLimitBurstSeconds) {
+        this.rateLimitBurstSeconds = rateLimitBurstSeconds;
+    }
+    
+    public long getQuotaResyncIntervalMs() {
+        return quotaResyncIntervalMs;
+    }
+    
+    public void setQuotaResyncIntervalMs(long quotaResyncIntervalMs) {
+        this.quotaResyncIntervalMs = quotaResyncIntervalMs;
     }
     
     // Helper methods
     public boolean isAllowedType(String contentType) {
-        for (String allowedType : allowedTypes) {
-            if (allowedType.equals(contentType)) {
-                return true;
+        String type = ContentSniffer.normalize(contentType);
+        return type != null && allowedTypeSet.contains(type);
+    }
+    
+    private static Set<String> toTypeSet(String[] types) {
+        Set<String> set = new HashSet<>();
+        for (String type : types) {
+            String normalized = ContentSniffer.normalize(type);
+            if (normalized != null) {
+                set.add(normalized);
             }
         }
-        return false;
+        return set;
     }
     
     public String getMaxFileSizeFormatted() {
@@ -0,0 +1,47 @@
+package com.example.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "file.versions")
+public class FileVersionConfig {
+
+    private String dir = ".versions";
+    private int fullCopyInterval = 16; // every Nth version is kept whole to bound delta chains
+    private double maxDeltaRatio = 0.5; // keep a full copy when the delta would be larger than this
+    private long maxDeltaBytes = 64 * 1024 * 1024; // larger files are kept as full copies instead of diffed in memory
+
+    // Getters and Setters
+    public String getDir() {
+        return dir;
+    }
+
+    public void setDir(String dir) {
+        this.dir = dir;
+    }
+
+    public int getFullCopyInterval() {
+        return fullCopyInterval;
+    }
+
+    public void setFullCopyInterval(int fullCopyInterval) {
+        this.fullCopyInterval = fullCopyInterval;
+    }
+
+    public double getMaxDeltaRatio() {
+        return maxDeltaRatio;
+    }
+
+    public void setMaxDeltaRatio(double maxDeltaRatio) {
+        this.maxDeltaRatio = maxDeltaRatio;
+    }
+
+    public long getMaxDeltaBytes() {
+        return maxDeltaBytes;
+    }
+
+    public void setMaxDeltaBytes(long maxDeltaBytes) {
+        this.maxDeltaBytes = maxDeltaBytes;
+    }
+}
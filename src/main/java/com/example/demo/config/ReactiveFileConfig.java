@@ -0,0 +1,29 @@
+package com.example.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "file.reactive")
+public class ReactiveFileConfig {
+
+    private int metadataThreads = 32; // threads bridging to the blocking JPA/JDBC layer
+    private int metadataQueueCapacity = 10000; // queued metadata calls before requests are rejected
+
+    // Getters and Setters
+    public int getMetadataThreads() {
+        return metadataThreads;
+    }
+
+    public void setMetadataThreads(int metadataThreads) {
+        this.metadataThreads = metadataThreads;
+    }
+
+    public int getMetadataQueueCapacity() {
+        return metadataQueueCapacity;
+    }
+
+    public void setMetadataQueueCapacity(int metadataQueueCapacity) {
+        this.metadataQueueCapacity = metadataQueueCapacity;
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.demo.config;
+
+import java.util.function.Supplier;
+
+// Per-request flag that forces read-only transactions onto the primary, so a
+// client that just wrote never reads from a replica that has not caught up yet.
+public final class ReadYourWritesContext {
+
+    private static final ThreadLocal<Boolean> PRIMARY_REQUIRED = new ThreadLocal<>();
+
+    private ReadYourWritesContext() {}
+
+    public static void requirePrimary() {
+        PRIMARY_REQUIRED.set(Boolean.TRUE);
+    }
+
+    public static boolean isPrimaryRequired() {
+        return Boolean.TRUE.equals(PRIMARY_REQUIRED.get());
+    }
+
+    public static void clear() {
+        PRIMARY_REQUIRED.remove();
+    }
+
+    // Runs a read whose result decides a write (or is cached) on the primary.
+    // Repository calls outside a service transaction are read-only too, so they
+    // would otherwise go to a replica.
+    public static <T> T onPrimary(Supplier<T> read) {
+        if (isPrimaryRequired()) {
+            return read.get();
+        }
+        requirePrimary();
+        try {
+            return read.get();
+        } finally {
+            clear();
+        }
+    }
+}
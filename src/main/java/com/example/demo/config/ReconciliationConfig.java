@@ -0,0 +1,101 @@
+package com.example.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "file.reconcile")
+public class ReconciliationConfig {
+
+    private boolean watchEnabled = true; // live WatchService on the upload directory
+    private boolean fix = false; // false = report only
+    private long scanIntervalMs = 0; // scheduled full pass; 0 = only on demand
+    private long checkIntervalMs = 60000; // how often to check whether a scheduled pass is due
+    private long pendingIntervalMs = 5000; // how often paths seen by the watcher are checked
+    private long gracePeriodMs = 60000; // ignore entries younger than this (uploads in flight)
+    private int batchSize = 500;
+    private int parallelism = 4;
+    private long maxFilesPerSecond = 2000; // I/O budget shared by both passes
+    private String quarantineDir = ".orphans";
+
+    // Getters and Setters
+    public boolean isWatchEnabled() {
+        return watchEnabled;
+    }
+
+    public void setWatchEnabled(boolean watchEnabled) {
+        this.watchEnabled = watchEnabled;
+    }
+
+    public boolean isFix() {
+        return fix;
+    }
+
+    public void setFix(boolean fix) {
+        this.fix = fix;
+    }
+
+    public long getScanIntervalMs() {
+        return scanIntervalMs;
+    }
+
+    public void setScanIntervalMs(long scanIntervalMs) {
+        this.scanIntervalMs = scanIntervalMs;
+    }
+
+    public long getCheckIntervalMs() {
+        return checkIntervalMs;
+    }
+
+    public void setCheckIntervalMs(long checkIntervalMs) {
+        this.checkIntervalMs = checkIntervalMs;
+    }
+
+    public long getPendingIntervalMs() {
+        return pendingIntervalMs;
+    }
+
+    public void setPendingIntervalMs(long pendingIntervalMs) {
+        this.pendingIntervalMs = pendingIntervalMs;
+    }
+
+    public long getGracePeriodMs() {
+        return gracePeriodMs;
+    }
+
+    public void setGracePeriodMs(long gracePeriodMs) {
+        this.gracePeriodMs = gracePeriodMs;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public long getMaxFilesPerSecond() {
+        return maxFilesPerSecond;
+    }
+
+    public void setMaxFilesPerSecond(long maxFilesPerSecond) {
+        this.maxFilesPerSecond = maxFilesPerSecond;
+    }
+
+    public String getQuarantineDir() {
+        return quarantineDir;
+    }
+
+    public void setQuarantineDir(String quarantineDir) {
+        this.quarantineDir = quarantineDir;
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+@ConfigurationProperties(prefix = "file.datasource")
+public class ReplicaDataSourceConfig {
+
+    private List<Replica> replicas = new ArrayList<>();
+    private long readYourWritesWindowMs = 5000; // how long a writer stays pinned to the primary
+    private long healthCheckIntervalMs = 10000;
+    private long replicaConnectionTimeoutMs = 1000; // a dead replica costs this much before the primary is used
+
+    // Getters and Setters
+    public List<Replica> getReplicas() {
+        return replicas;
+    }
+
+    public void setReplicas(List<Replica> replicas) {
+        this.replicas = replicas;
+    }
+
+    public long getReadYourWritesWindowMs() {
+        return readYourWritesWindowMs;
+    }
+
+    public void setReadYourWritesWindowMs(long readYourWritesWindowMs) {
+        this.readYourWritesWindowMs = readYourWritesWindowMs;
+    }
+
+    public long getHealthCheckIntervalMs() {
+        return healthCheckIntervalMs;
+    }
+
+    public void setHealthCheckIntervalMs(long healthCheckIntervalMs) {
+        this.healthCheckIntervalMs = healthCheckIntervalMs;
+    }
+
+    public long getReplicaConnectionTimeoutMs() {
+        return replicaConnectionTimeoutMs;
+    }
+
+    public void setReplicaConnectionTimeoutMs(long replicaConnectionTimeoutMs) {
+        this.replicaConnectionTimeoutMs = replicaConnectionTimeoutMs;
+    }
+
+    // Connection settings for a single read replica
+    public static class Replica {
+        private String url;
+        private String username;
+        private String password;
+
+        public String getUrl() {
+            return url;
+        }
+
+        public void setUrl(String url) {
+            this.url = url;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public void setUsername(String username) {
+            this.username = username;
+        }
+
+        public String getPassword() {
+            return password;
+        }
+
+        public void setPassword(String password) {
+            this.password = password;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "file.scrub")
+public class ScrubConfig {
+
+    private boolean enabled = true;
+    private long intervalMs = 604800000; // time between the end of one pass and the start of the next
+    private long bytesPerSecondPerVolume = 20 * 1024 * 1024; // read budget of the scrubber on each volume
+    private int batchSize = 500;
+    private double maxLoadPerCore = 1.0; // pause while the system is busier than this
+    private boolean verifyOnRead = false; // hash the blob before every download
+
+    // Getters and Setters
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getIntervalMs() {
+        return intervalMs;
+    }
+
+    public void setIntervalMs(long intervalMs) {
+        this.intervalMs = intervalMs;
+    }
+
+    public long getBytesPerSecondPerVolume() {
+        return bytesPerSecondPerVolume;
+    }
+
+    public void setBytesPerSecondPerVolume(long bytesPerSecondPerVolume) {
+        this.bytesPerSecondPerVolume = bytesPerSecondPerVolume;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public double getMaxLoadPerCore() {
+        return maxLoadPerCore;
+    }
+
+    public void setMaxLoadPerCore(double maxLoadPerCore) {
+        this.maxLoadPerCore = maxLoadPerCore;
+    }
+
+    public boolean isVerifyOnRead() {
+        return verifyOnRead;
+    }
+
+    public void setVerifyOnRead(boolean verifyOnRead) {
+        this.verifyOnRead = verifyOnRead;
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.demo.config;
+
+import com.example.demo.cluster.RemoteFileEventRelay;
+import jakarta.servlet.Filter;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.MethodIntrospector;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.annotation.Schedules;
+
+import java.lang.reflect.Method;
+import java.util.Set;
+
+@Configuration
+public class StartupConfig {
+
+    // With spring.main.lazy-initialization (the "fast" profile) a bean is created
+    // on first use. Nothing uses the background services (scheduled passes, the
+    // remote event relay) from a request, so they would never start; keep them eager.
+    @Bean
+    public static LazyInitializationExcludeFilter backgroundServicesExcludeFilter() {
+        return (beanName, beanDefinition, beanType) ->
+                RemoteFileEventRelay.class.isAssignableFrom(beanType) || hasScheduledMethods(beanType);
+    }
+
+    @Bean
+    public FilterRegistrationBean<Filter> startupTimerFilter(StartupTimer startupTimer) {
+        Filter filter = (request, response, chain) -> {
+            try {
+                chain.doFilter(request, response);
+            } finally {
+                startupTimer.requestServed();
+            }
+        };
+        FilterRegistrationBean<Filter> registration = new FilterRegistrationBean<>(filter);
+        registration.addUrlPatterns("/api/*");
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+
+    private static boolean hasScheduledMethods(Class<?> beanType) {
+        if (!AnnotationUtils.isCandidateClass(beanType, Set.of(Scheduled.class, Schedules.class))) {
+            return false;
+        }
+        return !MethodIntrospector.selectMethods(beanType, (MethodIntrospector.MetadataLookup<Scheduled>)
+                (Method method) -> AnnotatedElementUtils.findMergedAnnotation(method, Scheduled.class)).isEmpty();
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.demo.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+
+// Logs how long after JVM start the node was ready and served its first API
+// request. With lazy initialisation the first request also pays for the beans
+// it touches, so the second number is the one that matters for autoscaling.
+@Component
+public class StartupTimer {
+
+    private static final Logger logger = LoggerFactory.getLogger(StartupTimer.class);
+
+    private final long jvmStartMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
+    private volatile long readyMillis;
+    private volatile long firstRequestMillis;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ready() {
+        readyMillis = System.currentTimeMillis() - jvmStartMillis;
+        logger.info("Ready {} ms after JVM start", readyMillis);
+    }
+
+    public void requestServed() {
+        if (firstRequestMillis != 0) {
+            return;
+        }
+        synchronized (this) {
+            if (firstRequestMillis == 0) {
+                firstRequestMillis = System.currentTimeMillis() - jvmStartMillis;
+                logger.info("First request served {} ms after JVM start", firstRequestMillis);
+            }
+        }
+    }
+
+    // 0 until the event has happened
+    public long getReadyMillis() {
+        return readyMillis;
+    }
+
+    public long getFirstRequestMillis() {
+        return firstRequestMillis;
+    }
+}
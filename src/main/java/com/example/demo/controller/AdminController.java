@@ -0,0 +1,75 @@
+package com.example.demo.controller;
+
+import com.example.demo.config.ReconciliationConfig;
+import com.example.demo.model.ReconciliationReport;
+import com.example.demo.model.ScrubReport;
+import com.example.demo.service.AdmissionControl;
+import com.example.demo.service.BlobScrubber;
+import com.example.demo.service.FileReconciliationService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Maintenance endpoints. Handlers only start or inspect background work, so the
+// controller is shared by the servlet and reactive runtimes.
+@RestController
+@RequestMapping("/api/files/admin")
+public class AdminController {
+    
+    @Autowired
+    private FileReconciliationService reconciliationService;
+    
+    @Autowired
+    private ReconciliationConfig reconciliationConfig;
+    
+    @Autowired
+    private BlobScrubber blobScrubber;
+    
+    @Autowired
+    private AdmissionControl admissionControl;
+    
+    // Start a full reconciliation pass
+    @PostMapping("/reconcile")
+    public ResponseEntity<ReconciliationReport> startReconciliation(
+            @RequestParam(value = "fix", required = false) Boolean fix) {
+        boolean applyFixes = fix != null ? fix : reconciliationConfig.isFix();
+        ReconciliationReport report = reconciliationService.startFullPass("admin", applyFixes);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(report);
+    }
+    
+    // Get the latest full pass and the live watcher's findings
+    @GetMapping("/reconcile")
+    public ResponseEntity<Map<String, Object>> getReconciliationStatus() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("lastFullPass", reconciliationService.getLastFullPass());
+        response.put("live", reconciliationService.getLiveReport());
+        return ResponseEntity.ok(response);
+    }
+    
+    // Start a pass that re-verifies every blob against its checksum
+    @PostMapping("/scrub")
+    public ResponseEntity<ScrubReport> startScrub() {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(blobScrubber.startPass("admin"));
+    }
+    
+    // Get the latest scrub pass and the integrity counters since startup
+    @GetMapping("/scrub")
+    public ResponseEntity<Map<String, Object>> getScrubStatus() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("lastPass", blobScrubber.getLastPass());
+        response.put("metrics", blobScrubber.getMetrics());
+        return ResponseEntity.ok(response);
+    }
+    
+    // Get the current limit, load and rejection counters of each admission lane
+    @GetMapping("/admission")
+    public ResponseEntity<Map<String, Object>> getAdmissionStatus() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("lanes", admissionControl.snapshot());
+        return ResponseEntity.ok(response);
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.demo.controller;
+
+import com.example.demo.model.ArchiveReport;
+import com.example.demo.service.FileArchiveService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+// Export and import of the whole file store. The archive is streamed straight
+// between the socket and FileArchiveService in both directions.
+@RestController
+@RequestMapping("/api/files/admin")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class ArchiveController {
+    
+    @Autowired
+    private FileArchiveService fileArchiveService;
+    
+    // Stream an archive of all files, or of those changed since the given time
+    @GetMapping("/export")
+    public void exportFiles(
+            @RequestParam(value = "since", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since,
+            HttpServletResponse response) throws IOException {
+        fileArchiveService.validateSince(since);
+        response.setContentType("application/zip");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName(since) + "\"");
+        fileArchiveService.export(response.getOutputStream(), since);
+    }
+    
+    // Import an archive sent as the raw request body
+    @PostMapping("/import")
+    public ResponseEntity<ArchiveReport> importFiles(HttpServletRequest request) throws IOException {
+        ArchiveReport report = fileArchiveService.importArchive(request.getInputStream());
+        return report.getError() != null ? ResponseEntity.badRequest().body(report) : ResponseEntity.ok(report);
+    }
+    
+    private static String fileName(LocalDateTime since) {
+        String stamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        return since != null ? "files-since-" + since.format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"))
+                + "-" + stamp + ".zip" : "files-" + stamp + ".zip";
+    }
+}
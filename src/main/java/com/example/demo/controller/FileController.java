@@ -2,17 +2,28 @@ package com.example.demo.controller;
 
 import com.example.demo.exception.FileNotFoundException;
 import com.example.demo.model.File;
+import com.example.demo.model.FileQuery;
+import com.example.demo.model.FileQueryResult;
 import com.example.demo.model.FileUploadResponse;
+import com.example.demo.model.FileVersion;
 import com.example.demo.service.FileService;
+import com.example.demo.service.FileVersionService;
+import com.example.demo.service.RebuiltVersionResource;
+import com.example.demo.service.UserQuotaService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.core.io.Resource;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -20,11 +31,18 @@ import java.util.Map;
 @RestController
 @RequestMapping("/api/files")
 @CrossOrigin(origins = "http://localhost:3000")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class FileController {
     
     @Autowired
     private FileService fileService;
     
+    @Autowired
+    private FileVersionService fileVersionService;
+    
+    @Autowired
+    private UserQuotaService userQuotaService;
+    
     // Upload file
     @PostMapping("/upload")
     public ResponseEntity<FileUploadResponse> uploadFile(
@@ -73,6 +91,35 @@ public class FileController {
         return ResponseEntity.ok(files);
     }
     
+    // Combined filter with sorting, paging and facet counts
+    @GetMapping("/query")
+    public ResponseEntity<FileQueryResult> queryFiles(
+            @RequestParam(value = "type", required = false) List<String> types,
+            @RequestParam(value = "userId", required = false) Long userId,
+            @RequestParam(value = "minSize", required = false) Long minSize,
+            @RequestParam(value = "maxSize", required = false) Long maxSize,
+            @RequestParam(value = "from", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(value = "to", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(value = "sort", defaultValue = FileQuery.SORT_UPLOAD_DATE) String sort,
+            @RequestParam(value = "order", defaultValue = "desc") String order,
+            @RequestParam(value = "page", defaultValue = "0") int page,
+            @RequestParam(value = "size", defaultValue = "50") int size) {
+        FileQuery query = new FileQuery();
+        query.setTypes(types);
+        query.setUserId(userId);
+        query.setMinSize(minSize);
+        query.setMaxSize(maxSize);
+        query.setFrom(from);
+        query.setTo(to);
+        query.setSort(sort);
+        query.setAscending("asc".equalsIgnoreCase(order));
+        query.setPage(page);
+        query.setSize(size);
+        return ResponseEntity.ok(fileService.queryFiles(query));
+    }
+    
     // Get file by ID
     @GetMapping("/{id}")
     public ResponseEntity<File> getFileById(@PathVariable Long id) {
@@ -86,18 +133,20 @@ public class FileController {
     
     // Download file
     @GetMapping("/{id}/download")
-    public ResponseEntity<Resource> downloadFile(@PathVariable Long id) {
+    public ResponseEntity<Resource> downloadFile(
+            @PathVariable Long id,
+            @RequestParam(value = "userId", required = false) Long userId) {
         try {
+            File file = fileService.getFileForDownload(id, userId);
             Resource resource = fileService.getFileResource(id);
-            File file = fileService.getFileById(id);
             
             // Determine if file should be displayed inline or downloaded
-            String contentDisposition = shouldDisplayInline(file.getFileType()) 
+            String contentDisposition = shouldDisplayInline(file.getEffectiveType()) 
                 ? "inline; filename=\"" + file.getOriginalName() + "\""
                 : "attachment; filename=\"" + file.getOriginalName() + "\"";
             
             return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(file.getFileType()))
+                    .contentType(MediaType.parseMediaType(file.getEffectiveType()))
                     .header(HttpHeaders.CONTENT_DISPOSITION, contentDisposition)
                     .body(resource);
         } catch (FileNotFoundException e) {
@@ -137,13 +186,15 @@ public class FileController {
     
     // View file inline (for binary files like PDFs, images)
     @GetMapping("/{id}/inline")
-    public ResponseEntity<Resource> viewFileInline(@PathVariable Long id) {
+    public ResponseEntity<Resource> viewFileInline(
+            @PathVariable Long id,
+            @RequestParam(value = "userId", required = false) Long userId) {
         try {
+            File file = fileService.getFileForDownload(id, userId);
             Resource resource = fileService.getFileResource(id);
-            File file = fileService.getFileById(id);
             
             return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(file.getFileType()))
+                    .contentType(MediaType.parseMediaType(file.getEffectiveType()))
                     .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + file.getOriginalName() + "\"")
                     .body(resource);
         } catch (FileNotFoundException e) {
@@ -151,6 +202,64 @@ public class FileController {
         }
     }
     
+    // Upload a new version of an existing file
+    @PostMapping("/{id}/versions")
+    public ResponseEntity<FileUploadResponse> uploadVersion(
+            @PathVariable Long id,
+            @RequestParam("file") MultipartFile file) {
+        
+        if (file.isEmpty()) {
+            return ResponseEntity.badRequest()
+                    .body(FileUploadResponse.error("Please select a file to upload"));
+        }
+        
+        try {
+            FileUploadResponse response = fileService.uploadVersion(id, file);
+            if (response.isSuccess()) {
+                return ResponseEntity.ok(response);
+            } else {
+                return ResponseEntity.badRequest().body(response);
+            }
+        } catch (FileNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+    
+    // List all versions of a file, newest first
+    @GetMapping("/{id}/versions")
+    public ResponseEntity<List<FileVersion>> getVersions(@PathVariable Long id) {
+        try {
+            return ResponseEntity.ok(fileVersionService.getVersions(id));
+        } catch (FileNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+    
+    // Download a specific version
+    @GetMapping("/{id}/versions/{version}/download")
+    public ResponseEntity<Resource> downloadVersion(
+            @PathVariable Long id,
+            @PathVariable int version,
+            @RequestParam(value = "userId", required = false) Long userId) {
+        try {
+            FileVersion fileVersion = fileVersionService.getVersion(id, version);
+            userQuotaService.acquireDownload(userId, fileVersion.getFileSize());
+            Resource resource = fileVersionService.loadVersionAsResource(id, version);
+            if (resource instanceof RebuiltVersionResource) {
+                // Runs once the response is complete, however it ended
+                RequestContextHolder.currentRequestAttributes().registerDestructionCallback(
+                        "rebuiltVersion", ((RebuiltVersionResource) resource)::release, RequestAttributes.SCOPE_REQUEST);
+            }
+            
+            return ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType(fileVersion.getEffectiveType()))
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileVersion.getOriginalName() + "\"")
+                    .body(resource);
+        } catch (FileNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+    
     // Delete file
     @DeleteMapping("/{id}")
     public ResponseEntity<Map<String, Object>> deleteFile(@PathVariable Long id) {
@@ -168,6 +277,23 @@ public class FileController {
         }
     }
     
+    // Restore a deleted file that has not been collected yet
+    @PostMapping("/{id}/restore")
+    public ResponseEntity<Map<String, Object>> restoreFile(@PathVariable Long id) {
+        boolean restored = fileService.restoreFile(id);
+        
+        Map<String, Object> response = new HashMap<>();
+        if (restored) {
+            response.put("success", true);
+            response.put("message", "File restored successfully");
+            return ResponseEntity.ok(response);
+        } else {
+            response.put("success", false);
+            response.put("message", "File cannot be restored");
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+    
     // Get storage statistics
     @GetMapping("/stats")
     public ResponseEntity<Map<String, Object>> getStorageStats() {
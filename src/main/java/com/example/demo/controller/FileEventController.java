@@ -0,0 +1,63 @@
+package com.example.demo.controller;
+
+import com.example.demo.config.FileEventsConfig;
+import com.example.demo.model.FileEvent;
+import com.example.demo.service.FileEventPublisher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+
+// Change feed for the file list as server-sent events. The request thread is
+// released right away; an idle connection holds no thread, only its emitter and
+// a cursor in FileEventPublisher. SseEmitter.send blocks on a slow client, so
+// sends go through the publisher's per-subscriber queue.
+@RestController
+@RequestMapping("/api/files")
+@CrossOrigin(origins = "http://localhost:3000")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class FileEventController {
+    
+    private static final long RECONNECT_DELAY_MS = 3000;
+    
+    @Autowired
+    private FileEventPublisher fileEventPublisher;
+    
+    @Autowired
+    private FileEventsConfig fileEventsConfig;
+    
+    // Stream file events; browsers resume with the Last-Event-ID header after a reconnect
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamEvents(
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) throws IOException {
+        SseEmitter emitter = new SseEmitter(fileEventsConfig.getConnectionTimeoutMs());
+        emitter.send(SseEmitter.event().reconnectTime(RECONNECT_DELAY_MS).comment("connected"));
+        
+        FileEventPublisher.Subscription subscription = fileEventPublisher.subscribe(lastEventId,
+                fileEventPublisher.queued(new FileEventPublisher.Listener() {
+                    @Override
+                    public void onEvent(FileEvent event) throws IOException {
+                        emitter.send(SseEmitter.event().id(event.getId()).name("file")
+                                .data(event, MediaType.APPLICATION_JSON));
+                    }
+                    
+                    @Override
+                    public void onReset() throws IOException {
+                        emitter.send(SseEmitter.event().name("reset").data("reload"));
+                    }
+                    
+                    @Override
+                    public void onHeartbeat() throws IOException {
+                        emitter.send(SseEmitter.event().comment("heartbeat"));
+                    }
+                }));
+        
+        emitter.onCompletion(subscription::cancel);
+        emitter.onTimeout(subscription::cancel);
+        emitter.onError(ex -> subscription.cancel());
+        return emitter;
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.demo.exception;
+
+public class CorruptFileException extends RuntimeException {
+    
+    public CorruptFileException(String message) {
+        super(message);
+    }
+}
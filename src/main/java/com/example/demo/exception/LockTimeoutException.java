@@ -0,0 +1,8 @@
+package com.example.demo.exception;
+
+public class LockTimeoutException extends RuntimeException {
+    
+    public LockTimeoutException(String message) {
+        super(message);
+    }
+}
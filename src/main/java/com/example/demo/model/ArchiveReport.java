@@ -0,0 +1,161 @@
+package com.example.demo.model;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Result of an export or import; blob counters are updated by the worker threads
+public class ArchiveReport {
+
+    public static final String BLOB_MISSING = "BLOB_MISSING";
+    public static final String UNREADABLE = "UNREADABLE";
+    public static final String CHECKSUM_MISMATCH = "CHECKSUM_MISMATCH";
+
+    private static final int SAMPLE_LIMIT = 100;
+
+    private final String operation;
+    private final LocalDateTime since;
+    private final LocalDateTime startedAt = LocalDateTime.now();
+    private volatile LocalDateTime snapshotAt;
+    private volatile Long highWaterId; // highest file id an export covers
+    private volatile LocalDateTime finishedAt;
+    private volatile String error;
+
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong versions = new AtomicLong();
+    private final AtomicLong blobs = new AtomicLong();
+    private final AtomicLong blobBytes = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong purged = new AtomicLong();
+
+    private final List<Finding> findings = Collections.synchronizedList(new ArrayList<>());
+
+    public ArchiveReport(String operation, LocalDateTime since) {
+        this.operation = operation;
+        this.since = since;
+    }
+
+    public void addFiles(int count) {
+        files.addAndGet(count);
+    }
+
+    public void addVersions(int count) {
+        versions.addAndGet(count);
+    }
+
+    public void addBlob(long bytes) {
+        blobs.incrementAndGet();
+        blobBytes.addAndGet(bytes);
+    }
+
+    // Files purged at the source since the lower bound, shipped or applied as tombstones
+    public void addPurged(int count) {
+        purged.addAndGet(count);
+    }
+
+    // A file or version left out of the archive or the import
+    public void addSkipped(Long fileId, String path, String problem) {
+        skipped.incrementAndGet();
+        if (findings.size() < SAMPLE_LIMIT) {
+            findings.add(new Finding(fileId, path, problem));
+        }
+    }
+
+    public void setSnapshotAt(LocalDateTime snapshotAt) {
+        this.snapshotAt = snapshotAt;
+    }
+
+    public void setHighWaterId(Long highWaterId) {
+        this.highWaterId = highWaterId;
+    }
+
+    public void finish(String error) {
+        this.error = error;
+        this.finishedAt = LocalDateTime.now();
+    }
+
+    // Getters
+    public String getOperation() {
+        return operation;
+    }
+
+    public LocalDateTime getSince() {
+        return since;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public LocalDateTime getSnapshotAt() {
+        return snapshotAt;
+    }
+
+    public Long getHighWaterId() {
+        return highWaterId;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public long getFiles() {
+        return files.get();
+    }
+
+    public long getVersions() {
+        return versions.get();
+    }
+
+    public long getBlobs() {
+        return blobs.get();
+    }
+
+    public long getBlobBytes() {
+        return blobBytes.get();
+    }
+
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    public long getPurged() {
+        return purged.get();
+    }
+
+    public List<Finding> getFindings() {
+        synchronized (findings) {
+            return new ArrayList<>(findings);
+        }
+    }
+
+    public static class Finding {
+        private final Long fileId;
+        private final String path;
+        private final String problem;
+
+        public Finding(Long fileId, String path, String problem) {
+            this.fileId = fileId;
+            this.path = path;
+            this.problem = problem;
+        }
+
+        public Long getFileId() {
+            return fileId;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getProblem() {
+            return problem;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.demo.model;
+
+import jakarta.persistence.*;
+
+// A lease on a named lock shared by all nodes. Rows are written by
+// ClusterLockService over plain JDBC; the entity only defines the table.
+@Entity
+@Table(name = "cluster_locks")
+public class ClusterLock {
+    
+    @Id
+    @Column(name = "lock_name", length = 200)
+    private String lockName;
+    
+    @Column(name = "owner", nullable = false, length = 100)
+    private String owner;
+    
+    // Epoch millis after which another node may take the lock over
+    @Column(name = "expires_at", nullable = false)
+    private Long expiresAt;
+    
+    // Constructors
+    public ClusterLock() {}
+    
+    // Getters and Setters
+    public String getLockName() {
+        return lockName;
+    }
+    
+    public void setLockName(String lockName) {
+        this.lockName = lockName;
+    }
+    
+    public String getOwner() {
+        return owner;
+    }
+    
+    public void setOwner(String owner) {
+        this.owner = owner;
+    }
+    
+    public Long getExpiresAt() {
+        return expiresAt;
+    }
+    
+    public void setExpiresAt(Long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
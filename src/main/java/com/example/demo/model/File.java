@@ -7,6 +7,8 @@ import java.time.LocalDateTime;
 @Table(name = "files")
 public class File {
     
+    // IDENTITY matches the existing AUTO_INCREMENT ids. Hibernate can't batch
+    // IDENTITY inserts, so bulk writes go through FileBatchWriter instead.
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -23,9 +25,17 @@ public class File {
     @Column(name = "file_type", nullable = false)
     private String fileType;
     
+    // Sniffed from the content on upload; null for files stored before detection existed
+    @Column(name = "detected_type")
+    private String detectedType;
+    
     @Column(name = "file_size", nullable = false)
     private Long fileSize;
     
+    // SHA-256 of the content, hex; computed while the upload is written
+    @Column(name = "checksum", length = 64)
+    private String checksum;
+    
     @Column(name = "upload_date")
     private LocalDateTime uploadDate;
     
@@ -38,6 +48,14 @@ public class File {
     @Column(name = "is_active")
     private Boolean isActive = true;
     
+    // Version held by this row; older versions are in file_versions
+    @Column(name = "version_number")
+    private Integer versionNumber = 1;
+    
+    // Set on soft delete; the blob is collected once the retention window has passed
+    @Column(name = "deleted_at")
+    private LocalDateTime deletedAt;
+    
     // Constructors
     public File() {
         this.uploadDate = LocalDateTime.now();
@@ -94,6 +112,19 @@ public class File {
         this.fileType = fileType;
     }
     
+    public String getDetectedType() {
+        return detectedType;
+    }
+    
+    public void setDetectedType(String detectedType) {
+        this.detectedType = detectedType;
+    }
+    
+    // The type to serve and filter by: sniffed when available, declared otherwise
+    public String getEffectiveType() {
+        return detectedType != null ? detectedType : fileType;
+    }
+    
     public Long getFileSize() {
         return fileSize;
     }
@@ -134,6 +165,31 @@ public class File {
         this.isActive = isActive;
     }
     
+    // Rows written before versioning have no version number
+    public Integer getVersionNumber() {
+        return versionNumber != null ? versionNumber : 1;
+    }
+    
+    public void setVersionNumber(Integer versionNumber) {
+        this.versionNumber = versionNumber;
+    }
+    
+    public String getChecksum() {
+        return checksum;
+    }
+    
+    public void setChecksum(String checksum) {
+        this.checksum = checksum;
+    }
+    
+    public LocalDateTime getDeletedAt() {
+        return deletedAt;
+    }
+    
+    public void setDeletedAt(LocalDateTime deletedAt) {
+        this.deletedAt = deletedAt;
+    }
+    
     // Helper methods
     public String getFormattedFileSize() {
         if (fileSize == null) return "0 Bytes";
@@ -0,0 +1,54 @@
+package com.example.demo.model;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+// The latest restore or purge of a file, for incremental exports: neither leaves a
+// trace in the files row that an export could select by. Rows are written by
+// FileChangeLog over plain JDBC; the entity only defines the table.
+@Entity
+@Table(name = "file_changes", indexes = @Index(name = "idx_file_changes_changed_at", columnList = "changed_at"))
+public class FileChange {
+    
+    public static final String RESTORED = "RESTORED";
+    public static final String PURGED = "PURGED";
+    
+    @Id
+    @Column(name = "file_id")
+    private Long fileId;
+    
+    @Column(name = "change_type", nullable = false, length = 10)
+    private String changeType;
+    
+    @Column(name = "changed_at", nullable = false)
+    private LocalDateTime changedAt;
+    
+    // Constructors
+    public FileChange() {}
+    
+    // Getters and Setters
+    public Long getFileId() {
+        return fileId;
+    }
+    
+    public void setFileId(Long fileId) {
+        this.fileId = fileId;
+    }
+    
+    public String getChangeType() {
+        return changeType;
+    }
+    
+    public void setChangeType(String changeType) {
+        this.changeType = changeType;
+    }
+    
+    public LocalDateTime getChangedAt() {
+        return changedAt;
+    }
+    
+    public void setChangedAt(LocalDateTime changedAt) {
+        this.changedAt = changedAt;
+    }
+}
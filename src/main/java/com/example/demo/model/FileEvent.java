@@ -0,0 +1,56 @@
+package com.example.demo.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.time.LocalDateTime;
+
+// A change to the file list, pushed to clients over the change feed. The id is
+// "<epoch>-<sequence>": the epoch changes on restart so a client resuming with
+// an id from a previous run is told to reload instead of missing events.
+public class FileEvent {
+
+    public static final String UPLOADED = "UPLOADED";
+    public static final String UPDATED = "UPDATED";
+    public static final String DELETED = "DELETED";
+    public static final String RESTORED = "RESTORED";
+
+    private final long epoch;
+    private final long sequence;
+    private final String type;
+    private final Long fileId;
+    private final File file; // null for deletes
+    private final LocalDateTime timestamp = LocalDateTime.now();
+
+    public FileEvent(long epoch, long sequence, String type, Long fileId, File file) {
+        this.epoch = epoch;
+        this.sequence = sequence;
+        this.type = type;
+        this.fileId = fileId;
+        this.file = file;
+    }
+
+    public String getId() {
+        return epoch + "-" + sequence;
+    }
+
+    @JsonIgnore
+    public long getSequence() {
+        return sequence;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public Long getFileId() {
+        return fileId;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.demo.model;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Combined filter for GET /api/files/query; every criterion is optional
+public class FileQuery {
+
+    public static final String SORT_UPLOAD_DATE = "uploadDate";
+    public static final String SORT_SIZE = "size";
+
+    // Exact types ("application/pdf") or major types ("image", "image/*"); any may match
+    private List<String> types = new ArrayList<>();
+    private Long userId;
+    private Long minSize;
+    private Long maxSize;
+    private LocalDateTime from;
+    private LocalDateTime to;
+    private String sort = SORT_UPLOAD_DATE;
+    private boolean ascending;
+    private int page;
+    private int size = 50;
+
+    // Getters and Setters
+    public List<String> getTypes() {
+        return types;
+    }
+
+    public void setTypes(List<String> types) {
+        this.types = types != null ? types : new ArrayList<>();
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public Long getMinSize() {
+        return minSize;
+    }
+
+    public void setMinSize(Long minSize) {
+        this.minSize = minSize;
+    }
+
+    public Long getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(Long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public LocalDateTime getFrom() {
+        return from;
+    }
+
+    public void setFrom(LocalDateTime from) {
+        this.from = from;
+    }
+
+    public LocalDateTime getTo() {
+        return to;
+    }
+
+    public void setTo(LocalDateTime to) {
+        this.to = to;
+    }
+
+    public String getSort() {
+        return sort;
+    }
+
+    public void setSort(String sort) {
+        this.sort = sort;
+    }
+
+    public boolean isAscending() {
+        return ascending;
+    }
+
+    public void setAscending(boolean ascending) {
+        this.ascending = ascending;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public void setPage(int page) {
+        this.page = page;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+}
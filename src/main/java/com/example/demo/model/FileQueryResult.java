@@ -0,0 +1,51 @@
+package com.example.demo.model;
+
+import java.util.List;
+import java.util.Map;
+
+// One page of a FileQuery plus facet counts over all of its matches
+public class FileQueryResult {
+
+    private final List<File> files;
+    private final long total;
+    private final int page;
+    private final int size;
+    private final Map<String, Long> types;
+    private final Map<String, Long> categories;
+
+    public FileQueryResult(List<File> files, long total, int page, int size,
+                           Map<String, Long> types, Map<String, Long> categories) {
+        this.files = files;
+        this.total = total;
+        this.page = page;
+        this.size = size;
+        this.types = types;
+        this.categories = categories;
+    }
+
+    public List<File> getFiles() {
+        return files;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    // Matches per exact type, counted as if no type filter were set
+    public Map<String, Long> getTypes() {
+        return types;
+    }
+
+    // Matches per major type (image, text, application, ...), likewise
+    public Map<String, Long> getCategories() {
+        return categories;
+    }
+}
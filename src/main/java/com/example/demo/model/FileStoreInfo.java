@@ -0,0 +1,42 @@
+package com.example.demo.model;
+
+import jakarta.persistence.*;
+
+// Settings that belong to the store itself rather than to a node, such as the id
+// archives are stamped with. Rows are written by FileArchiveService over plain
+// JDBC; the entity only defines the table.
+@Entity
+@Table(name = "file_store_info")
+public class FileStoreInfo {
+    
+    public static final String STORE_ID = "store-id";
+    public static final String IMPORTED_FROM = "imported-from";
+    public static final String SCRUB_FINISHED_AT = "scrub-finished-at";
+    
+    @Id
+    @Column(name = "info_key", length = 50)
+    private String infoKey;
+    
+    @Column(name = "info_value", nullable = false, length = 100)
+    private String infoValue;
+    
+    // Constructors
+    public FileStoreInfo() {}
+    
+    // Getters and Setters
+    public String getInfoKey() {
+        return infoKey;
+    }
+    
+    public void setInfoKey(String infoKey) {
+        this.infoKey = infoKey;
+    }
+    
+    public String getInfoValue() {
+        return infoValue;
+    }
+    
+    public void setInfoValue(String infoValue) {
+        this.infoValue = infoValue;
+    }
+}
@@ -75,6 +75,11 @@ public class FileUploadResponse {
             this.viewUrl = "/api/files/" + id + "/view";
         }
         
+        public static FileData from(File file) {
+            return new FileData(file.getId(), file.getOriginalName(), file.getEffectiveType(),
+                    file.getFormattedFileSize(), file.getUploadDate());
+        }
+        
         // Getters and Setters
         public Long getId() {
             return id;
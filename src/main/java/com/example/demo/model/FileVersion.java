@@ -0,0 +1,178 @@
+package com.example.demo.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+// An older version of a file. The latest version lives in the files row and its
+// blob; older ones are kept under .versions/<fileId>/ either as a full copy or
+// as a binary delta against the next newer version.
+@Entity
+@Table(name = "file_versions",
+       uniqueConstraints = @UniqueConstraint(columnNames = {"file_id", "version_number"}))
+public class FileVersion {
+    
+    public static final String FULL = "FULL";
+    public static final String DELTA = "DELTA";
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "file_id", nullable = false)
+    private Long fileId;
+    
+    @Column(name = "version_number", nullable = false)
+    private Integer versionNumber;
+    
+    @Column(name = "original_name", nullable = false)
+    private String originalName;
+    
+    @Column(name = "file_type", nullable = false)
+    private String fileType;
+    
+    @Column(name = "detected_type")
+    private String detectedType;
+    
+    @Column(name = "file_size", nullable = false)
+    private Long fileSize;
+    
+    // SHA-256 of the version's full content, not of the stored delta
+    @Column(name = "checksum", length = 64)
+    private String checksum;
+    
+    @Column(name = "upload_date")
+    private LocalDateTime uploadDate;
+    
+    // FULL or DELTA
+    @Column(name = "storage", nullable = false, length = 10)
+    private String storage;
+    
+    // Relative to the upload directory; null for the current version
+    @Column(name = "blob_path")
+    private String blobPath;
+    
+    // Bytes on disk for this version
+    @Column(name = "stored_size", nullable = false)
+    private Long storedSize;
+    
+    // Constructors
+    public FileVersion() {
+    }
+    
+    // Snapshot of the version a file row currently holds
+    public static FileVersion of(File file) {
+        FileVersion version = new FileVersion();
+        version.setFileId(file.getId());
+        version.setVersionNumber(file.getVersionNumber());
+        version.setOriginalName(file.getOriginalName());
+        version.setFileType(file.getFileType());
+        version.setDetectedType(file.getDetectedType());
+        version.setFileSize(file.getFileSize());
+        version.setChecksum(file.getChecksum());
+        version.setUploadDate(file.getUploadDate());
+        version.setStorage(FULL);
+        version.setStoredSize(file.getFileSize());
+        return version;
+    }
+    
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+    
+    public void setId(Long id) {
+        this.id = id;
+    }
+    
+    public Long getFileId() {
+        return fileId;
+    }
+    
+    public void setFileId(Long fileId) {
+        this.fileId = fileId;
+    }
+    
+    public Integer getVersionNumber() {
+        return versionNumber;
+    }
+    
+    public void setVersionNumber(Integer versionNumber) {
+        this.versionNumber = versionNumber;
+    }
+    
+    public String getOriginalName() {
+        return originalName;
+    }
+    
+    public void setOriginalName(String originalName) {
+        this.originalName = originalName;
+    }
+    
+    public String getFileType() {
+        return fileType;
+    }
+    
+    public void setFileType(String fileType) {
+        this.fileType = fileType;
+    }
+    
+    public String getDetectedType() {
+        return detectedType;
+    }
+    
+    public void setDetectedType(String detectedType) {
+        this.detectedType = detectedType;
+    }
+    
+    public String getEffectiveType() {
+        return detectedType != null ? detectedType : fileType;
+    }
+    
+    public Long getFileSize() {
+        return fileSize;
+    }
+    
+    public void setFileSize(Long fileSize) {
+        this.fileSize = fileSize;
+    }
+    
+    public LocalDateTime getUploadDate() {
+        return uploadDate;
+    }
+    
+    public void setUploadDate(LocalDateTime uploadDate) {
+        this.uploadDate = uploadDate;
+    }
+    
+    public String getStorage() {
+        return storage;
+    }
+    
+    public void setStorage(String storage) {
+        this.storage = storage;
+    }
+    
+    public String getBlobPath() {
+        return blobPath;
+    }
+    
+    public void setBlobPath(String blobPath) {
+        this.blobPath = blobPath;
+    }
+    
+    public String getChecksum() {
+        return checksum;
+    }
+    
+    public void setChecksum(String checksum) {
+        this.checksum = checksum;
+    }
+    
+    public Long getStoredSize() {
+        return storedSize;
+    }
+    
+    public void setStoredSize(Long storedSize) {
+        this.storedSize = storedSize;
+    }
+}
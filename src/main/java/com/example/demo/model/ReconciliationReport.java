@@ -0,0 +1,121 @@
+package com.example.demo.model;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Result of a reconciliation pass; counters are updated concurrently by scan workers
+public class ReconciliationReport {
+
+    private static final int SAMPLE_LIMIT = 100;
+
+    private final String trigger;
+    private final boolean fix;
+    private final LocalDateTime startedAt = LocalDateTime.now();
+    private volatile LocalDateTime finishedAt;
+    private volatile String error;
+
+    private final AtomicLong blobsScanned = new AtomicLong();
+    private final AtomicLong rowsChecked = new AtomicLong();
+    private final AtomicLong orphanedBlobs = new AtomicLong();
+    private final AtomicLong danglingRows = new AtomicLong();
+    private final AtomicLong fixed = new AtomicLong();
+
+    private final List<String> orphanedBlobSample = Collections.synchronizedList(new ArrayList<>());
+    private final List<Long> danglingRowSample = Collections.synchronizedList(new ArrayList<>());
+
+    public ReconciliationReport(String trigger, boolean fix) {
+        this.trigger = trigger;
+        this.fix = fix;
+    }
+
+    public void addBlobsScanned(long count) {
+        blobsScanned.addAndGet(count);
+    }
+
+    public void addRowsChecked(long count) {
+        rowsChecked.addAndGet(count);
+    }
+
+    public void addOrphanedBlob(String filePath) {
+        orphanedBlobs.incrementAndGet();
+        if (orphanedBlobSample.size() < SAMPLE_LIMIT) {
+            orphanedBlobSample.add(filePath);
+        }
+    }
+
+    public void addDanglingRow(Long id) {
+        danglingRows.incrementAndGet();
+        if (danglingRowSample.size() < SAMPLE_LIMIT) {
+            danglingRowSample.add(id);
+        }
+    }
+
+    public void addFixed(long count) {
+        fixed.addAndGet(count);
+    }
+
+    public void finish(String error) {
+        this.error = error;
+        this.finishedAt = LocalDateTime.now();
+    }
+
+    // Getters
+    public String getTrigger() {
+        return trigger;
+    }
+
+    public boolean isFix() {
+        return fix;
+    }
+
+    public boolean isRunning() {
+        return finishedAt == null;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public long getBlobsScanned() {
+        return blobsScanned.get();
+    }
+
+    public long getRowsChecked() {
+        return rowsChecked.get();
+    }
+
+    public long getOrphanedBlobs() {
+        return orphanedBlobs.get();
+    }
+
+    public long getDanglingRows() {
+        return danglingRows.get();
+    }
+
+    public long getFixed() {
+        return fixed.get();
+    }
+
+    public List<String> getOrphanedBlobSample() {
+        synchronized (orphanedBlobSample) {
+            return new ArrayList<>(orphanedBlobSample);
+        }
+    }
+
+    public List<Long> getDanglingRowSample() {
+        synchronized (danglingRowSample) {
+            return new ArrayList<>(danglingRowSample);
+        }
+    }
+}
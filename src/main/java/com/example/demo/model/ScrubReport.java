@@ -0,0 +1,155 @@
+package com.example.demo.model;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Result of a scrub pass; counters are updated concurrently by the volume workers
+public class ScrubReport {
+
+    public static final String MISSING = "MISSING";
+    public static final String SIZE_MISMATCH = "SIZE_MISMATCH";
+    public static final String CHECKSUM_MISMATCH = "CHECKSUM_MISMATCH";
+    public static final String UNREADABLE = "UNREADABLE";
+
+    private static final int SAMPLE_LIMIT = 100;
+
+    private final String trigger;
+    private final LocalDateTime startedAt = LocalDateTime.now();
+    private volatile LocalDateTime finishedAt;
+    private volatile String error;
+    private volatile int volumes;
+
+    private final AtomicLong filesChecked = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong checksumsRecorded = new AtomicLong();
+    private final AtomicLong missing = new AtomicLong();
+    private final AtomicLong sizeMismatches = new AtomicLong();
+    private final AtomicLong checksumMismatches = new AtomicLong();
+    private final AtomicLong unreadable = new AtomicLong();
+
+    private final List<Finding> findings = Collections.synchronizedList(new ArrayList<>());
+
+    public ScrubReport(String trigger) {
+        this.trigger = trigger;
+    }
+
+    public void addChecked(long bytes) {
+        filesChecked.incrementAndGet();
+        bytesRead.addAndGet(bytes);
+    }
+
+    public void addChecksumRecorded() {
+        checksumsRecorded.incrementAndGet();
+    }
+
+    public void addFinding(Long fileId, String filePath, String problem) {
+        if (MISSING.equals(problem)) {
+            missing.incrementAndGet();
+        } else if (SIZE_MISMATCH.equals(problem)) {
+            sizeMismatches.incrementAndGet();
+        } else if (CHECKSUM_MISMATCH.equals(problem)) {
+            checksumMismatches.incrementAndGet();
+        } else {
+            unreadable.incrementAndGet();
+        }
+        if (findings.size() < SAMPLE_LIMIT) {
+            findings.add(new Finding(fileId, filePath, problem));
+        }
+    }
+
+    public void setVolumes(int volumes) {
+        this.volumes = Math.max(this.volumes, volumes);
+    }
+
+    public void finish(String error) {
+        this.error = error;
+        this.finishedAt = LocalDateTime.now();
+    }
+
+    // Getters
+    public String getTrigger() {
+        return trigger;
+    }
+
+    public boolean isRunning() {
+        return finishedAt == null;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public int getVolumes() {
+        return volumes;
+    }
+
+    public long getFilesChecked() {
+        return filesChecked.get();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    public long getChecksumsRecorded() {
+        return checksumsRecorded.get();
+    }
+
+    public long getMissing() {
+        return missing.get();
+    }
+
+    public long getSizeMismatches() {
+        return sizeMismatches.get();
+    }
+
+    public long getChecksumMismatches() {
+        return checksumMismatches.get();
+    }
+
+    public long getUnreadable() {
+        return unreadable.get();
+    }
+
+    public List<Finding> getFindings() {
+        synchronized (findings) {
+            return new ArrayList<>(findings);
+        }
+    }
+
+    // A file whose blob no longer matches its row
+    public static class Finding {
+        private final Long fileId;
+        private final String filePath;
+        private final String problem;
+
+        public Finding(Long fileId, String filePath, String problem) {
+            this.fileId = fileId;
+            this.filePath = filePath;
+            this.problem = problem;
+        }
+
+        public Long getFileId() {
+            return fileId;
+        }
+
+        public String getFilePath() {
+            return filePath;
+        }
+
+        public String getProblem() {
+            return problem;
+        }
+    }
+}
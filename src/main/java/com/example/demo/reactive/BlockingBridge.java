@@ -0,0 +1,47 @@
+package com.example.demo.reactive;
+
+import com.example.demo.config.ReadYourWritesContext;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.concurrent.Callable;
+
+// Runs blocking service calls on the bounded metadata scheduler so they never
+// execute on a Netty event loop thread
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class BlockingBridge {
+
+    public static final String PRIMARY_REQUIRED_ATTRIBUTE = BlockingBridge.class.getName() + ".primaryRequired";
+
+    private final Scheduler metadataScheduler;
+
+    public BlockingBridge(@Qualifier("metadataScheduler") Scheduler metadataScheduler) {
+        this.metadataScheduler = metadataScheduler;
+    }
+
+    public <T> Mono<T> call(ServerWebExchange exchange, Callable<T> callable) {
+        boolean primaryRequired = Boolean.TRUE.equals(exchange.getAttribute(PRIMARY_REQUIRED_ATTRIBUTE));
+        return Mono.fromCallable(() -> {
+            if (primaryRequired) {
+                ReadYourWritesContext.requirePrimary();
+            }
+            try {
+                return callable.call();
+            } finally {
+                ReadYourWritesContext.clear();
+            }
+        }).subscribeOn(metadataScheduler);
+    }
+
+    public Mono<Void> run(ServerWebExchange exchange, Runnable runnable) {
+        return call(exchange, () -> {
+            runnable.run();
+            return Boolean.TRUE;
+        }).then();
+    }
+}
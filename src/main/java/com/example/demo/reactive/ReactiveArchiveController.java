@@ -0,0 +1,77 @@
+package com.example.demo.reactive;
+
+import com.example.demo.model.ArchiveReport;
+import com.example.demo.service.FileArchiveService;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+// Reactive counterpart of ArchiveController. Archives run for minutes, so they use
+// the shared boundedElastic scheduler rather than the bounded metadata pool, and
+// the blocking streams are bridged with backpressure in both directions.
+@RestController
+@RequestMapping("/api/files/admin")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveArchiveController {
+
+    private static final int IMPORT_DEMAND = 16; // buffers requested ahead of the import reader
+
+    @Autowired
+    private FileArchiveService fileArchiveService;
+
+    // Stream an archive of all files, or of those changed since the given time
+    @GetMapping("/export")
+    public Mono<Void> exportFiles(
+            @RequestParam(value = "since", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since,
+            ServerHttpResponse response) {
+        fileArchiveService.validateSince(since);
+        response.getHeaders().setContentType(MediaType.parseMediaType("application/zip"));
+        response.getHeaders().set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName(since) + "\"");
+        Publisher<DataBuffer> archive = DataBufferUtils.outputStreamPublisher(
+                out -> {
+                    try {
+                        fileArchiveService.export(out, since);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                },
+                response.bufferFactory(), task -> Schedulers.boundedElastic().schedule(task));
+        return response.writeWith(archive);
+    }
+
+    // Import an archive sent as the raw request body
+    @PostMapping("/import")
+    public Mono<ResponseEntity<ArchiveReport>> importFiles(@RequestBody Flux<DataBuffer> body) {
+        return Mono.fromCallable(() -> {
+            try (InputStream in = DataBufferUtils.subscriberInputStream(body, IMPORT_DEMAND)) {
+                return fileArchiveService.importArchive(in);
+            }
+        }).subscribeOn(Schedulers.boundedElastic())
+                .map(report -> report.getError() != null
+                        ? ResponseEntity.badRequest().body(report) : ResponseEntity.ok(report));
+    }
+
+    private static String fileName(LocalDateTime since) {
+        String stamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        return since != null ? "files-since-" + since.format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"))
+                + "-" + stamp + ".zip" : "files-" + stamp + ".zip";
+    }
+}
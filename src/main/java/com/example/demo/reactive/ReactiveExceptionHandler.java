@@ -0,0 +1,84 @@
+package com.example.demo.reactive;
+
+import com.example.demo.exception.CorruptFileException;
+import com.example.demo.exception.FileNotFoundException;
+import com.example.demo.exception.FileStorageException;
+import com.example.demo.exception.LockTimeoutException;
+import com.example.demo.exception.QuotaExceededException;
+import com.example.demo.exception.RateLimitExceededException;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.reactive.result.method.annotation.ResponseEntityExceptionHandler;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+// Same error contract as GlobalExceptionHandler for the reactive runtime
+@ControllerAdvice
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveExceptionHandler extends ResponseEntityExceptionHandler {
+
+    @ExceptionHandler(FileNotFoundException.class)
+    public ResponseEntity<Map<String, Object>> handleFileNotFoundException(FileNotFoundException ex) {
+        return error(HttpStatus.NOT_FOUND, ex.getMessage(), "FILE_NOT_FOUND");
+    }
+
+    @ExceptionHandler(FileStorageException.class)
+    public ResponseEntity<Map<String, Object>> handleFileStorageException(FileStorageException ex) {
+        return error(HttpStatus.BAD_REQUEST, ex.getMessage(), "FILE_STORAGE_ERROR");
+    }
+
+    @ExceptionHandler(QuotaExceededException.class)
+    public ResponseEntity<Map<String, Object>> handleQuotaExceededException(QuotaExceededException ex) {
+        return error(HttpStatus.PAYLOAD_TOO_LARGE, ex.getMessage(), "QUOTA_EXCEEDED");
+    }
+
+    @ExceptionHandler(RateLimitExceededException.class)
+    public ResponseEntity<Map<String, Object>> handleRateLimitExceededException(RateLimitExceededException ex) {
+        ResponseEntity<Map<String, Object>> response = error(HttpStatus.TOO_MANY_REQUESTS, ex.getMessage(), "RATE_LIMITED");
+        return ResponseEntity.status(response.getStatusCode())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(response.getBody());
+    }
+
+    @ExceptionHandler(CorruptFileException.class)
+    public ResponseEntity<Map<String, Object>> handleCorruptFileException(CorruptFileException ex) {
+        return error(HttpStatus.INTERNAL_SERVER_ERROR, ex.getMessage(), "FILE_CORRUPTED");
+    }
+
+    @ExceptionHandler(LockTimeoutException.class)
+    public ResponseEntity<Map<String, Object>> handleLockTimeoutException(LockTimeoutException ex) {
+        return error(HttpStatus.CONFLICT, "File is busy with another operation, please try again", "FILE_BUSY");
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, Object>> handleIllegalArgumentException(IllegalArgumentException ex) {
+        return error(HttpStatus.BAD_REQUEST, ex.getMessage(), "INVALID_ARGUMENT");
+    }
+
+    // The bounded metadata scheduler or the change feed subscriber limit is full
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<Map<String, Object>> handleRejectedExecutionException(RejectedExecutionException ex) {
+        return error(HttpStatus.SERVICE_UNAVAILABLE, "Server is busy, please try again", "SERVER_BUSY");
+    }
+
+    @ExceptionHandler(Exception.class)
+    public ResponseEntity<Map<String, Object>> handleGenericException(Exception ex) {
+        return error(HttpStatus.INTERNAL_SERVER_ERROR, "An unexpected error occurred: " + ex.getMessage(),
+                "INTERNAL_SERVER_ERROR");
+    }
+
+    private ResponseEntity<Map<String, Object>> error(HttpStatus status, String message, String error) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("message", message);
+        response.put("error", error);
+
+        return ResponseEntity.status(status).body(response);
+    }
+}
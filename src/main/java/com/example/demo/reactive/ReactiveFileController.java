@@ -0,0 +1,483 @@
+package com.example.demo.reactive;
+
+import com.example.demo.exception.FileNotFoundException;
+import com.example.demo.exception.FileStorageException;
+import com.example.demo.exception.QuotaExceededException;
+import com.example.demo.model.File;
+import com.example.demo.model.FileQuery;
+import com.example.demo.model.FileQueryResult;
+import com.example.demo.model.FileUploadResponse;
+import com.example.demo.model.FileVersion;
+import com.example.demo.service.FileService;
+import com.example.demo.service.FileStorageService;
+import com.example.demo.service.FileVersionService;
+import com.example.demo.service.RebuiltVersionResource;
+import com.example.demo.service.StoredUpload;
+import com.example.demo.service.UserQuotaService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.multipart.FilePartEvent;
+import org.springframework.http.codec.multipart.FormPartEvent;
+import org.springframework.http.codec.multipart.PartEvent;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+// Non-blocking variant of FileController serving the same /api/files contract on
+// Netty. Only active when the application runs as a reactive web application.
+@RestController
+@RequestMapping("/api/files")
+@CrossOrigin(origins = "http://localhost:3000")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveFileController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveFileController.class);
+
+    private static final long CHARGE_STEP_BYTES = 1024 * 1024;
+
+    // Released by ReactiveWebConfig's filter once the response is complete
+    static final String REBUILT_VERSION_ATTRIBUTE = ReactiveFileController.class.getName() + ".rebuiltVersion";
+
+    @Autowired
+    private FileService fileService;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private ReactiveFileStorage reactiveFileStorage;
+
+    @Autowired
+    private BlockingBridge blockingBridge;
+
+    @Autowired
+    private FileVersionService fileVersionService;
+
+    @Autowired
+    private UserQuotaService userQuotaService;
+
+    // Upload file; parts are consumed as a stream so the file is never buffered whole.
+    // The owner comes from the userId query parameter or a userId field sent before
+    // the file part, so the upload can be charged to it while it streams.
+    @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public Mono<ResponseEntity<FileUploadResponse>> uploadFile(
+            @RequestBody Flux<PartEvent> parts,
+            @RequestParam(value = "userId", required = false) Long userId,
+            ServerWebExchange exchange) {
+
+        PendingUpload pending = new PendingUpload(exchange);
+        Mono<Void> resolveOwner = Mono.fromRunnable(() ->
+                pending.owner = userId != null ? userId : parseUserId(pending.formUserId));
+
+        return storeFileParts(parts, pending, resolveOwner)
+                .flatMap(upload -> blockingBridge.call(exchange, () -> {
+                    if (userId == null && pending.lateUserId) {
+                        throw new IllegalArgumentException("Send userId before the file part or as a query parameter");
+                    }
+                    pending.acquireUndeclared(upload.getSize());
+                    try {
+                        return fileService.saveFileMetadata(upload, pending.owner);
+                    } catch (RuntimeException ex) {
+                        throw new FileStorageException(ex.getMessage(), ex);
+                    }
+                }))
+                .map(file -> ResponseEntity.ok(FileUploadResponse.success(
+                        "File uploaded successfully", FileUploadResponse.FileData.from(file))))
+                .switchIfEmpty(Mono.fromSupplier(() -> ResponseEntity.badRequest()
+                        .body(FileUploadResponse.error("Please select a file to upload"))))
+                .doOnError(ex -> pending.discard())
+                .doOnCancel(pending::discard)
+                .onErrorResume(FileStorageException.class, ex -> Mono.just(ResponseEntity.badRequest()
+                        .body(FileUploadResponse.error("Failed to upload file: " + ex.getMessage()))));
+    }
+
+    // Get all files
+    @GetMapping
+    public Mono<ResponseEntity<List<File>>> getAllFiles(ServerWebExchange exchange) {
+        return blockingBridge.call(exchange, fileService::getAllFiles).map(ResponseEntity::ok);
+    }
+
+    // Get files by user
+    @GetMapping("/user/{userId}")
+    public Mono<ResponseEntity<List<File>>> getFilesByUser(@PathVariable Long userId, ServerWebExchange exchange) {
+        return blockingBridge.call(exchange, () -> fileService.getFilesByUser(userId)).map(ResponseEntity::ok);
+    }
+
+    // Search files
+    @GetMapping("/search")
+    public Mono<ResponseEntity<List<File>>> searchFiles(@RequestParam String q, ServerWebExchange exchange) {
+        return blockingBridge.call(exchange, () -> fileService.searchFiles(q)).map(ResponseEntity::ok);
+    }
+
+    // Filter files by type
+    @GetMapping("/filter")
+    public Mono<ResponseEntity<List<File>>> getFilesByType(@RequestParam String type, ServerWebExchange exchange) {
+        return blockingBridge.call(exchange, () -> fileService.getFilesByType(type)).map(ResponseEntity::ok);
+    }
+
+    // Combined filter with sorting, paging and facet counts
+    @GetMapping("/query")
+    public Mono<ResponseEntity<FileQueryResult>> queryFiles(
+            @RequestParam(value = "type", required = false) List<String> types,
+            @RequestParam(value = "userId", required = false) Long userId,
+            @RequestParam(value = "minSize", required = false) Long minSize,
+            @RequestParam(value = "maxSize", required = false) Long maxSize,
+            @RequestParam(value = "from", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(value = "to", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(value = "sort", defaultValue = FileQuery.SORT_UPLOAD_DATE) String sort,
+            @RequestParam(value = "order", defaultValue = "desc") String order,
+            @RequestParam(value = "page", defaultValue = "0") int page,
+            @RequestParam(value = "size", defaultValue = "50") int size,
+            ServerWebExchange exchange) {
+        FileQuery query = new FileQuery();
+        query.setTypes(types);
+        query.setUserId(userId);
+        query.setMinSize(minSize);
+        query.setMaxSize(maxSize);
+        query.setFrom(from);
+        query.setTo(to);
+        query.setSort(sort);
+        query.setAscending("asc".equalsIgnoreCase(order));
+        query.setPage(page);
+        query.setSize(size);
+        return blockingBridge.call(exchange, () -> fileService.queryFiles(query)).map(ResponseEntity::ok);
+    }
+
+    // Get file by ID
+    @GetMapping("/{id}")
+    public Mono<ResponseEntity<File>> getFileById(@PathVariable Long id, ServerWebExchange exchange) {
+        return blockingBridge.call(exchange, () -> fileService.getFileById(id))
+                .map(ResponseEntity::ok)
+                .onErrorResume(FileNotFoundException.class, e -> Mono.just(ResponseEntity.notFound().build()));
+    }
+
+    // Download file; a plaintext blob is written with zero-copy by Netty, Range included.
+    // Encrypted blobs are decrypted as they stream.
+    @GetMapping("/{id}/download")
+    public Mono<ResponseEntity<Resource>> downloadFile(
+            @PathVariable Long id,
+            @RequestParam(value = "userId", required = false) Long userId,
+            ServerWebExchange exchange) {
+        return fileResponse(id, userId, exchange,
+                        file -> shouldDisplayInline(file.getEffectiveType()) ? "inline" : "attachment")
+                .onErrorResume(FileNotFoundException.class, e -> Mono.just(ResponseEntity.notFound().build()));
+    }
+
+    // View file content (for text files)
+    @GetMapping("/{id}/view")
+    public Mono<ResponseEntity<Map<String, Object>>> viewFile(@PathVariable Long id, ServerWebExchange exchange) {
+        return blockingBridge.call(exchange, () -> {
+                    File file = fileService.getFileById(id);
+                    String content = fileService.getFileContent(id);
+
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("file", file);
+                    response.put("content", content);
+                    response.put("success", true);
+                    return ResponseEntity.ok(response);
+                })
+                .onErrorResume(FileNotFoundException.class, e -> Mono.just(ResponseEntity.notFound().build()));
+    }
+
+    // View file inline (for binary files like PDFs, images)
+    @GetMapping("/{id}/inline")
+    public Mono<ResponseEntity<Resource>> viewFileInline(
+            @PathVariable Long id,
+            @RequestParam(value = "userId", required = false) Long userId,
+            ServerWebExchange exchange) {
+        return fileResponse(id, userId, exchange, file -> "inline")
+                .onErrorResume(FileNotFoundException.class, e -> Mono.just(ResponseEntity.notFound().build()));
+    }
+
+    // Upload a new version of an existing file; it is charged to the file's owner as it streams
+    @PostMapping(value = "/{id}/versions", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public Mono<ResponseEntity<FileUploadResponse>> uploadVersion(
+            @PathVariable Long id,
+            @RequestBody Flux<PartEvent> parts,
+            ServerWebExchange exchange) {
+
+        PendingUpload pending = new PendingUpload(exchange);
+        Mono<Void> resolveOwner = blockingBridge.run(exchange,
+                () -> pending.owner = fileService.getFileById(id).getUserId());
+
+        return storeFileParts(parts, pending, resolveOwner)
+                .flatMap(upload -> blockingBridge.call(exchange, () -> {
+                    pending.acquireUndeclared(upload.getSize());
+                    return fileVersionService.addVersion(id, upload);
+                }))
+                .map(file -> ResponseEntity.ok(FileUploadResponse.success(
+                        "Version " + file.getVersionNumber() + " uploaded successfully",
+                        FileUploadResponse.FileData.from(file))))
+                .switchIfEmpty(Mono.fromSupplier(() -> ResponseEntity.badRequest()
+                        .body(FileUploadResponse.error("Please select a file to upload"))))
+                .doOnError(ex -> pending.discard())
+                .doOnCancel(pending::discard)
+                .onErrorResume(FileNotFoundException.class, e -> Mono.just(ResponseEntity.notFound().build()))
+                .onErrorResume(FileStorageException.class, ex -> Mono.just(ResponseEntity.badRequest()
+                        .body(FileUploadResponse.error("Failed to upload version: " + ex.getMessage()))));
+    }
+
+    // List all versions of a file, newest first
+    @GetMapping("/{id}/versions")
+    public Mono<ResponseEntity<List<FileVersion>>> getVersions(@PathVariable Long id, ServerWebExchange exchange) {
+        return blockingBridge.call(exchange, () -> fileVersionService.getVersions(id))
+                .map(ResponseEntity::ok)
+                .onErrorResume(FileNotFoundException.class, e -> Mono.just(ResponseEntity.notFound().build()));
+    }
+
+    // Download a specific version
+    @GetMapping("/{id}/versions/{version}/download")
+    public Mono<ResponseEntity<Resource>> downloadVersion(
+            @PathVariable Long id,
+            @PathVariable int version,
+            @RequestParam(value = "userId", required = false) Long userId,
+            ServerWebExchange exchange) {
+        return blockingBridge.call(exchange, () -> {
+                    FileVersion fileVersion = fileVersionService.getVersion(id, version);
+                    userQuotaService.acquireDownload(userId, fileVersion.getFileSize());
+                    Resource resource = fileVersionService.loadVersionAsResource(id, version);
+                    if (resource instanceof RebuiltVersionResource) {
+                        exchange.getAttributes().put(REBUILT_VERSION_ATTRIBUTE, resource);
+                    }
+                    return ResponseEntity.ok()
+                            .contentType(MediaType.parseMediaType(fileVersion.getEffectiveType()))
+                            .header(HttpHeaders.CONTENT_DISPOSITION,
+                                    "attachment; filename=\"" + fileVersion.getOriginalName() + "\"")
+                            .body(resource);
+                })
+                .onErrorResume(FileNotFoundException.class, e -> Mono.just(ResponseEntity.notFound().build()));
+    }
+
+    // Delete file
+    @DeleteMapping("/{id}")
+    public Mono<ResponseEntity<Map<String, Object>>> deleteFile(@PathVariable Long id, ServerWebExchange exchange) {
+        return blockingBridge.call(exchange, () -> fileService.deleteFile(id)).map(deleted -> {
+            Map<String, Object> response = new HashMap<>();
+            if (deleted) {
+                response.put("success", true);
+                response.put("message", "File deleted successfully");
+                return ResponseEntity.ok(response);
+            } else {
+                response.put("success", false);
+                response.put("message", "Failed to delete file");
+                return ResponseEntity.badRequest().body(response);
+            }
+        });
+    }
+
+    // Restore a deleted file that has not been collected yet
+    @PostMapping("/{id}/restore")
+    public Mono<ResponseEntity<Map<String, Object>>> restoreFile(@PathVariable Long id, ServerWebExchange exchange) {
+        return blockingBridge.call(exchange, () -> fileService.restoreFile(id)).map(restored -> {
+            Map<String, Object> response = new HashMap<>();
+            if (restored) {
+                response.put("success", true);
+                response.put("message", "File restored successfully");
+                return ResponseEntity.ok(response);
+            } else {
+                response.put("success", false);
+                response.put("message", "File cannot be restored");
+                return ResponseEntity.badRequest().body(response);
+            }
+        });
+    }
+
+    // Get storage statistics
+    @GetMapping("/stats")
+    public Mono<ResponseEntity<Map<String, Object>>> getStorageStats(ServerWebExchange exchange) {
+        return blockingBridge.call(exchange, () -> {
+            Long totalStorage = fileService.getTotalStorageUsed();
+            Long fileCount = fileService.getFileCount();
+
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("totalStorage", totalStorage);
+            stats.put("totalStorageFormatted", formatFileSize(totalStorage));
+            stats.put("fileCount", fileCount);
+            return ResponseEntity.ok(stats);
+        });
+    }
+
+    // Streams the first "file" part to disk, charging it to the owner as it arrives.
+    // Further file parts and other fields are drained unread; a userId field is captured.
+    private Mono<StoredUpload> storeFileParts(Flux<PartEvent> parts, PendingUpload pending, Mono<Void> resolveOwner) {
+        return parts.windowUntil(PartEvent::isLast)
+                .concatMap(partEvents -> partEvents.switchOnFirst((signal, events) -> {
+                    PartEvent first = signal.get();
+                    if (first instanceof FilePartEvent filePart && "file".equals(first.name()) && pending.startFile()) {
+                        MediaType contentType = first.headers().getContentType();
+                        return resolveOwner
+                                .then(Mono.fromRunnable(pending::acquireDeclared))
+                                .then(reactiveFileStorage.store(pending.exchange, filePart.filename(),
+                                        contentType != null ? contentType.toString() : null,
+                                        events.map(PartEvent::content), pending::charge))
+                                .doOnNext(upload -> {
+                                    pending.stored = upload;
+                                    pending.settle(upload.getSize());
+                                })
+                                .flux();
+                    }
+                    if (first instanceof FormPartEvent formPart && "userId".equals(first.name())) {
+                        pending.formUserId = formPart.value();
+                        pending.lateUserId = pending.fileStarted;
+                    }
+                    return events.doOnNext(event -> DataBufferUtils.release(event.content()))
+                            .thenMany(Flux.<StoredUpload>empty());
+                }))
+                .collectList()
+                .flatMap(stored -> Mono.justOrEmpty(stored.isEmpty() ? null : stored.get(0)));
+    }
+
+    // Looking at the blob is blocking I/O, so it happens on the bridge too
+    private Mono<ResponseEntity<Resource>> fileResponse(Long id, Long userId, ServerWebExchange exchange,
+                                                        Function<File, String> disposition) {
+        return blockingBridge.call(exchange, () -> {
+            File file = fileService.getFileForDownload(id, userId);
+            return fileResponse(file, fileStorageService.loadFileAsResource(file.getFilePath()),
+                    disposition.apply(file));
+        });
+    }
+
+    private ResponseEntity<Resource> fileResponse(File file, Resource resource, String disposition) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(file.getEffectiveType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, disposition + "; filename=\"" + file.getOriginalName() + "\"")
+                .body(resource);
+    }
+
+    // Helper method to determine if file should be displayed inline
+    private boolean shouldDisplayInline(String fileType) {
+        return fileType != null && (
+            fileType.startsWith("image/") ||
+            fileType.equals("application/pdf") ||
+            fileType.startsWith("text/")
+        );
+    }
+
+    private Long parseUserId(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid userId: " + value);
+        }
+    }
+
+    // Quota and rate charges of one upload request, undone if it does not complete
+    private final class PendingUpload {
+        private final ServerWebExchange exchange;
+        private final long declaredLength;
+        private final AtomicLong streamed = new AtomicLong();
+        private final AtomicLong charged = new AtomicLong();
+        private final AtomicBoolean discarded = new AtomicBoolean();
+        private volatile Long owner;
+        private volatile String formUserId;
+        private volatile boolean fileStarted;
+        private volatile boolean lateUserId;
+        private volatile StoredUpload stored;
+
+        PendingUpload(ServerWebExchange exchange) {
+            this.exchange = exchange;
+            this.declaredLength = exchange.getRequest().getHeaders().getContentLength();
+        }
+
+        // Parts arrive one after another, so only the first file part gets here unset
+        boolean startFile() {
+            if (fileStarted) {
+                return false;
+            }
+            fileStarted = true;
+            return true;
+        }
+
+        // The request length bounds the file, so the rate limit is checked before any byte is written
+        void acquireDeclared() {
+            if (declaredLength >= 0) {
+                userQuotaService.acquireUpload(owner, declaredLength);
+            }
+        }
+
+        // Chunked requests only know their size once the file has been streamed
+        void acquireUndeclared(long size) {
+            if (declaredLength < 0) {
+                userQuotaService.acquireUpload(owner, size);
+            }
+        }
+
+        // Reserves quota before each buffer reaches the disk, a step ahead so a large
+        // upload is not one reservation (and cluster message) per buffer
+        void charge(long bytes) {
+            long needed = streamed.addAndGet(bytes) - charged.get();
+            if (needed <= 0) {
+                return;
+            }
+            long step = Math.max(needed, CHARGE_STEP_BYTES);
+            try {
+                userQuotaService.reserveStorage(owner, step);
+            } catch (QuotaExceededException ex) {
+                if (step == needed) {
+                    throw ex;
+                }
+                step = needed;
+                userQuotaService.reserveStorage(owner, step);
+            }
+            charged.addAndGet(step);
+        }
+
+        // Gives back what was reserved beyond the finished file
+        void settle(long size) {
+            long surplus = charged.get() - size;
+            if (surplus > 0) {
+                userQuotaService.releaseStorage(owner, surplus);
+                charged.addAndGet(-surplus);
+            }
+        }
+
+        void discard() {
+            if (!discarded.compareAndSet(false, true)) {
+                return;
+            }
+            long bytes = charged.getAndSet(0);
+            if (bytes > 0) {
+                userQuotaService.releaseStorage(owner, bytes);
+            }
+            StoredUpload upload = stored;
+            if (upload != null) {
+                blockingBridge.run(exchange, () -> fileStorageService.deleteFile(upload.getFilePath()))
+                        .subscribe(null, ex -> logger.warn("Could not remove discarded upload {}",
+                                upload.getFilePath(), ex));
+            }
+        }
+    }
+
+    // Helper method to format file size
+    private String formatFileSize(long bytes) {
+        if (bytes == 0) return "0 Bytes";
+
+        String[] units = {"Bytes", "KB", "MB", "GB"};
+        int unitIndex = (int) (Math.log(bytes) / Math.log(1024));
+        double size = bytes / Math.pow(1024, unitIndex);
+
+        return String.format("%.1f %s", size, units[unitIndex]);
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.demo.reactive;
+
+import com.example.demo.model.FileEvent;
+import com.example.demo.service.FileEventPublisher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import java.time.Duration;
+
+// Reactive variant of FileEventController. The sink refuses to buffer for a
+// client that stops reading; the stream then fails and the browser reconnects
+// with Last-Event-ID, resuming from the publisher's ring buffer.
+@RestController
+@RequestMapping("/api/files")
+@CrossOrigin(origins = "http://localhost:3000")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveFileEventController {
+
+    private static final Duration RECONNECT_DELAY = Duration.ofSeconds(3);
+
+    @Autowired
+    private FileEventPublisher fileEventPublisher;
+
+    // Stream file events; browsers resume with the Last-Event-ID header after a reconnect
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> streamEvents(
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return Flux.<ServerSentEvent<Object>>create(sink -> {
+            sink.next(ServerSentEvent.builder().retry(RECONNECT_DELAY).comment("connected").build());
+            FileEventPublisher.Subscription subscription = fileEventPublisher.subscribe(lastEventId,
+                    new FileEventPublisher.Listener() {
+                        @Override
+                        public void onEvent(FileEvent event) {
+                            sink.next(ServerSentEvent.builder((Object) event).id(event.getId()).event("file").build());
+                        }
+
+                        @Override
+                        public void onReset() {
+                            sink.next(ServerSentEvent.builder((Object) "reload").event("reset").build());
+                        }
+
+                        @Override
+                        public void onHeartbeat() {
+                            sink.next(ServerSentEvent.builder().comment("heartbeat").build());
+                        }
+                    });
+            sink.onDispose(subscription::cancel);
+        }, FluxSink.OverflowStrategy.ERROR);
+    }
+}
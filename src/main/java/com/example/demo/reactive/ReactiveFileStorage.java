@@ -0,0 +1,169 @@
+package com.example.demo.reactive;
+
+import com.example.demo.exception.FileStorageException;
+import com.example.demo.service.BlobCipher;
+import com.example.demo.service.Checksums;
+import com.example.demo.service.ContentSniffer;
+import com.example.demo.service.FileStorageService;
+import com.example.demo.service.StoredUpload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+// Streams an upload straight from the request DataBuffers into an
+// AsynchronousFileChannel. Buffers are requested one at a time as the disk
+// accepts them, so a slow disk backpressures the client instead of filling memory.
+// With file.encryption.enabled the buffers are encrypted on the way (see BlobCipher).
+// A failed or abandoned upload leaves no partial blob behind.
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveFileStorage {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveFileStorage.class);
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private BlockingBridge blockingBridge;
+
+    @Autowired
+    private BlobCipher blobCipher;
+
+    // Each buffer is passed to charge (e.g. a quota reservation) before it is written;
+    // an exception from it stops the upload
+    public Mono<StoredUpload> store(ServerWebExchange exchange, String originalFileName,
+                                    String contentType, Flux<DataBuffer> content, LongConsumer charge) {
+        String originalName = StringUtils.cleanPath(originalFileName);
+
+        // Validation and directory creation touch the filesystem, so keep them off the event loop
+        return blockingBridge.call(exchange, () -> {
+            fileStorageService.validateUpload(originalName, contentType);
+            return fileStorageService.newFilePath(originalName);
+        }).flatMap(filePath -> {
+            Path target = fileStorageService.resolvePath(filePath);
+            AtomicLong size = new AtomicLong();
+            ContentSniffer sniffer = new ContentSniffer(contentType, originalName);
+            MessageDigest digest = Checksums.newDigest();
+
+            // The type is sniffed from the leading buffers before they are written,
+            // so a disallowed upload is rejected after its first chunk
+            Flux<DataBuffer> checked = content.doOnNext(buffer -> {
+                try {
+                    fileStorageService.validateFileSize(size.addAndGet(buffer.readableByteCount()));
+                    charge.accept(buffer.readableByteCount());
+                    if (!sniffer.isComplete() && sniff(sniffer, buffer)) {
+                        fileStorageService.validateContentType(sniffer.getDetectedType());
+                    }
+                    digest(digest, buffer);
+                } catch (RuntimeException ex) {
+                    DataBufferUtils.release(buffer);
+                    throw ex;
+                }
+            });
+
+            Flux<DataBuffer> stored = blobCipher.isEnabled()
+                    ? encrypt(checked, exchange.getResponse().bufferFactory())
+                    : checked;
+
+            return DataBufferUtils.write(stored, target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)
+                    .then(Mono.fromCallable(() -> {
+                        if (size.get() == 0) {
+                            throw new FileStorageException("Failed to store empty file.");
+                        }
+                        if (!sniffer.isComplete()) {
+                            fileStorageService.validateContentType(sniffer.finish());
+                        }
+                        return new StoredUpload(originalName, filePath, contentType,
+                                sniffer.getDetectedType(), size.get(), Checksums.hex(digest));
+                    }))
+                    .onErrorResume(ex -> blockingBridge.run(exchange, () -> fileStorageService.deleteFile(filePath))
+                            .then(Mono.error(ex)))
+                    // The client went away mid-upload; nobody waits for the cleanup
+                    .doOnCancel(() -> blockingBridge.run(exchange, () -> fileStorageService.deleteFile(filePath))
+                            .subscribe(null, ex -> logger.warn("Could not remove abandoned upload {}", filePath, ex)));
+        });
+    }
+
+    // Seals the plaintext buffers into segments as they arrive. At most one
+    // segment is held back, so memory use stays flat for any upload size.
+    private Flux<DataBuffer> encrypt(Flux<DataBuffer> plaintext, DataBufferFactory bufferFactory) {
+        return Flux.defer(() -> {
+            ByteArrayOutputStream sealed = new ByteArrayOutputStream();
+            OutputStream encrypting = encryptingStream(sealed);
+            return plaintext.concatMap(buffer -> {
+                byte[] bytes = new byte[buffer.readableByteCount()];
+                buffer.read(bytes);
+                DataBufferUtils.release(buffer);
+                try {
+                    encrypting.write(bytes);
+                } catch (IOException ex) {
+                    throw new FileStorageException("Could not encrypt upload", ex);
+                }
+                return drain(sealed, bufferFactory);
+            }).concatWith(Mono.defer(() -> {
+                try {
+                    encrypting.close();
+                } catch (IOException ex) {
+                    throw new FileStorageException("Could not encrypt upload", ex);
+                }
+                return drain(sealed, bufferFactory);
+            }));
+        });
+    }
+
+    private OutputStream encryptingStream(ByteArrayOutputStream sealed) {
+        try {
+            return blobCipher.encrypt(sealed);
+        } catch (IOException ex) {
+            throw new FileStorageException("Could not encrypt upload", ex);
+        }
+    }
+
+    private Mono<DataBuffer> drain(ByteArrayOutputStream sealed, DataBufferFactory bufferFactory) {
+        if (sealed.size() == 0) {
+            return Mono.empty();
+        }
+        DataBuffer buffer = bufferFactory.wrap(sealed.toByteArray());
+        sealed.reset();
+        return Mono.just(buffer);
+    }
+
+    // Reads the buffer without moving its read position, so the writer still sees all of it
+    private void digest(MessageDigest digest, DataBuffer buffer) {
+        try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+            while (iterator.hasNext()) {
+                digest.update(iterator.next());
+            }
+        }
+    }
+
+    private boolean sniff(ContentSniffer sniffer, DataBuffer buffer) {
+        int start = buffer.readPosition();
+        int end = start + Math.min(buffer.readableByteCount(), ContentSniffer.HEADER_SIZE);
+        for (int i = start; i < end; i++) {
+            if (sniffer.update(buffer.getByte(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
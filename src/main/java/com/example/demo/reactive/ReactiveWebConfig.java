@@ -0,0 +1,178 @@
+package com.example.demo.reactive;
+
+import com.example.demo.config.ReactiveFileConfig;
+import com.example.demo.config.ReadYourWritesFilter;
+import com.example.demo.config.ReplicaDataSourceConfig;
+import com.example.demo.config.StartupTimer;
+import com.example.demo.service.AdaptiveLimiter;
+import com.example.demo.service.AdmissionControl;
+import com.example.demo.service.RebuiltVersionResource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseCookie;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.reactive.config.CorsRegistry;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveWebConfig implements WebFluxConfigurer {
+
+    @Override
+    public void addCorsMappings(CorsRegistry registry) {
+        registry.addMapping("/api/**")
+                .allowedOrigins("http://localhost:3000") // React app URL
+                .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
+                .allowedHeaders("*")
+                .allowCredentials(true)
+                .maxAge(3600);
+    }
+
+    // Tomcat is on the classpath too and would otherwise be picked for the reactive server
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    // Bounded pool for the blocking JPA/JDBC calls; a full queue rejects instead of piling up
+    @Bean(destroyMethod = "dispose")
+    public Scheduler metadataScheduler(ReactiveFileConfig config) {
+        return Schedulers.newBoundedElastic(config.getMetadataThreads(),
+                config.getMetadataQueueCapacity(), "file-metadata");
+    }
+
+    // Reactive counterpart of ReadYourWritesFilter; BlockingBridge applies the flag
+    @Bean
+    public WebFilter readYourWritesWebFilter(ReplicaDataSourceConfig replicaConfig) {
+        long windowMs = replicaConfig.getReadYourWritesWindowMs();
+        return (exchange, chain) -> {
+            long now = System.currentTimeMillis();
+            HttpMethod method = exchange.getRequest().getMethod();
+            boolean write = !(HttpMethod.GET.equals(method) || HttpMethod.HEAD.equals(method)
+                    || HttpMethod.OPTIONS.equals(method));
+
+            if (write) {
+                exchange.getResponse().addCookie(ResponseCookie
+                        .from(ReadYourWritesFilter.COOKIE_NAME, String.valueOf(now + windowMs))
+                        .path("/api")
+                        .httpOnly(true)
+                        .maxAge(Duration.ofMillis(Math.max(1000, windowMs)))
+                        .build());
+                exchange.getAttributes().put(BlockingBridge.PRIMARY_REQUIRED_ATTRIBUTE, Boolean.TRUE);
+            } else {
+                HttpCookie cookie = exchange.getRequest().getCookies().getFirst(ReadYourWritesFilter.COOKIE_NAME);
+                if (cookie != null && parse(cookie.getValue()) > now) {
+                    exchange.getAttributes().put(BlockingBridge.PRIMARY_REQUIRED_ATTRIBUTE, Boolean.TRUE);
+                }
+            }
+            return chain.filter(exchange);
+        };
+    }
+
+    // Reactive counterpart of the startup timer filter in StartupConfig
+    @Bean
+    public WebFilter startupTimerWebFilter(StartupTimer startupTimer) {
+        return (exchange, chain) -> chain.filter(exchange).doFinally(signal -> startupTimer.requestServed());
+    }
+
+    // Deletes an older version's temp file after the response, including HEAD, 304
+    // and aborted downloads that never read it to the end
+    @Bean
+    public WebFilter rebuiltVersionWebFilter() {
+        return (exchange, chain) -> chain.filter(exchange).doFinally(signal -> {
+            RebuiltVersionResource rebuilt = exchange.getAttribute(ReactiveFileController.REBUILT_VERSION_ATTRIBUTE);
+            if (rebuilt != null) {
+                rebuilt.release();
+            }
+        });
+    }
+
+    // Reactive counterpart of AdmissionControlFilter. Waiting for a slot parks no
+    // thread; a client that disconnects while queued gives its place back.
+    @Bean
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public WebFilter admissionWebFilter(AdmissionControl admissionControl) {
+        return (exchange, chain) -> {
+            ServerHttpRequest request = exchange.getRequest();
+            AdmissionControl.Lane lane = admissionControl.classify(request.getMethod().name(),
+                    request.getPath().pathWithinApplication().value());
+            if (lane == AdmissionControl.Lane.EXEMPT) {
+                return chain.filter(exchange);
+            }
+
+            AdaptiveLimiter limiter = admissionControl.limiter(lane);
+            CompletableFuture<Boolean> slot = limiter.acquire();
+            // A cancel reaches doOnCancel even after the slot was granted and the request
+            // is running, so both paths go through this flag to give the slot back once
+            AtomicBoolean released = new AtomicBoolean();
+            return Mono.fromFuture(slot, true)
+                    .timeout(Duration.ofMillis(admissionControl.queueTimeoutMs(lane)), Mono.defer(() ->
+                            limiter.cancel(slot) ? Mono.<Boolean>empty() : Mono.fromFuture(slot, true)))
+                    .doOnCancel(() -> {
+                        if (!limiter.cancel(slot) && Boolean.TRUE.equals(slot.getNow(false))
+                                && released.compareAndSet(false, true)) {
+                            limiter.release();
+                        }
+                    })
+                    .map(admitted -> admitted ? HttpStatus.OK : HttpStatus.TOO_MANY_REQUESTS)
+                    .defaultIfEmpty(HttpStatus.SERVICE_UNAVAILABLE)
+                    .flatMap(status -> {
+                        if (status != HttpStatus.OK) {
+                            return reject(exchange, admissionControl, lane, status);
+                        }
+                        long start = System.nanoTime();
+                        return chain.filter(exchange).doFinally(signal -> {
+                            if (released.compareAndSet(false, true)) {
+                                limiter.release(System.nanoTime() - start,
+                                        admissionControl.cost(lane, transferredBytes(exchange)));
+                            }
+                        });
+                    });
+        };
+    }
+
+    private static long transferredBytes(ServerWebExchange exchange) {
+        if (HttpMethod.POST.equals(exchange.getRequest().getMethod())) {
+            return exchange.getRequest().getHeaders().getContentLength();
+        }
+        return exchange.getResponse().getHeaders().getContentLength();
+    }
+
+    private static Mono<Void> reject(ServerWebExchange exchange, AdmissionControl admissionControl,
+                                     AdmissionControl.Lane lane, HttpStatus status) {
+        byte[] body = admissionControl.rejectionBody(status == HttpStatus.TOO_MANY_REQUESTS);
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(status);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(admissionControl.retryAfterSeconds(lane)));
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        response.getHeaders().setContentLength(body.length);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(body)));
+    }
+
+    private static long parse(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException ex) {
+            return 0L;
+        }
+    }
+}
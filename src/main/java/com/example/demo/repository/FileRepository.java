@@ -1,11 +1,16 @@
 package com.example.demo.repository;
 
 import com.example.demo.model.File;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -28,8 +33,8 @@ public interface FileRepository extends JpaRepository<File, Long> {
     // Find file by stored name
     Optional<File> findByStoredName(String storedName);
     
-    // Find files by file type prefix (e.g., "image/", "text/")
-    @Query("SELECT f FROM File f WHERE f.fileType LIKE :typePrefix% AND f.isActive = true ORDER BY f.uploadDate DESC")
+    // Find files by file type prefix (e.g., "image/", "text/"), preferring the sniffed type
+    @Query("SELECT f FROM File f WHERE COALESCE(f.detectedType, f.fileType) LIKE :typePrefix% AND f.isActive = true ORDER BY f.uploadDate DESC")
     List<File> findByFileTypePrefix(@Param("typePrefix") String typePrefix);
     
     // Count files by type
@@ -40,8 +45,49 @@ public interface FileRepository extends JpaRepository<File, Long> {
     @Query("SELECT SUM(f.fileSize) FROM File f WHERE f.isActive = true")
     Long getTotalStorageUsed();
     
+    // Which of the given paths have a row, active or not (reconciliation)
+    @Query("SELECT f.filePath FROM File f WHERE f.filePath IN :paths")
+    List<String> findFilePathsIn(@Param("paths") Collection<String> paths);
+    
+    List<File> findByFilePathIn(Collection<String> filePaths);
+    
+    // Keyset paging over active rows, for background passes over the whole table
+    @Query("SELECT f FROM File f WHERE f.isActive = true AND f.id > :afterId ORDER BY f.id")
+    List<File> findActiveAfterId(@Param("afterId") Long afterId, Pageable pageable);
+    
+    // Soft-deleted rows past their retention window, oldest first. Rows without a
+    // deleted_at predate deferred deletion and had their blob removed already.
+    @Query("SELECT f FROM File f WHERE f.isActive = false AND (f.deletedAt IS NULL OR f.deletedAt < :cutoff) ORDER BY f.id")
+    List<File> findDeletedBefore(@Param("cutoff") LocalDateTime cutoff, Pageable pageable);
+    
+    // Undo a soft delete that is still inside the retention window
+    @Transactional
+    @Modifying
+    @Query("UPDATE File f SET f.isActive = true, f.deletedAt = null WHERE f.id = :id AND f.isActive = false AND f.deletedAt > :cutoff")
+    int restore(@Param("id") Long id, @Param("cutoff") LocalDateTime cutoff);
+    
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM File f WHERE f.id IN :ids AND f.isActive = false")
+    int purgeInactive(@Param("ids") Collection<Long> ids);
+    
+    // Records the checksum of a file stored before checksums existed
+    @Transactional
+    @Modifying
+    @Query("UPDATE File f SET f.checksum = :checksum WHERE f.id = :id AND f.filePath = :filePath AND f.checksum IS NULL")
+    int backfillChecksum(@Param("id") Long id, @Param("filePath") String filePath, @Param("checksum") String checksum);
+    
+    // Storage used per user, for seeding in-memory quota counters
+    @Query("SELECT f.userId, SUM(f.fileSize) FROM File f WHERE f.isActive = true GROUP BY f.userId")
+    List<Object[]> sumFileSizeByUser();
+    
+    // Bytes used by older versions of active files per user; they count against the quota too
+    @Query("SELECT f.userId, SUM(v.storedSize) FROM FileVersion v, File f " +
+           "WHERE v.fileId = f.id AND f.isActive = true GROUP BY f.userId")
+    List<Object[]> sumVersionStorageByUser();
+    
     // Find files uploaded in date range
     @Query("SELECT f FROM File f WHERE f.uploadDate BETWEEN :startDate AND :endDate AND f.isActive = true ORDER BY f.uploadDate DESC")
-    List<File> findByUploadDateBetween(@Param("startDate") java.time.LocalDateTime startDate, 
-                                      @Param("endDate") java.time.LocalDateTime endDate);
+    List<File> findByUploadDateBetween(@Param("startDate") LocalDateTime startDate, 
+                                      @Param("endDate") LocalDateTime endDate);
 }
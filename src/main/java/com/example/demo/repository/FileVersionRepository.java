@@ -0,0 +1,36 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.FileVersion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface FileVersionRepository extends JpaRepository<FileVersion, Long> {
+    
+    // Older versions of a file, newest first
+    List<FileVersion> findByFileIdOrderByVersionNumberDesc(Long fileId);
+    
+    // The versions needed to rebuild one version: it and everything newer, newest first
+    List<FileVersion> findByFileIdAndVersionNumberGreaterThanEqualOrderByVersionNumberDesc(Long fileId,
+                                                                                          Integer versionNumber);
+    
+    // Bytes on disk used by older versions
+    @Query("SELECT SUM(v.storedSize) FROM FileVersion v")
+    Long getTotalVersionStorage();
+    
+    // Bytes on disk used by the older versions of one file
+    @Query("SELECT COALESCE(SUM(v.storedSize), 0) FROM FileVersion v WHERE v.fileId = :fileId")
+    long getStoredSize(@Param("fileId") Long fileId);
+    
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM FileVersion v WHERE v.fileId IN :fileIds")
+    int deleteByFileIdIn(@Param("fileIds") Collection<Long> fileIds);
+}
@@ -0,0 +1,236 @@
+package com.example.demo.service;
+
+import com.example.demo.config.AdmissionConfig;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongSupplier;
+
+// Concurrency limit that follows observed latency, in the style of a gradient
+// limiter. Each window compares the average latency of the requests that
+// finished in it against a slowly moving baseline: while latency stays within
+// the tolerance the limit creeps up by about sqrt(limit), once it grows past
+// it the limit shrinks in proportion, by at most half per window.
+//
+// A limiter can be coupled to another one's pressure, so a lane also backs off
+// when the lane it shares the disk and connection pool with slows down.
+//
+// Waiting requests get a future that completes with true once they hold a slot,
+// or false when the queue was already full. Futures are completed outside the
+// lock because a reactive caller continues the request on the completing thread.
+public class AdaptiveLimiter {
+
+    private static final double BASELINE_RISE = 1.0 / 60; // baseline follows rising latency over about a minute
+    private static final double BASELINE_FALL = 1.0 / 4; // and falling latency within a few windows
+    private static final double SMOOTHING = 0.2;
+    private static final double MIN_GRADIENT = 0.5;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int queueSize;
+    private final long windowNanos;
+    private final int minWindowSamples;
+    private final double tolerance;
+    private final AdaptiveLimiter pressureSource; // null when not coupled
+    private final LongSupplier clock;
+
+    private final ArrayDeque<CompletableFuture<Boolean>> waiters = new ArrayDeque<>();
+    private double limit;
+    private int inFlight;
+    private double gradient = 1.0;
+    private double baselineNanos;
+    private double lastLatencyNanos;
+
+    private long windowStart;
+    private double windowSum;
+    private int windowSamples;
+    private int windowPeakInFlight;
+
+    private long admitted;
+    private long rejected;
+    private long timedOut;
+
+    public AdaptiveLimiter(String name, AdmissionConfig config, AdmissionConfig.Lane lane, AdaptiveLimiter pressureSource) {
+        this(name, config, lane, pressureSource, System::nanoTime);
+    }
+
+    AdaptiveLimiter(String name, AdmissionConfig config, AdmissionConfig.Lane lane, AdaptiveLimiter pressureSource,
+                    LongSupplier clock) {
+        if (lane.getMinLimit() < 1 || lane.getMaxLimit() < lane.getMinLimit()) {
+            throw new IllegalArgumentException("Admission lane " + name + " needs 1 <= min-limit <= max-limit");
+        }
+        this.name = name;
+        this.minLimit = lane.getMinLimit();
+        this.maxLimit = lane.getMaxLimit();
+        this.queueSize = Math.max(0, lane.getQueueSize());
+        this.windowNanos = config.getWindowMs() * 1_000_000L;
+        this.minWindowSamples = Math.max(1, config.getMinWindowSamples());
+        this.tolerance = Math.max(1.0, config.getTolerance());
+        this.pressureSource = pressureSource;
+        this.clock = clock;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, lane.getInitialLimit()));
+        this.windowStart = clock.getAsLong();
+    }
+
+    // Completed with true when a slot is held, false when the request is turned away
+    public CompletableFuture<Boolean> acquire() {
+        synchronized (this) {
+            if (inFlight < (int) limit && waiters.isEmpty()) {
+                take();
+                return CompletableFuture.completedFuture(Boolean.TRUE);
+            }
+            if (waiters.size() >= queueSize) {
+                rejected++;
+                return CompletableFuture.completedFuture(Boolean.FALSE);
+            }
+            CompletableFuture<Boolean> waiter = new CompletableFuture<>();
+            waiters.addLast(waiter);
+            return waiter;
+        }
+    }
+
+    // Gives up waiting. Returns false if the slot was granted in the meantime;
+    // the caller then holds it and must release it.
+    public synchronized boolean cancel(CompletableFuture<Boolean> waiter) {
+        if (waiters.remove(waiter)) {
+            timedOut++;
+            return true;
+        }
+        return false;
+    }
+
+    // Frees a slot and records how long the request held it. cost scales the
+    // sample down for requests that are expected to take longer, such as large
+    // transfers, so the limit reacts to congestion rather than to file sizes.
+    public void release(long latencyNanos, double cost) {
+        List<CompletableFuture<Boolean>> granted;
+        synchronized (this) {
+            inFlight--;
+            record(latencyNanos / Math.max(1.0, cost));
+            granted = grant();
+        }
+        complete(granted);
+    }
+
+    // Frees a slot without a latency sample, e.g. for a request that failed early
+    public void release() {
+        List<CompletableFuture<Boolean>> granted;
+        synchronized (this) {
+            inFlight--;
+            granted = grant();
+        }
+        complete(granted);
+    }
+
+    // Suggested client back-off: the time the current queue needs to drain at the
+    // recent per-request latency, at least one second
+    public synchronized long retryAfterSeconds(long maxSeconds) {
+        double drainNanos = lastLatencyNanos * (waiters.size() + 1) / Math.max(1.0, limit);
+        long seconds = (long) Math.ceil(drainNanos / 1_000_000_000.0);
+        return Math.max(1L, Math.min(maxSeconds, seconds));
+    }
+
+    // Below 1 while this lane's latency is above its tolerated baseline
+    public synchronized double getGradient() {
+        return gradient;
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueued() {
+        return waiters.size();
+    }
+
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("lane", name);
+        snapshot.put("limit", (int) limit);
+        snapshot.put("inFlight", inFlight);
+        snapshot.put("queued", waiters.size());
+        snapshot.put("latencyMs", Math.round(lastLatencyNanos / 1_000_000.0 * 10) / 10.0);
+        snapshot.put("baselineMs", Math.round(baselineNanos / 1_000_000.0 * 10) / 10.0);
+        snapshot.put("admitted", admitted);
+        snapshot.put("rejected", rejected);
+        snapshot.put("timedOut", timedOut);
+        return snapshot;
+    }
+
+    private void take() {
+        inFlight++;
+        admitted++;
+        windowPeakInFlight = Math.max(windowPeakInFlight, inFlight);
+    }
+
+    private List<CompletableFuture<Boolean>> grant() {
+        List<CompletableFuture<Boolean>> granted = null;
+        while (inFlight < (int) limit && !waiters.isEmpty()) {
+            if (granted == null) {
+                granted = new ArrayList<>();
+            }
+            granted.add(waiters.pollFirst());
+            take();
+        }
+        return granted;
+    }
+
+    private static void complete(List<CompletableFuture<Boolean>> granted) {
+        if (granted != null) {
+            for (CompletableFuture<Boolean> waiter : granted) {
+                waiter.complete(Boolean.TRUE);
+            }
+        }
+    }
+
+    private void record(double sampleNanos) {
+        windowSum += sampleNanos;
+        windowSamples++;
+        long now = clock.getAsLong();
+        if (windowSamples < minWindowSamples || now - windowStart < windowNanos) {
+            return;
+        }
+        double latency = windowSum / windowSamples;
+        int peak = windowPeakInFlight;
+        windowStart = now;
+        windowSum = 0;
+        windowSamples = 0;
+        windowPeakInFlight = inFlight;
+        adjust(latency, peak);
+    }
+
+    private void adjust(double latency, int peakInFlight) {
+        lastLatencyNanos = latency;
+        if (baselineNanos == 0) {
+            baselineNanos = latency;
+        } else {
+            double rate = latency > baselineNanos ? BASELINE_RISE : BASELINE_FALL;
+            baselineNanos += (latency - baselineNanos) * rate;
+        }
+        gradient = Math.max(MIN_GRADIENT, Math.min(1.0, tolerance * baselineNanos / latency));
+
+        double effective = gradient;
+        if (pressureSource != null) {
+            effective = Math.min(effective, pressureSource.getGradient());
+        }
+        if (effective >= 1.0 && peakInFlight < limit / 2) {
+            // Not using the slots it has, so latency says nothing about more
+            return;
+        }
+        double target = limit * effective + Math.sqrt(limit);
+        if (effective < 1.0) {
+            // Under pressure the headroom term would keep the limit from ever coming down
+            target = limit * effective;
+        }
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - SMOOTHING) + target * SMOOTHING));
+    }
+}
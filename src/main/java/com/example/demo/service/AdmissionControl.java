@@ -0,0 +1,91 @@
+package com.example.demo.service;
+
+import com.example.demo.config.AdmissionConfig;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Admission control in front of the /api endpoints. Requests are split into two
+// lanes with their own adaptive concurrency limit and queue: heavy transfers
+// (uploads, new versions, downloads) and light metadata calls. The heavy lane is
+// coupled to the light lane's latency, so an upload storm that starts to slow
+// down metadata calls shrinks the transfer limit until they recover.
+//
+// The servlet filter and the reactive web filter share this class; they only
+// differ in how they wait for a slot and write the rejection.
+@Component
+public class AdmissionControl {
+
+    public enum Lane { HEAVY, LIGHT, EXEMPT }
+
+    private static final double COST_UNIT_BYTES = 1024 * 1024; // a transfer's latency is judged per MB
+
+    private static final byte[] QUEUE_FULL_BODY = ("{\"success\":false,\"message\":\"Too many requests in progress, " +
+            "please try again\",\"error\":\"SERVER_BUSY\"}").getBytes(StandardCharsets.UTF_8);
+    private static final byte[] QUEUE_TIMEOUT_BODY = ("{\"success\":false,\"message\":\"Server is busy, " +
+            "please try again\",\"error\":\"SERVER_BUSY\"}").getBytes(StandardCharsets.UTF_8);
+
+    private final AdmissionConfig config;
+    private final AdaptiveLimiter light;
+    private final AdaptiveLimiter heavy;
+
+    public AdmissionControl(AdmissionConfig config) {
+        this.config = config;
+        this.light = new AdaptiveLimiter("light", config, config.getLight(), null);
+        this.heavy = new AdaptiveLimiter("heavy", config, config.getHeavy(), light);
+    }
+
+    // path is the request path within the application, e.g. /api/files/1/download
+    public Lane classify(String method, String path) {
+        if (!config.isEnabled() || !path.startsWith("/api/") || "OPTIONS".equals(method)
+                || path.equals("/api/files/events")
+                || path.equals("/api/files/admin/export") || path.equals("/api/files/admin/import")) {
+            // The change feed holds its connection open for as long as the client listens,
+            // and an archive streams for minutes; neither says anything about latency
+            return Lane.EXEMPT;
+        }
+        if ("POST".equals(method) && (path.equals("/api/files/upload") || path.endsWith("/versions"))) {
+            return Lane.HEAVY;
+        }
+        if (("GET".equals(method) || "HEAD".equals(method))
+                && (path.endsWith("/download") || path.endsWith("/view") || path.endsWith("/inline"))) {
+            return Lane.HEAVY;
+        }
+        return Lane.LIGHT;
+    }
+
+    public AdaptiveLimiter limiter(Lane lane) {
+        return lane == Lane.HEAVY ? heavy : light;
+    }
+
+    public long queueTimeoutMs(Lane lane) {
+        return lane == Lane.HEAVY ? config.getHeavy().getQueueTimeoutMs() : config.getLight().getQueueTimeoutMs();
+    }
+
+    // Latency samples of transfers are scaled by their size; bytes < 0 when unknown
+    public double cost(Lane lane, long bytes) {
+        if (lane != Lane.HEAVY || bytes <= 0) {
+            return 1.0;
+        }
+        return 1.0 + bytes / COST_UNIT_BYTES;
+    }
+
+    public long retryAfterSeconds(Lane lane) {
+        return limiter(lane).retryAfterSeconds(config.getMaxRetryAfterSeconds());
+    }
+
+    // JSON body of a rejection, in the format of the exception handlers
+    public byte[] rejectionBody(boolean queueFull) {
+        return queueFull ? QUEUE_FULL_BODY.clone() : QUEUE_TIMEOUT_BODY.clone();
+    }
+
+    public List<Map<String, Object>> snapshot() {
+        List<Map<String, Object>> lanes = new ArrayList<>();
+        lanes.add(heavy.snapshot());
+        lanes.add(light.snapshot());
+        return lanes;
+    }
+}
@@ -0,0 +1,243 @@
+package com.example.demo.service;
+
+import com.example.demo.exception.FileStorageException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+// Binary delta between two versions of a file, in the style of rsync/xdelta.
+// Fixed-size blocks of the base are indexed by a rolling hash; the target is
+// scanned one byte at a time and every match is extended both ways and emitted
+// as a COPY from the base, everything else as an INSERT of literal bytes.
+// Version chains store older versions as deltas against the next newer one, so
+// the latest version is always a plain file.
+//
+// Format: "FMD1", base length, target length, CRC32 of the target (varints),
+// then ops: 0 = COPY(offset, length), 1 = INSERT(length, bytes).
+public final class BinaryDelta {
+
+    private static final byte[] MAGIC = {'F', 'M', 'D', '1'};
+    private static final int BLOCK = 16;
+    private static final int PRIME = 0x01000193;
+    private static final int PRIME_POW; // PRIME^(BLOCK - 1), to drop the outgoing byte
+    private static final int COPY = 0;
+    private static final int INSERT = 1;
+
+    static {
+        int pow = 1;
+        for (int i = 0; i < BLOCK - 1; i++) {
+            pow *= PRIME;
+        }
+        PRIME_POW = pow;
+    }
+
+    private BinaryDelta() {
+    }
+
+    public static byte[] encode(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, target.length / 8));
+        out.writeBytes(MAGIC);
+        writeVarLong(out, base.length);
+        writeVarLong(out, target.length);
+        writeVarLong(out, crc(target));
+
+        BlockIndex index = new BlockIndex(base);
+        int literalStart = 0;
+        int pos = 0;
+        int hash = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (pos + BLOCK <= target.length) {
+            int match = index.find(hash, base, target, pos);
+            if (match < 0) {
+                if (pos + BLOCK < target.length) {
+                    hash = (hash - target[pos] * PRIME_POW) * PRIME + target[pos + BLOCK];
+                }
+                pos++;
+                continue;
+            }
+
+            // Grow the match backwards into pending literals and forwards as far as it goes
+            int baseStart = match;
+            int targetStart = pos;
+            while (baseStart > 0 && targetStart > literalStart && base[baseStart - 1] == target[targetStart - 1]) {
+                baseStart--;
+                targetStart--;
+            }
+            int end = pos + BLOCK;
+            int baseEnd = match + BLOCK;
+            while (end < target.length && baseEnd < base.length && base[baseEnd] == target[end]) {
+                end++;
+                baseEnd++;
+            }
+
+            writeInsert(out, target, literalStart, targetStart);
+            out.write(COPY);
+            writeVarLong(out, baseStart);
+            writeVarLong(out, end - targetStart);
+
+            pos = end;
+            literalStart = end;
+            if (pos + BLOCK <= target.length) {
+                hash = hash(target, pos);
+            }
+        }
+        writeInsert(out, target, literalStart, target.length);
+        return out.toByteArray();
+    }
+
+    // COPY ops read the base at their offset, the delta and the target pass
+    // through, so neither version needs to fit in memory
+    public static void apply(FileChannel base, InputStream delta, OutputStream target) throws IOException {
+        for (byte b : MAGIC) {
+            if (readByte(delta) != b) {
+                throw new FileStorageException("Not a delta file");
+            }
+        }
+        long baseLength = readVarLong(delta);
+        long targetLength = readVarLong(delta);
+        long expectedCrc = readVarLong(delta);
+        if (baseLength != base.size()) {
+            throw new FileStorageException("Delta was computed against a different base version");
+        }
+
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        long pos = 0;
+        int op;
+        while ((op = delta.read()) >= 0) {
+            if (op == COPY) {
+                long offset = readVarLong(delta);
+                long remaining = readVarLong(delta);
+                if (offset + remaining > baseLength) {
+                    throw new FileStorageException("Corrupt delta: copy beyond the base");
+                }
+                while (remaining > 0) {
+                    buffer.clear().limit((int) Math.min(buffer.capacity(), remaining));
+                    int read = base.read(buffer, offset);
+                    if (read <= 0) {
+                        throw new FileStorageException("Corrupt delta: base ended early");
+                    }
+                    crc.update(buffer.array(), 0, read);
+                    target.write(buffer.array(), 0, read);
+                    offset += read;
+                    remaining -= read;
+                    pos += read;
+                }
+            } else if (op == INSERT) {
+                long remaining = readVarLong(delta);
+                while (remaining > 0) {
+                    int read = delta.read(buffer.array(), 0, (int) Math.min(buffer.capacity(), remaining));
+                    if (read < 0) {
+                        throw new FileStorageException("Corrupt delta: truncated");
+                    }
+                    crc.update(buffer.array(), 0, read);
+                    target.write(buffer.array(), 0, read);
+                    remaining -= read;
+                    pos += read;
+                }
+            } else {
+                throw new FileStorageException("Corrupt delta: unknown op " + op);
+            }
+        }
+        if (pos != targetLength || crc.getValue() != expectedCrc) {
+            throw new FileStorageException("Corrupt delta: reconstructed content does not match");
+        }
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new FileStorageException("Corrupt delta: truncated");
+        }
+        return (byte) b;
+    }
+
+    private static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte(in);
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new FileStorageException("Corrupt delta: bad varint");
+    }
+
+    private static void writeInsert(ByteArrayOutputStream out, byte[] target, int from, int to) {
+        if (to > from) {
+            out.write(INSERT);
+            writeVarLong(out, to - from);
+            out.write(target, from, to - from);
+        }
+    }
+
+    private static int hash(byte[] data, int offset) {
+        int hash = 0;
+        for (int i = 0; i < BLOCK; i++) {
+            hash = hash * PRIME + data[offset + i];
+        }
+        return hash;
+    }
+
+    private static long crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    // Open-addressed table from block hash to the first base offset with that hash
+    private static final class BlockIndex {
+        private final int[] hashes;
+        private final int[] offsets; // offset + 1, 0 = empty
+        private final int mask;
+
+        BlockIndex(byte[] base) {
+            int blocks = base.length / BLOCK;
+            int capacity = Integer.highestOneBit(Math.max(16, blocks * 2 - 1)) << 1;
+            hashes = new int[capacity];
+            offsets = new int[capacity];
+            mask = capacity - 1;
+            for (int offset = 0; offset + BLOCK <= base.length; offset += BLOCK) {
+                int hash = hash(base, offset);
+                int slot = mix(hash) & mask;
+                while (offsets[slot] != 0 && hashes[slot] != hash) {
+                    slot = (slot + 1) & mask;
+                }
+                if (offsets[slot] == 0) {
+                    hashes[slot] = hash;
+                    offsets[slot] = offset + 1;
+                }
+            }
+        }
+
+        int find(int hash, byte[] base, byte[] target, int pos) {
+            int slot = mix(hash) & mask;
+            while (offsets[slot] != 0) {
+                if (hashes[slot] == hash) {
+                    int offset = offsets[slot] - 1;
+                    return Arrays.equals(base, offset, offset + BLOCK, target, pos, pos + BLOCK) ? offset : -1;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        private static int mix(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.demo.service;
+
+import java.io.IOException;
+
+// An encrypted blob that fails authentication: altered, truncated, or sealed
+// under a different key
+public class BlobAuthenticationException extends IOException {
+
+    public BlobAuthenticationException(String message) {
+        super(message);
+    }
+
+    public BlobAuthenticationException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
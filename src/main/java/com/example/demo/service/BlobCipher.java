@@ -0,0 +1,292 @@
+package com.example.demo.service;
+
+import com.example.demo.config.EncryptionConfig;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+
+// Encryption at rest for blobs. Each blob gets its own random AES-256 data key,
+// stored in the blob header wrapped (AES-GCM) by the master key. The content is
+// cut into fixed-size segments, each sealed with AES-GCM under a nonce made of a
+// per-blob prefix, the segment index and a last-segment flag, so segments can't
+// be reordered, dropped or moved between blobs, and the end of the blob can't be
+// cut off. Any segment can be decrypted on its own, which keeps reads streaming
+// and lets Range requests decrypt only the segments they touch.
+//
+// Layout: magic(8) version(1) segmentSize(4) keyIdLength(1) keyId wrappedKeyLength(2)
+// wrappedKey noncePrefix(7), then segments of segmentSize + 16 bytes, the last shorter.
+//
+// Blobs without the magic are plaintext, so turning encryption on or off never
+// requires rewriting existing blobs.
+@Component
+public class BlobCipher {
+
+    static final byte[] MAGIC = {(byte) 0x89, 'F', 'M', 'E', 'N', 'C', '\r', '\n'};
+    static final int TAG_BYTES = 16;
+
+    private static final int FORMAT_VERSION = 1;
+    private static final int NONCE_PREFIX_BYTES = 7;
+    private static final int IV_BYTES = 12;
+    private static final int DATA_KEY_BYTES = 32;
+    private static final int MIN_SEGMENT_SIZE = 4 * 1024;
+    private static final int MAX_SEGMENT_SIZE = 16 * 1024 * 1024;
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+    private final EncryptionConfig config;
+    private final SecretKey masterKey; // null when none is configured
+    private final SecureRandom random = new SecureRandom();
+
+    public BlobCipher(EncryptionConfig config) {
+        this.config = config;
+        this.masterKey = loadMasterKey(config);
+        if (config.isEnabled() && masterKey == null) {
+            throw new IllegalStateException("file.encryption.enabled requires file.encryption.master-key " +
+                    "or file.encryption.keystore-path");
+        }
+        if (config.getSegmentSize() < MIN_SEGMENT_SIZE || config.getSegmentSize() > MAX_SEGMENT_SIZE) {
+            throw new IllegalStateException("file.encryption.segment-size must be between " + MIN_SEGMENT_SIZE +
+                    " and " + MAX_SEGMENT_SIZE);
+        }
+    }
+
+    // Whether new blobs are written encrypted
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    // Everything written to the returned stream is stored encrypted under a new
+    // data key. Closing it seals the last segment and closes out.
+    public OutputStream encrypt(OutputStream out) throws IOException {
+        byte[] dataKey = new byte[DATA_KEY_BYTES];
+        byte[] noncePrefix = new byte[NONCE_PREFIX_BYTES];
+        random.nextBytes(dataKey);
+        random.nextBytes(noncePrefix);
+        Header header = new Header(config.getSegmentSize(), config.getMasterKeyId(), wrap(dataKey), noncePrefix);
+        out.write(header.encode());
+        return new EncryptingOutputStream(out, newCipher(), new SecretKeySpec(dataKey, "AES"), header);
+    }
+
+    // The plaintext of a blob, decrypted segment by segment if it is encrypted.
+    // skip() on an encrypted blob jumps straight to the target segment.
+    public InputStream open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            Header header = readHeader(channel);
+            if (header == null) {
+                channel.position(0);
+                return Channels.newInputStream(channel);
+            }
+            return new DecryptingInputStream(channel, newCipher(), unwrap(header), header);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    public boolean isEncrypted(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return hasMagic(channel);
+        }
+    }
+
+    public long plaintextSize(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Header header = readHeader(channel);
+            return header == null ? channel.size() : header.plaintextSize(channel.size());
+        }
+    }
+
+    private byte[] wrap(byte[] dataKey) throws IOException {
+        if (masterKey == null) {
+            throw new IOException("No master key configured");
+        }
+        try {
+            byte[] iv = new byte[IV_BYTES];
+            random.nextBytes(iv);
+            Cipher cipher = newCipher();
+            cipher.init(Cipher.ENCRYPT_MODE, masterKey, new GCMParameterSpec(TAG_BYTES * 8, iv));
+            cipher.updateAAD(config.getMasterKeyId().getBytes(StandardCharsets.UTF_8));
+            byte[] sealed = cipher.doFinal(dataKey);
+            byte[] wrapped = Arrays.copyOf(iv, IV_BYTES + sealed.length);
+            System.arraycopy(sealed, 0, wrapped, IV_BYTES, sealed.length);
+            return wrapped;
+        } catch (GeneralSecurityException ex) {
+            throw new IOException("Could not wrap data key", ex);
+        }
+    }
+
+    private SecretKey unwrap(Header header) throws IOException {
+        if (masterKey == null) {
+            throw new IOException("Blob is encrypted but no master key is configured");
+        }
+        if (!header.keyId.equals(config.getMasterKeyId())) {
+            throw new IOException("Blob is encrypted with master key '" + header.keyId +
+                    "' but the configured key is '" + config.getMasterKeyId() + "'");
+        }
+        try {
+            Cipher cipher = newCipher();
+            cipher.init(Cipher.DECRYPT_MODE, masterKey,
+                    new GCMParameterSpec(TAG_BYTES * 8, header.wrappedKey, 0, IV_BYTES));
+            cipher.updateAAD(header.keyId.getBytes(StandardCharsets.UTF_8));
+            byte[] dataKey = cipher.doFinal(header.wrappedKey, IV_BYTES, header.wrappedKey.length - IV_BYTES);
+            return new SecretKeySpec(dataKey, "AES");
+        } catch (AEADBadTagException ex) {
+            throw new BlobAuthenticationException("Data key failed authentication; wrong master key?", ex);
+        } catch (GeneralSecurityException ex) {
+            throw new IOException("Could not unwrap data key", ex);
+        }
+    }
+
+    // Leaves the channel after the header, or returns null for a plaintext blob
+    private static Header readHeader(FileChannel channel) throws IOException {
+        if (!hasMagic(channel)) {
+            return null;
+        }
+        channel.position(MAGIC.length);
+        // Not closed: that would close the channel
+        DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+        try {
+            int version = in.readUnsignedByte();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported encrypted blob version " + version);
+            }
+            int segmentSize = in.readInt();
+            if (segmentSize < MIN_SEGMENT_SIZE || segmentSize > MAX_SEGMENT_SIZE) {
+                throw new BlobAuthenticationException("Invalid segment size " + segmentSize);
+            }
+            byte[] keyId = new byte[in.readUnsignedByte()];
+            in.readFully(keyId);
+            byte[] wrappedKey = new byte[in.readUnsignedShort()];
+            in.readFully(wrappedKey);
+            byte[] noncePrefix = new byte[NONCE_PREFIX_BYTES];
+            in.readFully(noncePrefix);
+            return new Header(segmentSize, new String(keyId, StandardCharsets.UTF_8), wrappedKey, noncePrefix);
+        } catch (EOFException ex) {
+            throw new BlobAuthenticationException("Encrypted blob header is truncated", ex);
+        }
+    }
+
+    private static boolean hasMagic(FileChannel channel) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+        while (magic.hasRemaining()) {
+            if (channel.read(magic, magic.position()) < 0) {
+                return false;
+            }
+        }
+        return Arrays.equals(magic.array(), MAGIC);
+    }
+
+    private static Cipher newCipher() throws IOException {
+        try {
+            return Cipher.getInstance(TRANSFORMATION);
+        } catch (GeneralSecurityException ex) {
+            throw new IOException(TRANSFORMATION + " is not available", ex);
+        }
+    }
+
+    private static SecretKey loadMasterKey(EncryptionConfig config) {
+        if (config.getMasterKey() != null && !config.getMasterKey().isBlank()) {
+            byte[] key = Base64.getDecoder().decode(config.getMasterKey().trim());
+            if (key.length != 16 && key.length != 24 && key.length != 32) {
+                throw new IllegalStateException("file.encryption.master-key must be 16, 24 or 32 bytes, base64");
+            }
+            return new SecretKeySpec(key, "AES");
+        }
+        if (config.getKeystorePath() == null || config.getKeystorePath().isBlank()) {
+            return null;
+        }
+        char[] storePassword = config.getKeystorePassword() != null ? config.getKeystorePassword().toCharArray() : null;
+        char[] keyPassword = config.getKeyPassword() != null ? config.getKeyPassword().toCharArray() : storePassword;
+        try (InputStream in = Files.newInputStream(Paths.get(config.getKeystorePath()))) {
+            KeyStore keyStore = KeyStore.getInstance(config.getKeystoreType());
+            keyStore.load(in, storePassword);
+            Key key = keyStore.getKey(config.getKeyAlias(), keyPassword);
+            if (!(key instanceof SecretKey) || !"AES".equalsIgnoreCase(key.getAlgorithm())) {
+                throw new IllegalStateException("Keystore entry '" + config.getKeyAlias() + "' is not an AES key");
+            }
+            return new SecretKeySpec(key.getEncoded(), "AES");
+        } catch (IOException | GeneralSecurityException ex) {
+            throw new IllegalStateException("Could not load the master key from " + config.getKeystorePath(), ex);
+        }
+    }
+
+    static byte[] segmentIv(byte[] noncePrefix, int index, boolean last) {
+        byte[] iv = Arrays.copyOf(noncePrefix, IV_BYTES);
+        iv[NONCE_PREFIX_BYTES] = (byte) (index >>> 24);
+        iv[NONCE_PREFIX_BYTES + 1] = (byte) (index >>> 16);
+        iv[NONCE_PREFIX_BYTES + 2] = (byte) (index >>> 8);
+        iv[NONCE_PREFIX_BYTES + 3] = (byte) index;
+        iv[IV_BYTES - 1] = (byte) (last ? 1 : 0);
+        return iv;
+    }
+
+    static final class Header {
+        final int segmentSize;
+        final String keyId;
+        final byte[] wrappedKey;
+        final byte[] noncePrefix;
+        final int length;
+
+        Header(int segmentSize, String keyId, byte[] wrappedKey, byte[] noncePrefix) {
+            this.segmentSize = segmentSize;
+            this.keyId = keyId;
+            this.wrappedKey = wrappedKey;
+            this.noncePrefix = noncePrefix;
+            this.length = MAGIC.length + 1 + 4 + 1 + keyId.getBytes(StandardCharsets.UTF_8).length
+                    + 2 + wrappedKey.length + NONCE_PREFIX_BYTES;
+        }
+
+        byte[] encode() throws IOException {
+            byte[] keyIdBytes = keyId.getBytes(StandardCharsets.UTF_8);
+            if (keyIdBytes.length > 255) {
+                throw new IOException("Master key id is longer than 255 bytes");
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(length);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.write(MAGIC);
+            out.writeByte(FORMAT_VERSION);
+            out.writeInt(segmentSize);
+            out.writeByte(keyIdBytes.length);
+            out.write(keyIdBytes);
+            out.writeShort(wrappedKey.length);
+            out.write(wrappedKey);
+            out.write(noncePrefix);
+            return bytes.toByteArray();
+        }
+
+        // Every blob ends with a sealed (possibly empty) last segment
+        int segmentCount(long blobSize) {
+            long body = blobSize - length;
+            return (int) Math.max(0, (body + segmentSize + TAG_BYTES - 1) / (segmentSize + TAG_BYTES));
+        }
+
+        long plaintextSize(long blobSize) {
+            return Math.max(0, blobSize - length - (long) segmentCount(blobSize) * TAG_BYTES);
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package com.example.demo.service;
+
+import com.example.demo.cluster.ClusterLockService;
+import com.example.demo.config.ReadYourWritesContext;
+import com.example.demo.config.ScrubConfig;
+import com.example.demo.exception.CorruptFileException;
+import com.example.demo.model.File;
+import com.example.demo.model.FileStoreInfo;
+import com.example.demo.model.ScrubReport;
+import com.example.demo.repository.FileRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Re-reads every active blob and compares it with the size and checksum
+// recorded at upload. Files are grouped by the volume (FileStore) they live on
+// and each volume is read by its own thread, sequentially, under its own byte
+// budget, so a pass goes as fast as the disks allow in parallel without taking
+// more than file.scrub.bytes-per-second-per-volume from any one of them.
+// Blobs stored before checksums existed get theirs recorded on the first pass.
+// Encrypted blobs are checked by their plaintext; a segment that fails
+// authentication counts as a checksum mismatch.
+//
+// A pass holds the blob-scrub cluster lock, so only one node scrubs at a time
+// and the byte budget holds for the whole cluster. The end of the last complete
+// pass is kept in file_store_info, so restarts don't start a new one early.
+@Service
+public class BlobScrubber {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlobScrubber.class);
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    static final String LOCK_NAME = "blob-scrub";
+    private static final String FINISHED_SQL = "SELECT info_value FROM file_store_info WHERE info_key = ?";
+    private static final String RECORD_FINISHED_SQL = "INSERT INTO file_store_info (info_key, info_value) " +
+            "VALUES (?, ?) ON DUPLICATE KEY UPDATE info_value = VALUES(info_value)";
+
+    private final FileRepository fileRepository;
+    private final FileStorageService fileStorageService;
+    private final ClusterLockService clusterLockService;
+    private final JdbcTemplate jdbcTemplate;
+    private final ScrubConfig config;
+    private final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+
+    private final ExecutorService passExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "blob-scrubber");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicReference<ScrubReport> currentPass = new AtomicReference<>();
+    private final AtomicBoolean scheduledCheckQueued = new AtomicBoolean();
+    // Budgets outlive a pass so back-to-back passes can't exceed them either
+    private final Map<FileStore, TokenBucket> volumeBudgets = new ConcurrentHashMap<>();
+
+    private final AtomicLong filesChecked = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong problemsFound = new AtomicLong();
+    private final AtomicLong readVerifications = new AtomicLong();
+    private final AtomicLong readVerificationFailures = new AtomicLong();
+
+    public BlobScrubber(FileRepository fileRepository, FileStorageService fileStorageService,
+                        ClusterLockService clusterLockService, JdbcTemplate jdbcTemplate, ScrubConfig config) {
+        this.fileRepository = fileRepository;
+        this.fileStorageService = fileStorageService;
+        this.clusterLockService = clusterLockService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.config = config;
+    }
+
+    // Starts a pass in the background unless one is already running
+    public ScrubReport startPass(String trigger) {
+        ScrubReport report = new ScrubReport(trigger);
+        ScrubReport previous = currentPass.get();
+        if (previous != null && previous.isRunning()) {
+            return previous;
+        }
+        if (!currentPass.compareAndSet(previous, report)) {
+            return currentPass.get();
+        }
+        passExecutor.execute(() -> {
+            try (ClusterLockService.Lease lease = clusterLockService.tryLock(LOCK_NAME)) {
+                if (lease == null) {
+                    report.finish("A pass is already running on another node");
+                    return;
+                }
+                runPass(report);
+                recordFinished(report);
+            } catch (RuntimeException ex) {
+                logger.error("Scrub pass failed", ex);
+                report.finish(ex.getMessage());
+            }
+        });
+        return report;
+    }
+
+    public ScrubReport getLastPass() {
+        return currentPass.get();
+    }
+
+    // Counters since startup, across passes and verified downloads
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("filesChecked", filesChecked.get());
+        metrics.put("bytesRead", bytesRead.get());
+        metrics.put("problemsFound", problemsFound.get());
+        metrics.put("readVerifications", readVerifications.get());
+        metrics.put("readVerificationFailures", readVerificationFailures.get());
+        return metrics;
+    }
+
+    // Checks once a minute whether the cluster is due a pass; the node that gets the
+    // lock first runs it
+    @Scheduled(fixedDelay = 60000, initialDelay = 60000)
+    public void scheduledPass() {
+        if (!config.isEnabled() || config.getIntervalMs() <= 0) {
+            return;
+        }
+        ScrubReport last = currentPass.get();
+        if ((last != null && last.isRunning()) || !scheduledCheckQueued.compareAndSet(false, true)) {
+            return;
+        }
+        passExecutor.execute(() -> {
+            scheduledCheckQueued.set(false);
+            try (ClusterLockService.Lease lease = clusterLockService.tryLock(LOCK_NAME)) {
+                if (lease == null || !isDue()) {
+                    return;
+                }
+                ScrubReport report = new ScrubReport("schedule");
+                currentPass.set(report);
+                runPass(report);
+                recordFinished(report);
+            } catch (RuntimeException ex) {
+                logger.warn("Could not run the scheduled scrub pass", ex);
+            }
+        });
+    }
+
+    // Called with the cluster lock held, so no other node finishes a pass meanwhile
+    boolean isDue() {
+        List<String> finished = jdbcTemplate.queryForList(FINISHED_SQL, String.class, FileStoreInfo.SCRUB_FINISHED_AT);
+        return finished.isEmpty() || LocalDateTime.parse(finished.get(0))
+                .isBefore(LocalDateTime.now().minusNanos(config.getIntervalMs() * 1_000_000));
+    }
+
+    // Only a complete pass resets the interval; one that failed is retried at the next check
+    private void recordFinished(ScrubReport report) {
+        if (report.getError() == null && report.getFinishedAt() != null) {
+            jdbcTemplate.update(RECORD_FINISHED_SQL, FileStoreInfo.SCRUB_FINISHED_AT, report.getFinishedAt().toString());
+        }
+    }
+
+    // Checks a blob before it is served when file.scrub.verify-on-read is set.
+    // Reads the whole file unthrottled; a missing blob is left to the caller.
+    public void verifyForRead(File file) {
+        if (!config.isVerifyOnRead() || file.getChecksum() == null) {
+            return;
+        }
+        readVerifications.incrementAndGet();
+        String problem;
+        try {
+            Digest digest = digest(fileStorageService.resolvePath(file.getFilePath()), null);
+            problem = check(file, digest);
+        } catch (NoSuchFileException ex) {
+            return;
+        } catch (BlobAuthenticationException ex) {
+            problem = ScrubReport.CHECKSUM_MISMATCH;
+        } catch (IOException ex) {
+            problem = ScrubReport.UNREADABLE;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new CorruptFileException("Interrupted while verifying file " + file.getId());
+        }
+        if (problem != null) {
+            readVerificationFailures.incrementAndGet();
+            logger.error("File {} ({}) failed verification on read: {}", file.getId(), file.getFilePath(), problem);
+            throw new CorruptFileException("File " + file.getId() + " failed its integrity check");
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        passExecutor.shutdownNow();
+    }
+
+    private void runPass(ScrubReport report) {
+        ExecutorService volumeExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "blob-scrubber-volume");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Map<Path, FileStore> storesByDirectory = new HashMap<>();
+        try {
+            long afterId = 0;
+            while (true) {
+                waitWhileOverloaded();
+                List<File> page = fileRepository.findActiveAfterId(afterId,
+                        PageRequest.of(0, Math.max(1, config.getBatchSize())));
+                if (page.isEmpty()) {
+                    break;
+                }
+                afterId = page.get(page.size() - 1).getId();
+
+                Map<FileStore, List<File>> byVolume = new HashMap<>();
+                for (File file : page) {
+                    byVolume.computeIfAbsent(volumeOf(file, storesByDirectory), store -> new ArrayList<>()).add(file);
+                }
+                report.setVolumes(byVolume.size());
+
+                List<Future<?>> volumes = new ArrayList<>(byVolume.size());
+                for (Map.Entry<FileStore, List<File>> volume : byVolume.entrySet()) {
+                    volumes.add(volumeExecutor.submit(() -> scrubVolume(volume.getKey(), volume.getValue(), report)));
+                }
+                for (Future<?> volume : volumes) {
+                    volume.get();
+                }
+            }
+            report.finish(null);
+            logger.info("Scrub pass checked {} files ({} bytes), found {} missing, {} truncated or grown, " +
+                            "{} corrupted, {} unreadable", report.getFilesChecked(), report.getBytesRead(),
+                    report.getMissing(), report.getSizeMismatches(), report.getChecksumMismatches(),
+                    report.getUnreadable());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            report.finish("Interrupted");
+        } catch (ExecutionException | RuntimeException ex) {
+            logger.error("Scrub pass failed", ex);
+            report.finish(ex.getMessage());
+        } finally {
+            volumeExecutor.shutdownNow();
+        }
+    }
+
+    private void scrubVolume(FileStore store, List<File> files, ScrubReport report) {
+        TokenBucket budget = config.getBytesPerSecondPerVolume() > 0
+                ? volumeBudgets.computeIfAbsent(store, key -> new TokenBucket(config.getBytesPerSecondPerVolume(), 1))
+                : null;
+        for (File file : files) {
+            String problem;
+            try {
+                Digest digest = digest(fileStorageService.resolvePath(file.getFilePath()), budget);
+                report.addChecked(digest.size);
+                filesChecked.incrementAndGet();
+                bytesRead.addAndGet(digest.size);
+                if (file.getChecksum() == null && digest.size == file.getFileSize()) {
+                    if (fileRepository.backfillChecksum(file.getId(), file.getFilePath(), digest.checksum) == 1) {
+                        report.addChecksumRecorded();
+                    }
+                    continue;
+                }
+                problem = check(file, digest);
+            } catch (NoSuchFileException ex) {
+                problem = ScrubReport.MISSING;
+            } catch (BlobAuthenticationException ex) {
+                problem = ScrubReport.CHECKSUM_MISMATCH;
+            } catch (IOException ex) {
+                problem = ScrubReport.UNREADABLE;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (problem != null && isStillCurrent(file)) {
+                report.addFinding(file.getId(), file.getFilePath(), problem);
+                problemsFound.incrementAndGet();
+                logger.error("File {} ({}) failed scrubbing: {}", file.getId(), file.getFilePath(), problem);
+            }
+        }
+    }
+
+    private String check(File file, Digest digest) {
+        if (digest.size != file.getFileSize()) {
+            return ScrubReport.SIZE_MISMATCH;
+        }
+        if (file.getChecksum() != null && !file.getChecksum().equals(digest.checksum)) {
+            return ScrubReport.CHECKSUM_MISMATCH;
+        }
+        return null;
+    }
+
+    // A new version or a delete while the blob was being read is not a finding
+    private boolean isStillCurrent(File file) {
+        return ReadYourWritesContext.onPrimary(() -> fileRepository.findById(file.getId())
+                .filter(current -> Boolean.TRUE.equals(current.getIsActive()))
+                .filter(current -> file.getFilePath().equals(current.getFilePath()))
+                .isPresent());
+    }
+
+    private Digest digest(Path path, TokenBucket budget) throws IOException, InterruptedException {
+        MessageDigest digest = Checksums.newDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long size = 0;
+        try (InputStream in = fileStorageService.openBlob(path)) {
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, count);
+                size += count;
+                if (budget != null) {
+                    budget.acquire(count);
+                }
+            }
+        }
+        return new Digest(size, Checksums.hex(digest));
+    }
+
+    // Blobs of one date directory always share a volume, so look it up once per directory
+    private FileStore volumeOf(File file, Map<Path, FileStore> storesByDirectory) {
+        Path directory = fileStorageService.resolvePath(file.getFilePath()).getParent();
+        return storesByDirectory.computeIfAbsent(directory, dir -> {
+            try {
+                return Files.getFileStore(Files.exists(dir) ? dir : fileStorageService.getFileStorageLocation());
+            } catch (IOException ex) {
+                throw new IllegalStateException("Could not determine the volume of " + dir, ex);
+            }
+        });
+    }
+
+    private void waitWhileOverloaded() throws InterruptedException {
+        while (isOverloaded()) {
+            logger.debug("Pausing scrub pass, system load is too high");
+            Thread.sleep(1000);
+        }
+    }
+
+    private boolean isOverloaded() {
+        double load = os.getSystemLoadAverage();
+        return load >= 0 && load / os.getAvailableProcessors() > config.getMaxLoadPerCore();
+    }
+
+    private static final class Digest {
+        private final long size;
+        private final String checksum;
+
+        Digest(long size, String checksum) {
+            this.size = size;
+            this.checksum = checksum;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.demo.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+
+// Detects the content type of an upload from its first bytes. Magic numbers are
+// compiled once into a byte trie, so matching costs one array lookup per header
+// byte no matter how many signatures are registered. Formats without a magic
+// number (plain text, CSV, JSON) are recognised by a text heuristic and refined
+// by the declared type or the file extension. One instance per upload; bytes are
+// fed as they stream past, nothing is read twice.
+public class ContentSniffer {
+
+    public static final int HEADER_SIZE = 512;
+    public static final String OCTET_STREAM = "application/octet-stream";
+
+    private static final String TEXT = "text/plain";
+    private static final Node ROOT = new Node();
+
+    private static final Map<String, String> TEXT_EXTENSIONS = Map.of(
+            "txt", TEXT,
+            "csv", "text/csv",
+            "json", "application/json",
+            "xml", "application/xml",
+            "html", "text/html",
+            "htm", "text/html",
+            "md", "text/markdown");
+
+    static {
+        register("image/jpeg", 0xFF, 0xD8, 0xFF);
+        register("image/png", 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A);
+        register("image/gif", "GIF87a");
+        register("image/gif", "GIF89a");
+        register("image/bmp", "BM");
+        register("image/tiff", 'I', 'I', 0x2A, 0x00);
+        register("image/tiff", 'M', 'M', 0x00, 0x2A);
+        register("image/x-icon", 0x00, 0x00, 0x01, 0x00);
+        register("application/pdf", "%PDF-");
+        register("application/zip", 'P', 'K', 0x03, 0x04);
+        register("application/zip", 'P', 'K', 0x05, 0x06);
+        register("application/gzip", 0x1F, 0x8B);
+        register("application/x-7z-compressed", '7', 'z', 0xBC, 0xAF, 0x27, 0x1C);
+        register("application/vnd.rar", 'R', 'a', 'r', '!', 0x1A, 0x07);
+        register("application/x-msdownload", "MZ");
+        register("application/x-executable", 0x7F, 'E', 'L', 'F');
+        register("application/java-vm", 0xCA, 0xFE, 0xBA, 0xBE);
+        register("audio/mpeg", "ID3");
+        register("audio/ogg", "OggS");
+        register("audio/flac", "fLaC");
+        register("video/webm", 0x1A, 0x45, 0xDF, 0xA3);
+        // Byte order marks: text in some Unicode encoding
+        register(TEXT, 0xEF, 0xBB, 0xBF);
+        register(TEXT, 0xFE, 0xFF);
+        register(TEXT, 0xFF, 0xFE);
+    }
+
+    private final String declaredType;
+    private final String extension;
+    private final byte[] header = new byte[HEADER_SIZE];
+    private int length;
+    private int matchLength;
+    private String detectedType;
+
+    public ContentSniffer(String declaredType, String fileName) {
+        this.declaredType = normalize(declaredType);
+        this.extension = extensionOf(fileName);
+    }
+
+    // Feeds bytes until the header is full; returns true once the type is known
+    public boolean update(byte[] bytes, int offset, int count) {
+        if (detectedType == null) {
+            int take = Math.min(count, HEADER_SIZE - length);
+            System.arraycopy(bytes, offset, header, length, take);
+            length += take;
+            if (length == HEADER_SIZE) {
+                detectedType = detect();
+            }
+        }
+        return detectedType != null;
+    }
+
+    public boolean update(byte value) {
+        if (detectedType == null) {
+            header[length++] = value;
+            if (length == HEADER_SIZE) {
+                detectedType = detect();
+            }
+        }
+        return detectedType != null;
+    }
+
+    public boolean isComplete() {
+        return detectedType != null;
+    }
+
+    // Called at end of stream for uploads shorter than the header
+    public String finish() {
+        if (detectedType == null) {
+            detectedType = detect();
+        }
+        return detectedType;
+    }
+
+    public String getDetectedType() {
+        return detectedType;
+    }
+
+    private String detect() {
+        String magic = matchMagic();
+        // Two-byte signatures such as "MZ" or "BM" also start ordinary text
+        if (magic != null && !TEXT.equals(magic) && (matchLength > 2 || !looksLikeText())) {
+            return magic;
+        }
+        if (TEXT.equals(magic) || looksLikeText()) {
+            return refineText();
+        }
+        return OCTET_STREAM;
+    }
+
+    // Longest registered signature that prefixes the header
+    private String matchMagic() {
+        Node node = ROOT;
+        String match = null;
+        for (int i = 0; i < length; i++) {
+            node = node.next[header[i] & 0xFF];
+            if (node == null) {
+                break;
+            }
+            if (node.type != null) {
+                match = node.type;
+                matchLength = i + 1;
+            }
+            if (node.leaf) {
+                break;
+            }
+        }
+        return match;
+    }
+
+    // No NUL bytes and few control characters; bytes >= 0x80 are allowed for UTF-8
+    private boolean looksLikeText() {
+        int control = 0;
+        for (int i = 0; i < length; i++) {
+            int c = header[i] & 0xFF;
+            if (c == 0) {
+                return false;
+            }
+            if (c < 0x20 && c != '\t' && c != '\n' && c != '\r' && c != '\f' && c != 0x1B) {
+                control++;
+            }
+        }
+        return control * 10 <= length;
+    }
+
+    private String refineText() {
+        if (declaredType != null && isTextual(declaredType)) {
+            return declaredType;
+        }
+        String byExtension = TEXT_EXTENSIONS.get(extension);
+        if (byExtension != null) {
+            return byExtension;
+        }
+        for (int i = 0; i < length; i++) {
+            int c = header[i] & 0xFF;
+            if (c == '{' || c == '[') {
+                return "application/json";
+            }
+            if (c > ' ' && c < 0x80) {
+                break;
+            }
+        }
+        return TEXT;
+    }
+
+    public static boolean isTextual(String contentType) {
+        return contentType.startsWith("text/") || contentType.equals("application/json")
+                || contentType.equals("application/xml") || contentType.endsWith("+json")
+                || contentType.endsWith("+xml");
+    }
+
+    // Lower-cases and strips parameters: "Text/Plain; charset=UTF-8" -> "text/plain"
+    public static String normalize(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        int semicolon = contentType.indexOf(';');
+        String type = semicolon >= 0 ? contentType.substring(0, semicolon) : contentType;
+        type = type.trim().toLowerCase(Locale.ROOT);
+        return type.isEmpty() ? null : type;
+    }
+
+    private static String extensionOf(String fileName) {
+        if (fileName == null || fileName.lastIndexOf('.') < 0) {
+            return "";
+        }
+        return fileName.substring(fileName.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private static void register(String type, String signature) {
+        byte[] bytes = signature.getBytes(StandardCharsets.ISO_8859_1);
+        int[] values = new int[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            values[i] = bytes[i] & 0xFF;
+        }
+        register(type, values);
+    }
+
+    private static void register(String type, int... signature) {
+        Node node = ROOT;
+        for (int value : signature) {
+            Node child = node.next[value];
+            if (child == null) {
+                child = new Node();
+                node.next[value] = child;
+            }
+            node.leaf = false;
+            node = child;
+        }
+        node.type = type;
+    }
+
+    private static final class Node {
+        final Node[] next = new Node[256];
+        String type;
+        boolean leaf = true;
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.demo.service;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+
+// Plaintext view of an encrypted blob. Segments are read with positional reads
+// and decrypted one at a time when the stream first touches them; skip() only
+// moves the position, so a ranged read decrypts just the segments in its range.
+final class DecryptingInputStream extends InputStream {
+
+    private final FileChannel channel;
+    private final Cipher cipher;
+    private final SecretKey dataKey;
+    private final BlobCipher.Header header;
+    private final long blobSize;
+    private final int segmentCount;
+    private final long size;
+    private final byte[] sealed;
+    private final byte[] plain;
+    private int loadedSegment = -1;
+    private int plainLength;
+    private long position;
+
+    DecryptingInputStream(FileChannel channel, Cipher cipher, SecretKey dataKey, BlobCipher.Header header)
+            throws IOException {
+        this.channel = channel;
+        this.cipher = cipher;
+        this.dataKey = dataKey;
+        this.header = header;
+        this.blobSize = channel.size();
+        this.segmentCount = header.segmentCount(blobSize);
+        this.size = header.plaintextSize(blobSize);
+        this.sealed = new byte[header.segmentSize + BlobCipher.TAG_BYTES];
+        this.plain = new byte[header.segmentSize];
+        long lastSegment = blobSize - header.length - (long) (segmentCount - 1) * sealed.length;
+        if (segmentCount == 0 || lastSegment < BlobCipher.TAG_BYTES) {
+            throw new BlobAuthenticationException("Encrypted blob is truncated");
+        }
+        if (size == 0) {
+            // Nothing will be read, but the empty last segment still proves the blob is whole
+            load(0);
+        }
+    }
+
+    // Plaintext size
+    long size() {
+        return size;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position >= size) {
+            return -1;
+        }
+        int segment = (int) (position / header.segmentSize);
+        if (segment != loadedSegment) {
+            load(segment);
+        }
+        int offset = (int) (position - (long) segment * header.segmentSize);
+        int count = Math.min(len, plainLength - offset);
+        System.arraycopy(plain, offset, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public long skip(long n) {
+        if (n <= 0) {
+            return 0;
+        }
+        long target = Math.min(size, position + n);
+        long skipped = target - position;
+        position = target;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        int segment = (int) (position / header.segmentSize);
+        if (segment != loadedSegment) {
+            return 0;
+        }
+        return (int) (plainLength - (position - (long) segment * header.segmentSize));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void load(int segment) throws IOException {
+        long offset = header.length + (long) segment * sealed.length;
+        int length = (int) Math.min(sealed.length, blobSize - offset);
+        ByteBuffer buffer = ByteBuffer.wrap(sealed, 0, length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new BlobAuthenticationException("Encrypted blob is truncated");
+            }
+        }
+        boolean last = segment == segmentCount - 1;
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, dataKey, new GCMParameterSpec(BlobCipher.TAG_BYTES * 8,
+                    BlobCipher.segmentIv(header.noncePrefix, segment, last)));
+            plainLength = cipher.doFinal(sealed, 0, length, plain, 0);
+            loadedSegment = segment;
+        } catch (AEADBadTagException ex) {
+            loadedSegment = -1;
+            throw new BlobAuthenticationException("Segment " + segment + " failed authentication", ex);
+        } catch (GeneralSecurityException ex) {
+            loadedSegment = -1;
+            throw new IOException("Could not decrypt segment " + segment, ex);
+        }
+    }
+}
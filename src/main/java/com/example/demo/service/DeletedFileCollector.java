@@ -0,0 +1,153 @@
+package com.example.demo.service;
+
+import com.example.demo.config.FileGcConfig;
+import com.example.demo.exception.FileStorageException;
+import com.example.demo.model.File;
+import com.example.demo.repository.FileRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+// Removes blobs (and older versions) of soft-deleted files once their retention window has passed.
+// Runs in small batches behind a delete-rate budget and backs off while the
+// machine is loaded, so cleanup never competes with request traffic. The blob
+// goes first and the row after it; a crash in between only leaves a row whose
+// blob is already gone, which the next run purges.
+@Service
+public class DeletedFileCollector {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeletedFileCollector.class);
+
+    private static final String ARCHIVE_DIR = ".archive";
+    private static final DateTimeFormatter ARCHIVE_MONTH = DateTimeFormatter.ofPattern("yyyy-MM");
+
+    private final FileRepository fileRepository;
+    private final FileStorageService fileStorageService;
+    private final FileVersionService fileVersionService;
+    private final FileChangeLog fileChangeLog;
+    private final ObjectMapper objectMapper;
+    private final FileGcConfig config;
+    private final TokenBucket throttle;
+    private final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+
+    public DeletedFileCollector(FileRepository fileRepository, FileStorageService fileStorageService,
+                                FileVersionService fileVersionService, FileChangeLog fileChangeLog,
+                                ObjectMapper objectMapper, FileGcConfig config) {
+        this.fileRepository = fileRepository;
+        this.fileStorageService = fileStorageService;
+        this.fileVersionService = fileVersionService;
+        this.fileChangeLog = fileChangeLog;
+        this.objectMapper = objectMapper;
+        this.config = config;
+        this.throttle = config.getMaxDeletesPerSecond() > 0 ? new TokenBucket(config.getMaxDeletesPerSecond(), 1) : null;
+    }
+
+    @Scheduled(fixedDelayString = "${file.gc.interval-ms:60000}", initialDelayString = "${file.gc.interval-ms:60000}")
+    public void scheduledCollect() {
+        if (config.isEnabled()) {
+            collect();
+        }
+    }
+
+    // Returns the number of files collected in this run
+    public int collect() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(config.getRetention());
+        int collected = 0;
+        for (int batch = 0; batch < config.getMaxBatchesPerRun(); batch++) {
+            if (isOverloaded()) {
+                logger.debug("Skipping deleted-file collection, system load is too high");
+                break;
+            }
+            List<File> candidates = fileRepository.findDeletedBefore(cutoff, PageRequest.of(0, config.getBatchSize()));
+            if (candidates.isEmpty()) {
+                break;
+            }
+
+            List<File> removed = new ArrayList<>(candidates.size());
+            for (File file : candidates) {
+                if (!throttle(1)) {
+                    return collected;
+                }
+                try {
+                    fileStorageService.deleteFile(file.getFilePath());
+                    removed.add(file);
+                } catch (FileStorageException ex) {
+                    logger.warn("Could not remove blob {} of deleted file {}", file.getFilePath(), file.getId(), ex);
+                }
+            }
+            if (removed.isEmpty()) {
+                break; // every blob in this batch failed; retry on the next run
+            }
+
+            try {
+                if (config.isArchiveRows()) {
+                    archive(removed);
+                }
+                List<Long> ids = removed.stream().map(File::getId).toList();
+                // Recorded first: a purge that never happens only costs an importer a no-op
+                fileChangeLog.recordPurged(ids);
+                collected += fileRepository.purgeInactive(ids);
+                fileVersionService.purgeVersions(ids);
+            } catch (IOException ex) {
+                logger.error("Could not archive deleted file rows, keeping them", ex);
+                break;
+            }
+            if (removed.size() < candidates.size() || candidates.size() < config.getBatchSize()) {
+                break;
+            }
+        }
+        if (collected > 0) {
+            logger.info("Collected {} deleted files", collected);
+        }
+        fileChangeLog.prune(LocalDateTime.now().minus(config.getChangeRetention()));
+        return collected;
+    }
+
+    private boolean throttle(long files) {
+        if (throttle == null) {
+            return true;
+        }
+        try {
+            throttle.acquire(files);
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private boolean isOverloaded() {
+        double load = os.getSystemLoadAverage();
+        return load >= 0 && load / os.getAvailableProcessors() > config.getMaxLoadPerCore();
+    }
+
+    // Appends the rows as JSON lines to a per-month archive file before they are purged
+    private void archive(List<File> files) throws IOException {
+        Path dir = fileStorageService.getFileStorageLocation().resolve(ARCHIVE_DIR);
+        Files.createDirectories(dir);
+        Path archive = dir.resolve("deleted-files-" + LocalDateTime.now().format(ARCHIVE_MONTH) + ".jsonl");
+        try (BufferedWriter writer = Files.newBufferedWriter(archive, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (File file : files) {
+                writer.write(objectMapper.writeValueAsString(file));
+                writer.newLine();
+            }
+        }
+    }
+}
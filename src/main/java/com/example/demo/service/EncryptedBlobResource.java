@@ -0,0 +1,52 @@
+package com.example.demo.service;
+
+import org.springframework.core.io.AbstractResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Serves the plaintext of an encrypted blob. Spring MVC writes Range requests by
+// skipping to the start of each range, which DecryptingInputStream turns into a
+// jump to the first segment of the range.
+public class EncryptedBlobResource extends AbstractResource {
+
+    private final Path path;
+    private final BlobCipher blobCipher;
+
+    public EncryptedBlobResource(Path path, BlobCipher blobCipher) {
+        this.path = path;
+        this.blobCipher = blobCipher;
+    }
+
+    @Override
+    public boolean exists() {
+        return Files.exists(path);
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+        return blobCipher.plaintextSize(path);
+    }
+
+    @Override
+    public long lastModified() throws IOException {
+        return Files.getLastModifiedTime(path).toMillis();
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return blobCipher.open(path);
+    }
+
+    @Override
+    public String getFilename() {
+        return path.getFileName().toString();
+    }
+
+    @Override
+    public String getDescription() {
+        return "encrypted blob [" + path + "]";
+    }
+}
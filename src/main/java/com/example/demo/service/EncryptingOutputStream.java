@@ -0,0 +1,89 @@
+package com.example.demo.service;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+
+// Seals the bytes written to it into BlobCipher segments. A full segment is only
+// sealed once more data arrives, so close() always has a last segment to seal.
+final class EncryptingOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private final Cipher cipher;
+    private final SecretKey dataKey;
+    private final byte[] noncePrefix;
+    private final byte[] segment;
+    private final byte[] sealed;
+    private int buffered;
+    private int index;
+    private boolean closed;
+
+    EncryptingOutputStream(OutputStream out, Cipher cipher, SecretKey dataKey, BlobCipher.Header header) {
+        this.out = out;
+        this.cipher = cipher;
+        this.dataKey = dataKey;
+        this.noncePrefix = header.noncePrefix;
+        this.segment = new byte[header.segmentSize];
+        this.sealed = new byte[header.segmentSize + BlobCipher.TAG_BYTES];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        while (len > 0) {
+            if (buffered == segment.length) {
+                seal(false);
+            }
+            int count = Math.min(len, segment.length - buffered);
+            System.arraycopy(b, off, segment, buffered, count);
+            buffered += count;
+            off += count;
+            len -= count;
+        }
+    }
+
+    // Only whole segments reach the underlying stream
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            seal(true);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void seal(boolean last) throws IOException {
+        if (index == Integer.MAX_VALUE) {
+            throw new IOException("Blob has too many segments");
+        }
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, dataKey,
+                    new GCMParameterSpec(BlobCipher.TAG_BYTES * 8, BlobCipher.segmentIv(noncePrefix, index, last)));
+            int length = cipher.doFinal(segment, 0, buffered, sealed, 0);
+            out.write(sealed, 0, length);
+        } catch (GeneralSecurityException ex) {
+            throw new IOException("Could not encrypt segment " + index, ex);
+        }
+        index++;
+        buffered = 0;
+    }
+}
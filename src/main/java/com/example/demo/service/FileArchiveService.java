@@ -0,0 +1,1065 @@
+package com.example.demo.service;
+
+import com.example.demo.cluster.FileCache;
+import com.example.demo.config.ArchiveConfig;
+import com.example.demo.config.FileGcConfig;
+import com.example.demo.model.ArchiveReport;
+import com.example.demo.model.File;
+import com.example.demo.model.FileChange;
+import com.example.demo.model.FileEvent;
+import com.example.demo.model.FileStoreInfo;
+import com.example.demo.model.FileVersion;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+// Exports the whole file store, rows and blobs, as one streamed ZIP archive and
+// imports it again. The archive is
+//
+//   manifest.json          format, source store id, snapshot time, high-water id, incremental lower bound
+//   blobs/<path>           plaintext of each blob of a page, under its relative path
+//   rows/<n>.jsonl         the page's files rows with their older versions
+//   ...                    more pages
+//   tombstones/<n>.jsonl   ids purged since the lower bound (incremental only)
+//   summary.json           the export report; its absence marks a truncated archive
+//
+// Rows are read by id up to the highest id at the start of the export, one page
+// and its versions per short read-only transaction, so a long export never holds
+// a snapshot open. A row changed after its page was read is changed after the
+// snapshot time, and the next incremental export picks it up. Deleted rows the
+// collector may already have reached are left out. Blobs are read in parallel
+// into a bounded buffer ahead of the archive stream. A page's blobs precede its
+// rows, so a file whose blob disappeared while the export ran (replaced by a new
+// version, or collected after deletion) is simply left out of the page.
+//
+// An import writes the blobs in parallel next to their final path, checks each
+// file's and full version's checksum (and each delta's size), moves the good ones into place and upserts the page's rows in
+// one batch. Ids are kept, so an incremental archive updates the files an
+// earlier import created; for the same reason a store only accepts archives of
+// the store it was first imported from, unless it holds no files yet.
+@Service
+public class FileArchiveService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileArchiveService.class);
+
+    static final int FORMAT_VERSION = 2;
+    static final String MANIFEST_ENTRY = "manifest.json";
+    static final String SUMMARY_ENTRY = "summary.json";
+    static final String ROWS_PREFIX = "rows/";
+    static final String BLOBS_PREFIX = "blobs/";
+    static final String TOMBSTONES_PREFIX = "tombstones/";
+
+    private static final String IMPORT_SUFFIX = ".import";
+
+    private static final String[] FILE_COLUMNS = {"id", "original_name", "stored_name", "file_path", "file_type",
+            "detected_type", "file_size", "checksum", "upload_date", "user_id", "description", "is_active",
+            "version_number", "deleted_at"};
+    private static final int[] FILE_TYPES = {Types.BIGINT, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR,
+            Types.VARCHAR, Types.VARCHAR, Types.BIGINT, Types.VARCHAR, Types.TIMESTAMP, Types.BIGINT, Types.VARCHAR,
+            Types.BOOLEAN, Types.INTEGER, Types.TIMESTAMP};
+    private static final String[] VERSION_COLUMNS = {"file_id", "version_number", "original_name", "file_type",
+            "detected_type", "file_size", "checksum", "upload_date", "storage", "blob_path", "stored_size"};
+    private static final int[] VERSION_TYPES = {Types.BIGINT, Types.INTEGER, Types.VARCHAR, Types.VARCHAR,
+            Types.VARCHAR, Types.BIGINT, Types.VARCHAR, Types.TIMESTAMP, Types.VARCHAR, Types.VARCHAR, Types.BIGINT};
+
+    private static final String HIGH_WATER_SQL = "SELECT COALESCE(MAX(id), 0) FROM files";
+    // Deleted rows past the GC retention may have lost their blob already
+    private static final String PAGE_SQL = "SELECT " + String.join(", ", FILE_COLUMNS) +
+            " FROM files WHERE id > ? AND id <= ? AND (is_active = true OR deleted_at >= ?) ORDER BY id LIMIT ?";
+    // Restores leave upload_date and deleted_at alone, so they come from file_changes
+    private static final String CHANGED_PAGE_SQL = "SELECT " + String.join(", ", FILE_COLUMNS) +
+            " FROM files WHERE id > ? AND id <= ? AND (upload_date >= ? OR deleted_at >= ? OR id IN" +
+            " (SELECT file_id FROM file_changes WHERE change_type = '" + FileChange.RESTORED +
+            "' AND changed_at >= ?)) ORDER BY id LIMIT ?";
+    private static final String PURGED_PAGE_SQL = "SELECT file_id FROM file_changes WHERE change_type = '" +
+            FileChange.PURGED + "' AND changed_at >= ? AND file_id > ? ORDER BY file_id LIMIT ?";
+    private static final String INFO_SQL = "SELECT info_value FROM file_store_info WHERE info_key = ?";
+    private static final String SET_INFO_SQL = "INSERT INTO file_store_info (info_key, info_value) VALUES (?, ?)" +
+            " ON DUPLICATE KEY UPDATE info_value = VALUES(info_value)";
+    private static final String CLAIM_STORE_ID_SQL = "INSERT INTO file_store_info (info_key, info_value)" +
+            " VALUES (?, ?) ON DUPLICATE KEY UPDATE info_key = info_key";
+    private static final String UPSERT_FILE_SQL = upsert("files", FILE_COLUMNS, 1);
+    private static final String UPSERT_VERSION_SQL = upsert("file_versions", VERSION_COLUMNS, 2);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final FileStorageService fileStorageService;
+    private final UserQuotaService userQuotaService;
+    private final FileEventPublisher fileEventPublisher;
+    private final FileCache fileCache;
+    private final ObjectMapper objectMapper;
+    private final ArchiveConfig config;
+    private final FileGcConfig fileGcConfig;
+    private final AtomicBoolean importing = new AtomicBoolean();
+
+    public FileArchiveService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                              FileStorageService fileStorageService, UserQuotaService userQuotaService,
+                              FileEventPublisher fileEventPublisher, FileCache fileCache, ObjectMapper objectMapper,
+                              ArchiveConfig config, FileGcConfig fileGcConfig) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionManager = transactionManager;
+        this.fileStorageService = fileStorageService;
+        this.userQuotaService = userQuotaService;
+        this.fileEventPublisher = fileEventPublisher;
+        this.fileCache = fileCache;
+        this.objectMapper = objectMapper;
+        this.config = config;
+        this.fileGcConfig = fileGcConfig;
+    }
+
+    // Purges are only remembered for file.gc.change-retention, so an incremental
+    // export reaching further back would silently miss some
+    public void validateSince(LocalDateTime since) {
+        if (since != null && since.isBefore(LocalDateTime.now().minus(fileGcConfig.getChangeRetention()))) {
+            throw new IllegalArgumentException("since is older than the change retention of "
+                    + fileGcConfig.getChangeRetention() + "; take a full export instead");
+        }
+    }
+
+    // This store's id, created on first use; archives carry it so an import can
+    // tell whose ids it is about to upsert
+    String storeId() {
+        String id = info(FileStoreInfo.STORE_ID);
+        if (id == null) {
+            jdbcTemplate.update(CLAIM_STORE_ID_SQL, FileStoreInfo.STORE_ID, UUID.randomUUID().toString());
+            id = info(FileStoreInfo.STORE_ID);
+        }
+        return id;
+    }
+
+    private String info(String key) {
+        List<String> values = jdbcTemplate.queryForList(INFO_SQL, String.class, key);
+        return values.isEmpty() ? null : values.get(0);
+    }
+
+    // Writes the archive to out, which is flushed but not closed. With since, only
+    // files uploaded (or given a new version), deleted or restored at or after it are
+    // included, followed by the ids purged since; the blobs of files that were only
+    // deleted are left out.
+    public ArchiveReport export(OutputStream out, LocalDateTime since) throws IOException {
+        validateSince(since);
+        String storeId = storeId();
+        ArchiveReport report = new ArchiveReport("export", since);
+        ExecutorService readers = newPool("archive-reader", config.getReadThreads());
+        ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(out, 64 * 1024));
+        try {
+            new ExportRun(zip, readers, report).run(since, storeId);
+            report.finish(null);
+            writeJson(zip, SUMMARY_ENTRY, report);
+            zip.finish();
+            zip.flush();
+        } catch (IOException | RuntimeException ex) {
+            report.finish(ex.getMessage());
+            throw ex;
+        } finally {
+            readers.shutdownNow();
+        }
+        logger.info("Exported {} files, {} versions and {} blobs ({} bytes), skipped {}", report.getFiles(),
+                report.getVersions(), report.getBlobs(), report.getBlobBytes(), report.getSkipped());
+        return report;
+    }
+
+    // Reads an archive to its end. A damaged or truncated archive is reported in
+    // the report's error; the pages before the damage stay imported.
+    public ArchiveReport importArchive(InputStream in) {
+        if (!importing.compareAndSet(false, true)) {
+            throw new RejectedExecutionException("Another import is running");
+        }
+        ArchiveReport report = new ArchiveReport("import", null);
+        ExecutorService writers = newPool("archive-writer", config.getWriteThreads());
+        ImportRun run = new ImportRun(writers, report);
+        try {
+            run.run(new ZipInputStream(new BufferedInputStream(in, 64 * 1024)));
+            report.finish(null);
+        } catch (IOException ex) {
+            logger.warn("Import stopped: {}", ex.getMessage());
+            report.finish(ex.getMessage());
+        } catch (RuntimeException ex) {
+            report.finish(ex.getMessage());
+            throw ex;
+        } finally {
+            run.discardPending();
+            writers.shutdownNow();
+            importing.set(false);
+        }
+        logger.info("Imported {} files, {} versions and {} blobs ({} bytes), skipped {}", report.getFiles(),
+                report.getVersions(), report.getBlobs(), report.getBlobBytes(), report.getSkipped());
+        return report;
+    }
+
+    // A files row with its older versions; blobs tells whether the archive carries their content
+    private static final class Row {
+        final Map<String, Object> file;
+        final List<Map<String, Object>> versions;
+        final boolean blobs;
+
+        Row(Map<String, Object> file, List<Map<String, Object>> versions, boolean blobs) {
+            this.file = file;
+            this.versions = versions;
+            this.blobs = blobs;
+        }
+
+        Long id() {
+            return ((Number) file.get("id")).longValue();
+        }
+
+        String path() {
+            return (String) file.get("file_path");
+        }
+    }
+
+    // A blob an import has written next to its final path
+    private static final class WrittenBlob {
+        final String checksum;
+        final long size;
+
+        WrittenBlob(String checksum, long size) {
+            this.checksum = checksum;
+            this.size = size;
+        }
+    }
+
+    // Entry waiting in the export window: a blob being read, or a page of rows
+    private static final class Pending {
+        final Long fileId;
+        final String path;
+        final long reservedBytes;
+        final Future<byte[]> read; // null when the blob is too large to buffer and is streamed instead
+        final String problem; // set when the blob could not even be sized
+        final List<Row> page;
+
+        Pending(Long fileId, String path, long reservedBytes, Future<byte[]> read, String problem, List<Row> page) {
+            this.fileId = fileId;
+            this.path = path;
+            this.reservedBytes = reservedBytes;
+            this.read = read;
+            this.problem = problem;
+            this.page = page;
+        }
+    }
+
+    private final class ExportRun {
+
+        private final ZipOutputStream zip;
+        private final ExecutorService readers;
+        private final ArchiveReport report;
+        private final long bufferBytes = Math.max(1, config.getBufferBytes());
+        private final int maxEntries = Math.max(2, config.getWindowEntries());
+        private final ArrayDeque<Pending> window = new ArrayDeque<>();
+        private final Map<String, String> failed = new HashMap<>(); // blob path -> problem, for the page being written
+        private final TransactionTemplate pageTemplate = new TransactionTemplate(transactionManager);
+        private long windowBytes;
+        private int pages;
+
+        ExportRun(ZipOutputStream zip, ExecutorService readers, ArchiveReport report) {
+            this.zip = zip;
+            this.readers = readers;
+            this.report = report;
+            pageTemplate.setReadOnly(true);
+        }
+
+        void run(LocalDateTime since, String storeId) throws IOException {
+            report.setSnapshotAt(LocalDateTime.now());
+            // Files uploaded from here on have later upload dates and go into the next incremental export
+            long highWaterId = jdbcTemplate.queryForObject(HIGH_WATER_SQL, Long.class);
+            report.setHighWaterId(highWaterId);
+            Map<String, Object> manifest = new LinkedHashMap<>();
+            manifest.put("format", FORMAT_VERSION);
+            manifest.put("storeId", storeId);
+            manifest.put("snapshotAt", report.getSnapshotAt().toString());
+            manifest.put("highWaterId", highWaterId);
+            manifest.put("since", since != null ? since.toString() : null);
+            writeJson(zip, MANIFEST_ENTRY, manifest);
+
+            long lastId = 0;
+            while (true) {
+                long after = lastId;
+                List<Row> page = pageTemplate.execute(status -> readPage(after, highWaterId, since));
+                if (page.isEmpty()) {
+                    break;
+                }
+                for (Row row : page) {
+                    if (row.blobs) {
+                        addBlob(row.id(), row.path());
+                        for (Map<String, Object> version : row.versions) {
+                            if (version.get("blob_path") != null) {
+                                addBlob(row.id(), (String) version.get("blob_path"));
+                            }
+                        }
+                    }
+                    lastId = row.id();
+                }
+                makeRoom(0);
+                window.addLast(new Pending(null, null, 0, null, null, page));
+                writeReady();
+            }
+            while (!window.isEmpty()) {
+                writeHead();
+            }
+            if (since != null) {
+                writeTombstones(since);
+            }
+        }
+
+        // A page of rows with their versions, read together so they agree with each other
+        private List<Row> readPage(long after, long highWaterId, LocalDateTime since) {
+            // Computed per page, as the collector keeps running while the export streams
+            Timestamp collectable = Timestamp.valueOf(LocalDateTime.now().minus(fileGcConfig.getRetention()));
+            List<Map<String, Object>> files = since == null
+                    ? jdbcTemplate.query(PAGE_SQL, (rs, n) -> columns(rs, FILE_COLUMNS), after, highWaterId,
+                            collectable, config.getPageSize())
+                    : jdbcTemplate.query(CHANGED_PAGE_SQL, (rs, n) -> columns(rs, FILE_COLUMNS), after, highWaterId,
+                            Timestamp.valueOf(since), Timestamp.valueOf(since), Timestamp.valueOf(since),
+                            config.getPageSize());
+            if (files.isEmpty()) {
+                return Collections.emptyList();
+            }
+            Map<Long, List<Map<String, Object>>> versions = versionsOf(files);
+            List<Row> page = new ArrayList<>(files.size());
+            for (Map<String, Object> file : files) {
+                Long id = ((Number) file.get("id")).longValue();
+                boolean active = !Boolean.FALSE.equals(file.get("is_active"));
+                Object uploaded = file.get("upload_date");
+                Object deleted = file.get("deleted_at");
+                // A restored file's blob may have been deleted at the target. A deleted
+                // file the collector may have reached only ships its row.
+                boolean blobs = (since == null || active
+                        || (uploaded != null && !LocalDateTime.parse((String) uploaded).isBefore(since)))
+                        && (active || (deleted != null
+                        && !LocalDateTime.parse((String) deleted).isBefore(collectable.toLocalDateTime())));
+                page.add(new Row(file, versions.getOrDefault(id, Collections.emptyList()), blobs));
+            }
+            return page;
+        }
+
+        private void writeTombstones(LocalDateTime since) throws IOException {
+            long lastId = 0;
+            int part = 0;
+            while (true) {
+                List<Long> ids = jdbcTemplate.queryForList(PURGED_PAGE_SQL, Long.class, Timestamp.valueOf(since),
+                        lastId, config.getPageSize());
+                if (ids.isEmpty()) {
+                    return;
+                }
+                zip.setLevel(Deflater.DEFAULT_COMPRESSION);
+                zip.putNextEntry(new ZipEntry(TOMBSTONES_PREFIX + String.format("%08d.jsonl", ++part)));
+                for (Long id : ids) {
+                    zip.write((id + "\n").getBytes(StandardCharsets.US_ASCII));
+                }
+                zip.closeEntry();
+                report.addPurged(ids.size());
+                lastId = ids.get(ids.size() - 1);
+            }
+        }
+
+        private Map<Long, List<Map<String, Object>>> versionsOf(List<Map<String, Object>> files) {
+            StringBuilder sql = new StringBuilder("SELECT ").append(String.join(", ", VERSION_COLUMNS))
+                    .append(" FROM file_versions WHERE file_id IN (");
+            Object[] ids = new Object[files.size()];
+            for (int i = 0; i < ids.length; i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+                ids[i] = files.get(i).get("id");
+            }
+            sql.append(") ORDER BY file_id, version_number");
+            Map<Long, List<Map<String, Object>>> byFile = new HashMap<>();
+            jdbcTemplate.query(sql.toString(), rs -> {
+                Map<String, Object> version = columns(rs, VERSION_COLUMNS);
+                byFile.computeIfAbsent(((Number) version.get("file_id")).longValue(), id -> new ArrayList<>())
+                        .add(version);
+            }, ids);
+            return byFile;
+        }
+
+        // Starts reading a blob unless the window is full, in which case the oldest
+        // entries are written out first
+        private void addBlob(Long fileId, String relativePath) throws IOException {
+            Path path = fileStorageService.resolvePath(relativePath);
+            long size;
+            try {
+                size = Files.size(path);
+            } catch (NoSuchFileException ex) {
+                makeRoom(0);
+                window.addLast(new Pending(fileId, relativePath, 0, null, ArchiveReport.BLOB_MISSING, null));
+                return;
+            }
+            if (size > bufferBytes / 4) {
+                makeRoom(0);
+                window.addLast(new Pending(fileId, relativePath, 0, null, null, null));
+                return;
+            }
+            makeRoom(size);
+            windowBytes += size;
+            Future<byte[]> read = readers.submit(() -> fileStorageService.readBlob(path));
+            window.addLast(new Pending(fileId, relativePath, size, read, null, null));
+        }
+
+        // The window is bounded by entries as well as bytes, so pages of rows, missing
+        // blobs and large blobs (which hold no buffer) can't pile up either
+        private void makeRoom(long bytes) throws IOException {
+            while (!window.isEmpty() && (window.size() >= maxEntries || windowBytes + bytes > bufferBytes)) {
+                writeHead();
+            }
+        }
+
+        // Writes everything up to the first blob still being read, so a page goes out
+        // as soon as its blobs have
+        private void writeReady() throws IOException {
+            while (!window.isEmpty() && (window.peekFirst().read == null || window.peekFirst().read.isDone())) {
+                writeHead();
+            }
+        }
+
+        private void writeHead() throws IOException {
+            Pending head = window.pollFirst();
+            if (head.page != null) {
+                writePage(head.page);
+                return;
+            }
+            if (head.problem != null) {
+                failed.put(head.path, head.problem);
+                return;
+            }
+            if (head.read != null) {
+                windowBytes -= head.reservedBytes;
+                byte[] content;
+                try {
+                    content = head.read.get();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while reading blobs");
+                } catch (ExecutionException ex) {
+                    logger.debug("Leaving out blob {} of file {}: {}", head.path, head.fileId,
+                            ex.getCause().toString());
+                    failed.put(head.path, problemOf(ex.getCause()));
+                    return;
+                }
+                ZipEntry entry = new ZipEntry(BLOBS_PREFIX + head.path);
+                if (config.getBlobCompressionLevel() == 0) {
+                    // Stored entries skip the deflater, which feeds itself 512 bytes at a time
+                    CRC32 crc = new CRC32();
+                    crc.update(content);
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(content.length);
+                    entry.setCompressedSize(content.length);
+                    entry.setCrc(crc.getValue());
+                } else {
+                    zip.setLevel(config.getBlobCompressionLevel());
+                }
+                zip.putNextEntry(entry);
+                zip.write(content);
+                zip.closeEntry();
+                report.addBlob(content.length);
+                return;
+            }
+
+            // Too large for the buffer: stream it while the readers keep working ahead
+            InputStream in;
+            try {
+                in = fileStorageService.openBlob(fileStorageService.resolvePath(head.path));
+            } catch (IOException ex) {
+                failed.put(head.path, problemOf(ex));
+                return;
+            }
+            try (in) {
+                startBlobEntry(head.path);
+                long bytes = in.transferTo(zip);
+                zip.closeEntry();
+                report.addBlob(bytes);
+            }
+        }
+
+        private void startBlobEntry(String path) throws IOException {
+            zip.setLevel(config.getBlobCompressionLevel());
+            zip.putNextEntry(new ZipEntry(BLOBS_PREFIX + path));
+        }
+
+        private void writePage(List<Row> page) throws IOException {
+            ByteArrayOutputStream lines = new ByteArrayOutputStream();
+            int files = 0;
+            int versions = 0;
+            for (Row row : page) {
+                List<Map<String, Object>> kept = row.versions;
+                if (row.blobs) {
+                    String problem = failed.get(row.path());
+                    if (problem != null) {
+                        report.addSkipped(row.id(), row.path(), problem);
+                        continue;
+                    }
+                    kept = new ArrayList<>(row.versions.size());
+                    for (Map<String, Object> version : row.versions) {
+                        String versionProblem = version.get("blob_path") != null
+                                ? failed.get((String) version.get("blob_path")) : null;
+                        if (versionProblem != null) {
+                            report.addSkipped(row.id(), (String) version.get("blob_path"), versionProblem);
+                        } else {
+                            kept.add(version);
+                        }
+                    }
+                }
+                Map<String, Object> line = new LinkedHashMap<>();
+                line.put("file", row.file);
+                line.put("versions", kept);
+                line.put("blobs", row.blobs);
+                lines.write(objectMapper.writeValueAsBytes(line));
+                lines.write('\n');
+                files++;
+                versions += kept.size();
+            }
+            failed.clear();
+            if (files == 0) {
+                return;
+            }
+            zip.setLevel(Deflater.DEFAULT_COMPRESSION);
+            zip.putNextEntry(new ZipEntry(ROWS_PREFIX + String.format("%08d.jsonl", ++pages)));
+            lines.writeTo(zip);
+            zip.closeEntry();
+            report.addFiles(files);
+            report.addVersions(versions);
+        }
+    }
+
+    private final class ImportRun {
+
+        private final ExecutorService writers;
+        private final ArchiveReport report;
+        private final int inlineBytes = (int) Math.min(Integer.MAX_VALUE / 2, Math.max(1, config.getBufferBytes() / 4));
+        private final Semaphore buffered = new Semaphore((int) Math.min(Integer.MAX_VALUE,
+                Math.max(inlineBytes, config.getBufferBytes())));
+        private final Map<String, Future<WrittenBlob>> pending = new HashMap<>(); // blob path -> written blob
+        private final TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        ImportRun(ExecutorService writers, ArchiveReport report) {
+            this.writers = writers;
+            this.report = report;
+        }
+
+        void run(ZipInputStream zip) throws IOException {
+            boolean started = false;
+            boolean complete = false;
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                String name = entry.getName();
+                if (!started) {
+                    if (!MANIFEST_ENTRY.equals(name)) {
+                        throw new IOException("Not a file store archive");
+                    }
+                    readManifest(zip);
+                    started = true;
+                } else if (name.startsWith(BLOBS_PREFIX)) {
+                    addBlob(name.substring(BLOBS_PREFIX.length()), zip);
+                } else if (name.startsWith(ROWS_PREFIX)) {
+                    applyPage(readRows(zip));
+                } else if (name.startsWith(TOMBSTONES_PREFIX)) {
+                    applyTombstones(readIds(zip));
+                } else if (SUMMARY_ENTRY.equals(name)) {
+                    complete = true;
+                }
+                zip.closeEntry();
+            }
+            if (!complete) {
+                throw new IOException("Archive is truncated; the pages before the cut were imported");
+            }
+        }
+
+        private void readManifest(InputStream in) throws IOException {
+            Map<String, Object> manifest = objectMapper.readValue(in.readAllBytes(),
+                    new TypeReference<Map<String, Object>>() { });
+            Object format = manifest.get("format");
+            if (!(format instanceof Number) || ((Number) format).intValue() != FORMAT_VERSION) {
+                throw new IOException("Unsupported archive format " + format);
+            }
+            Object snapshotAt = manifest.get("snapshotAt");
+            report.setSnapshotAt(snapshotAt != null ? LocalDateTime.parse((String) snapshotAt) : null);
+            Object highWaterId = manifest.get("highWaterId");
+            report.setHighWaterId(highWaterId instanceof Number ? ((Number) highWaterId).longValue() : null);
+            Object storeId = manifest.get("storeId");
+            if (!(storeId instanceof String)) {
+                throw new IOException("Archive does not name its source store");
+            }
+            checkSource((String) storeId);
+        }
+
+        // Ids are upserted as they are, which is only safe into the store the archive
+        // came from, a store earlier filled from it, or an empty one
+        private void checkSource(String sourceId) throws IOException {
+            if (sourceId.equals(storeId()) || sourceId.equals(info(FileStoreInfo.IMPORTED_FROM))) {
+                return;
+            }
+            if (!jdbcTemplate.queryForList("SELECT id FROM files LIMIT 1", Long.class).isEmpty()) {
+                throw new IOException("This store holds files that were not imported from store " + sourceId
+                        + " and their ids would collide; import into an empty store");
+            }
+            jdbcTemplate.update(SET_INFO_SQL, FileStoreInfo.IMPORTED_FROM, sourceId);
+        }
+
+        // Small blobs are handed to the writer pool; one too large to buffer is
+        // written on this thread while the pool finishes the others
+        private void addBlob(String relativePath, InputStream entry) throws IOException {
+            Path target = checkedPath(relativePath);
+            Path temp = target.resolveSibling(target.getFileName() + IMPORT_SUFFIX);
+            byte[] head = entry.readNBytes(inlineBytes + 1);
+            if (head.length > inlineBytes) {
+                WrittenBlob written = writeBlob(temp, new SequenceInputStream(new ByteArrayInputStream(head), entry));
+                pending.put(relativePath, CompletableFuture.completedFuture(written));
+                return;
+            }
+            try {
+                buffered.acquire(head.length);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while importing blobs");
+            }
+            pending.put(relativePath, writers.submit(() -> {
+                try {
+                    return writeBlob(temp, new ByteArrayInputStream(head));
+                } finally {
+                    buffered.release(head.length);
+                }
+            }));
+        }
+
+        private WrittenBlob writeBlob(Path temp, InputStream content) throws IOException {
+            Files.createDirectories(temp.getParent());
+            MessageDigest digest = Checksums.newDigest();
+            long bytes;
+            try (OutputStream out = new DigestOutputStream(fileStorageService.createBlob(temp,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE),
+                    digest)) {
+                bytes = content.transferTo(out);
+            }
+            report.addBlob(bytes);
+            return new WrittenBlob(Checksums.hex(digest), bytes);
+        }
+
+        private List<Row> readRows(InputStream entry) throws IOException {
+            List<Row> rows = new ArrayList<>();
+            // Not closed: that would close the archive stream
+            BufferedReader reader = new BufferedReader(new InputStreamReader(entry, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                Map<String, Object> parsed = objectMapper.readValue(line, new TypeReference<Map<String, Object>>() { });
+                @SuppressWarnings("unchecked")
+                Map<String, Object> file = (Map<String, Object>) parsed.get("file");
+                @SuppressWarnings("unchecked")
+                List<Map<String, Object>> versions = (List<Map<String, Object>>) parsed.get("versions");
+                if (file == null || !(file.get("id") instanceof Number) || !(file.get("file_path") instanceof String)) {
+                    throw new IOException("Malformed row in archive");
+                }
+                rows.add(new Row(file, versions != null ? versions : Collections.emptyList(),
+                        Boolean.TRUE.equals(parsed.get("blobs"))));
+            }
+            return rows;
+        }
+
+        private List<Long> readIds(InputStream entry) throws IOException {
+            List<Long> ids = new ArrayList<>();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(entry, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    ids.add(Long.parseLong(line.trim()));
+                } catch (NumberFormatException ex) {
+                    throw new IOException("Malformed tombstone in archive");
+                }
+            }
+            return ids;
+        }
+
+        // Files purged at the source go here too, blobs and versions included
+        private void applyTombstones(List<Long> ids) {
+            if (ids.isEmpty()) {
+                return;
+            }
+            Map<Long, Map<String, Object>> existing = existingRows(ids);
+            if (existing.isEmpty()) {
+                return;
+            }
+            Object[] args = existing.keySet().toArray();
+            String in = placeholders(args.length);
+            List<String> versionBlobs = jdbcTemplate.queryForList("SELECT blob_path FROM file_versions WHERE file_id IN ("
+                    + in + ") AND blob_path IS NOT NULL", String.class, args);
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.update("DELETE FROM file_versions WHERE file_id IN (" + in + ")", args);
+                jdbcTemplate.update("DELETE FROM files WHERE id IN (" + in + ")", args);
+            });
+            report.addPurged(existing.size());
+
+            for (String blobPath : versionBlobs) {
+                fileStorageService.deleteFile(blobPath);
+            }
+            for (Map.Entry<Long, Map<String, Object>> entry : existing.entrySet()) {
+                Map<String, Object> previous = entry.getValue();
+                String path = (String) previous.get("file_path");
+                fileStorageService.deleteFile(path);
+                fileCache.invalidateFile(entry.getKey());
+                fileCache.invalidateContent(path);
+                if (!Boolean.FALSE.equals(previous.get("is_active"))) {
+                    userQuotaService.releaseStorage((Long) previous.get("user_id"), (Long) previous.get("charged"));
+                    fileEventPublisher.publish(FileEvent.DELETED, entry.getKey(), null);
+                }
+            }
+        }
+
+        private void applyPage(List<Row> page) throws IOException {
+            List<Row> accepted = new ArrayList<>(page.size());
+            List<Map<String, Object>> versions = new ArrayList<>();
+            List<String> moves = new ArrayList<>();
+            for (Row row : page) {
+                checkedPath(row.path());
+                if (!row.blobs) {
+                    accepted.add(row);
+                    versions.addAll(row.versions);
+                    continue;
+                }
+                Future<WrittenBlob> written = pending.remove(row.path());
+                if (written == null) {
+                    report.addSkipped(row.id(), row.path(), ArchiveReport.BLOB_MISSING);
+                    continue;
+                }
+                Object expected = row.file.get("checksum");
+                if (expected != null && !expected.equals(await(written).checksum)) {
+                    report.addSkipped(row.id(), row.path(), ArchiveReport.CHECKSUM_MISMATCH);
+                    deleteQuietly(tempOf(row.path()));
+                    continue;
+                }
+                accepted.add(row);
+                moves.add(row.path());
+                for (Map<String, Object> version : row.versions) {
+                    String blobPath = (String) version.get("blob_path");
+                    if (blobPath == null) {
+                        versions.add(version);
+                        continue;
+                    }
+                    checkedPath(blobPath);
+                    Future<WrittenBlob> versionWritten = pending.remove(blobPath);
+                    if (versionWritten == null) {
+                        report.addSkipped(row.id(), blobPath, ArchiveReport.BLOB_MISSING);
+                        continue;
+                    }
+                    if (!matches(version, await(versionWritten))) {
+                        report.addSkipped(row.id(), blobPath, ArchiveReport.CHECKSUM_MISMATCH);
+                        deleteQuietly(tempOf(blobPath));
+                        continue;
+                    }
+                    versions.add(version);
+                    moves.add(blobPath);
+                }
+            }
+            // Blobs nobody in this page claimed
+            discardPending();
+            if (accepted.isEmpty()) {
+                return;
+            }
+
+            List<Long> ids = new ArrayList<>(accepted.size());
+            for (Row row : accepted) {
+                ids.add(row.id());
+            }
+            Map<Long, Map<String, Object>> existing = existingRows(ids);
+            for (String path : moves) {
+                Files.move(tempOf(path), checkedPath(path), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
+            transactionTemplate.executeWithoutResult(status -> {
+                List<Object[]> fileArgs = new ArrayList<>(accepted.size());
+                for (Row row : accepted) {
+                    fileArgs.add(values(row.file, FILE_COLUMNS));
+                }
+                jdbcTemplate.batchUpdate(UPSERT_FILE_SQL, fileArgs, fileArgs.size(),
+                        (ps, args) -> bind(ps, args, FILE_TYPES));
+                if (!versions.isEmpty()) {
+                    List<Object[]> versionArgs = new ArrayList<>(versions.size());
+                    for (Map<String, Object> version : versions) {
+                        versionArgs.add(values(version, VERSION_COLUMNS));
+                    }
+                    jdbcTemplate.batchUpdate(UPSERT_VERSION_SQL, versionArgs, versionArgs.size(),
+                            (ps, args) -> bind(ps, args, VERSION_TYPES));
+                }
+            });
+            report.addFiles(accepted.size());
+            report.addVersions(versions.size());
+
+            Map<Long, Map<String, Object>> imported = existingRows(ids);
+            for (Row row : accepted) {
+                afterImport(row, existing.get(row.id()), (Long) imported.get(row.id()).get("charged"));
+            }
+        }
+
+        // A full copy holds the version's content, so it has the version's checksum. A
+        // delta only has its stored size here; its own CRC is checked when it is applied.
+        private boolean matches(Map<String, Object> version, WrittenBlob written) {
+            if (FileVersion.FULL.equals(version.get("storage"))) {
+                Object expected = version.get("checksum");
+                return expected == null || expected.equals(written.checksum);
+            }
+            Object storedSize = version.get("stored_size");
+            return !(storedSize instanceof Number) || ((Number) storedSize).longValue() == written.size;
+        }
+
+        // Quota, caches and change feed follow the imported row like they follow an upload
+        private void afterImport(Row row, Map<String, Object> previous, long charged) {
+            File file = toFile(row.file);
+            boolean active = !Boolean.FALSE.equals(file.getIsActive());
+            String type = null;
+            if (previous == null) {
+                type = active ? FileEvent.UPLOADED : null;
+            } else {
+                boolean wasActive = !Boolean.FALSE.equals(previous.get("is_active"));
+                String previousPath = (String) previous.get("file_path");
+                if (wasActive) {
+                    userQuotaService.releaseStorage((Long) previous.get("user_id"), (Long) previous.get("charged"));
+                }
+                if (!previousPath.equals(file.getFilePath())) {
+                    fileStorageService.deleteFile(previousPath);
+                }
+                fileCache.invalidateFile(file.getId());
+                fileCache.invalidateContent(previousPath);
+                if (wasActive) {
+                    type = active ? FileEvent.UPDATED : FileEvent.DELETED;
+                } else if (active) {
+                    type = FileEvent.RESTORED;
+                }
+            }
+            if (active) {
+                userQuotaService.addStorage(file.getUserId(), charged);
+            }
+            if (type != null) {
+                fileEventPublisher.publish(type, file.getId(), file);
+            }
+        }
+
+        // charged is what the row counts against its owner's quota: the file and its older versions
+        private Map<Long, Map<String, Object>> existingRows(List<Long> ids) {
+            String sql = "SELECT id, file_path, user_id, is_active, file_size + (SELECT COALESCE(SUM(v.stored_size), 0)"
+                    + " FROM file_versions v WHERE v.file_id = files.id) AS charged FROM files WHERE id IN ("
+                    + placeholders(ids.size()) + ")";
+            Map<Long, Map<String, Object>> existing = new HashMap<>();
+            jdbcTemplate.query(sql, rs -> {
+                Map<String, Object> row = new HashMap<>();
+                row.put("file_path", rs.getString("file_path"));
+                row.put("charged", rs.getLong("charged"));
+                long userId = rs.getLong("user_id");
+                row.put("user_id", rs.wasNull() ? null : userId);
+                row.put("is_active", rs.getBoolean("is_active"));
+                existing.put(rs.getLong("id"), row);
+            }, ids.toArray());
+            return existing;
+        }
+
+        void discardPending() {
+            for (Map.Entry<String, Future<WrittenBlob>> entry : pending.entrySet()) {
+                try {
+                    entry.getValue().get();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException ex) {
+                    // Nothing to keep either way
+                }
+                deleteQuietly(tempOf(entry.getKey()));
+            }
+            pending.clear();
+        }
+
+        private Path tempOf(String relativePath) {
+            Path target = fileStorageService.resolvePath(relativePath);
+            return target.resolveSibling(target.getFileName() + IMPORT_SUFFIX);
+        }
+    }
+
+    // Archive paths are relative to the upload directory and must stay inside it
+    private Path checkedPath(String relativePath) throws IOException {
+        Path root = fileStorageService.getFileStorageLocation();
+        Path target = fileStorageService.resolvePath(relativePath);
+        if (relativePath.isEmpty() || target.equals(root) || !target.startsWith(root)) {
+            throw new IOException("Archive path outside the upload directory: " + relativePath);
+        }
+        return target;
+    }
+
+    private void writeJson(ZipOutputStream zip, String name, Object value) throws IOException {
+        zip.setLevel(Deflater.DEFAULT_COMPRESSION);
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(objectMapper.writeValueAsBytes(value));
+        zip.closeEntry();
+    }
+
+    // Column values as JSON-friendly types: dates become ISO strings
+    private static Map<String, Object> columns(ResultSet rs, String[] names) throws SQLException {
+        Map<String, Object> row = new LinkedHashMap<>();
+        for (String name : names) {
+            Object value = rs.getObject(name);
+            if (value instanceof Timestamp) {
+                value = ((Timestamp) value).toLocalDateTime().toString();
+            } else if (value instanceof LocalDateTime) {
+                value = value.toString();
+            }
+            row.put(name, value);
+        }
+        return row;
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder marks = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            marks.append(i == 0 ? "?" : ", ?");
+        }
+        return marks.toString();
+    }
+
+    private static Object[] values(Map<String, Object> row, String[] names) {
+        Object[] values = new Object[names.length];
+        for (int i = 0; i < names.length; i++) {
+            values[i] = row.get(names[i]);
+        }
+        return values;
+    }
+
+    private static void bind(PreparedStatement ps, Object[] values, int[] types) throws SQLException {
+        for (int i = 0; i < values.length; i++) {
+            Object value = values[i];
+            int index = i + 1;
+            if (value == null) {
+                ps.setNull(index, types[i]);
+            } else if (types[i] == Types.BIGINT) {
+                ps.setLong(index, ((Number) value).longValue());
+            } else if (types[i] == Types.INTEGER) {
+                ps.setInt(index, ((Number) value).intValue());
+            } else if (types[i] == Types.TIMESTAMP) {
+                ps.setTimestamp(index, Timestamp.valueOf(LocalDateTime.parse(value.toString())));
+            } else if (types[i] == Types.BOOLEAN) {
+                ps.setBoolean(index, value instanceof Boolean ? (Boolean) value : ((Number) value).intValue() != 0);
+            } else {
+                ps.setString(index, value.toString());
+            }
+        }
+    }
+
+    private static File toFile(Map<String, Object> row) {
+        File file = new File();
+        file.setId(((Number) row.get("id")).longValue());
+        file.setOriginalName((String) row.get("original_name"));
+        file.setStoredName((String) row.get("stored_name"));
+        file.setFilePath((String) row.get("file_path"));
+        file.setFileType((String) row.get("file_type"));
+        file.setDetectedType((String) row.get("detected_type"));
+        file.setFileSize(((Number) row.get("file_size")).longValue());
+        file.setChecksum((String) row.get("checksum"));
+        file.setUploadDate(row.get("upload_date") != null ? LocalDateTime.parse((String) row.get("upload_date")) : null);
+        file.setUserId(row.get("user_id") != null ? ((Number) row.get("user_id")).longValue() : null);
+        file.setDescription((String) row.get("description"));
+        Object active = row.get("is_active");
+        file.setIsActive(active instanceof Number ? ((Number) active).intValue() != 0 : (Boolean) active);
+        file.setVersionNumber(row.get("version_number") != null ? ((Number) row.get("version_number")).intValue() : null);
+        file.setDeletedAt(row.get("deleted_at") != null ? LocalDateTime.parse((String) row.get("deleted_at")) : null);
+        return file;
+    }
+
+    // INSERT ... ON DUPLICATE KEY UPDATE of every column after the first keyColumns
+    private static String upsert(String table, String[] columns, int keyColumns) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (")
+                .append(String.join(", ", columns)).append(") VALUES (");
+        for (int i = 0; i < columns.length; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(") ON DUPLICATE KEY UPDATE ");
+        for (int i = keyColumns; i < columns.length; i++) {
+            sql.append(i == keyColumns ? "" : ", ").append(columns[i]).append(" = VALUES(").append(columns[i])
+                    .append(")");
+        }
+        return sql.toString();
+    }
+
+    private static String problemOf(Throwable ex) {
+        return ex instanceof NoSuchFileException ? ArchiveReport.BLOB_MISSING : ArchiveReport.UNREADABLE;
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while importing blobs");
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException("Could not write blob", ex.getCause());
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ex) {
+            logger.warn("Could not remove {}", path, ex);
+        }
+    }
+
+    private static ExecutorService newPool(String name, int threads) {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,313 @@
+package com.example.demo.service;
+
+import com.example.demo.config.FileBatchConfig;
+import com.example.demo.exception.FileStorageException;
+import com.example.demo.model.File;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Group-commit writer for the files table. Concurrent uploads and soft-deletes are
+// queued and a single thread flushes whatever has accumulated as one JDBC batch
+// in one short transaction. Under light load a batch is a single row, so nothing
+// waits for a batch to fill up. A caller that times out cancels its write if the
+// writer has not picked it up yet; otherwise it waits for the outcome, so a
+// reported failure always means the row was not written.
+@Component
+public class FileBatchWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileBatchWriter.class);
+
+    static final String INSERT_SQL = "INSERT INTO files (original_name, stored_name, file_path, file_type, " +
+            "detected_type, file_size, checksum, upload_date, user_id, description, is_active, version_number) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    static final String DEACTIVATE_SQL = "UPDATE files SET is_active = false, deleted_at = ? " +
+            "WHERE id = ? AND is_active = true";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final FileBatchConfig config;
+    private final BlockingQueue<PendingWrite> queue;
+
+    private volatile boolean running;
+    private Thread writerThread;
+
+    public FileBatchWriter(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                           FileBatchConfig config) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.config = config;
+        this.queue = new ArrayBlockingQueue<>(config.getQueueCapacity());
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        writerThread = new Thread(this::runWriter, "file-batch-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writerThread.interrupt();
+        writerThread.join(config.getTimeoutMs());
+    }
+
+    // Insert a new row and set its generated id on the given entity
+    public File insert(File file) {
+        await(enqueue(new PendingWrite(file, null)));
+        return file;
+    }
+
+    // Soft delete: flip is_active and stamp deleted_at; returns true if an active row was updated
+    public boolean deactivate(Long id) {
+        int updated = await(enqueue(new PendingWrite(null, id)));
+        return updated > 0 || updated == Statement.SUCCESS_NO_INFO;
+    }
+
+    // Bulk path for callers that already hold many rows, bypassing the queue
+    public List<File> insertAll(List<File> files) {
+        for (int from = 0; from < files.size(); from += config.getSize()) {
+            List<File> chunk = files.subList(from, Math.min(files.size(), from + config.getSize()));
+            transactionTemplate.executeWithoutResult(status -> insertBatch(chunk));
+        }
+        return files;
+    }
+
+    // Returns the ids whose row was still active and has now been flipped
+    public List<Long> deactivateAll(Collection<Long> ids) {
+        List<Long> idList = new ArrayList<>(ids);
+        List<Long> updated = new ArrayList<>();
+        for (int from = 0; from < idList.size(); from += config.getSize()) {
+            List<Long> chunk = idList.subList(from, Math.min(idList.size(), from + config.getSize()));
+            int[] counts = transactionTemplate.execute(status -> deactivateBatch(chunk));
+            for (int i = 0; i < counts.length; i++) {
+                // Drivers that rewrite batches may only report success, not a row count
+                if (counts[i] > 0 || counts[i] == Statement.SUCCESS_NO_INFO) {
+                    updated.add(chunk.get(i));
+                }
+            }
+        }
+        return updated;
+    }
+
+    private PendingWrite enqueue(PendingWrite write) {
+        if (!running) {
+            throw new FileStorageException("File metadata writer is not running");
+        }
+        try {
+            if (!queue.offer(write, config.getTimeoutMs(), TimeUnit.MILLISECONDS)) {
+                throw new FileStorageException("File metadata writer is overloaded, please try again");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new FileStorageException("Interrupted while queueing file metadata", ex);
+        }
+        return write;
+    }
+
+    private int await(PendingWrite write) {
+        try {
+            return write.result.get(config.getTimeoutMs(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            if (write.cancel()) {
+                queue.remove(write);
+                throw new FileStorageException("Interrupted while saving file metadata", ex);
+            }
+            return awaitStarted(write);
+        } catch (ExecutionException ex) {
+            throw new FileStorageException("Could not save file metadata", ex.getCause());
+        } catch (TimeoutException ex) {
+            if (write.cancel()) {
+                queue.remove(write);
+                throw new FileStorageException("Timed out saving file metadata", ex);
+            }
+            return awaitStarted(write);
+        }
+    }
+
+    // The write is already in a transaction; its outcome decides what the caller may clean up
+    private int awaitStarted(PendingWrite write) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return write.result.get();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                } catch (ExecutionException ex) {
+                    throw new FileStorageException("Could not save file metadata", ex.getCause());
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void runWriter() {
+        List<PendingWrite> batch = new ArrayList<>(config.getSize());
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingWrite first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, config.getSize() - 1);
+                // Writes whose caller gave up are dropped; the rest can no longer be cancelled
+                batch.removeIf(write -> !write.start());
+                if (!batch.isEmpty()) {
+                    flush(batch);
+                }
+            } catch (InterruptedException ex) {
+                if (running) {
+                    logger.warn("File batch writer interrupted while running");
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingWrite> batch) {
+        List<File> inserts = new ArrayList<>();
+        List<Long> deactivations = new ArrayList<>();
+        for (PendingWrite write : batch) {
+            if (write.file != null) {
+                inserts.add(write.file);
+            } else {
+                deactivations.add(write.deactivateId);
+            }
+        }
+
+        try {
+            int[] updated = transactionTemplate.execute(status -> {
+                insertBatch(inserts);
+                return deactivateBatch(deactivations);
+            });
+            int next = 0;
+            for (PendingWrite write : batch) {
+                write.result.complete(write.file != null ? 1 : updated[next++]);
+            }
+        } catch (RuntimeException ex) {
+            // One bad row must not fail the others; retry each in its own transaction
+            if (batch.size() == 1) {
+                batch.get(0).result.completeExceptionally(ex);
+                return;
+            }
+            logger.debug("Batch of {} writes failed, retrying individually: {}", batch.size(), ex.getMessage());
+            for (PendingWrite write : batch) {
+                flush(new ArrayList<>(List.of(write)));
+            }
+        }
+    }
+
+    private void insertBatch(List<File> files) {
+        if (files.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                for (File file : files) {
+                    bindInsert(ps, file);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+
+                int index = 0;
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    while (keys.next() && index < files.size()) {
+                        files.get(index++).setId(keys.getLong(1));
+                    }
+                }
+                if (index != files.size()) {
+                    throw new SQLException("Expected " + files.size() + " generated keys but got " + index);
+                }
+            }
+            return null;
+        });
+    }
+
+    private int[] deactivateBatch(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return new int[0];
+        }
+        Timestamp deletedAt = Timestamp.valueOf(LocalDateTime.now());
+        return jdbcTemplate.batchUpdate(DEACTIVATE_SQL, ids, ids.size(), (ps, id) -> {
+            ps.setTimestamp(1, deletedAt);
+            ps.setLong(2, id);
+        })[0];
+    }
+
+    private static void bindInsert(PreparedStatement ps, File file) throws SQLException {
+        ps.setString(1, file.getOriginalName());
+        ps.setString(2, file.getStoredName());
+        ps.setString(3, file.getFilePath());
+        ps.setString(4, file.getFileType());
+        ps.setString(5, file.getDetectedType());
+        ps.setLong(6, file.getFileSize());
+        ps.setString(7, file.getChecksum());
+        ps.setTimestamp(8, file.getUploadDate() != null ? Timestamp.valueOf(file.getUploadDate()) : null);
+        if (file.getUserId() != null) {
+            ps.setLong(9, file.getUserId());
+        } else {
+            ps.setNull(9, Types.BIGINT);
+        }
+        ps.setString(10, file.getDescription());
+        ps.setBoolean(11, file.getIsActive() == null || file.getIsActive());
+        ps.setInt(12, file.getVersionNumber());
+    }
+
+    private static class PendingWrite {
+        private static final int QUEUED = 0;
+        private static final int STARTED = 1;
+        private static final int CANCELLED = 2;
+
+        final File file;
+        final Long deactivateId;
+        final CompletableFuture<Integer> result = new CompletableFuture<>();
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+
+        PendingWrite(File file, Long deactivateId) {
+            this.file = file;
+            this.deactivateId = deactivateId;
+        }
+
+        boolean start() {
+            return state.compareAndSet(QUEUED, STARTED);
+        }
+
+        boolean cancel() {
+            return state.compareAndSet(QUEUED, CANCELLED);
+        }
+    }
+}
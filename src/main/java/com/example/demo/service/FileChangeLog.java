@@ -0,0 +1,47 @@
+package com.example.demo.service;
+
+import com.example.demo.model.FileChange;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+// Records restores and purges in file_changes so incremental exports can ship
+// them. Only a file's latest change is kept.
+@Service
+public class FileChangeLog {
+
+    static final String RECORD_SQL = "INSERT INTO file_changes (file_id, change_type, changed_at) VALUES (?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE change_type = VALUES(change_type), changed_at = VALUES(changed_at)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public FileChangeLog(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void recordRestored(Long fileId) {
+        jdbcTemplate.update(RECORD_SQL, fileId, FileChange.RESTORED, Timestamp.valueOf(LocalDateTime.now()));
+    }
+
+    public void recordPurged(Collection<Long> fileIds) {
+        if (fileIds.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> args = new ArrayList<>(fileIds.size());
+        for (Long fileId : fileIds) {
+            args.add(new Object[]{fileId, FileChange.PURGED, now});
+        }
+        jdbcTemplate.batchUpdate(RECORD_SQL, args);
+    }
+
+    // Forgets changes older than cutoff; incremental exports can't start before it
+    public int prune(LocalDateTime cutoff) {
+        return jdbcTemplate.update("DELETE FROM file_changes WHERE changed_at < ?", Timestamp.valueOf(cutoff));
+    }
+}
@@ -0,0 +1,248 @@
+package com.example.demo.service;
+
+import com.example.demo.cluster.ClusterMessage;
+import com.example.demo.cluster.ClusterTransport;
+import com.example.demo.config.FileEventsConfig;
+import com.example.demo.model.File;
+import com.example.demo.model.FileEvent;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Change feed for the file list. Events go into one shared ring buffer and each
+// subscriber only keeps a cursor into it, so an idle connection costs a few
+// fields no matter how busy the feed is. A publish marks subscribers as due and
+// a small pool drains each one on its own; a slow client holds up only itself.
+// A subscriber that falls further behind than the ring is told to reload.
+// Listeners whose writes block are wrapped with queued(), so a stalled client
+// holds a sender thread rather than one of the shared delivery threads.
+// Events are also sent to the other nodes, which replay them into their own
+// feeds (see RemoteFileEventRelay); event ids are only meaningful per node.
+@Service
+public class FileEventPublisher {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileEventPublisher.class);
+
+    private static final int MAX_BATCH = 64;
+
+    private final FileEventsConfig config;
+    private final ClusterTransport transport;
+    private final long epoch = System.currentTimeMillis();
+    private final FileEvent[] ring;
+    private long lastSequence; // guarded by ring
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private final ExecutorService deliveryExecutor;
+    private final ThreadPoolExecutor sendExecutor;
+
+    public FileEventPublisher(FileEventsConfig config, ClusterTransport transport) {
+        this.config = config;
+        this.transport = transport;
+        this.ring = new FileEvent[Math.max(16, config.getBufferSize())];
+        this.deliveryExecutor = Executors.newFixedThreadPool(Math.max(1, config.getDeliveryThreads()), runnable -> {
+            Thread thread = new Thread(runnable, "file-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+        int sendThreads = Math.max(1, config.getSendThreads());
+        this.sendExecutor = new ThreadPoolExecutor(sendThreads, sendThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "file-events-send");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.sendExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    // Receives events for one connection; calls are never concurrent
+    public interface Listener {
+        void onEvent(FileEvent event) throws Exception;
+
+        // The client missed events and should reload the list
+        void onReset() throws Exception;
+
+        void onHeartbeat() throws Exception;
+    }
+
+    public FileEvent publish(String type, Long fileId, File file) {
+        FileEvent event = publishLocal(type, fileId, file);
+        transport.broadcast(ClusterMessage.FILE_EVENT, String.valueOf(fileId), type);
+        return event;
+    }
+
+    // Delivers to this node's subscribers only; used for events from other nodes
+    public FileEvent publishLocal(String type, Long fileId, File file) {
+        FileEvent event;
+        synchronized (ring) {
+            event = new FileEvent(epoch, ++lastSequence, type, fileId, file);
+            ring[(int) (event.getSequence() % ring.length)] = event;
+        }
+        for (Subscription subscription : subscriptions) {
+            subscription.schedule();
+        }
+        return event;
+    }
+
+    // Wraps a listener whose calls block on the client (e.g. SseEmitter.send) in a
+    // queue of file.events.subscriber-queue-size messages written on a sender thread
+    public Listener queued(Listener blocking) {
+        return new QueuedListener(blocking, sendExecutor, config.getSubscriberQueueSize());
+    }
+
+    // Starts delivery after lastEventId (the SSE Last-Event-ID), or from now when absent
+    public Subscription subscribe(String lastEventId, Listener listener) {
+        if (subscriptions.size() >= config.getMaxSubscribers()) {
+            throw new RejectedExecutionException("Too many change feed subscribers");
+        }
+        long cursor;
+        boolean reset = false;
+        synchronized (ring) {
+            cursor = lastSequence;
+            if (lastEventId != null && !lastEventId.isBlank()) {
+                long resumeFrom = parseSequence(lastEventId);
+                if (resumeFrom >= 0 && resumeFrom <= lastSequence) {
+                    cursor = resumeFrom;
+                } else {
+                    reset = true;
+                }
+            }
+        }
+        Subscription subscription = new Subscription(listener, cursor, reset);
+        subscriptions.add(subscription);
+        subscription.schedule();
+        return subscription;
+    }
+
+    @Scheduled(fixedDelayString = "${file.events.heartbeat-interval-ms:20000}")
+    public void heartbeat() {
+        for (Subscription subscription : subscriptions) {
+            subscription.heartbeatDue = true;
+            subscription.schedule();
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    @PreDestroy
+    public void stop() {
+        deliveryExecutor.shutdownNow();
+        sendExecutor.shutdownNow();
+    }
+
+    // Events after the cursor, or null when the oldest of them has been overwritten
+    private List<FileEvent> eventsAfter(long cursor) {
+        synchronized (ring) {
+            if (lastSequence - cursor > ring.length) {
+                return null;
+            }
+            long end = Math.min(lastSequence, cursor + MAX_BATCH);
+            List<FileEvent> events = new ArrayList<>((int) (end - cursor));
+            for (long sequence = cursor + 1; sequence <= end; sequence++) {
+                events.add(ring[(int) (sequence % ring.length)]);
+            }
+            return events;
+        }
+    }
+
+    private long currentSequence() {
+        synchronized (ring) {
+            return lastSequence;
+        }
+    }
+
+    private long parseSequence(String eventId) {
+        int dash = eventId.indexOf('-');
+        try {
+            if (dash < 0 || Long.parseLong(eventId.substring(0, dash)) != epoch) {
+                return -1;
+            }
+            return Long.parseLong(eventId.substring(dash + 1));
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    public final class Subscription {
+        private final Listener listener;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean heartbeatDue;
+        private volatile boolean resetDue;
+        private volatile boolean cancelled;
+        private volatile long cursor; // only advanced by the draining task
+
+        private Subscription(Listener listener, long cursor, boolean resetDue) {
+            this.listener = listener;
+            this.cursor = cursor;
+            this.resetDue = resetDue;
+        }
+
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+        }
+
+        private void schedule() {
+            if (!cancelled && scheduled.compareAndSet(false, true)) {
+                try {
+                    deliveryExecutor.execute(this::drain);
+                } catch (RejectedExecutionException ex) {
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        private void drain() {
+            try {
+                while (!cancelled) {
+                    if (resetDue) {
+                        resetDue = false;
+                        cursor = currentSequence();
+                        listener.onReset();
+                    }
+                    List<FileEvent> events = eventsAfter(cursor);
+                    if (events == null) {
+                        resetDue = true;
+                        continue;
+                    }
+                    for (FileEvent event : events) {
+                        listener.onEvent(event);
+                        cursor = event.getSequence();
+                    }
+                    if (heartbeatDue) {
+                        heartbeatDue = false;
+                        if (events.isEmpty()) {
+                            listener.onHeartbeat();
+                        }
+                    }
+                    if (events.isEmpty()) {
+                        break;
+                    }
+                }
+            } catch (Exception ex) {
+                logger.debug("Change feed subscriber dropped: {}", ex.getMessage());
+                cancel();
+            } finally {
+                scheduled.set(false);
+            }
+            // A publish may have landed between the last read and clearing the flag
+            if (!cancelled && (cursor < currentSequence() || resetDue || heartbeatDue)) {
+                schedule();
+            }
+        }
+    }
+}
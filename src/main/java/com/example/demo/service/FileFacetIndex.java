@@ -0,0 +1,501 @@
+package com.example.demo.service;
+
+import com.example.demo.model.File;
+import com.example.demo.model.FileEvent;
+import com.example.demo.model.FileQuery;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Column-oriented copy of the filterable fields of every active file: one
+// primitive array per field, indexed by a dense slot, plus a bitmap of live
+// slots. Types are dictionary-encoded, so facet counts are a single pass over
+// int and long arrays instead of GROUP BY queries. The index is loaded at
+// startup and kept current from the change feed, which also carries changes
+// made on other nodes; a feed reset triggers a reload.
+@Component
+public class FileFacetIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileFacetIndex.class);
+
+    static final String LOAD_SQL = "SELECT id, file_type, detected_type, user_id, file_size, upload_date FROM files " +
+            "WHERE is_active = true AND id > ? ORDER BY id LIMIT ?";
+
+    private static final int LOAD_BATCH = 10000;
+    private static final long LOAD_RETRY_MS = 10000;
+    // Sorting packs (key << SLOT_BITS | slot) into one long so matches sort as primitives
+    private static final int SLOT_BITS = 25;
+    private static final int MAX_SLOTS = 1 << SLOT_BITS;
+    private static final long MAX_SORT_KEY = (1L << (63 - SLOT_BITS)) - 1;
+    private static final long NO_USER = Long.MIN_VALUE;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final FileEventPublisher fileEventPublisher;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean ready;
+    private volatile boolean stopped;
+    private FileEventPublisher.Subscription subscription;
+
+    // Guarded by lock
+    private long[] ids = new long[1024];
+    private int[] typeCodes = new int[1024];
+    private long[] userIds = new long[1024];
+    private long[] sizes = new long[1024];
+    private long[] uploadSeconds = new long[1024];
+    private final BitSet live = new BitSet();
+    private int slotCount; // live and dead
+    private int liveCount;
+    private final LongIntMap slotsById = new LongIntMap();
+    private final List<String> typeNames = new ArrayList<>();
+    private final Map<String, Integer> typeCodesByName = new HashMap<>();
+
+    public FileFacetIndex(JdbcTemplate jdbcTemplate, FileEventPublisher fileEventPublisher) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.fileEventPublisher = fileEventPublisher;
+    }
+
+    // Subscribes before loading so no change between the two is lost; replaying
+    // a change the load already saw is harmless
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        subscription = fileEventPublisher.subscribe(null, new FileEventPublisher.Listener() {
+            @Override
+            public void onEvent(FileEvent event) {
+                // Throwing would end the subscription and freeze the index
+                try {
+                    apply(event);
+                } catch (RuntimeException ex) {
+                    logger.error("Could not apply {} of file {} to the file index", event.getType(),
+                            event.getFileId(), ex);
+                }
+            }
+
+            @Override
+            public void onReset() {
+                rebuild();
+            }
+
+            @Override
+            public void onHeartbeat() {
+            }
+        });
+        Thread loader = new Thread(() -> {
+            while (!stopped && !rebuild()) {
+                try {
+                    Thread.sleep(LOAD_RETRY_MS);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+            }
+        }, "file-facet-index");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        stopped = true;
+        if (subscription != null) {
+            subscription.cancel();
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Reloads every active file; returns false if the database could not be read
+    public boolean rebuild() {
+        lock.writeLock().lock();
+        try {
+            long start = System.nanoTime();
+            clear();
+            long[] lastId = {0};
+            int loaded;
+            do {
+                int before = liveCount;
+                jdbcTemplate.query(LOAD_SQL, rs -> {
+                    Timestamp uploaded = rs.getTimestamp("upload_date");
+                    long userId = rs.getLong("user_id");
+                    if (rs.wasNull()) {
+                        userId = NO_USER;
+                    }
+                    lastId[0] = rs.getLong("id");
+                    put(lastId[0], effectiveType(rs.getString("detected_type"), rs.getString("file_type")),
+                            userId, rs.getLong("file_size"),
+                            uploaded != null ? toSeconds(uploaded.toLocalDateTime()) : 0);
+                }, lastId[0], LOAD_BATCH);
+                loaded = liveCount - before;
+            } while (loaded == LOAD_BATCH);
+            ready = true;
+            logger.info("File index loaded {} files in {} ms", liveCount, (System.nanoTime() - start) / 1_000_000);
+            return true;
+        } catch (RuntimeException ex) {
+            ready = false;
+            logger.error("Could not load the file index", ex);
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void apply(FileEvent event) {
+        if (FileEvent.DELETED.equals(event.getType())) {
+            remove(event.getFileId());
+        } else if (event.getFile() != null && !Boolean.FALSE.equals(event.getFile().getIsActive())) {
+            upsert(event.getFile());
+        }
+    }
+
+    public void upsert(File file) {
+        lock.writeLock().lock();
+        try {
+            put(file.getId(), effectiveType(file.getDetectedType(), file.getFileType()),
+                    file.getUserId() != null ? file.getUserId() : NO_USER,
+                    file.getFileSize() != null ? file.getFileSize() : 0,
+                    file.getUploadDate() != null ? toSeconds(file.getUploadDate()) : 0);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long fileId) {
+        lock.writeLock().lock();
+        try {
+            int slot = slotsById.remove(fileId);
+            if (slot >= 0) {
+                live.clear(slot);
+                liveCount--;
+                if (slotCount - liveCount > Math.max(1024, liveCount)) {
+                    compact();
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Ids of one page of matches in the requested order, with facet counts over
+    // all matches. Type facets ignore the type filter so every option shows
+    // how many files it would add.
+    public Result query(FileQuery query) {
+        lock.readLock().lock();
+        try {
+            if (!ready) {
+                throw new RejectedExecutionException("File index is still loading");
+            }
+            boolean[] allowedTypes = allowedTypes(query.getTypes());
+            boolean byUser = query.getUserId() != null;
+            long userId = byUser ? query.getUserId() : NO_USER;
+            long minSize = query.getMinSize() != null ? query.getMinSize() : Long.MIN_VALUE;
+            long maxSize = query.getMaxSize() != null ? query.getMaxSize() : Long.MAX_VALUE;
+            long from = query.getFrom() != null ? toSeconds(query.getFrom()) : Long.MIN_VALUE;
+            long to = query.getTo() != null ? toSeconds(query.getTo()) : Long.MAX_VALUE;
+            boolean bySize = FileQuery.SORT_SIZE.equals(query.getSort());
+
+            long[] typeCounts = new long[typeNames.size()];
+            long[] matches = new long[Math.max(16, Math.min(liveCount, 4096))];
+            int matched = 0;
+            for (int slot = live.nextSetBit(0); slot >= 0; slot = live.nextSetBit(slot + 1)) {
+                long size = sizes[slot];
+                long uploaded = uploadSeconds[slot];
+                if ((byUser && userIds[slot] != userId) || size < minSize || size > maxSize
+                        || uploaded < from || uploaded > to) {
+                    continue;
+                }
+                int type = typeCodes[slot];
+                typeCounts[type]++;
+                if (allowedTypes != null && !allowedTypes[type]) {
+                    continue;
+                }
+                if (matched == matches.length) {
+                    matches = Arrays.copyOf(matches, matched * 2);
+                }
+                long key = Math.max(0, Math.min(MAX_SORT_KEY, bySize ? size : uploaded));
+                matches[matched++] = key << SLOT_BITS | slot;
+            }
+            Arrays.sort(matches, 0, matched);
+
+            int first = (int) Math.min((long) query.getPage() * query.getSize(), matched);
+            int last = Math.min(matched, first + query.getSize());
+            List<Long> pageIds = new ArrayList<>(last - first);
+            for (int i = first; i < last; i++) {
+                long packed = matches[query.isAscending() ? i : matched - 1 - i];
+                pageIds.add(ids[(int) (packed & (MAX_SLOTS - 1))]);
+            }
+            return new Result(pageIds, matched, typeFacets(typeCounts), categoryFacets(typeCounts));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void put(long id, String type, long userId, long size, long uploaded) {
+        int slot = slotsById.get(id);
+        if (slot < 0) {
+            slot = nextSlot();
+            slotsById.put(id, slot);
+            live.set(slot);
+            liveCount++;
+        }
+        ids[slot] = id;
+        typeCodes[slot] = typeCode(type);
+        userIds[slot] = userId;
+        sizes[slot] = size;
+        uploadSeconds[slot] = uploaded;
+    }
+
+    private int nextSlot() {
+        if (slotCount == MAX_SLOTS) {
+            compact();
+            if (slotCount == MAX_SLOTS) {
+                throw new IllegalStateException("File index is full at " + MAX_SLOTS + " files");
+            }
+        }
+        if (slotCount == ids.length) {
+            int capacity = (int) Math.min(MAX_SLOTS, ids.length * 2L);
+            ids = Arrays.copyOf(ids, capacity);
+            typeCodes = Arrays.copyOf(typeCodes, capacity);
+            userIds = Arrays.copyOf(userIds, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+            uploadSeconds = Arrays.copyOf(uploadSeconds, capacity);
+        }
+        return slotCount++;
+    }
+
+    // Moves live entries down over the dead ones
+    private void compact() {
+        int target = 0;
+        for (int slot = live.nextSetBit(0); slot >= 0; slot = live.nextSetBit(slot + 1)) {
+            if (slot != target) {
+                ids[target] = ids[slot];
+                typeCodes[target] = typeCodes[slot];
+                userIds[target] = userIds[slot];
+                sizes[target] = sizes[slot];
+                uploadSeconds[target] = uploadSeconds[slot];
+                slotsById.put(ids[target], target);
+            }
+            target++;
+        }
+        live.clear();
+        live.set(0, target);
+        slotCount = target;
+    }
+
+    private void clear() {
+        ready = false;
+        live.clear();
+        slotsById.clear();
+        slotCount = 0;
+        liveCount = 0;
+    }
+
+    private int typeCode(String type) {
+        Integer code = typeCodesByName.get(type);
+        if (code == null) {
+            code = typeNames.size();
+            typeNames.add(type);
+            typeCodesByName.put(type, code);
+        }
+        return code;
+    }
+
+    // null when every type is allowed
+    private boolean[] allowedTypes(List<String> requested) {
+        if (requested == null || requested.isEmpty()) {
+            return null;
+        }
+        boolean[] allowed = new boolean[typeNames.size()];
+        for (String value : requested) {
+            String type = value.trim().toLowerCase();
+            if (type.isEmpty() || type.equals("all")) {
+                return null;
+            }
+            String prefix = type.endsWith("/*") ? type.substring(0, type.length() - 1)
+                    : type.indexOf('/') < 0 ? type + "/" : null;
+            for (int code = 0; code < allowed.length; code++) {
+                String name = typeNames.get(code);
+                if (prefix != null ? name.startsWith(prefix) : name.equals(type)) {
+                    allowed[code] = true;
+                }
+            }
+        }
+        return allowed;
+    }
+
+    private Map<String, Long> typeFacets(long[] typeCounts) {
+        List<Integer> codes = new ArrayList<>();
+        for (int code = 0; code < typeCounts.length; code++) {
+            if (typeCounts[code] > 0) {
+                codes.add(code);
+            }
+        }
+        codes.sort((a, b) -> Long.compare(typeCounts[b], typeCounts[a]));
+        Map<String, Long> facets = new LinkedHashMap<>();
+        for (int code : codes) {
+            facets.put(typeNames.get(code), typeCounts[code]);
+        }
+        return facets;
+    }
+
+    private Map<String, Long> categoryFacets(long[] typeCounts) {
+        Map<String, Long> facets = new HashMap<>();
+        for (int code = 0; code < typeCounts.length; code++) {
+            if (typeCounts[code] > 0) {
+                String type = typeNames.get(code);
+                int slash = type.indexOf('/');
+                facets.merge(slash > 0 ? type.substring(0, slash) : type, typeCounts[code], Long::sum);
+            }
+        }
+        Map<String, Long> sorted = new LinkedHashMap<>();
+        facets.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .forEach(entry -> sorted.put(entry.getKey(), entry.getValue()));
+        return sorted;
+    }
+
+    private static String effectiveType(String detectedType, String fileType) {
+        String type = ContentSniffer.normalize(detectedType != null ? detectedType : fileType);
+        return type != null ? type : ContentSniffer.OCTET_STREAM;
+    }
+
+    private static long toSeconds(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    public static class Result {
+        private final List<Long> ids;
+        private final long total;
+        private final Map<String, Long> types;
+        private final Map<String, Long> categories;
+
+        Result(List<Long> ids, long total, Map<String, Long> types, Map<String, Long> categories) {
+            this.ids = ids;
+            this.total = total;
+            this.types = types;
+            this.categories = categories;
+        }
+
+        public List<Long> getIds() {
+            return ids;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public Map<String, Long> getTypes() {
+            return types;
+        }
+
+        public Map<String, Long> getCategories() {
+            return categories;
+        }
+    }
+
+    // Open-addressed map from file id (never 0) to slot, without boxing
+    private static final class LongIntMap {
+        private long[] keys = new long[1024];
+        private int[] values = new int[1024];
+        private int mask = 1023;
+        private int size;
+
+        int get(long key) {
+            for (int i = index(key); keys[i] != 0; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+            }
+            return -1;
+        }
+
+        void put(long key, int value) {
+            if ((size + 1) * 2 > keys.length) {
+                resize(keys.length * 2);
+            }
+            int i = index(key);
+            while (keys[i] != 0 && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            if (keys[i] == 0) {
+                size++;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        // Backward-shift deletion keeps probe chains intact without tombstones
+        int remove(long key) {
+            int i = index(key);
+            while (keys[i] != key) {
+                if (keys[i] == 0) {
+                    return -1;
+                }
+                i = (i + 1) & mask;
+            }
+            int value = values[i];
+            int gap = i;
+            for (int j = (gap + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+                int home = index(keys[j]);
+                boolean staysPut = gap < j ? home > gap && home <= j : home > gap || home <= j;
+                if (!staysPut) {
+                    keys[gap] = keys[j];
+                    values[gap] = values[j];
+                    gap = j;
+                }
+            }
+            keys[gap] = 0;
+            size--;
+            return value;
+        }
+
+        void clear() {
+            Arrays.fill(keys, 0);
+            size = 0;
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[capacity];
+            values = new int[capacity];
+            mask = capacity - 1;
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private int index(long key) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+    }
+}
@@ -0,0 +1,470 @@
+package com.example.demo.service;
+
+import com.example.demo.cluster.FileCache;
+import com.example.demo.config.ReconciliationConfig;
+import com.example.demo.model.File;
+import com.example.demo.model.FileEvent;
+import com.example.demo.model.ReconciliationReport;
+import com.example.demo.repository.FileRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+// Keeps the files table and the upload directory in agreement. A WatchService
+// feeds changes made outside the app into a pending set that is checked in
+// batches, and a fork/join scanner walks the yyyy/MM/dd tree for full passes on
+// one pool kept for the life of the service.
+// Orphaned blobs (no row) and dangling rows (no blob) are reported, and in fix
+// mode blobs are moved to a quarantine directory and rows are soft-deleted.
+@Service
+public class FileReconciliationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileReconciliationService.class);
+
+    private static final Pattern YEAR = Pattern.compile("\\d{4}");
+    private static final Pattern MONTH_OR_DAY = Pattern.compile("\\d{2}");
+    private static final int DAY_DEPTH = 3;
+
+    private final FileRepository fileRepository;
+    private final FileStorageService fileStorageService;
+    private final FileBatchWriter fileBatchWriter;
+    private final UserQuotaService userQuotaService;
+    private final FileVersionService fileVersionService;
+    private final FileEventPublisher fileEventPublisher;
+    private final FileCache fileCache;
+    private final ReconciliationConfig config;
+    private final TokenBucket throttle;
+
+    private final ExecutorService passExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "file-reconcile");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ForkJoinPool scanPool;
+    private final AtomicReference<ReconciliationReport> currentPass = new AtomicReference<>();
+    private final ReconciliationReport liveReport;
+
+    // Relative paths touched outside the app, with the time they were first seen
+    private final Map<String, Long> pendingPaths = new ConcurrentHashMap<>();
+    private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<>();
+    private volatile WatchService watchService;
+
+    public FileReconciliationService(FileRepository fileRepository, FileStorageService fileStorageService,
+                                     FileBatchWriter fileBatchWriter, UserQuotaService userQuotaService,
+                                     FileVersionService fileVersionService, FileEventPublisher fileEventPublisher,
+                                     FileCache fileCache, ReconciliationConfig config) {
+        this.fileRepository = fileRepository;
+        this.fileStorageService = fileStorageService;
+        this.fileBatchWriter = fileBatchWriter;
+        this.userQuotaService = userQuotaService;
+        this.fileVersionService = fileVersionService;
+        this.fileEventPublisher = fileEventPublisher;
+        this.fileCache = fileCache;
+        this.config = config;
+        this.throttle = config.getMaxFilesPerSecond() > 0 ? new TokenBucket(config.getMaxFilesPerSecond(), 1) : null;
+        this.liveReport = new ReconciliationReport("watch", config.isFix());
+        this.scanPool = new ForkJoinPool(Math.max(1, config.getParallelism()), pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("file-reconcile-scan-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    // Starts a full pass in the background unless one is already running
+    public ReconciliationReport startFullPass(String trigger, boolean fix) {
+        ReconciliationReport report = new ReconciliationReport(trigger, fix);
+        ReconciliationReport previous = currentPass.get();
+        if (previous != null && previous.isRunning()) {
+            return previous;
+        }
+        if (!currentPass.compareAndSet(previous, report)) {
+            return currentPass.get();
+        }
+        passExecutor.execute(() -> runFullPass(report));
+        return report;
+    }
+
+    public ReconciliationReport getLastFullPass() {
+        return currentPass.get();
+    }
+
+    public ReconciliationReport getLiveReport() {
+        return liveReport;
+    }
+
+    @Scheduled(fixedDelayString = "${file.reconcile.check-interval-ms:60000}",
+            initialDelayString = "${file.reconcile.check-interval-ms:60000}")
+    public void scheduledFullPass() {
+        if (config.getScanIntervalMs() <= 0) {
+            return;
+        }
+        ReconciliationReport last = currentPass.get();
+        if (last == null || (last.getFinishedAt() != null && last.getFinishedAt()
+                .isBefore(LocalDateTime.now().minusNanos(config.getScanIntervalMs() * 1_000_000)))) {
+            startFullPass("schedule", config.isFix());
+        }
+    }
+
+    // Full pass
+
+    private void runFullPass(ReconciliationReport report) {
+        try {
+            logger.info("Reconciliation pass started ({})", report.isFix() ? "fix" : "report only");
+            Path root = fileStorageService.getFileStorageLocation();
+            if (Files.isDirectory(root)) {
+                scanPool.invoke(new DirectoryScan(root, 0, report));
+            }
+            checkRows(report);
+            report.finish(null);
+            logger.info("Reconciliation pass finished: {} blobs, {} rows, {} orphaned, {} dangling, {} fixed",
+                    report.getBlobsScanned(), report.getRowsChecked(), report.getOrphanedBlobs(),
+                    report.getDanglingRows(), report.getFixed());
+        } catch (Exception ex) {
+            logger.error("Reconciliation pass failed", ex);
+            report.finish(ex.getMessage());
+        }
+    }
+
+    // Walks year -> month -> day directories in parallel; leaves are checked in batches
+    private class DirectoryScan extends RecursiveAction {
+        private final Path directory;
+        private final int depth;
+        private final ReconciliationReport report;
+
+        DirectoryScan(Path directory, int depth, ReconciliationReport report) {
+            this.directory = directory;
+            this.depth = depth;
+            this.report = report;
+        }
+
+        @Override
+        protected void compute() {
+            if (depth == DAY_DEPTH) {
+                scanDayDirectory(directory, report);
+                return;
+            }
+
+            List<DirectoryScan> children = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, Files::isDirectory)) {
+                for (Path child : stream) {
+                    if (isDateDirectory(child, depth + 1)) {
+                        children.add(new DirectoryScan(child, depth + 1, report));
+                    }
+                }
+            } catch (IOException ex) {
+                logger.warn("Could not list {}: {}", directory, ex.getMessage());
+            }
+            invokeAll(children);
+        }
+    }
+
+    private void scanDayDirectory(Path directory, ReconciliationReport report) {
+        List<String> batch = new ArrayList<>(config.getBatchSize());
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, Files::isRegularFile)) {
+            for (Path file : stream) {
+                batch.add(toRelativePath(file));
+                if (batch.size() >= config.getBatchSize()) {
+                    checkBlobs(batch, report);
+                    batch.clear();
+                }
+            }
+        } catch (IOException ex) {
+            logger.warn("Could not list {}: {}", directory, ex.getMessage());
+        }
+        if (!batch.isEmpty()) {
+            checkBlobs(batch, report);
+        }
+    }
+
+    private void checkBlobs(List<String> filePaths, ReconciliationReport report) {
+        acquireBudget(filePaths.size());
+        report.addBlobsScanned(filePaths.size());
+
+        // Rows of any state own their blob; soft-deleted files are collected separately
+        Set<String> known = new HashSet<>(fileRepository.findFilePathsIn(filePaths));
+        for (String filePath : filePaths) {
+            if (!known.contains(filePath) && !isRecentBlob(filePath)) {
+                report.addOrphanedBlob(filePath);
+                if (report.isFix() && quarantine(filePath)) {
+                    report.addFixed(1);
+                }
+            }
+        }
+    }
+
+    private void checkRows(ReconciliationReport report) throws Exception {
+        long afterId = 0L;
+        while (true) {
+            List<File> page = fileRepository.findActiveAfterId(afterId, PageRequest.of(0, config.getBatchSize()));
+            if (page.isEmpty()) {
+                return;
+            }
+            acquireBudget(page.size());
+            report.addRowsChecked(page.size());
+
+            List<File> missing = scanPool.submit(() -> page.parallelStream()
+                    .filter(file -> !isRecentRow(file) && !fileStorageService.fileExists(file.getFilePath()))
+                    .collect(Collectors.toList())).get();
+            handleDanglingRows(missing, report);
+
+            afterId = page.get(page.size() - 1).getId();
+        }
+    }
+
+    // Live watcher
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startWatcher() {
+        if (!config.isWatchEnabled()) {
+            return;
+        }
+        try {
+            Path root = fileStorageService.getFileStorageLocation();
+            Files.createDirectories(root);
+            watchService = FileSystems.getDefault().newWatchService();
+            registerTree(root, 0);
+
+            Thread watcher = new Thread(this::watchLoop, "file-reconcile-watch");
+            watcher.setDaemon(true);
+            watcher.start();
+            logger.info("Watching {} directories under {}", watchedDirectories.size(), root);
+        } catch (IOException ex) {
+            logger.warn("Could not start upload directory watcher: {}", ex.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        passExecutor.shutdownNow();
+        scanPool.shutdownNow();
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    private void watchLoop() {
+        Path root = fileStorageService.getFileStorageLocation();
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Path directory = watchedDirectories.get(key);
+                if (directory != null) {
+                    int depth = directory.equals(root) ? 0 : root.relativize(directory).getNameCount();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        handleWatchEvent(directory, depth, event);
+                    }
+                }
+                if (!key.reset()) {
+                    watchedDirectories.remove(key);
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException ex) {
+            logger.debug("Upload directory watcher stopped");
+        }
+    }
+
+    private void handleWatchEvent(Path directory, int depth, WatchEvent<?> event) {
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+            logger.warn("Watch events overflowed for {}; run a full reconciliation pass", directory);
+            return;
+        }
+
+        Path child = directory.resolve((Path) event.context());
+        if (depth < DAY_DEPTH) {
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && isDateDirectory(child, depth + 1)) {
+                registerTree(child, depth + 1);
+            }
+        } else if (depth == DAY_DEPTH) {
+            pendingPaths.putIfAbsent(toRelativePath(child), System.currentTimeMillis());
+        }
+    }
+
+    private void registerTree(Path directory, int depth) {
+        try {
+            WatchKey key = directory.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE);
+            watchedDirectories.put(key, directory);
+            if (depth == DAY_DEPTH) {
+                return;
+            }
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, Files::isDirectory)) {
+                for (Path child : stream) {
+                    if (isDateDirectory(child, depth + 1)) {
+                        registerTree(child, depth + 1);
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            logger.warn("Could not watch {}: {}", directory, ex.getMessage());
+        }
+    }
+
+    // Checks paths the watcher saw once they are older than the grace period,
+    // which covers the gap between an upload's blob write and its row insert
+    @Scheduled(fixedDelayString = "${file.reconcile.pending-interval-ms:5000}")
+    public void processPendingEvents() {
+        if (pendingPaths.isEmpty()) {
+            return;
+        }
+
+        long cutoff = System.currentTimeMillis() - config.getGracePeriodMs();
+        List<String> due = new ArrayList<>();
+        Iterator<Map.Entry<String, Long>> iterator = pendingPaths.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            if (entry.getValue() <= cutoff) {
+                due.add(entry.getKey());
+                iterator.remove();
+            }
+        }
+
+        for (int from = 0; from < due.size(); from += config.getBatchSize()) {
+            List<String> batch = due.subList(from, Math.min(due.size(), from + config.getBatchSize()));
+            acquireBudget(batch.size());
+
+            Map<String, File> rows = new HashMap<>();
+            for (File file : fileRepository.findByFilePathIn(batch)) {
+                rows.put(file.getFilePath(), file);
+            }
+
+            List<File> dangling = new ArrayList<>();
+            for (String filePath : batch) {
+                File row = rows.get(filePath);
+                boolean exists = fileStorageService.fileExists(filePath);
+                if (exists && row == null) {
+                    liveReport.addOrphanedBlob(filePath);
+                    if (liveReport.isFix() && quarantine(filePath)) {
+                        liveReport.addFixed(1);
+                    }
+                } else if (!exists && row != null && Boolean.TRUE.equals(row.getIsActive())) {
+                    dangling.add(row);
+                }
+            }
+            liveReport.addBlobsScanned(batch.size());
+            handleDanglingRows(dangling, liveReport);
+        }
+    }
+
+    // Shared helpers
+
+    private void handleDanglingRows(List<File> dangling, ReconciliationReport report) {
+        if (dangling.isEmpty()) {
+            return;
+        }
+        for (File file : dangling) {
+            report.addDanglingRow(file.getId());
+        }
+        if (!report.isFix()) {
+            return;
+        }
+
+        // A user delete or another node's pass may have flipped some rows already;
+        // only the rows flipped here are released and announced
+        List<Long> ids = dangling.stream().map(File::getId).collect(Collectors.toList());
+        Set<Long> deactivated = new HashSet<>(fileBatchWriter.deactivateAll(ids));
+        report.addFixed(deactivated.size());
+        for (File file : dangling) {
+            if (!deactivated.contains(file.getId())) {
+                continue;
+            }
+            fileCache.invalidateFile(file.getId());
+            userQuotaService.releaseStorage(file.getUserId(),
+                    file.getFileSize() + fileVersionService.getStoredSize(file.getId()));
+            fileEventPublisher.publish(FileEvent.DELETED, file.getId(), null);
+        }
+    }
+
+    private boolean quarantine(String filePath) {
+        Path source = fileStorageService.resolvePath(filePath);
+        Path target = fileStorageService.getFileStorageLocation().resolve(config.getQuarantineDir()).resolve(filePath);
+        try {
+            Files.createDirectories(target.getParent());
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+            logger.info("Quarantined orphaned blob {}", filePath);
+            return true;
+        } catch (IOException ex) {
+            logger.warn("Could not quarantine {}: {}", filePath, ex.getMessage());
+            return false;
+        }
+    }
+
+    private void acquireBudget(int files) {
+        if (throttle == null) {
+            return;
+        }
+        try {
+            throttle.acquire(files);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Reconciliation interrupted", ex);
+        }
+    }
+
+    private boolean isRecentBlob(String filePath) {
+        try {
+            long modified = Files.getLastModifiedTime(fileStorageService.resolvePath(filePath)).toMillis();
+            return modified > System.currentTimeMillis() - config.getGracePeriodMs();
+        } catch (IOException ex) {
+            // Gone since it was listed
+            return true;
+        }
+    }
+
+    private boolean isRecentRow(File file) {
+        if (file.getUploadDate() == null) {
+            return false;
+        }
+        long uploaded = file.getUploadDate().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        return uploaded > System.currentTimeMillis() - config.getGracePeriodMs();
+    }
+
+    private static boolean isDateDirectory(Path directory, int depth) {
+        String name = directory.getFileName().toString();
+        return depth == 1 ? YEAR.matcher(name).matches() : MONTH_OR_DAY.matcher(name).matches();
+    }
+
+    private String toRelativePath(Path file) {
+        Path relative = fileStorageService.getFileStorageLocation().relativize(file);
+        List<String> names = new ArrayList<>();
+        for (Path name : relative) {
+            names.add(name.toString());
+        }
+        return String.join("/", names);
+    }
+}
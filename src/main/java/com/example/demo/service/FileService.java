@@ -1,20 +1,36 @@
 package com.example.demo.service;
 
+import com.example.demo.cluster.ClusterLockService;
+import com.example.demo.cluster.FileCache;
+import com.example.demo.config.FileGcConfig;
+import com.example.demo.config.ReadYourWritesContext;
 import com.example.demo.exception.FileNotFoundException;
 import com.example.demo.exception.FileStorageException;
+import com.example.demo.exception.QuotaExceededException;
 import com.example.demo.model.File;
+import com.example.demo.model.FileEvent;
+import com.example.demo.model.FileQuery;
+import com.example.demo.model.FileQueryResult;
 import com.example.demo.model.FileUploadResponse;
 import com.example.demo.repository.FileRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
 public class FileService {
+
+    private static final int MAX_QUERY_PAGE_SIZE = 500;
     
     @Autowired
     private FileRepository fileRepository;
@@ -22,51 +38,138 @@ public class FileService {
     @Autowired
     private FileStorageService fileStorageService;
     
+    @Autowired
+    private FileBatchWriter fileBatchWriter;
+    
+    @Autowired
+    private UserQuotaService userQuotaService;
+    
+    @Autowired
+    private FileGcConfig fileGcConfig;
+    
+    @Autowired
+    private FileVersionService fileVersionService;
+    
+    @Autowired
+    private FileChangeLog fileChangeLog;
+    
+    @Autowired
+    private FileEventPublisher fileEventPublisher;
+    
+    @Autowired
+    private FileCache fileCache;
+    
+    @Autowired
+    private ClusterLockService clusterLockService;
+    
+    @Autowired
+    private BlobScrubber blobScrubber;
+
+    @Autowired
+    private FileFacetIndex fileFacetIndex;
+    
+    // Not transactional: the disk write happens first and the row is then
+    // inserted by the batch writer in its own short transaction
     public FileUploadResponse uploadFile(MultipartFile multipartFile, Long userId) {
+        // Quota and rate limits are enforced before any bytes reach the disk
+        reserveUpload(userId, multipartFile.getSize());
+        
+        StoredUpload upload = null;
         try {
             // Store file in filesystem
-            String filePath = fileStorageService.storeFile(multipartFile);
-            
-            // Create file entity
-            File file = new File();
-            file.setOriginalName(multipartFile.getOriginalFilename());
-            file.setStoredName(extractStoredFileName(filePath));
-            file.setFilePath(filePath);
-            file.setFileType(multipartFile.getContentType());
-            file.setFileSize(multipartFile.getSize());
-            file.setUserId(userId);
+            upload = fileStorageService.storeFile(multipartFile);
             
             // Save to database
-            File savedFile = fileRepository.save(file);
+            File savedFile = saveFileMetadata(upload, userId);
             
-            // Create response
-            FileUploadResponse.FileData fileData = new FileUploadResponse.FileData(
-                savedFile.getId(),
-                savedFile.getOriginalName(),
-                savedFile.getFileType(),
-                savedFile.getFormattedFileSize(),
-                savedFile.getUploadDate()
-            );
-            
-            return FileUploadResponse.success("File uploaded successfully", fileData);
+            return FileUploadResponse.success("File uploaded successfully",
+                    FileUploadResponse.FileData.from(savedFile));
             
         } catch (Exception e) {
+            releaseUpload(userId, multipartFile.getSize());
+            
+            // Don't leave an orphaned blob behind if the row could not be written
+            if (upload != null) {
+                fileStorageService.deleteFile(upload.getFilePath());
+            }
             return FileUploadResponse.error("Failed to upload file: " + e.getMessage());
         }
     }
     
+    // Uploads a new version of an existing file; the owner's quota is charged for
+    // the new content, and the previous version counts with what its archived copy takes
+    public FileUploadResponse uploadVersion(Long id, MultipartFile multipartFile) {
+        File existing = getFileById(id);
+        reserveUpload(existing.getUserId(), multipartFile.getSize());
+        
+        StoredUpload upload = null;
+        try {
+            upload = fileStorageService.storeFile(multipartFile);
+            File updated = fileVersionService.addVersion(id, upload);
+            
+            return FileUploadResponse.success("Version " + updated.getVersionNumber() + " uploaded successfully",
+                    FileUploadResponse.FileData.from(updated));
+            
+        } catch (FileNotFoundException | QuotaExceededException e) {
+            discardUpload(existing.getUserId(), multipartFile.getSize(), upload);
+            throw e;
+        } catch (Exception e) {
+            discardUpload(existing.getUserId(), multipartFile.getSize(), upload);
+            return FileUploadResponse.error("Failed to upload version: " + e.getMessage());
+        }
+    }
+    
+    private void discardUpload(Long userId, long size, StoredUpload upload) {
+        releaseUpload(userId, size);
+        if (upload != null) {
+            fileStorageService.deleteFile(upload.getFilePath());
+        }
+    }
+    
+    // Charges an upload against the user's rate limit and storage quota
+    public void reserveUpload(Long userId, long size) {
+        userQuotaService.acquireUpload(userId, size);
+        userQuotaService.reserveStorage(userId, size);
+    }
+    
+    public void releaseUpload(Long userId, long size) {
+        userQuotaService.releaseStorage(userId, size);
+    }
+    
+    // Records a file that is already on disk under filePath
+    public File saveFileMetadata(StoredUpload upload, Long userId) {
+        File file = new File();
+        file.setOriginalName(upload.getOriginalName());
+        file.setStoredName(extractStoredFileName(upload.getFilePath()));
+        file.setFilePath(upload.getFilePath());
+        String declaredType = upload.getContentType();
+        file.setFileType(declaredType != null && !declaredType.isBlank() ? declaredType : upload.getDetectedType());
+        file.setDetectedType(upload.getDetectedType());
+        file.setFileSize(upload.getSize());
+        file.setChecksum(upload.getChecksum());
+        file.setUserId(userId);
+        
+        File saved = fileBatchWriter.insert(file);
+        fileEventPublisher.publish(FileEvent.UPLOADED, saved.getId(), saved);
+        return saved;
+    }
+    
+    @Transactional(readOnly = true)
     public List<File> getAllFiles() {
         return fileRepository.findByIsActiveTrueOrderByUploadDateDesc();
     }
     
+    @Transactional(readOnly = true)
     public List<File> getFilesByUser(Long userId) {
         return fileRepository.findByUserIdAndIsActiveTrueOrderByUploadDateDesc(userId);
     }
     
+    @Transactional(readOnly = true)
     public List<File> searchFiles(String searchTerm) {
         return fileRepository.searchByOriginalName(searchTerm);
     }
     
+    @Transactional(readOnly = true)
     public List<File> getFilesByType(String fileType) {
         if (fileType.equals("all")) {
             return getAllFiles();
@@ -74,59 +177,147 @@ public class FileService {
         return fileRepository.findByFileTypePrefix(fileType);
     }
     
+    // Filters, sorts and counts in the in-memory index, then loads only the page's rows
+    @Transactional(readOnly = true)
+    public FileQueryResult queryFiles(FileQuery query) {
+        if (query.getPage() < 0 || query.getSize() < 1 || query.getSize() > MAX_QUERY_PAGE_SIZE) {
+            throw new IllegalArgumentException("page must be >= 0 and size between 1 and " + MAX_QUERY_PAGE_SIZE);
+        }
+        if (!FileQuery.SORT_UPLOAD_DATE.equals(query.getSort()) && !FileQuery.SORT_SIZE.equals(query.getSort())) {
+            throw new IllegalArgumentException("sort must be " + FileQuery.SORT_UPLOAD_DATE + " or " + FileQuery.SORT_SIZE);
+        }
+        FileFacetIndex.Result result = fileFacetIndex.query(query);
+        Map<Long, File> rows = new HashMap<>();
+        for (File file : fileRepository.findAllById(result.getIds())) {
+            rows.put(file.getId(), file);
+        }
+        // A row the replica hasn't caught up with yet is left out of this page
+        List<File> files = new ArrayList<>(result.getIds().size());
+        for (Long id : result.getIds()) {
+            File file = rows.get(id);
+            if (file != null && Boolean.TRUE.equals(file.getIsActive())) {
+                files.add(file);
+            }
+        }
+        return new FileQueryResult(files, result.getTotal(), query.getPage(), query.getSize(),
+                result.getTypes(), result.getCategories());
+    }
+    
+    @Transactional(readOnly = true)
     public File getFileById(Long id) {
-        Optional<File> file = fileRepository.findById(id);
-        if (file.isPresent() && file.get().getIsActive()) {
-            return file.get();
+        File file = fileCache.getFile(id, () -> fileRepository.findById(id)
+                .filter(found -> Boolean.TRUE.equals(found.getIsActive()))
+                .orElse(null));
+        if (file != null) {
+            return file;
         }
         throw new FileNotFoundException("File not found with id: " + id);
     }
     
+    // Looks up a file and charges its size against the requester's download rate.
+    // Not transactional: verify-on-read hashes the whole blob, which must not pin a
+    // database connection; the lookup runs in its own short transaction.
+    public File getFileForDownload(Long id, Long userId) {
+        File file = getFileById(id);
+        userQuotaService.acquireDownload(userId, file.getFileSize());
+        blobScrubber.verifyForRead(file);
+        return file;
+    }
+    
+    @Transactional(readOnly = true)
     public Resource getFileResource(Long id) {
         File file = getFileById(id);
         return fileStorageService.loadFileAsResource(file.getFilePath());
     }
     
+    @Transactional(readOnly = true)
     public String getFileContent(Long id) {
         File file = getFileById(id);
-        Resource resource = fileStorageService.loadFileAsResource(file.getFilePath());
         
-        try {
-            // For text-based files, return content as string
-            if (isTextFile(file.getFileType())) {
-                return new String(resource.getInputStream().readAllBytes());
-            } else {
-                // For binary files, return a message
-                return "Binary file content cannot be displayed as text";
-            }
+        // For text-based files, return content as string
+        if (isTextFile(file.getEffectiveType())) {
+            return new String(fileCache.getContent(file.getFilePath(), file.getFileSize(),
+                    () -> readContent(file.getFilePath())));
+        } else {
+            // For binary files, return a message
+            return "Binary file content cannot be displayed as text";
+        }
+    }
+    
+    private byte[] readContent(String filePath) {
+        Resource resource = fileStorageService.loadFileAsResource(filePath);
+        try (InputStream in = resource.getInputStream()) {
+            return in.readAllBytes();
         } catch (Exception e) {
             throw new FileStorageException("Could not read file content", e);
         }
     }
     
+    // Soft delete only: the blob stays on disk until DeletedFileCollector removes it
+    // after the retention window, so the request never waits on filesystem I/O
     public boolean deleteFile(Long id) {
-        Optional<File> fileOpt = fileRepository.findById(id);
-        if (fileOpt.isPresent()) {
-            File file = fileOpt.get();
-            
-            // Delete from filesystem
-            boolean deleted = fileStorageService.deleteFile(file.getFilePath());
-            
-            if (deleted) {
-                // Soft delete from database
-                file.setIsActive(false);
-                fileRepository.save(file);
-                return true;
+        try (ClusterLockService.Lease lease = clusterLockService.lockFile(id)) {
+            Optional<File> fileOpt = ReadYourWritesContext.onPrimary(() -> fileRepository.findById(id));
+            if (fileOpt.isPresent() && Boolean.TRUE.equals(fileOpt.get().getIsActive())) {
+                File file = fileOpt.get();
+                // Fails with FILE_BUSY if the lease expired and another node took the file over
+                lease.checkHeld();
+                if (fileBatchWriter.deactivate(file.getId())) {
+                    fileCache.invalidateFile(file.getId());
+                    fileCache.invalidateContent(file.getFilePath());
+                    userQuotaService.releaseStorage(file.getUserId(),
+                            file.getFileSize() + fileVersionService.getStoredSize(file.getId()));
+                    fileEventPublisher.publish(FileEvent.DELETED, file.getId(), null);
+                    return true;
+                }
             }
+            return false;
+        }
+    }
+    
+    // Undo a delete while the blob has not been collected yet
+    public boolean restoreFile(Long id) {
+        try (ClusterLockService.Lease lease = clusterLockService.lockFile(id)) {
+            return restoreLocked(id, lease);
+        }
+    }
+    
+    private boolean restoreLocked(Long id, ClusterLockService.Lease lease) {
+        Optional<File> fileOpt = ReadYourWritesContext.onPrimary(() -> fileRepository.findById(id));
+        if (fileOpt.isEmpty() || Boolean.TRUE.equals(fileOpt.get().getIsActive())) {
+            return false;
+        }
+        
+        File file = fileOpt.get();
+        LocalDateTime cutoff = LocalDateTime.now().minus(fileGcConfig.getRetention());
+        if (file.getDeletedAt() == null || !file.getDeletedAt().isAfter(cutoff)
+                || !fileStorageService.fileExists(file.getFilePath())) {
+            return false;
+        }
+        
+        lease.checkHeld();
+        long charged = file.getFileSize() + fileVersionService.getStoredSize(id);
+        userQuotaService.reserveStorage(file.getUserId(), charged);
+        // The cutoff keeps this disjoint from rows the collector may be removing
+        if (fileRepository.restore(id, cutoff) == 1) {
+            fileChangeLog.recordRestored(id);
+            file.setIsActive(true);
+            file.setDeletedAt(null);
+            fileCache.invalidateFile(file.getId());
+            fileEventPublisher.publish(FileEvent.RESTORED, file.getId(), file);
+            return true;
         }
+        userQuotaService.releaseStorage(file.getUserId(), charged);
         return false;
     }
     
+    @Transactional(readOnly = true)
     public Long getTotalStorageUsed() {
         Long totalSize = fileRepository.getTotalStorageUsed();
         return totalSize != null ? totalSize : 0L;
     }
     
+    @Transactional(readOnly = true)
     public Long getFileCount() {
         return fileRepository.count();
     }
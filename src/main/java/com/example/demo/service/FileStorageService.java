@@ -2,7 +2,11 @@ package com.example.demo.service;
 
 import com.example.demo.config.FileStorageConfig;
 import com.example.demo.exception.FileStorageException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
 import org.springframework.stereotype.Service;
@@ -10,11 +14,16 @@ import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.nio.file.Files;
+import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.UUID;
@@ -22,28 +31,69 @@ import java.util.UUID;
 @Service
 public class FileStorageService {
     
+    private static final Logger logger = LoggerFactory.getLogger(FileStorageService.class);
+    
+    private static final int DIRECTORY_ATTEMPTS = 3;
+    
     @Autowired
     private FileStorageConfig fileStorageConfig;
     
+    private final BlobCipher blobCipher;
+    
     private final Path fileStorageLocation;
     
-    public FileStorageService(FileStorageConfig fileStorageConfig) {
+    public FileStorageService(FileStorageConfig fileStorageConfig, BlobCipher blobCipher) {
         this.fileStorageConfig = fileStorageConfig;
+        this.blobCipher = blobCipher;
         this.fileStorageLocation = Paths.get(fileStorageConfig.getUploadDir()).toAbsolutePath().normalize();
-        
+    }
+    
+    // Kept out of the constructor so creating the bean never touches the disk; upload
+    // directories are created on demand anyway, this only reports a bad upload-dir early
+    @EventListener(ApplicationReadyEvent.class)
+    public void prepareStorageLocation() {
         try {
-            Files.createDirectories(this.fileStorageLocation);
-        } catch (Exception ex) {
-            throw new FileStorageException("Could not create the directory where the uploaded files will be stored.", ex);
+            createDirectory(fileStorageLocation);
+        } catch (IOException ex) {
+            logger.error("Could not create the directory where the uploaded files will be stored: {}",
+                    fileStorageLocation, ex);
         }
     }
     
-    public String storeFile(MultipartFile file) {
+    // The content type is sniffed from the first bytes while they are copied, and
+    // the copy is aborted if the detected type is not allowed. The checksum is
+    // computed on the same pass, over the plaintext.
+    public StoredUpload storeFile(MultipartFile file) {
         // Validate file
         validateFile(file);
         
-        // Generate unique filename
         String originalFileName = StringUtils.cleanPath(file.getOriginalFilename());
+        String filePath = newFilePath(originalFileName);
+        ContentSniffer sniffer = new ContentSniffer(file.getContentType(), originalFileName);
+        
+        MessageDigest digest = Checksums.newDigest();
+        
+        Path targetFile = resolvePath(filePath);
+        // Never replace: on shared storage the path could belong to another node's upload
+        try (InputStream in = new SniffingInputStream(new DigestInputStream(file.getInputStream(), digest),
+                sniffer, this::validateContentType);
+             OutputStream out = createBlob(targetFile, StandardOpenOption.CREATE_NEW)) {
+            in.transferTo(out);
+            
+            return new StoredUpload(originalFileName, filePath, file.getContentType(),
+                    sniffer.getDetectedType(), file.getSize(), Checksums.hex(digest));
+        } catch (IOException ex) {
+            deleteQuietly(targetFile);
+            throw new FileStorageException("Could not store file " + originalFileName + ". Please try again!", ex);
+        } catch (FileStorageException ex) {
+            deleteQuietly(targetFile);
+            throw ex;
+        }
+    }
+    
+    // Picks a unique, date-based relative path for a new upload and creates its directory
+    public String newFilePath(String originalFileName) {
+        // Generate unique filename
         String fileExtension = getFileExtension(originalFileName);
         String storedFileName = UUID.randomUUID().toString() + "." + fileExtension;
         
@@ -52,28 +102,83 @@ public class FileStorageService {
         Path targetLocation = this.fileStorageLocation.resolve(datePath);
         
         try {
-            Files.createDirectories(targetLocation);
-            Path targetFile = targetLocation.resolve(storedFileName);
-            Files.copy(file.getInputStream(), targetFile, StandardCopyOption.REPLACE_EXISTING);
-            
-            return datePath + "/" + storedFileName;
+            createDirectory(targetLocation);
         } catch (IOException ex) {
             throw new FileStorageException("Could not store file " + originalFileName + ". Please try again!", ex);
         }
+        return datePath + "/" + storedFileName;
     }
     
+    // Nodes sharing the upload directory all create the same date directory at
+    // midnight. A create that loses the race, or fails transiently on a network
+    // filesystem, is fine as long as the directory exists afterwards.
+    private void createDirectory(Path directory) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                Files.createDirectories(directory);
+                return;
+            } catch (IOException ex) {
+                if (Files.isDirectory(directory)) {
+                    return;
+                }
+                if (attempt >= DIRECTORY_ATTEMPTS) {
+                    throw ex;
+                }
+            }
+        }
+    }
+    
+    public Path resolvePath(String fileName) {
+        return this.fileStorageLocation.resolve(fileName).normalize();
+    }
+    
+    // Plaintext blobs stay file: URL resources so they keep zero-copy writes
     public Resource loadFileAsResource(String fileName) {
         try {
             Path filePath = this.fileStorageLocation.resolve(fileName).normalize();
             Resource resource = new UrlResource(filePath.toUri());
             
             if (resource.exists()) {
-                return resource;
+                return blobCipher.isEncrypted(filePath) ? new EncryptedBlobResource(filePath, blobCipher) : resource;
             } else {
                 throw new FileStorageException("File not found " + fileName);
             }
         } catch (MalformedURLException ex) {
             throw new FileStorageException("File not found " + fileName, ex);
+        } catch (IOException ex) {
+            throw new FileStorageException("Could not read file " + fileName, ex);
+        }
+    }
+    
+    // Opens a new blob for writing; it is encrypted when file.encryption.enabled is set.
+    // The blob is only complete once the stream is closed.
+    public OutputStream createBlob(Path path, OpenOption... options) throws IOException {
+        OutputStream out = Files.newOutputStream(path, options);
+        if (!blobCipher.isEnabled()) {
+            return out;
+        }
+        try {
+            return blobCipher.encrypt(out);
+        } catch (IOException | RuntimeException ex) {
+            out.close();
+            throw ex;
+        }
+    }
+    
+    // The plaintext of a blob, whether or not it is stored encrypted
+    public InputStream openBlob(Path path) throws IOException {
+        return blobCipher.open(path);
+    }
+    
+    public byte[] readBlob(Path path) throws IOException {
+        try (InputStream in = openBlob(path)) {
+            return in.readAllBytes();
+        }
+    }
+    
+    public void writeBlob(Path path, byte[] content) throws IOException {
+        try (OutputStream out = createBlob(path)) {
+            out.write(content);
         }
     }
     
@@ -100,24 +205,51 @@ public class FileStorageService {
             throw new FileStorageException("Failed to store empty file.");
         }
         
-        if (file.getSize() > fileStorageConfig.getMaxFileSize()) {
+        validateFileSize(file.getSize());
+        validateUpload(file.getOriginalFilename(), file.getContentType());
+    }
+    
+    public void validateFileSize(long size) {
+        if (size > fileStorageConfig.getMaxFileSize()) {
             throw new FileStorageException("File size exceeds maximum allowed size of " + 
                 fileStorageConfig.getMaxFileSizeFormatted());
         }
-        
-        String contentType = file.getContentType();
-        if (contentType == null || !fileStorageConfig.isAllowedType(contentType)) {
+    }
+    
+    // Checks that can run before any content has been read. A declared type must be
+    // allowed too; a missing or generic one leaves the decision to content sniffing.
+    public void validateUpload(String originalFileName, String contentType) {
+        String declaredType = ContentSniffer.normalize(contentType);
+        if (declaredType != null && !declaredType.equals(ContentSniffer.OCTET_STREAM)
+                && !fileStorageConfig.isAllowedType(declaredType)) {
             throw new FileStorageException("File type not supported. Allowed types: " + 
                 String.join(", ", fileStorageConfig.getAllowedTypes()));
         }
         
         // Check for path traversal attacks
-        String fileName = StringUtils.cleanPath(file.getOriginalFilename());
+        String fileName = StringUtils.cleanPath(originalFileName);
         if (fileName.contains("..")) {
             throw new FileStorageException("Sorry! Filename contains invalid path sequence " + fileName);
         }
     }
     
+    // Runs against the sniffed type; the declared type is not trusted
+    public void validateContentType(String detectedType) {
+        if (detectedType == null || !fileStorageConfig.isAllowedType(detectedType)) {
+            throw new FileStorageException("File type not supported" +
+                (detectedType != null ? " (detected " + detectedType + ")" : "") +
+                ". Allowed types: " + String.join(", ", fileStorageConfig.getAllowedTypes()));
+        }
+    }
+    
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+            // Left for reconciliation to report
+        }
+    }
+    
     private String getFileExtension(String fileName) {
         if (fileName == null || !fileName.contains(".")) {
             return "";
@@ -0,0 +1,325 @@
+package com.example.demo.service;
+
+import com.example.demo.cluster.ClusterLockService;
+import com.example.demo.cluster.FileCache;
+import com.example.demo.config.FileVersionConfig;
+import com.example.demo.config.ReadYourWritesContext;
+import com.example.demo.exception.CorruptFileException;
+import com.example.demo.exception.FileNotFoundException;
+import com.example.demo.exception.FileStorageException;
+import com.example.demo.model.File;
+import com.example.demo.model.FileEvent;
+import com.example.demo.model.FileVersion;
+import com.example.demo.repository.FileRepository;
+import com.example.demo.repository.FileVersionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Keeps older versions of a file as reverse deltas. The files row and its blob
+// always hold the latest version, so reading it costs the same as before
+// versioning. When a new version arrives, the previous one is written to
+// .versions/<fileId>/ as a binary delta against the new content (or as a full
+// copy every few versions, or when the delta would not save much), which bounds
+// how many deltas an old version needs to be rebuilt. New versions hold the
+// file's cluster lock, so two nodes never extend one chain at once. Archived
+// versions are never rewritten, so reads take no lock.
+@Service
+public class FileVersionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileVersionService.class);
+
+    private final FileRepository fileRepository;
+    private final FileVersionRepository fileVersionRepository;
+    private final FileStorageService fileStorageService;
+    private final UserQuotaService userQuotaService;
+    private final FileEventPublisher fileEventPublisher;
+    private final ClusterLockService clusterLockService;
+    private final FileCache fileCache;
+    private final FileVersionConfig config;
+    private final TransactionTemplate transactionTemplate;
+
+    public FileVersionService(FileRepository fileRepository, FileVersionRepository fileVersionRepository,
+                              FileStorageService fileStorageService, UserQuotaService userQuotaService,
+                              FileEventPublisher fileEventPublisher, ClusterLockService clusterLockService,
+                              FileCache fileCache, FileVersionConfig config,
+                              PlatformTransactionManager transactionManager) {
+        this.fileRepository = fileRepository;
+        this.fileVersionRepository = fileVersionRepository;
+        this.fileStorageService = fileStorageService;
+        this.userQuotaService = userQuotaService;
+        this.fileEventPublisher = fileEventPublisher;
+        this.clusterLockService = clusterLockService;
+        this.fileCache = fileCache;
+        this.config = config;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // Makes an uploaded blob the latest version of a file. The caller has charged
+    // the new size to the owner's quota; here the previous size is swapped for what
+    // its archived copy takes on disk, so older versions count against the quota too.
+    public File addVersion(Long fileId, StoredUpload upload) {
+        try (ClusterLockService.Lease lease = clusterLockService.lockFile(fileId)) {
+            File file = activeFile(fileId);
+            Long userId = file.getUserId();
+            long previousSize = file.getFileSize();
+            String previousPath = file.getFilePath();
+            Path previousBlob = fileStorageService.resolvePath(previousPath);
+            FileVersion archived = archive(file, previousBlob, fileStorageService.resolvePath(upload.getFilePath()),
+                    upload.getSize());
+
+            userQuotaService.releaseStorage(userId, previousSize);
+            try {
+                userQuotaService.reserveStorage(userId, archived.getStoredSize());
+            } catch (RuntimeException ex) {
+                userQuotaService.addStorage(userId, previousSize);
+                deleteQuietly(fileStorageService.resolvePath(archived.getBlobPath()));
+                throw ex;
+            }
+
+            try {
+                file = transactionTemplate.execute(status -> {
+                    // Archiving can outlast a stalled node's lease; don't commit over another node's version
+                    lease.checkHeld();
+                    fileVersionRepository.save(archived);
+                    File current = activeFile(fileId);
+                    current.setOriginalName(upload.getOriginalName());
+                    current.setStoredName(upload.getFilePath().substring(upload.getFilePath().lastIndexOf('/') + 1));
+                    current.setFilePath(upload.getFilePath());
+                    String declaredType = upload.getContentType();
+                    current.setFileType(declaredType != null && !declaredType.isBlank()
+                            ? declaredType : upload.getDetectedType());
+                    current.setDetectedType(upload.getDetectedType());
+                    current.setFileSize(upload.getSize());
+                    current.setChecksum(upload.getChecksum());
+                    current.setUploadDate(LocalDateTime.now());
+                    current.setVersionNumber(archived.getVersionNumber() + 1);
+                    return fileRepository.save(current);
+                });
+            } catch (RuntimeException ex) {
+                userQuotaService.releaseStorage(userId, archived.getStoredSize());
+                userQuotaService.addStorage(userId, previousSize);
+                deleteQuietly(fileStorageService.resolvePath(archived.getBlobPath()));
+                throw ex;
+            }
+
+            fileCache.invalidateFile(fileId);
+            fileCache.invalidateContent(previousPath);
+            deleteQuietly(previousBlob);
+            fileEventPublisher.publish(FileEvent.UPDATED, fileId, file);
+            logger.debug("File {} is now at version {}; version {} kept as {} ({} bytes)", fileId,
+                    file.getVersionNumber(), archived.getVersionNumber(), archived.getStorage(),
+                    archived.getStoredSize());
+            return file;
+        }
+    }
+
+    // All versions, newest (the current one) first
+    public List<FileVersion> getVersions(Long fileId) {
+        File file = activeFile(fileId);
+        List<FileVersion> versions = new ArrayList<>();
+        versions.add(FileVersion.of(file));
+        versions.addAll(fileVersionRepository.findByFileIdOrderByVersionNumberDesc(fileId));
+        return versions;
+    }
+
+    public FileVersion getVersion(Long fileId, int versionNumber) {
+        return getVersions(fileId).stream()
+                .filter(version -> version.getVersionNumber() == versionNumber)
+                .findFirst()
+                .orElseThrow(() -> new FileNotFoundException(
+                        "Version " + versionNumber + " not found for file id: " + fileId));
+    }
+
+    // The content of a version for download. The latest one is its blob, served like a
+    // regular download; an older one is rebuilt into a temp file by applying deltas from
+    // the nearest full copy above it, and checked, before anything is sent. A new version
+    // arriving meanwhile deletes the blob the rebuild started from, so that case is
+    // retried from the new latest version.
+    public Resource loadVersionAsResource(Long fileId, int versionNumber) {
+        for (int attempt = 1; ; attempt++) {
+            File file = activeFile(fileId);
+            try {
+                if (versionNumber == file.getVersionNumber()) {
+                    return fileStorageService.loadFileAsResource(file.getFilePath());
+                }
+                return new RebuiltVersionResource(rebuild(file, versionNumber));
+            } catch (FileStorageException ex) {
+                if (attempt >= 3 || activeFile(fileId).getVersionNumber().equals(file.getVersionNumber())) {
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    private Path rebuild(File file, int versionNumber) {
+        Long fileId = file.getId();
+        // Versions archived after the row was read belong to a newer latest blob
+        List<FileVersion> chain = new ArrayList<>(fileVersionRepository
+                .findByFileIdAndVersionNumberGreaterThanEqualOrderByVersionNumberDesc(fileId, versionNumber));
+        chain.removeIf(version -> version.getVersionNumber() >= file.getVersionNumber());
+        if (chain.isEmpty() || chain.get(chain.size() - 1).getVersionNumber() != versionNumber) {
+            throw new FileNotFoundException("Version " + versionNumber + " not found for file id: " + fileId);
+        }
+
+        int start = -1;
+        for (int i = chain.size() - 1; i >= 0 && start < 0; i--) {
+            if (FileVersion.FULL.equals(chain.get(i).getStorage())) {
+                start = i;
+            }
+        }
+        Path content = null;
+        try {
+            MessageDigest digest = Checksums.newDigest();
+            content = Files.createTempFile("version-" + fileId + "-", ".tmp");
+            try (InputStream in = fileStorageService.openBlob(fileStorageService.resolvePath(
+                    start >= 0 ? chain.get(start).getBlobPath() : file.getFilePath()));
+                 OutputStream out = new DigestOutputStream(Files.newOutputStream(content), digest)) {
+                in.transferTo(out);
+            }
+            for (int i = start + 1; i < chain.size(); i++) {
+                FileVersion version = chain.get(i);
+                Path next = Files.createTempFile("version-" + fileId + "-", ".tmp");
+                digest = Checksums.newDigest();
+                try (InputStream in = fileStorageService.openBlob(fileStorageService.resolvePath(version.getBlobPath()));
+                     OutputStream out = new DigestOutputStream(
+                             new BufferedOutputStream(Files.newOutputStream(next), 64 * 1024), digest)) {
+                    if (FileVersion.FULL.equals(version.getStorage())) {
+                        in.transferTo(out);
+                    } else {
+                        try (FileChannel base = FileChannel.open(content, StandardOpenOption.READ)) {
+                            BinaryDelta.apply(base, new BufferedInputStream(in, 64 * 1024), out);
+                        }
+                    }
+                } catch (IOException | RuntimeException ex) {
+                    deleteQuietly(next);
+                    throw ex;
+                }
+                deleteQuietly(content);
+                content = next;
+            }
+            String checksum = chain.get(chain.size() - 1).getChecksum();
+            if (checksum != null && !checksum.equals(Checksums.hex(digest))) {
+                throw new CorruptFileException("Version " + versionNumber + " of file " + fileId
+                        + " failed its integrity check");
+            }
+            return content;
+        } catch (IOException ex) {
+            if (content != null) {
+                deleteQuietly(content);
+            }
+            throw new FileStorageException("Could not rebuild version " + versionNumber + " of file " + fileId, ex);
+        } catch (RuntimeException ex) {
+            if (content != null) {
+                deleteQuietly(content);
+            }
+            throw ex;
+        }
+    }
+
+    // Bytes the older versions of a file take on disk; they count against the owner's quota
+    public long getStoredSize(Long fileId) {
+        return fileVersionRepository.getStoredSize(fileId);
+    }
+
+    // Drops older versions of files whose rows have been purged. Their stored size
+    // was released with the file's own size when it was deleted.
+    public void purgeVersions(Collection<Long> fileIds) {
+        if (fileIds.isEmpty()) {
+            return;
+        }
+        fileVersionRepository.deleteByFileIdIn(fileIds);
+        for (Long fileId : fileIds) {
+            Path dir = versionDirectory(fileId);
+            if (!Files.isDirectory(dir)) {
+                continue;
+            }
+            try (Stream<Path> blobs = Files.list(dir)) {
+                blobs.forEach(this::deleteQuietly);
+            } catch (IOException ex) {
+                logger.warn("Could not list versions of file {}", fileId, ex);
+            }
+            deleteQuietly(dir);
+        }
+    }
+
+    // Encoding a delta holds both versions in memory, so files above max-delta-bytes
+    // are always kept as full copies, which stream
+    private FileVersion archive(File file, Path previousBlob, Path newBlob, long newSize) {
+        FileVersion version = FileVersion.of(file);
+        int number = version.getVersionNumber();
+        try {
+            Path dir = Files.createDirectories(versionDirectory(file.getId()));
+            byte[] delta = null;
+            if (number % Math.max(1, config.getFullCopyInterval()) != 0
+                    && Math.max(file.getFileSize(), newSize) <= config.getMaxDeltaBytes()) {
+                byte[] previous = fileStorageService.readBlob(previousBlob);
+                delta = BinaryDelta.encode(fileStorageService.readBlob(newBlob), previous);
+                if (delta.length > previous.length * config.getMaxDeltaRatio()) {
+                    delta = null;
+                }
+            }
+
+            Path target;
+            if (delta != null) {
+                target = dir.resolve(number + ".delta");
+                fileStorageService.writeBlob(target, delta);
+                version.setStorage(FileVersion.DELTA);
+                version.setStoredSize((long) delta.length);
+            } else {
+                target = dir.resolve(number + ".full");
+                // Through the cipher, so a blob from before encryption was enabled gets encrypted too
+                try (InputStream in = fileStorageService.openBlob(previousBlob);
+                     OutputStream out = fileStorageService.createBlob(target)) {
+                    in.transferTo(out);
+                }
+                version.setStorage(FileVersion.FULL);
+                version.setStoredSize(file.getFileSize());
+            }
+            version.setBlobPath(fileStorageService.getFileStorageLocation().relativize(target).toString()
+                    .replace('\\', '/'));
+            return version;
+        } catch (IOException ex) {
+            throw new FileStorageException("Could not keep version " + number + " of file " + file.getId(), ex);
+        }
+    }
+
+    // The row decides which blob is archived or read, so it comes from the primary
+    private File activeFile(Long fileId) {
+        return ReadYourWritesContext.onPrimary(() -> fileRepository.findById(fileId))
+                .filter(file -> Boolean.TRUE.equals(file.getIsActive()))
+                .orElseThrow(() -> new FileNotFoundException("File not found with id: " + fileId));
+    }
+
+    private Path versionDirectory(Long fileId) {
+        return fileStorageService.getFileStorageLocation().resolve(config.getDir()).resolve(String.valueOf(fileId));
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ex) {
+            logger.warn("Could not delete {}", path, ex);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.demo.service;
+
+import com.example.demo.model.FileEvent;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+// Keeps a subscriber whose writes block (a servlet SseEmitter) off the shared
+// delivery threads: calls only queue the message, and a sender thread writes
+// them out in order. A client that lets more than capacity messages pile up
+// loses them and is sent a reset instead, like one that falls behind the ring.
+final class QueuedListener implements FileEventPublisher.Listener {
+
+    private static final Object RESET = new Object();
+    private static final Object HEARTBEAT = new Object();
+
+    private final FileEventPublisher.Listener target;
+    private final Executor sender;
+    private final int capacity;
+    private final ArrayDeque<Object> queue = new ArrayDeque<>(); // guarded by this
+    private boolean sending; // guarded by this
+    private volatile Exception failure;
+
+    QueuedListener(FileEventPublisher.Listener target, Executor sender, int capacity) {
+        this.target = target;
+        this.sender = sender;
+        this.capacity = Math.max(1, capacity);
+    }
+
+    @Override
+    public void onEvent(FileEvent event) throws Exception {
+        offer(event);
+    }
+
+    @Override
+    public void onReset() throws Exception {
+        offer(RESET);
+    }
+
+    @Override
+    public void onHeartbeat() throws Exception {
+        offer(HEARTBEAT);
+    }
+
+    private void offer(Object message) throws Exception {
+        // Rethrown so the publisher drops the subscription
+        if (failure != null) {
+            throw failure;
+        }
+        synchronized (this) {
+            if (message == RESET || queue.size() >= capacity) {
+                queue.clear();
+                queue.add(RESET);
+            } else if (message != HEARTBEAT || queue.isEmpty()) {
+                queue.add(message);
+            }
+            if (sending) {
+                return;
+            }
+            sending = true;
+        }
+        try {
+            sender.execute(this::send);
+        } catch (RejectedExecutionException ex) {
+            synchronized (this) {
+                sending = false;
+            }
+            throw ex;
+        }
+    }
+
+    private void send() {
+        while (true) {
+            Object message;
+            synchronized (this) {
+                message = queue.poll();
+                if (message == null) {
+                    sending = false;
+                    return;
+                }
+            }
+            try {
+                if (message == RESET) {
+                    target.onReset();
+                } else if (message == HEARTBEAT) {
+                    target.onHeartbeat();
+                } else {
+                    target.onEvent((FileEvent) message);
+                }
+            } catch (Exception ex) {
+                failure = ex;
+                synchronized (this) {
+                    queue.clear();
+                    sending = false;
+                }
+                return;
+            }
+        }
+    }
+}
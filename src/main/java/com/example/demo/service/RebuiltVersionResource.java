@@ -0,0 +1,33 @@
+package com.example.demo.service;
+
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// An older version rebuilt into a temp file. It can be opened any number of times
+// (multi-range requests do), so the web layer releases it once the response has
+// completed, whether the body was sent in full, skipped (HEAD, 304) or aborted.
+public class RebuiltVersionResource extends FileSystemResource {
+
+    private final Path path;
+
+    public RebuiltVersionResource(Path path) {
+        super(path);
+        this.path = path;
+    }
+
+    public void release() {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ex) {
+            path.toFile().deleteOnExit();
+        }
+    }
+
+    @Override
+    public String getDescription() {
+        return "rebuilt version [" + path + "]";
+    }
+}
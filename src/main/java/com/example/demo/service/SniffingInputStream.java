@@ -0,0 +1,80 @@
+package com.example.demo.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.function.Consumer;
+
+// Passes an upload through unchanged while feeding its first bytes to a
+// ContentSniffer. The callback runs once with the detected type, as soon as the
+// header has been read, so a rejected upload stops after the first buffer.
+public class SniffingInputStream extends FilterInputStream {
+
+    private final ContentSniffer sniffer;
+    private final Consumer<String> onDetected;
+    private boolean notified;
+
+    public SniffingInputStream(InputStream in, ContentSniffer sniffer, Consumer<String> onDetected) {
+        super(in);
+        this.sniffer = sniffer;
+        this.onDetected = onDetected;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int value = super.read();
+        if (value < 0) {
+            complete();
+        } else if (!notified && sniffer.update((byte) value)) {
+            notifyDetected();
+        }
+        return value;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int count = super.read(b, off, len);
+        if (count < 0) {
+            complete();
+        } else if (!notified && sniffer.update(b, off, count)) {
+            notifyDetected();
+        }
+        return count;
+    }
+
+    // Sniffs the header through read(), then hands the rest to the wrapped
+    // stream so its own bulk transfer is kept (Files.copy ends up here)
+    @Override
+    public long transferTo(OutputStream out) throws IOException {
+        byte[] buffer = new byte[ContentSniffer.HEADER_SIZE];
+        long transferred = 0;
+        while (!notified) {
+            int count = read(buffer, 0, buffer.length);
+            if (count < 0) {
+                return transferred;
+            }
+            out.write(buffer, 0, count);
+            transferred += count;
+        }
+        return transferred + in.transferTo(out);
+    }
+
+    // Mark/reset would replay bytes into the sniffer
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void complete() {
+        if (!notified) {
+            sniffer.finish();
+            notifyDetected();
+        }
+    }
+
+    private void notifyDetected() {
+        notified = true;
+        onDetected.accept(sniffer.getDetectedType());
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.demo.service;
+
+// A blob that has been written to the upload directory but not yet recorded
+public class StoredUpload {
+
+    private final String originalName;
+    private final String filePath;
+    private final String contentType;
+    private final String detectedType;
+    private final long size;
+    private final String checksum;
+
+    public StoredUpload(String originalName, String filePath, String contentType, String detectedType, long size,
+                        String checksum) {
+        this.originalName = originalName;
+        this.filePath = filePath;
+        this.contentType = contentType;
+        this.detectedType = detectedType;
+        this.size = size;
+        this.checksum = checksum;
+    }
+
+    public String getOriginalName() {
+        return originalName;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    // As declared by the client
+    public String getContentType() {
+        return contentType;
+    }
+
+    // As sniffed from the content
+    public String getDetectedType() {
+        return detectedType;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    // SHA-256 of the content, hex
+    public String getChecksum() {
+        return checksum;
+    }
+}
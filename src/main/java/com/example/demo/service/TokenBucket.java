@@ -0,0 +1,47 @@
+package com.example.demo.service;
+
+// Token bucket that allows going into debt: a request is admitted whenever the
+// bucket is not empty and may take more tokens than are available, so a single
+// file larger than the burst size still gets through and later requests wait.
+public class TokenBucket {
+
+    private final double tokensPerNano;
+    private final double capacity;
+
+    private double tokens;
+    private long lastRefillNanos;
+
+    public TokenBucket(long tokensPerSecond, long burstSeconds) {
+        this.tokensPerNano = tokensPerSecond / 1_000_000_000.0;
+        this.capacity = (double) tokensPerSecond * Math.max(1, burstSeconds);
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    // Returns 0 if the tokens were taken, otherwise how many nanos until they could be
+    public synchronized long tryAcquire(long permits) {
+        refill(System.nanoTime());
+        if (tokens > 0) {
+            tokens -= permits;
+            return 0L;
+        }
+        return nanosUntilPositive();
+    }
+
+    // Blocks until the tokens have been taken
+    public void acquire(long permits) throws InterruptedException {
+        long waitNanos;
+        while ((waitNanos = tryAcquire(permits)) > 0) {
+            Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+        }
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * tokensPerNano);
+        lastRefillNanos = now;
+    }
+
+    private long nanosUntilPositive() {
+        return (long) Math.ceil((-tokens + 1) / tokensPerNano);
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.demo.service;
+
+import com.example.demo.cluster.ClusterMessage;
+import com.example.demo.cluster.ClusterTransport;
+import com.example.demo.config.FileStorageConfig;
+import com.example.demo.config.ReadYourWritesContext;
+import com.example.demo.exception.QuotaExceededException;
+import com.example.demo.exception.RateLimitExceededException;
+import com.example.demo.repository.FileRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Enforces per-user storage quotas and transfer rates from memory. Usage counters
+// are seeded once from the files and file_versions tables, before the server takes
+// requests, and then kept in sync on every upload, new version and delete, so a
+// check is a CAS rather than a SUM query. Every change is also broadcast so the
+// other nodes count it too. Broadcasts can be lost and uploads can race a seed,
+// so the counters are corrected from the database every quota-resync-interval-ms.
+// Rate limit buckets are per node.
+@Service
+public class UserQuotaService implements SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserQuotaService.class);
+
+    public static final long ANONYMOUS_USER = 0L;
+
+    private final FileStorageConfig fileStorageConfig;
+    private final FileRepository fileRepository;
+    private final ClusterTransport transport;
+    private final TransactionTemplate readTemplate;
+
+    private final Map<Long, AtomicLong> storageUsed = new ConcurrentHashMap<>();
+    private final Map<Long, TokenBucket> uploadBuckets = new ConcurrentHashMap<>();
+    private final Map<Long, TokenBucket> downloadBuckets = new ConcurrentHashMap<>();
+
+    public UserQuotaService(FileStorageConfig fileStorageConfig, FileRepository fileRepository,
+                            ClusterTransport transport, PlatformTransactionManager transactionManager) {
+        this.fileStorageConfig = fileStorageConfig;
+        this.fileRepository = fileRepository;
+        this.transport = transport;
+        this.readTemplate = new TransactionTemplate(transactionManager);
+        this.readTemplate.setReadOnly(true);
+        transport.subscribe(this::onMessage);
+    }
+
+    // Runs once all singletons exist, before the web server is started, so no
+    // upload can reserve against a counter that is about to be seeded
+    @Override
+    public void afterSingletonsInstantiated() {
+        seedFromDatabase();
+    }
+
+    // Replaces the counters with the stored totals rather than adding to them
+    public void seedFromDatabase() {
+        Map<Long, Long> stored = loadStoredUsage();
+        Map<Long, AtomicLong> seeded = new HashMap<>();
+        for (Map.Entry<Long, Long> entry : stored.entrySet()) {
+            seeded.put(entry.getKey(), new AtomicLong(entry.getValue()));
+        }
+        storageUsed.clear();
+        storageUsed.putAll(seeded);
+        logger.info("Seeded storage usage for {} users", seeded.size());
+    }
+
+    // Moves every counter by the difference between the stored total and the value
+    // it had before the query. Changes made while the query runs may be off until
+    // the next pass, which then corrects them as well.
+    @Scheduled(fixedDelayString = "${file.quota-resync-interval-ms:300000}",
+            initialDelayString = "${file.quota-resync-interval-ms:300000}")
+    public void resyncFromDatabase() {
+        Map<Long, Long> before = new HashMap<>();
+        for (Map.Entry<Long, AtomicLong> entry : storageUsed.entrySet()) {
+            before.put(entry.getKey(), entry.getValue().get());
+        }
+        Map<Long, Long> stored = loadStoredUsage();
+
+        int corrected = 0;
+        Set<Long> users = new HashSet<>(before.keySet());
+        users.addAll(stored.keySet());
+        for (Long key : users) {
+            long drift = stored.getOrDefault(key, 0L) - before.getOrDefault(key, 0L);
+            if (drift != 0) {
+                counter(key).addAndGet(drift);
+                corrected++;
+            }
+        }
+        if (corrected > 0) {
+            logger.info("Corrected storage usage of {} users from the database", corrected);
+        }
+    }
+
+    // Both sums in one read-only transaction on the primary, which has every committed row
+    private Map<Long, Long> loadStoredUsage() {
+        return ReadYourWritesContext.onPrimary(() -> readTemplate.execute(status -> {
+            Map<Long, Long> stored = new HashMap<>();
+            addUsage(stored, fileRepository.sumFileSizeByUser());
+            addUsage(stored, fileRepository.sumVersionStorageByUser());
+            return stored;
+        }));
+    }
+
+    private static void addUsage(Map<Long, Long> stored, List<Object[]> rows) {
+        for (Object[] row : rows) {
+            long used = row[1] != null ? ((Number) row[1]).longValue() : 0L;
+            stored.merge(key((Long) row[0]), used, Long::sum);
+        }
+    }
+
+    // Reserve space for a new file; the caller must release it if the upload fails
+    public void reserveStorage(Long userId, long bytes) {
+        long quota = fileStorageConfig.getUserQuotaBytes();
+        AtomicLong used = counter(key(userId));
+        if (quota <= 0) {
+            used.addAndGet(bytes);
+            broadcast(userId, bytes);
+            return;
+        }
+
+        long current;
+        do {
+            current = used.get();
+            if (current + bytes > quota) {
+                throw new QuotaExceededException("Storage quota of " + quota + " bytes exceeded");
+            }
+        } while (!used.compareAndSet(current, current + bytes));
+        broadcast(userId, bytes);
+    }
+
+    public void releaseStorage(Long userId, long bytes) {
+        counter(key(userId)).addAndGet(-bytes);
+        broadcast(userId, -bytes);
+    }
+
+    // Counts files that arrive without an upload, e.g. from an imported archive;
+    // they are already stored, so the quota is not enforced
+    public void addStorage(Long userId, long bytes) {
+        counter(key(userId)).addAndGet(bytes);
+        broadcast(userId, bytes);
+    }
+
+    public long getStorageUsed(Long userId) {
+        AtomicLong used = storageUsed.get(key(userId));
+        return used != null ? used.get() : 0L;
+    }
+
+    public void acquireUpload(Long userId, long bytes) {
+        acquire(uploadBuckets, fileStorageConfig.getUploadRateBytesPerSecond(), userId, bytes, "Upload");
+    }
+
+    public void acquireDownload(Long userId, long bytes) {
+        acquire(downloadBuckets, fileStorageConfig.getDownloadRateBytesPerSecond(), userId, bytes, "Download");
+    }
+
+    private void acquire(Map<Long, TokenBucket> buckets, long ratePerSecond, Long userId, long bytes, String kind) {
+        if (ratePerSecond <= 0) {
+            return;
+        }
+
+        TokenBucket bucket = buckets.computeIfAbsent(key(userId),
+                id -> new TokenBucket(ratePerSecond, fileStorageConfig.getRateLimitBurstSeconds()));
+        long waitNanos = bucket.tryAcquire(bytes);
+        if (waitNanos > 0) {
+            long retryAfterSeconds = Math.max(1, (waitNanos + 999_999_999L) / 1_000_000_000L);
+            throw new RateLimitExceededException(kind + " rate limit exceeded, retry in "
+                    + retryAfterSeconds + " seconds", retryAfterSeconds);
+        }
+    }
+
+    private void broadcast(Long userId, long delta) {
+        transport.broadcast(ClusterMessage.STORAGE_USED, String.valueOf(key(userId)), String.valueOf(delta));
+    }
+
+    // Another node reserved or released space; its own check already applied the quota
+    private void onMessage(ClusterMessage message) {
+        if (!ClusterMessage.STORAGE_USED.equals(message.getType())) {
+            return;
+        }
+        try {
+            counter(Long.valueOf(message.getKey())).addAndGet(Long.parseLong(message.getValue()));
+        } catch (NumberFormatException ex) {
+            logger.warn("Ignored malformed storage usage message from {}", message.getOrigin());
+        }
+    }
+
+    private AtomicLong counter(Long key) {
+        return storageUsed.computeIfAbsent(key, id -> new AtomicLong());
+    }
+
+    private static Long key(Long userId) {
+        return userId != null ? userId : ANONYMOUS_USER;
+    }
+}
@@ -0,0 +1,54 @@
+-- Schema for spring.jpa.hibernate.ddl-auto=validate (the "fast" profile), where
+-- Hibernate checks the tables instead of creating or altering them.
+-- Keep in sync with the entities in com.example.demo.model.
+
+CREATE TABLE IF NOT EXISTS files (
+    id BIGINT PRIMARY KEY AUTO_INCREMENT,
+    original_name VARCHAR(255) NOT NULL,
+    stored_name VARCHAR(255) NOT NULL UNIQUE,
+    file_path VARCHAR(500) NOT NULL,
+    file_type VARCHAR(100) NOT NULL,
+    detected_type VARCHAR(100),
+    file_size BIGINT NOT NULL,
+    checksum VARCHAR(64),
+    upload_date TIMESTAMP NULL DEFAULT CURRENT_TIMESTAMP,
+    user_id BIGINT,
+    description TEXT,
+    is_active BOOLEAN DEFAULT TRUE,
+    version_number INT DEFAULT 1,
+    deleted_at TIMESTAMP NULL
+);
+
+CREATE TABLE IF NOT EXISTS file_versions (
+    id BIGINT PRIMARY KEY AUTO_INCREMENT,
+    file_id BIGINT NOT NULL,
+    version_number INT NOT NULL,
+    original_name VARCHAR(255) NOT NULL,
+    file_type VARCHAR(255) NOT NULL,
+    detected_type VARCHAR(255),
+    file_size BIGINT NOT NULL,
+    checksum VARCHAR(64),
+    upload_date TIMESTAMP NULL,
+    storage VARCHAR(10) NOT NULL,
+    blob_path VARCHAR(255),
+    stored_size BIGINT NOT NULL,
+    UNIQUE (file_id, version_number)
+);
+
+CREATE TABLE IF NOT EXISTS file_changes (
+    file_id BIGINT PRIMARY KEY,
+    change_type VARCHAR(10) NOT NULL,
+    changed_at TIMESTAMP NOT NULL,
+    INDEX idx_file_changes_changed_at (changed_at)
+);
+
+CREATE TABLE IF NOT EXISTS file_store_info (
+    info_key VARCHAR(50) PRIMARY KEY,
+    info_value VARCHAR(100) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS cluster_locks (
+    lock_name VARCHAR(200) PRIMARY KEY,
+    owner VARCHAR(100) NOT NULL,
+    expires_at BIGINT NOT NULL
+);
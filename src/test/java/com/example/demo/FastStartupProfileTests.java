@@ -0,0 +1,39 @@
+package com.example.demo;
+
+import com.example.demo.cluster.RemoteFileEventRelay;
+import com.example.demo.controller.FileController;
+import com.example.demo.service.BlobScrubber;
+import com.example.demo.service.DeletedFileCollector;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Starts with the "fast" profile against the checked-in schema, so a schema that
+// drifts from the entities fails validation here
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:fast-startup;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.sql.init.mode=always",
+        "spring.sql.init.schema-locations=classpath:db/schema-mysql.sql"
+})
+@ActiveProfiles({"test", "fast"})
+class FastStartupProfileTests {
+
+	@Autowired
+	private ConfigurableApplicationContext context;
+
+	@Test
+	void backgroundServicesStartEagerlyAndTheRestOnDemand() {
+		for (Class<?> type : new Class<?>[]{DeletedFileCollector.class, BlobScrubber.class, RemoteFileEventRelay.class}) {
+			String name = context.getBeanNamesForType(type)[0];
+			assertTrue(context.getBeanFactory().containsSingleton(name), name + " should be created at startup");
+		}
+		String lazy = context.getBeanNamesForType(FileController.class)[0];
+		assertFalse(context.getBeanFactory().containsSingleton(lazy), lazy + " should wait for its first use");
+	}
+
+}
@@ -0,0 +1,141 @@
+package com.example.demo.cluster;
+
+import com.example.demo.config.ClusterConfig;
+import com.example.demo.exception.LockTimeoutException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// Two nodes sharing one database
+class ClusterLockServiceTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private ClusterLockService nodeA;
+    private ClusterLockService nodeB;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:locks-" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE cluster_locks (lock_name VARCHAR(200) PRIMARY KEY, " +
+                "owner VARCHAR(100) NOT NULL, expires_at BIGINT NOT NULL)");
+        nodeA = new ClusterLockService(jdbcTemplate, config("a", 30000, 5000));
+        nodeB = new ClusterLockService(jdbcTemplate, config("b", 30000, 5000));
+    }
+
+    @Test
+    void nodesExcludeEachOther() throws Exception {
+        AtomicInteger inside = new AtomicInteger();
+        AtomicInteger maxInside = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            ClusterLockService node = i % 2 == 0 ? nodeA : nodeB;
+            futures.add(executor.submit(() -> {
+                try (ClusterLockService.Lease lease = node.lockFile(7L)) {
+                    maxInside.accumulateAndGet(inside.incrementAndGet(), Math::max);
+                    Thread.sleep(2);
+                    inside.decrementAndGet();
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertEquals(1, maxInside.get());
+        assertEquals(0, count());
+    }
+
+    @Test
+    void waitingForAHeldLockTimesOut() {
+        ClusterLockService impatient = new ClusterLockService(jdbcTemplate, config("c", 30000, 100));
+        try (ClusterLockService.Lease lease = nodeA.lockFile(1L)) {
+            assertThrows(LockTimeoutException.class, () -> impatient.lockFile(1L));
+        }
+    }
+
+    @Test
+    void expiredLeaseOfADeadNodeIsTakenOver() {
+        ClusterLockService dying = new ClusterLockService(jdbcTemplate, config("dead", 50, 1000));
+        dying.lockFile(1L); // never released
+
+        try (ClusterLockService.Lease lease = nodeB.lockFile(1L)) {
+            assertEquals("b", jdbcTemplate.queryForObject(
+                    "SELECT owner FROM cluster_locks WHERE lock_name = 'file:1'", String.class).split(":")[0]);
+        }
+        assertEquals(0, count());
+    }
+
+    @Test
+    void renewalKeepsAHeldLeaseFromBeingTakenOver() {
+        ClusterLockService impatient = new ClusterLockService(jdbcTemplate, config("c", 30000, 100));
+        try (ClusterLockService.Lease lease = nodeA.lockFile(1L)) {
+            // As if the lease were about to run out mid-operation
+            jdbcTemplate.update("UPDATE cluster_locks SET expires_at = ?", System.currentTimeMillis() - 1);
+            nodeA.renewHeldLeases();
+
+            assertThrows(LockTimeoutException.class, () -> impatient.lockFile(1L));
+            lease.checkHeld();
+        }
+        assertEquals(0, count());
+    }
+
+    @Test
+    void leaseTakenOverFailsItsHoldersCheck() {
+        ClusterLockService.Lease stalled = nodeA.lockFile(1L);
+        jdbcTemplate.update("UPDATE cluster_locks SET expires_at = ?", System.currentTimeMillis() - 1);
+
+        try (ClusterLockService.Lease lease = nodeB.lockFile(1L)) {
+            assertThrows(LockTimeoutException.class, stalled::checkHeld);
+            nodeA.renewHeldLeases();
+            assertThrows(LockTimeoutException.class, stalled::checkHeld);
+            stalled.close();
+            lease.checkHeld();
+        }
+        assertEquals(0, count());
+    }
+
+    @Test
+    void unrelatedNamesDoNotWaitOnEachOther() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (ClusterLockService.Lease lease = nodeA.lock("a")) {
+            // Every other name, whatever its hash, is free while "a" is held
+            for (int i = 0; i < 200; i++) {
+                String name = "n" + i;
+                executor.submit(() -> nodeA.lock(name).close()).get(1, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(0, count());
+    }
+
+    private int count() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM cluster_locks", Integer.class);
+    }
+
+    private static ClusterConfig config(String nodeId, long ttlMs, long waitMs) {
+        ClusterConfig config = new ClusterConfig();
+        config.setNodeId(nodeId);
+        config.setLockTtlMs(ttlMs);
+        config.setLockWaitMs(waitMs);
+        return config;
+    }
+}
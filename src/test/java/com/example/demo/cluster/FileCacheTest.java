@@ -0,0 +1,116 @@
+package com.example.demo.cluster;
+
+import com.example.demo.config.ClusterConfig;
+import com.example.demo.config.ReadYourWritesContext;
+import com.example.demo.model.File;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.DatagramSocket;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Two nodes in one JVM talking over real UDP sockets on localhost
+class FileCacheTest {
+
+    private UdpClusterTransport transportA;
+    private UdpClusterTransport transportB;
+    private FileCache cacheA;
+    private FileCache cacheB;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        int portA = freePort();
+        int portB = freePort();
+        transportA = new UdpClusterTransport("a", portA, List.of("127.0.0.1:" + portB));
+        transportB = new UdpClusterTransport("b", portB, List.of("127.0.0.1:" + portA));
+        cacheA = new FileCache(transportA, new ClusterConfig());
+        cacheB = new FileCache(transportB, new ClusterConfig());
+    }
+
+    @AfterEach
+    void tearDown() {
+        transportA.close();
+        transportB.close();
+    }
+
+    @Test
+    void invalidationOnOneNodeEvictsOnTheOther() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        cacheB.getFile(1L, () -> file(1L, "v" + loads.incrementAndGet()));
+        assertEquals("v1", cacheB.getFile(1L, () -> file(1L, "v" + loads.incrementAndGet())).getOriginalName());
+
+        cacheA.invalidateFile(1L);
+
+        assertTrue(waitFor(() -> "v2".equals(
+                cacheB.getFile(1L, () -> file(1L, "v" + loads.incrementAndGet())).getOriginalName())));
+    }
+
+    @Test
+    void contentInvalidationIsBroadcast() throws Exception {
+        byte[] first = {1};
+        byte[] second = {2};
+        cacheB.getContent("2024/01/01/a.txt", 1, () -> first);
+        assertEquals(first, cacheB.getContent("2024/01/01/a.txt", 1, () -> second));
+
+        cacheA.invalidateContent("2024/01/01/a.txt");
+
+        assertTrue(waitFor(() -> cacheB.getContent("2024/01/01/a.txt", 1, () -> second) == second));
+    }
+
+    @Test
+    void loadRacingAnInvalidationIsNotCached() {
+        File stale = file(1L, "stale");
+        cacheA.getFile(1L, () -> {
+            cacheA.invalidateFile(1L); // the row changes while it is being read
+            return stale;
+        });
+
+        assertEquals("fresh", cacheA.getFile(1L, () -> file(1L, "fresh")).getOriginalName());
+    }
+
+    @Test
+    void missesAreLoadedFromThePrimary() {
+        AtomicInteger primaryLoads = new AtomicInteger();
+        cacheA.getFile(1L, () -> {
+            if (ReadYourWritesContext.isPrimaryRequired()) {
+                primaryLoads.incrementAndGet();
+            }
+            return file(1L, "row");
+        });
+
+        assertEquals(1, primaryLoads.get());
+        assertFalse(ReadYourWritesContext.isPrimaryRequired());
+    }
+
+    private static File file(Long id, String name) {
+        File file = new File();
+        file.setId(id);
+        file.setOriginalName(name);
+        return file;
+    }
+
+    private static boolean waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            Thread.sleep(10);
+        }
+        return false;
+    }
+
+    private static int freePort() throws Exception {
+        try (DatagramSocket socket = new DatagramSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.example.demo.reactive;
+
+import com.example.demo.config.FileStorageConfig;
+import com.example.demo.service.FileStorageService;
+import com.example.demo.service.UserQuotaService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.BodyInserters;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.main.web-application-type=reactive")
+@AutoConfigureWebTestClient
+@ActiveProfiles("test")
+class ReactiveFileControllerTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private ReactiveFileStorage reactiveFileStorage;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private FileStorageConfig fileStorageConfig;
+
+    @Autowired
+    private UserQuotaService userQuotaService;
+
+    @Test
+    void uploadThenDownloadStreamsContent() {
+        byte[] content = "id,name\n1,alpha\n2,beta\n".getBytes(StandardCharsets.UTF_8);
+        Long id = upload("data.csv", MediaType.parseMediaType("text/csv"), content);
+
+        byte[] downloaded = webTestClient.get().uri("/api/files/{id}/download", id)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(byte[].class).returnResult().getResponseBody();
+        assertEquals(new String(content, StandardCharsets.UTF_8), new String(downloaded, StandardCharsets.UTF_8));
+
+        webTestClient.get().uri("/api/files/{id}/download", id)
+                .header("Range", "bytes=0-6")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PARTIAL_CONTENT)
+                .expectBody(String.class).isEqualTo("id,name");
+    }
+
+    @Test
+    void rebuiltVersionIsDeletedAfterEveryResponse() {
+        byte[] first = "first\n".repeat(1000).getBytes(StandardCharsets.UTF_8);
+        Long id = upload("notes.txt", MediaType.TEXT_PLAIN, first);
+        MultipartBodyBuilder builder = new MultipartBodyBuilder();
+        builder.part("file", resource("notes.txt", "second\n".getBytes(StandardCharsets.UTF_8)))
+                .contentType(MediaType.TEXT_PLAIN);
+        webTestClient.post().uri("/api/files/{id}/versions", id)
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .body(BodyInserters.fromMultipartData(builder.build()))
+                .exchange()
+                .expectStatus().isOk();
+        // Ids start over with each test database, so earlier runs may have left files behind
+        long before = countRebuilt(id);
+
+        webTestClient.head().uri("/api/files/{id}/versions/1/download", id)
+                .exchange()
+                .expectStatus().isOk();
+        assertTrue(await(() -> countRebuilt(id) == before));
+
+        webTestClient.get().uri("/api/files/{id}/versions/1/download", id)
+                .header("Range", "bytes=0-5,6-11")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PARTIAL_CONTENT);
+        assertTrue(await(() -> countRebuilt(id) == before));
+    }
+
+    @Test
+    void rejectsUnsupportedType() {
+        MultipartBodyBuilder builder = new MultipartBodyBuilder();
+        builder.part("file", resource("script.sh", "echo hi".getBytes(StandardCharsets.UTF_8)))
+                .contentType(MediaType.parseMediaType("application/x-sh"));
+
+        webTestClient.post().uri("/api/files/upload")
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .body(BodyInserters.fromMultipartData(builder.build()))
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody().jsonPath("$.success").isEqualTo(false);
+    }
+
+    @Test
+    void extraFilePartsAreNotStored() {
+        Path uploadDir = fileStorageService.resolvePath("");
+        long before = countBlobs(uploadDir);
+        MultipartBodyBuilder builder = new MultipartBodyBuilder();
+        builder.part("file", resource("first.txt", "first".getBytes(StandardCharsets.UTF_8)))
+                .contentType(MediaType.TEXT_PLAIN);
+        builder.part("file", resource("second.txt", "second".getBytes(StandardCharsets.UTF_8)))
+                .contentType(MediaType.TEXT_PLAIN);
+
+        webTestClient.post().uri("/api/files/upload")
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .body(BodyInserters.fromMultipartData(builder.build()))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.data.originalName").isEqualTo("first.txt");
+        assertEquals(before + 1, countBlobs(uploadDir));
+    }
+
+    @Test
+    void uploadOverQuotaIsStoppedWhileStreaming() {
+        Path uploadDir = fileStorageService.resolvePath("");
+        long before = countBlobs(uploadDir);
+        long used = userQuotaService.getStorageUsed(42L);
+        long quota = fileStorageConfig.getUserQuotaBytes();
+        fileStorageConfig.setUserQuotaBytes(used + 10);
+        try {
+            MultipartBodyBuilder builder = new MultipartBodyBuilder();
+            builder.part("file", resource("big.txt", new byte[100])).contentType(MediaType.TEXT_PLAIN);
+
+            webTestClient.post().uri("/api/files/upload?userId=42")
+                    .contentType(MediaType.MULTIPART_FORM_DATA)
+                    .body(BodyInserters.fromMultipartData(builder.build()))
+                    .exchange()
+                    .expectStatus().isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE);
+        } finally {
+            fileStorageConfig.setUserQuotaBytes(quota);
+        }
+        assertTrue(await(() -> countBlobs(uploadDir) == before));
+        assertEquals(used, userQuotaService.getStorageUsed(42L));
+    }
+
+    @Test
+    void abandonedUploadLeavesNoPartialBlob() throws Exception {
+        Path uploadDir = fileStorageService.resolvePath("");
+        long before = countBlobs(uploadDir);
+        DataBuffer chunk = DefaultDataBufferFactory.sharedInstance.wrap("partial".getBytes(StandardCharsets.UTF_8));
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.post("/api/files/upload"));
+
+        // The client sends one chunk and then disconnects
+        Disposable upload = reactiveFileStorage.store(exchange, "partial.txt", "text/plain",
+                Flux.concat(Flux.just(chunk), Flux.never()), bytes -> { }).subscribe();
+        assertTrue(await(() -> countBlobs(uploadDir) == before + 1));
+        upload.dispose();
+
+        assertTrue(await(() -> countBlobs(uploadDir) == before));
+    }
+
+    private static long countBlobs(Path dir) {
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(Files::isRegularFile).count();
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static long countRebuilt(Long id) {
+        try (Stream<Path> files = Files.list(Path.of(System.getProperty("java.io.tmpdir")))) {
+            return files.filter(file -> file.getFileName().toString().startsWith("version-" + id + "-")).count();
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static boolean await(BooleanSupplier condition) {
+        try {
+            for (int i = 0; i < 500 && !condition.getAsBoolean(); i++) {
+                Thread.sleep(10);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return condition.getAsBoolean();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Long upload(String name, MediaType type, byte[] content) {
+        MultipartBodyBuilder builder = new MultipartBodyBuilder();
+        builder.part("userId", "7");
+        builder.part("file", resource(name, content)).contentType(type);
+
+        Map<String, Object> response = webTestClient.post().uri("/api/files/upload")
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .body(BodyInserters.fromMultipartData(builder.build()))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Map.class).returnResult().getResponseBody();
+        assertNotNull(response);
+        Map<String, Object> data = (Map<String, Object>) response.get("data");
+        return ((Number) data.get("id")).longValue();
+    }
+
+    private static ByteArrayResource resource(String name, byte[] content) {
+        return new ByteArrayResource(content) {
+            @Override
+            public String getFilename() {
+                return name;
+            }
+        };
+    }
+}
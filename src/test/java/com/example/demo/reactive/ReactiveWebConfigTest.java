@@ -0,0 +1,48 @@
+package com.example.demo.reactive;
+
+import com.example.demo.config.AdmissionConfig;
+import com.example.demo.service.AdaptiveLimiter;
+import com.example.demo.service.AdmissionControl;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ReactiveWebConfigTest {
+
+    @Test
+    void admissionFilterGivesACancelledRequestsSlotBackOnce() {
+        AdmissionConfig config = new AdmissionConfig();
+        config.setLight(new AdmissionConfig.Lane(2, 2, 2, 1, 5000));
+        AdmissionControl admission = new AdmissionControl(config);
+        AdaptiveLimiter limiter = admission.limiter(AdmissionControl.Lane.LIGHT);
+        WebFilter filter = new ReactiveWebConfig().admissionWebFilter(admission);
+
+        // The client disconnects while its request is running
+        Disposable running = subscribe(filter, "/api/files/1");
+        assertEquals(1, limiter.getInFlight());
+        running.dispose();
+        assertEquals(0, limiter.getInFlight());
+
+        // ... or while it waits in the queue
+        Disposable first = subscribe(filter, "/api/files/1");
+        Disposable second = subscribe(filter, "/api/files/2");
+        Disposable queued = subscribe(filter, "/api/files/3");
+        assertEquals(1, limiter.getQueued());
+        queued.dispose();
+        assertEquals(0, limiter.getQueued());
+        assertEquals(2, limiter.getInFlight());
+        first.dispose();
+        second.dispose();
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    private static Disposable subscribe(WebFilter filter, String path) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get(path));
+        return filter.filter(exchange, handled -> Mono.never()).subscribe();
+    }
+}
@@ -0,0 +1,252 @@
+package com.example.demo.service;
+
+import com.example.demo.config.AdmissionConfig;
+import com.example.demo.config.AdmissionControlFilter;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveLimiterTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveLimiterTest.class);
+
+    @Test
+    void queuesInOrderAndHandsSlotsOver() {
+        AdmissionConfig config = new AdmissionConfig();
+        AdaptiveLimiter limiter = new AdaptiveLimiter("light", config, new AdmissionConfig.Lane(2, 2, 2, 2, 100), null);
+
+        assertTrue(limiter.acquire().join());
+        assertTrue(limiter.acquire().join());
+        CompletableFuture<Boolean> first = limiter.acquire();
+        CompletableFuture<Boolean> second = limiter.acquire();
+        assertFalse(first.isDone());
+        assertFalse(limiter.acquire().join(), "queue is full");
+
+        // A waiter that gives up leaves the queue; the next slot goes to the one behind it
+        assertTrue(limiter.cancel(first));
+        limiter.release();
+        assertTrue(second.join());
+        assertFalse(limiter.cancel(second), "already holds a slot");
+        assertEquals(2, limiter.getInFlight());
+        assertEquals(0, limiter.getQueued());
+    }
+
+    @Test
+    void limitGrowsWhileLatencyHoldsAndShrinksWhenItRises() {
+        AtomicLong clock = new AtomicLong();
+        AdmissionConfig config = new AdmissionConfig();
+        config.setWindowMs(100);
+        config.setMinWindowSamples(1);
+        AdaptiveLimiter light = new AdaptiveLimiter("light", config, new AdmissionConfig.Lane(20, 4, 100, 0, 100),
+                null, clock::get);
+        AdaptiveLimiter heavy = new AdaptiveLimiter("heavy", config, new AdmissionConfig.Lane(20, 2, 100, 0, 100),
+                light, clock::get);
+
+        for (int i = 0; i < 5; i++) {
+            runWindow(light, clock, 10);
+            runWindow(heavy, clock, 200);
+        }
+        int grownLight = light.getLimit();
+        int grownHeavy = heavy.getLimit();
+        assertTrue(grownLight > 20, "light limit " + grownLight);
+        assertTrue(grownHeavy > 20, "heavy limit " + grownHeavy);
+
+        // Transfers keep their own latency, but metadata calls slow down: both lanes back off
+        for (int i = 0; i < 3; i++) {
+            runWindow(light, clock, 60);
+            runWindow(heavy, clock, 200);
+        }
+        assertTrue(light.getLimit() < grownLight, "light limit " + light.getLimit());
+        assertTrue(heavy.getLimit() < grownHeavy, "heavy limit " + heavy.getLimit());
+        assertTrue(light.getGradient() < 1.0);
+    }
+
+    @Test
+    void filterShedsWith429WhenQueueIsFullAnd503AfterTimeout() throws Exception {
+        AdmissionConfig config = new AdmissionConfig();
+        config.setLight(new AdmissionConfig.Lane(1, 1, 1, 1, 200));
+        AdmissionControl admission = new AdmissionControl(config);
+        AdmissionControlFilter filter = new AdmissionControlFilter(admission);
+        CountDownLatch inChain = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            Future<MockHttpServletResponse> holder = executor.submit(() -> run(filter, "GET", "/api/files/1", () -> {
+                inChain.countDown();
+                finish.await();
+            }));
+            assertTrue(inChain.await(5, TimeUnit.SECONDS));
+            Future<MockHttpServletResponse> waiter = executor.submit(() ->
+                    run(filter, "GET", "/api/files/stats", () -> { }));
+            await(() -> admission.limiter(AdmissionControl.Lane.LIGHT).getQueued() == 1);
+
+            MockHttpServletResponse shed = run(filter, "GET", "/api/files/2", () -> { });
+            assertEquals(429, shed.getStatus());
+            assertNotNull(shed.getHeader("Retry-After"));
+            assertTrue(shed.getContentAsString().contains("SERVER_BUSY"));
+
+            // Transfers and the change feed don't wait behind metadata calls
+            assertEquals(200, run(filter, "GET", "/api/files/3/download", () -> { }).getStatus());
+            assertEquals(200, run(filter, "GET", "/api/files/events", () -> { }).getStatus());
+
+            MockHttpServletResponse timedOut = waiter.get(5, TimeUnit.SECONDS);
+            assertEquals(503, timedOut.getStatus());
+            assertNotNull(timedOut.getHeader("Retry-After"));
+
+            finish.countDown();
+            assertEquals(200, holder.get(5, TimeUnit.SECONDS).getStatus());
+            assertEquals(200, run(filter, "GET", "/api/files/1", () -> { }).getStatus());
+        } finally {
+            finish.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    // An upload storm against a shared pool of 10 connections: uploads hold one for
+    // 20 ms, metadata calls for 1 ms. Without admission control every metadata call
+    // queues behind the uploads for the pool. Wall-clock figures depend on the
+    // machine, so this only logs them; limitGrowsWhileLatencyHoldsAndShrinksWhenItRises
+    // checks the behaviour behind them.
+    @Test
+    @Tag("benchmark")
+    void metadataLatencyDuringUploadStormBenchmark() throws Exception {
+        String unprotected = stormP99(null);
+
+        AdmissionConfig config = new AdmissionConfig();
+        config.setWindowMs(100);
+        config.setMinWindowSamples(5);
+        String protectedP99 = stormP99(new AdmissionControlFilter(new AdmissionControl(config)));
+
+        logger.info("Metadata p99 during an upload storm: {} without admission control, {} with it",
+                unprotected, protectedP99);
+    }
+
+    private String stormP99(AdmissionControlFilter filter) throws Exception {
+        Semaphore pool = new Semaphore(10, true);
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Long> metadataNanos = Collections.synchronizedList(new ArrayList<>());
+        AtomicLong metadataErrors = new AtomicLong();
+        ExecutorService executor = Executors.newCachedThreadPool();
+        List<Future<?>> clients = new ArrayList<>();
+        try {
+            for (int i = 0; i < 48; i++) {
+                clients.add(executor.submit(() -> {
+                    while (running.get()) {
+                        MockHttpServletResponse response = call(filter, "POST", "/api/files/upload",
+                                () -> withConnection(pool, 20));
+                        if (response.getStatus() != 200) {
+                            Thread.sleep(20);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            Thread.sleep(300);
+            for (int i = 0; i < 4; i++) {
+                clients.add(executor.submit(() -> {
+                    while (running.get()) {
+                        long start = System.nanoTime();
+                        MockHttpServletResponse response = call(filter, "GET", "/api/files/1",
+                                () -> withConnection(pool, 1));
+                        metadataNanos.add(System.nanoTime() - start);
+                        if (response.getStatus() != 200) {
+                            metadataErrors.incrementAndGet();
+                        }
+                        Thread.sleep(5);
+                    }
+                    return null;
+                }));
+            }
+            Thread.sleep(1500);
+        } finally {
+            running.set(false);
+            for (Future<?> client : clients) {
+                client.get(10, TimeUnit.SECONDS);
+            }
+            executor.shutdownNow();
+        }
+
+        List<Long> sorted = new ArrayList<>(metadataNanos);
+        Collections.sort(sorted);
+        long p99 = sorted.isEmpty() ? 0 : TimeUnit.NANOSECONDS.toMillis(sorted.get((int) (sorted.size() * 0.99)));
+        return p99 + " ms (" + metadataErrors.get() + " of " + sorted.size() + " rejected)";
+    }
+
+    private static void runWindow(AdaptiveLimiter limiter, AtomicLong clock, long latencyMs) {
+        int slots = limiter.getLimit();
+        for (int i = 0; i < slots; i++) {
+            assertTrue(limiter.acquire().join());
+        }
+        for (int i = 0; i < slots - 1; i++) {
+            limiter.release(TimeUnit.MILLISECONDS.toNanos(latencyMs), 1.0);
+        }
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        limiter.release(TimeUnit.MILLISECONDS.toNanos(latencyMs), 1.0);
+    }
+
+    private static void withConnection(Semaphore pool, long millis) throws InterruptedException {
+        pool.acquire();
+        try {
+            Thread.sleep(millis);
+        } finally {
+            pool.release();
+        }
+    }
+
+    private static MockHttpServletResponse call(AdmissionControlFilter filter, String method, String path,
+                                                Handler handler) throws Exception {
+        if (filter == null) {
+            handler.handle();
+            return new MockHttpServletResponse();
+        }
+        return run(filter, method, path, handler);
+    }
+
+    private static MockHttpServletResponse run(AdmissionControlFilter filter, String method, String path,
+                                               Handler handler) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, (req, res) -> {
+            try {
+                handler.handle();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        return response;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met in time");
+            Thread.sleep(10);
+        }
+    }
+
+    private interface Handler {
+        void handle() throws InterruptedException;
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.demo.service;
+
+import com.example.demo.exception.FileStorageException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryDeltaTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(BinaryDeltaTest.class);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripsEditsToALargeCsv() throws Exception {
+        StringBuilder csv = new StringBuilder("id,name,amount\n");
+        for (int i = 0; i < 100_000; i++) {
+            csv.append(i).append(",customer-").append(i * 7 % 1000).append(',').append(i * 13 % 10000).append('\n');
+        }
+        byte[] previous = csv.toString().getBytes(StandardCharsets.UTF_8);
+
+        // A corrected row near the top, one removed in the middle and a few appended
+        String edited = csv.toString()
+                .replace("\n42,customer-294,546\n", "\n42,customer-294,547\n")
+                .replace("\n50000,customer-0,0\n", "\n")
+                + "100000,customer-0,0\n100001,customer-7,13\n";
+        byte[] latest = edited.getBytes(StandardCharsets.UTF_8);
+
+        byte[] delta = BinaryDelta.encode(latest, previous);
+        assertArrayEquals(previous, apply(latest, delta));
+        assertTrue(delta.length < previous.length / 100, "delta is " + delta.length + " bytes");
+        logger.info("{} byte CSV kept as a {} byte delta", previous.length, delta.length);
+    }
+
+    @Test
+    void roundTripsUnrelatedAndEmptyContent() throws Exception {
+        Random random = new Random(7);
+        byte[] a = new byte[10_000];
+        byte[] b = new byte[3_333];
+        random.nextBytes(a);
+        random.nextBytes(b);
+
+        assertArrayEquals(b, apply(a, BinaryDelta.encode(a, b)));
+        assertArrayEquals(a, apply(b, BinaryDelta.encode(b, a)));
+        assertArrayEquals(new byte[0], apply(a, BinaryDelta.encode(a, new byte[0])));
+        assertArrayEquals(a, apply(new byte[0], BinaryDelta.encode(new byte[0], a)));
+    }
+
+    @Test
+    void corruptDeltaIsRejected() throws Exception {
+        Random random = new Random(9);
+        byte[] latest = new byte[300_000];
+        random.nextBytes(latest);
+        byte[] previous = Arrays.copyOf(latest, latest.length + 100);
+        System.arraycopy(latest, 0, previous, 150_000, 50_000);
+        byte[] delta = BinaryDelta.encode(latest, previous);
+        assertArrayEquals(previous, apply(latest, delta));
+
+        delta[delta.length - 1] ^= 1;
+        assertThrows(FileStorageException.class, () -> apply(latest, delta));
+    }
+
+    // Applies the delta the way a version is rebuilt, against the base on disk
+    private byte[] apply(byte[] base, byte[] delta) throws IOException {
+        Path file = Files.write(Files.createTempFile(dir, "base", ".tmp"), base);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (FileChannel channel = FileChannel.open(file)) {
+            BinaryDelta.apply(channel, new ByteArrayInputStream(delta), out);
+        }
+        return out.toByteArray();
+    }
+}
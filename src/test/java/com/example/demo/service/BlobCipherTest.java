@@ -0,0 +1,204 @@
+package com.example.demo.service;
+
+import com.example.demo.config.EncryptionConfig;
+import com.example.demo.config.FileStorageConfig;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BlobCipherTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlobCipherTest.class);
+
+    private static final int SEGMENT = 4096;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripsAtSegmentBoundariesAndReadsRangesBySkipping() throws Exception {
+        BlobCipher cipher = cipher("key-1", true);
+        Random random = new Random(7);
+        for (int size : new int[]{0, 1, SEGMENT - 1, SEGMENT, SEGMENT + 1, 3 * SEGMENT + 17}) {
+            byte[] content = new byte[size];
+            random.nextBytes(content);
+            Path blob = encrypt(cipher, content, "blob-" + size);
+
+            assertTrue(cipher.isEncrypted(blob));
+            assertEquals(size, cipher.plaintextSize(blob));
+            try (InputStream in = cipher.open(blob)) {
+                assertArrayEquals(content, in.readAllBytes(), "size " + size);
+            }
+            if (size > SEGMENT) {
+                int start = SEGMENT - 3;
+                try (InputStream in = cipher.open(blob)) {
+                    assertEquals(start, in.skip(start));
+                    byte[] range = in.readNBytes(size - start);
+                    assertArrayEquals(Arrays.copyOfRange(content, start, size), range);
+                }
+            }
+        }
+
+        // Plaintext blobs pass through untouched
+        Path plain = Files.write(dir.resolve("plain"), "hello".getBytes(StandardCharsets.UTF_8));
+        assertFalse(cipher.isEncrypted(plain));
+        try (InputStream in = cipher.open(plain)) {
+            assertEquals("hello", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void detectsTamperingTruncationAndTheWrongKey() throws Exception {
+        BlobCipher cipher = cipher("key-1", true);
+        byte[] content = new byte[3 * SEGMENT];
+        new Random(3).nextBytes(content);
+
+        Path flipped = encrypt(cipher, content, "flipped");
+        try (RandomAccessFile file = new RandomAccessFile(flipped.toFile(), "rw")) {
+            file.seek(file.length() - SEGMENT);
+            int b = file.read();
+            file.seek(file.length() - SEGMENT);
+            file.write(b ^ 1);
+        }
+        assertThrows(BlobAuthenticationException.class, () -> readAll(cipher, flipped));
+
+        // Cut exactly at a segment boundary: the new last segment wasn't sealed as last
+        Path truncated = encrypt(cipher, content, "truncated");
+        try (RandomAccessFile file = new RandomAccessFile(truncated.toFile(), "rw")) {
+            file.setLength(file.length() - (SEGMENT + BlobCipher.TAG_BYTES));
+        }
+        assertThrows(BlobAuthenticationException.class, () -> readAll(cipher, truncated));
+
+        Path other = encrypt(cipher, content, "other");
+        assertThrows(IOException.class, () -> readAll(cipher("key-2", false), other));
+    }
+
+    @Test
+    void storedUploadsAreEncryptedOnDiskAndServedAsPlaintext() throws Exception {
+        FileStorageConfig config = new FileStorageConfig();
+        config.setUploadDir(dir.toString());
+        FileStorageService storage = new FileStorageService(config, cipher("key-1", true));
+        String text = "id,value\n1,2\n".repeat(1000);
+
+        StoredUpload upload = storage.storeFile(new MockMultipartFile("file", "data.csv", "text/csv",
+                text.getBytes(StandardCharsets.UTF_8)));
+
+        Path blob = storage.resolvePath(upload.getFilePath());
+        assertFalse(new String(Files.readAllBytes(blob), StandardCharsets.ISO_8859_1).contains("id,value"));
+        assertEquals(Checksums.of(text.getBytes(StandardCharsets.UTF_8)), upload.getChecksum());
+        Resource resource = storage.loadFileAsResource(upload.getFilePath());
+        assertInstanceOf(EncryptedBlobResource.class, resource);
+        assertEquals(text.length(), resource.contentLength());
+        try (InputStream in = resource.getInputStream()) {
+            assertEquals(text, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    void throughputStaysCloseToPlaintext() throws Exception {
+        EncryptionConfig config = new EncryptionConfig();
+        config.setEnabled(true);
+        config.setMasterKey(masterKey());
+        BlobCipher cipher = new BlobCipher(config);
+        byte[] chunk = new byte[256 * 1024];
+        new Random(1).nextBytes(chunk);
+        int chunks = 256; // 64 MB
+
+        long plainWrite = Long.MAX_VALUE;
+        long sealedWrite = Long.MAX_VALUE;
+        long plainRead = Long.MAX_VALUE;
+        long sealedRead = Long.MAX_VALUE;
+        for (int round = 0; round < 3; round++) {
+            Path plain = dir.resolve("plain-" + round);
+            Path sealed = dir.resolve("sealed-" + round);
+            long start = System.nanoTime();
+            try (OutputStream out = Files.newOutputStream(plain)) {
+                for (int i = 0; i < chunks; i++) {
+                    out.write(chunk);
+                }
+            }
+            plainWrite = Math.min(plainWrite, System.nanoTime() - start);
+            start = System.nanoTime();
+            try (OutputStream out = cipher.encrypt(Files.newOutputStream(sealed))) {
+                for (int i = 0; i < chunks; i++) {
+                    out.write(chunk);
+                }
+            }
+            sealedWrite = Math.min(sealedWrite, System.nanoTime() - start);
+            start = System.nanoTime();
+            drain(cipher.open(plain));
+            plainRead = Math.min(plainRead, System.nanoTime() - start);
+            start = System.nanoTime();
+            drain(cipher.open(sealed));
+            sealedRead = Math.min(sealedRead, System.nanoTime() - start);
+            Files.delete(plain);
+            Files.delete(sealed);
+        }
+
+        double megabytes = chunks * (double) chunk.length / (1024 * 1024);
+        logger.info("64 MB blob: write plain {} MB/s, encrypted {} MB/s; read plain {} MB/s, decrypted {} MB/s",
+                Math.round(megabytes / (plainWrite / 1e9)), Math.round(megabytes / (sealedWrite / 1e9)),
+                Math.round(megabytes / (plainRead / 1e9)), Math.round(megabytes / (sealedRead / 1e9)));
+    }
+
+    private BlobCipher cipher(String keyId, boolean enabled) {
+        EncryptionConfig config = new EncryptionConfig();
+        config.setEnabled(enabled);
+        config.setMasterKey(masterKey());
+        config.setMasterKeyId(keyId);
+        config.setSegmentSize(SEGMENT);
+        return new BlobCipher(config);
+    }
+
+    private static String masterKey() {
+        byte[] key = new byte[32];
+        new Random(42).nextBytes(key);
+        return Base64.getEncoder().encodeToString(key);
+    }
+
+    private Path encrypt(BlobCipher cipher, byte[] content, String name) throws IOException {
+        Path blob = dir.resolve(name);
+        try (OutputStream out = cipher.encrypt(Files.newOutputStream(blob))) {
+            out.write(content);
+        }
+        return blob;
+    }
+
+    private static byte[] readAll(BlobCipher cipher, Path blob) throws IOException {
+        try (InputStream in = cipher.open(blob)) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[256 * 1024];
+        try (in) {
+            while (in.read(buffer) >= 0) {
+                // discard
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.demo.service;
+
+import com.example.demo.cluster.ClusterLockService;
+import com.example.demo.config.ClusterConfig;
+import com.example.demo.config.EncryptionConfig;
+import com.example.demo.config.FileStorageConfig;
+import com.example.demo.config.ScrubConfig;
+import com.example.demo.exception.CorruptFileException;
+import com.example.demo.model.File;
+import com.example.demo.model.ScrubReport;
+import com.example.demo.repository.FileRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BlobScrubberTest {
+
+    @TempDir
+    Path uploadDir;
+
+    // The database shared by the nodes of a cluster
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:scrub-" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", ""));
+        jdbcTemplate.execute("CREATE TABLE cluster_locks (lock_name VARCHAR(200) PRIMARY KEY, " +
+                "owner VARCHAR(100) NOT NULL, expires_at BIGINT NOT NULL)");
+        jdbcTemplate.execute("CREATE TABLE file_store_info (info_key VARCHAR(50) PRIMARY KEY, " +
+                "info_value VARCHAR(100) NOT NULL)");
+    }
+
+    @Test
+    void passFlagsDamagedBlobsAndRecordsMissingChecksums() throws Exception {
+        Path day = Files.createDirectories(uploadDir.resolve("2024/01/15"));
+        File intact = stored(1L, day, "intact.txt", "hello world", true);
+        File flipped = stored(2L, day, "flipped.txt", "hello world", true);
+        File truncated = stored(3L, day, "truncated.txt", "hello world", true);
+        File missing = stored(4L, day, "missing.txt", "hello world", true);
+        File legacy = stored(5L, day, "legacy.txt", "hello world", false);
+        Files.writeString(day.resolve("flipped.txt"), "hellO world");
+        Files.writeString(day.resolve("truncated.txt"), "hello");
+        Files.delete(day.resolve("missing.txt"));
+
+        List<File> files = List.of(intact, flipped, truncated, missing, legacy);
+        FileRepository repository = mock(FileRepository.class);
+        when(repository.findActiveAfterId(eq(0L), any())).thenReturn(files);
+        when(repository.findActiveAfterId(eq(5L), any())).thenReturn(List.of());
+        for (File file : files) {
+            when(repository.findById(file.getId())).thenReturn(Optional.of(file));
+        }
+        when(repository.backfillChecksum(5L, legacy.getFilePath(), Checksums.of(bytes("hello world"))))
+                .thenReturn(1);
+
+        BlobScrubber scrubber = scrubber(repository, new ScrubConfig());
+        ScrubReport report = scrubber.startPass("test");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (report.isRunning() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertNull(report.getError());
+        assertEquals(4, report.getFilesChecked());
+        assertEquals(1, report.getMissing());
+        assertEquals(1, report.getSizeMismatches());
+        assertEquals(1, report.getChecksumMismatches());
+        assertEquals(1, report.getChecksumsRecorded());
+        assertEquals(1, report.getVolumes());
+        Set<Long> flagged = report.getFindings().stream()
+                .map(ScrubReport.Finding::getFileId).collect(Collectors.toSet());
+        assertEquals(Set.of(2L, 3L, 4L), flagged);
+        assertEquals(3L, scrubber.getMetrics().get("problemsFound"));
+        verify(repository).backfillChecksum(5L, legacy.getFilePath(), Checksums.of(bytes("hello world")));
+    }
+
+    @Test
+    void blobReplacedDuringThePassIsNotFlagged() throws Exception {
+        Path day = Files.createDirectories(uploadDir.resolve("2024/01/15"));
+        File file = stored(1L, day, "old.txt", "hello world", true);
+        Files.delete(day.resolve("old.txt"));
+        File newVersion = stored(1L, day, "new.txt", "hello again", true);
+
+        FileRepository repository = mock(FileRepository.class);
+        when(repository.findActiveAfterId(eq(0L), any())).thenReturn(List.of(file));
+        when(repository.findActiveAfterId(eq(1L), any())).thenReturn(List.of());
+        when(repository.findById(anyLong())).thenReturn(Optional.of(newVersion));
+
+        ScrubReport report = scrubber(repository, new ScrubConfig()).startPass("test");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (report.isRunning() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(0, report.getMissing());
+        assertTrue(report.getFindings().isEmpty());
+    }
+
+    @Test
+    void verifyOnReadRejectsCorruptedBlob() throws Exception {
+        Path day = Files.createDirectories(uploadDir.resolve("2024/01/15"));
+        File file = stored(1L, day, "a.txt", "hello world", true);
+        ScrubConfig config = new ScrubConfig();
+        config.setVerifyOnRead(true);
+        BlobScrubber scrubber = scrubber(mock(FileRepository.class), config);
+
+        scrubber.verifyForRead(file);
+        Files.writeString(day.resolve("a.txt"), "hellO world");
+
+        assertThrows(CorruptFileException.class, () -> scrubber.verifyForRead(file));
+        assertEquals(1L, scrubber.getMetrics().get("readVerificationFailures"));
+    }
+
+    @Test
+    void onlyOneNodeScrubsAndACompletedPassIsRemembered() throws Exception {
+        FileRepository repository = mock(FileRepository.class);
+        when(repository.findActiveAfterId(anyLong(), any())).thenReturn(List.of());
+        BlobScrubber nodeA = scrubber(repository, new ScrubConfig());
+        BlobScrubber nodeB = scrubber(repository, new ScrubConfig());
+        assertTrue(nodeA.isDue());
+
+        ClusterLockService otherNode = new ClusterLockService(jdbcTemplate, new ClusterConfig());
+        try (ClusterLockService.Lease lease = otherNode.lock(BlobScrubber.LOCK_NAME)) {
+            ScrubReport refused = finished(nodeA.startPass("test"));
+            assertNotNull(refused.getError());
+        }
+
+        ScrubReport report = finished(nodeA.startPass("test"));
+        assertNull(report.getError());
+        // A restarted node, or any other, sees the pass and waits out the interval
+        assertFalse(nodeB.isDue());
+        assertEquals(report.getFinishedAt(), LocalDateTime.parse(jdbcTemplate.queryForObject(
+                "SELECT info_value FROM file_store_info WHERE info_key = 'scrub-finished-at'", String.class)));
+    }
+
+    private static ScrubReport finished(ScrubReport report) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (report.isRunning() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        return report;
+    }
+
+    private BlobScrubber scrubber(FileRepository repository, ScrubConfig config) {
+        FileStorageConfig storageConfig = new FileStorageConfig();
+        storageConfig.setUploadDir(uploadDir.toString());
+        config.setMaxLoadPerCore(Double.MAX_VALUE);
+        FileStorageService storage = new FileStorageService(storageConfig, new BlobCipher(new EncryptionConfig()));
+        return new BlobScrubber(repository, storage, new ClusterLockService(jdbcTemplate, new ClusterConfig()),
+                jdbcTemplate, config);
+    }
+
+    private static File stored(Long id, Path day, String name, String content, boolean withChecksum)
+            throws Exception {
+        Files.writeString(day.resolve(name), content);
+        File file = new File(name, name, "2024/01/15/" + name, "text/plain", (long) bytes(content).length);
+        file.setId(id);
+        if (withChecksum) {
+            file.setChecksum(Checksums.of(bytes(content)));
+        }
+        return file;
+    }
+
+    private static byte[] bytes(String content) {
+        return content.getBytes(StandardCharsets.UTF_8);
+    }
+}
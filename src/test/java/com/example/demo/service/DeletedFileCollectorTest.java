@@ -0,0 +1,66 @@
+package com.example.demo.service;
+
+import com.example.demo.config.EncryptionConfig;
+import com.example.demo.config.FileGcConfig;
+import com.example.demo.config.FileStorageConfig;
+import com.example.demo.model.File;
+import com.example.demo.repository.FileRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DeletedFileCollectorTest {
+
+    @TempDir
+    Path uploadDir;
+
+    @Test
+    void collectRemovesBlobsThenArchivesAndPurgesRows() throws Exception {
+        Path day = Files.createDirectories(uploadDir.resolve("2024/01/15"));
+        Files.writeString(day.resolve("old.txt"), "old");
+
+        File old = new File("old.txt", "old.txt", "2024/01/15/old.txt", "text/plain", 3L);
+        old.setId(1L);
+        old.setIsActive(false);
+        old.setDeletedAt(LocalDateTime.now().minusDays(30));
+
+        FileRepository repository = mock(FileRepository.class);
+        when(repository.findDeletedBefore(any(), any())).thenReturn(List.of(old), List.of());
+        when(repository.purgeInactive(List.of(1L))).thenReturn(1);
+
+        FileVersionService versions = mock(FileVersionService.class);
+        FileStorageConfig storageConfig = new FileStorageConfig();
+        storageConfig.setUploadDir(uploadDir.toString());
+        FileGcConfig config = new FileGcConfig();
+        config.setRowAction("archive");
+        config.setMaxLoadPerCore(Double.MAX_VALUE);
+
+        FileStorageService storage = new FileStorageService(storageConfig, new BlobCipher(new EncryptionConfig()));
+        DeletedFileCollector collector = new DeletedFileCollector(repository, storage, versions,
+                mock(FileChangeLog.class), new ObjectMapper().registerModule(new JavaTimeModule()), config);
+
+        assertEquals(1, collector.collect());
+        assertFalse(Files.exists(day.resolve("old.txt")));
+        verify(repository).purgeInactive(List.of(1L));
+        verify(versions).purgeVersions(List.of(1L));
+
+        try (var archives = Files.list(uploadDir.resolve(".archive"))) {
+            Path archive = archives.findFirst().orElseThrow();
+            assertTrue(Files.readString(archive).contains("\"filePath\":\"2024/01/15/old.txt\""));
+        }
+    }
+}
@@ -0,0 +1,460 @@
+package com.example.demo.service;
+
+import com.example.demo.cluster.FileCache;
+import com.example.demo.cluster.LoopbackTransport;
+import com.example.demo.config.ArchiveConfig;
+import com.example.demo.config.EncryptionConfig;
+import com.example.demo.config.FileGcConfig;
+import com.example.demo.config.FileStorageConfig;
+import com.example.demo.model.ArchiveReport;
+import com.example.demo.model.FileEvent;
+import com.example.demo.repository.FileRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class FileArchiveServiceTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileArchiveServiceTest.class);
+
+    private static final LocalDateTime DAY_ONE = LocalDateTime.of(2024, 1, 15, 10, 0);
+    private static final LocalDateTime DAY_TWO = LocalDateTime.of(2024, 2, 1, 10, 0);
+
+    @TempDir
+    Path sourceDir;
+
+    @TempDir
+    Path targetDir;
+
+    @Test
+    void roundTripCopiesRowsVersionsAndBlobs() throws Exception {
+        Store source = new Store(sourceDir);
+        source.addFile(1L, "2024/01/15/a.txt", "alpha", 7L, true, 2);
+        source.addVersion(1L, 1, "2024/01/15/a.v1", "alpha zero");
+        source.addFile(2L, "2024/01/15/b.txt", "bravo", 7L, true, 1);
+        source.addFile(3L, "2024/01/15/c.txt", "charlie", 8L, false, 1);
+
+        ArchiveReport exported = source.export(null);
+        assertNull(exported.getError());
+        assertEquals(3, exported.getFiles());
+        assertEquals(1, exported.getVersions());
+        assertEquals(4, exported.getBlobs());
+        assertEquals(0, exported.getSkipped());
+        assertEquals(3L, exported.getHighWaterId());
+
+        Store target = new Store(targetDir);
+        ArchiveReport imported = target.service.importArchive(new ByteArrayInputStream(source.archive));
+        assertNull(imported.getError());
+        assertEquals(3, imported.getFiles());
+        assertEquals(1, imported.getVersions());
+        assertEquals(4, imported.getBlobs());
+
+        assertEquals(source.rows(), target.rows());
+        assertEquals(source.versionRows(), target.versionRows());
+        for (String path : List.of("2024/01/15/a.txt", "2024/01/15/a.v1", "2024/01/15/b.txt", "2024/01/15/c.txt")) {
+            assertArrayEquals(Files.readAllBytes(sourceDir.resolve(path)), Files.readAllBytes(targetDir.resolve(path)));
+        }
+        try (var leftovers = Files.walk(targetDir)) {
+            assertFalse(leftovers.anyMatch(path -> path.toString().endsWith(".import")));
+        }
+
+        // Inactive files are neither counted nor announced; older versions count like uploads
+        assertEquals("alpha".length() + "bravo".length() + "alpha zero".length(), target.quotas.getStorageUsed(7L));
+        assertEquals(0, target.quotas.getStorageUsed(8L));
+        verify(target.events).publish(eq(FileEvent.UPLOADED), eq(1L), any());
+        verify(target.events).publish(eq(FileEvent.UPLOADED), eq(2L), any());
+        verify(target.events, never()).publish(anyString(), eq(3L), any());
+    }
+
+    @Test
+    void incrementalExportShipsOnlyChangedFiles() throws Exception {
+        Store source = new Store(sourceDir);
+        source.addFile(1L, "2024/01/15/a.txt", "alpha", 7L, true, 1);
+        source.addFile(2L, "2024/01/15/b.txt", "bravo", 7L, true, 1);
+        source.addFile(3L, "2024/01/15/c.txt", "charlie", 7L, true, 1);
+        source.export(null);
+        Store target = new Store(targetDir);
+        assertNull(target.service.importArchive(new ByteArrayInputStream(source.archive)).getError());
+
+        // File 1 gets a new version at a new path, file 2 is deleted, file 3 is untouched
+        source.replaceContent(1L, "2024/02/01/a2.txt", "alpha two");
+        source.jdbcTemplate.update("UPDATE files SET is_active = FALSE, deleted_at = ? WHERE id = 2",
+                Timestamp.valueOf(DAY_TWO));
+
+        ArchiveReport exported = source.export(DAY_TWO);
+        assertEquals(2, exported.getFiles());
+        assertEquals(1, exported.getBlobs(), "a deleted file's blob is not shipped again");
+
+        ArchiveReport imported = target.service.importArchive(new ByteArrayInputStream(source.archive));
+        assertNull(imported.getError());
+        assertEquals(2, imported.getFiles());
+        assertEquals(source.rows(), target.rows());
+        assertEquals("alpha two", Files.readString(targetDir.resolve("2024/02/01/a2.txt")));
+        assertFalse(Files.exists(targetDir.resolve("2024/01/15/a.txt")), "replaced blob is removed");
+        assertTrue(Files.exists(targetDir.resolve("2024/01/15/b.txt")), "deleted files keep their blob");
+        assertEquals("alpha two".length() + "charlie".length(), target.quotas.getStorageUsed(7L));
+        verify(target.events).publish(eq(FileEvent.UPDATED), eq(1L), any());
+        verify(target.events).publish(eq(FileEvent.DELETED), eq(2L), any());
+    }
+
+    @Test
+    void incrementalExportShipsRestoresAndPurges() throws Exception {
+        Store source = new Store(sourceDir);
+        source.addFile(1L, "2024/01/15/a.txt", "alpha", 7L, false, 1);
+        source.addFile(2L, "2024/01/15/b.txt", "bravo", 7L, true, 1);
+        source.addVersion(2L, 1, "2024/01/15/b.v1", "bravo zero");
+        source.addFile(3L, "2024/01/15/c.txt", "charlie", 7L, true, 1);
+        source.export(null);
+        Store target = new Store(targetDir);
+        assertNull(target.service.importArchive(new ByteArrayInputStream(source.archive)).getError());
+        // The target's collector already removed the deleted file's blob
+        Files.delete(targetDir.resolve("2024/01/15/a.txt"));
+        LocalDateTime since = LocalDateTime.now().minusMinutes(1);
+
+        // File 1 is restored and file 2 purged; neither touches upload_date or deleted_at
+        source.jdbcTemplate.update("UPDATE files SET is_active = TRUE WHERE id = 1");
+        source.changes.recordRestored(1L);
+        source.jdbcTemplate.update("DELETE FROM file_versions WHERE file_id = 2");
+        source.jdbcTemplate.update("DELETE FROM files WHERE id = 2");
+        source.changes.recordPurged(List.of(2L));
+
+        ArchiveReport exported = source.export(since);
+        assertEquals(1, exported.getFiles());
+        assertEquals(1, exported.getBlobs(), "a restored file ships its blob");
+        assertEquals(1, exported.getPurged());
+
+        ArchiveReport imported = target.service.importArchive(new ByteArrayInputStream(source.archive));
+        assertNull(imported.getError());
+        assertEquals(1, imported.getPurged());
+        assertEquals(source.rows(), target.rows());
+        assertEquals(source.versionRows(), target.versionRows());
+        assertEquals("alpha", Files.readString(targetDir.resolve("2024/01/15/a.txt")));
+        assertFalse(Files.exists(targetDir.resolve("2024/01/15/b.txt")));
+        assertFalse(Files.exists(targetDir.resolve("2024/01/15/b.v1")));
+        assertEquals("alpha".length() + "charlie".length(), target.quotas.getStorageUsed(7L));
+        verify(target.events).publish(eq(FileEvent.RESTORED), eq(1L), any());
+        verify(target.events).publish(eq(FileEvent.DELETED), eq(2L), any());
+    }
+
+    @Test
+    void incrementalExportCannotReachPastTheChangeRetention() {
+        Store source = new Store(sourceDir);
+        source.gcConfig.setChangeRetention(Duration.ofDays(30));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> source.export(LocalDateTime.now().minusDays(31)));
+        source.service.validateSince(LocalDateTime.now().minusDays(29));
+    }
+
+    @Test
+    void importRefusesArchiveOfAnotherStoreWhoseIdsWouldCollide() throws Exception {
+        Store source = new Store(sourceDir);
+        source.addFile(1L, "2024/01/15/a.txt", "alpha", 7L, true, 1);
+        source.export(null);
+        Store target = new Store(targetDir);
+        target.addFile(1L, "2024/01/15/mine.txt", "mine", 9L, true, 1);
+
+        ArchiveReport imported = target.service.importArchive(new ByteArrayInputStream(source.archive));
+        assertNotNull(imported.getError());
+        assertEquals(0, imported.getFiles());
+        assertEquals(List.of("2024/01/15/mine.txt"),
+                target.jdbcTemplate.queryForList("SELECT file_path FROM files", String.class));
+        assertFalse(Files.exists(targetDir.resolve("2024/01/15/a.txt")));
+
+        // A store's own archive goes back in without complaint
+        target.export(null);
+        assertNull(target.service.importArchive(new ByteArrayInputStream(target.archive)).getError());
+    }
+
+    @Test
+    void fileWhoseBlobVanishedIsLeftOut() throws Exception {
+        Store source = new Store(sourceDir);
+        source.addFile(1L, "2024/01/15/a.txt", "alpha", 7L, true, 1);
+        source.addFile(2L, "2024/01/15/b.txt", "bravo", 7L, true, 1);
+        Files.delete(sourceDir.resolve("2024/01/15/a.txt"));
+
+        ArchiveReport exported = source.export(null);
+        assertNull(exported.getError());
+        assertEquals(1, exported.getFiles());
+        assertEquals(1, exported.getSkipped());
+        assertEquals(ArchiveReport.BLOB_MISSING, exported.getFindings().get(0).getProblem());
+
+        Store target = new Store(targetDir);
+        assertNull(target.service.importArchive(new ByteArrayInputStream(source.archive)).getError());
+        assertEquals(List.of(2L), target.jdbcTemplate.queryForList("SELECT id FROM files", Long.class));
+    }
+
+    @Test
+    void fullExportLeavesOutDeletedFilesTheCollectorMayHaveReached() throws Exception {
+        Store source = new Store(sourceDir);
+        source.gcConfig.setRetention(Duration.ofDays(7));
+        source.addFile(1L, "2024/01/15/a.txt", "alpha", 7L, true, 1);
+        source.addFile(2L, "2024/01/15/b.txt", "bravo", 7L, false, 1);
+        Files.delete(sourceDir.resolve("2024/01/15/b.txt"));
+
+        ArchiveReport exported = source.export(null);
+        assertNull(exported.getError());
+        assertEquals(1, exported.getFiles());
+        assertEquals(0, exported.getSkipped());
+    }
+
+    @Test
+    void importSkipsVersionWhoseBlobDoesNotMatch() throws Exception {
+        Store source = new Store(sourceDir);
+        source.addFile(1L, "2024/01/15/a.txt", "alpha", 7L, true, 3);
+        source.addVersion(1L, 1, "2024/01/15/a.v1", "alpha zero");
+        source.addVersion(1L, 2, "2024/01/15/a.v2", "alpha one");
+        source.jdbcTemplate.update("UPDATE file_versions SET checksum = ? WHERE version_number = 1",
+                Checksums.of(new byte[]{1}));
+        source.export(null);
+
+        Store target = new Store(targetDir);
+        ArchiveReport imported = target.service.importArchive(new ByteArrayInputStream(source.archive));
+        assertNull(imported.getError());
+        assertEquals(1, imported.getFiles());
+        assertEquals(1, imported.getVersions());
+        assertEquals(ArchiveReport.CHECKSUM_MISMATCH, imported.getFindings().get(0).getProblem());
+        assertEquals(List.of(2), target.jdbcTemplate.queryForList(
+                "SELECT version_number FROM file_versions", Integer.class));
+        assertFalse(Files.exists(targetDir.resolve("2024/01/15/a.v1")));
+        assertFalse(Files.exists(targetDir.resolve("2024/01/15/a.v1.import")));
+    }
+
+    @Test
+    void importSkipsChecksumMismatchAndReportsTruncation() throws Exception {
+        Store source = new Store(sourceDir);
+        source.addFile(1L, "2024/01/15/a.txt", "alpha", 7L, true, 1);
+        source.addFile(2L, "2024/01/15/b.txt", "bravo", 7L, true, 1);
+        source.jdbcTemplate.update("UPDATE files SET checksum = ? WHERE id = 1", Checksums.of(new byte[]{1}));
+        source.export(null);
+
+        Store target = new Store(targetDir);
+        ArchiveReport imported = target.service.importArchive(new ByteArrayInputStream(source.archive));
+        assertNull(imported.getError());
+        assertEquals(1, imported.getFiles());
+        assertEquals(ArchiveReport.CHECKSUM_MISMATCH, imported.getFindings().get(0).getProblem());
+        assertFalse(Files.exists(targetDir.resolve("2024/01/15/a.txt")));
+        assertFalse(Files.exists(targetDir.resolve("2024/01/15/a.txt.import")));
+
+        // Cut off before the summary: the rows that made it in stay, the import says it is incomplete
+        Store cut = new Store(Files.createDirectories(targetDir.resolve("cut")));
+        ArchiveReport truncated = cut.service.importArchive(
+                new ByteArrayInputStream(Arrays.copyOf(source.archive, source.archive.length - 400)));
+        assertNotNull(truncated.getError());
+    }
+
+    @Test
+    void exportStreamsBeforeTheWholeTableIsQueued() throws Exception {
+        Store source = new Store(sourceDir);
+        byte[] content = new byte[20_000];
+        for (long id = 1; id <= 40; id++) {
+            Arrays.fill(content, (byte) id);
+            source.addFile(id, "2024/01/15/" + id + ".bin", content, 7L);
+        }
+        // Every blob is too large to buffer, so only the entry bound keeps the window small
+        source.config.setBufferBytes(4096);
+        source.config.setWindowEntries(8);
+
+        AtomicInteger resolvedAtFirstWrite = new AtomicInteger(-1);
+        OutputStream out = new OutputStream() {
+            @Override
+            public void write(int b) {
+                resolvedAtFirstWrite.compareAndSet(-1, source.resolved.get());
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                resolvedAtFirstWrite.compareAndSet(-1, source.resolved.get());
+            }
+        };
+        ArchiveReport report = source.service.export(out, null);
+
+        assertEquals(40, report.getFiles());
+        assertTrue(resolvedAtFirstWrite.get() >= 0 && resolvedAtFirstWrite.get() < 20,
+                "blobs queued before the first write: " + resolvedAtFirstWrite.get());
+    }
+
+    @Test
+    @Tag("benchmark")
+    void exportAndImportThroughput() throws Exception {
+        Store source = new Store(sourceDir);
+        Random random = new Random(42);
+        int files = 400;
+        byte[] content = new byte[128 * 1024];
+        for (long id = 1; id <= files; id++) {
+            random.nextBytes(content);
+            source.addFile(id, "2024/01/15/" + id + ".bin", content, 7L);
+        }
+
+        long start = System.nanoTime();
+        ArchiveReport exported = source.export(null);
+        long exportNanos = System.nanoTime() - start;
+        Store target = new Store(targetDir);
+        start = System.nanoTime();
+        ArchiveReport imported = target.service.importArchive(new ByteArrayInputStream(source.archive));
+        long importNanos = System.nanoTime() - start;
+
+        assertEquals(files, exported.getFiles());
+        assertEquals(files, imported.getFiles());
+        assertEquals(exported.getBlobBytes(), imported.getBlobBytes());
+        double megabytes = exported.getBlobBytes() / (1024.0 * 1024.0);
+        logger.info("Archived {} files ({} MB): export {} MB/s, import {} MB/s", files, (long) megabytes,
+                (long) (megabytes / (exportNanos / 1e9)), (long) (megabytes / (importNanos / 1e9)));
+    }
+
+    // One node's database, upload directory and services
+    private static final class Store {
+        final Path dir;
+        final JdbcTemplate jdbcTemplate;
+        final FileStorageService storage;
+        final AtomicInteger resolved = new AtomicInteger();
+        final ArchiveConfig config = new ArchiveConfig();
+        final FileGcConfig gcConfig = new FileGcConfig();
+        final FileChangeLog changes;
+        final UserQuotaService quotas;
+        final FileEventPublisher events = mock(FileEventPublisher.class);
+        final FileArchiveService service;
+        byte[] archive;
+
+        Store(Path dir) {
+            this.dir = dir;
+            DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                    "jdbc:h2:mem:archive-" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+            jdbcTemplate = new JdbcTemplate(dataSource);
+            jdbcTemplate.execute("CREATE TABLE files (id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "original_name VARCHAR(255) NOT NULL, stored_name VARCHAR(255) NOT NULL UNIQUE, " +
+                    "file_path VARCHAR(500) NOT NULL, file_type VARCHAR(100) NOT NULL, detected_type VARCHAR(100), " +
+                    "file_size BIGINT NOT NULL, checksum VARCHAR(64), " +
+                    "upload_date TIMESTAMP, user_id BIGINT, description TEXT, is_active BOOLEAN, version_number INT, " +
+                    "deleted_at TIMESTAMP)");
+            jdbcTemplate.execute("CREATE TABLE file_versions (id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "file_id BIGINT NOT NULL, version_number INT NOT NULL, original_name VARCHAR(255) NOT NULL, " +
+                    "file_type VARCHAR(100) NOT NULL, detected_type VARCHAR(100), file_size BIGINT NOT NULL, " +
+                    "checksum VARCHAR(64), upload_date TIMESTAMP, storage VARCHAR(10) NOT NULL, " +
+                    "blob_path VARCHAR(500), stored_size BIGINT NOT NULL, UNIQUE (file_id, version_number))");
+            jdbcTemplate.execute("CREATE TABLE file_changes (file_id BIGINT PRIMARY KEY, " +
+                    "change_type VARCHAR(10) NOT NULL, changed_at TIMESTAMP NOT NULL)");
+            jdbcTemplate.execute("CREATE TABLE file_store_info (info_key VARCHAR(50) PRIMARY KEY, " +
+                    "info_value VARCHAR(100) NOT NULL)");
+            changes = new FileChangeLog(jdbcTemplate);
+
+            FileStorageConfig storageConfig = new FileStorageConfig();
+            storageConfig.setUploadDir(dir.toString());
+            storage = new FileStorageService(storageConfig, new BlobCipher(new EncryptionConfig())) {
+                @Override
+                public Path resolvePath(String fileName) {
+                    resolved.incrementAndGet();
+                    return super.resolvePath(fileName);
+                }
+            };
+            quotas = new UserQuotaService(storageConfig, mock(FileRepository.class), new LoopbackTransport("test"),
+                    new DataSourceTransactionManager(dataSource));
+            config.setPageSize(2);
+            config.setReadThreads(4);
+            config.setWriteThreads(4);
+            config.setBufferBytes(1024 * 1024);
+            // The fixtures date from 2024
+            gcConfig.setChangeRetention(Duration.ofDays(365_000));
+            gcConfig.setRetention(Duration.ofDays(365_000));
+            service = new FileArchiveService(jdbcTemplate, new DataSourceTransactionManager(dataSource), storage,
+                    quotas, events, mock(FileCache.class), new ObjectMapper().registerModule(new JavaTimeModule()),
+                    config, gcConfig);
+        }
+
+        void addFile(Long id, String path, String content, Long userId, boolean active, int version)
+                throws IOException {
+            addFile(id, path, content.getBytes(StandardCharsets.UTF_8), userId);
+            jdbcTemplate.update("UPDATE files SET is_active = ?, version_number = ?, deleted_at = ? WHERE id = ?",
+                    active, version, active ? null : Timestamp.valueOf(DAY_ONE), id);
+        }
+
+        void addFile(Long id, String path, byte[] content, Long userId) throws IOException {
+            writeBlob(path, content);
+            jdbcTemplate.update("INSERT INTO files (id, original_name, stored_name, file_path, file_type, " +
+                    "file_size, checksum, upload_date, user_id, is_active, version_number) " +
+                    "VALUES (?, ?, ?, ?, 'text/plain', ?, ?, ?, ?, TRUE, 1)",
+                    id, "file-" + id, Path.of(path).getFileName().toString(), path, content.length,
+                    Checksums.of(content), Timestamp.valueOf(DAY_ONE), userId);
+        }
+
+        void addVersion(Long fileId, int version, String path, String content) throws IOException {
+            byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+            writeBlob(path, bytes);
+            jdbcTemplate.update("INSERT INTO file_versions (file_id, version_number, original_name, file_type, " +
+                    "file_size, checksum, upload_date, storage, blob_path, stored_size) " +
+                    "VALUES (?, ?, 'old', 'text/plain', ?, ?, ?, 'FULL', ?, ?)",
+                    fileId, version, bytes.length, Checksums.of(bytes), Timestamp.valueOf(DAY_ONE), path,
+                    bytes.length);
+        }
+
+        void replaceContent(Long id, String path, String content) throws IOException {
+            byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+            writeBlob(path, bytes);
+            jdbcTemplate.update("UPDATE files SET stored_name = ?, file_path = ?, file_size = ?, checksum = ?, " +
+                    "upload_date = ?, version_number = version_number + 1 WHERE id = ?",
+                    Path.of(path).getFileName().toString(), path, bytes.length, Checksums.of(bytes),
+                    Timestamp.valueOf(DAY_TWO), id);
+        }
+
+        ArchiveReport export(LocalDateTime since) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ArchiveReport report = service.export(out, since);
+            archive = out.toByteArray();
+            return report;
+        }
+
+        List<Map<String, Object>> rows() {
+            return jdbcTemplate.queryForList("SELECT * FROM files ORDER BY id");
+        }
+
+        List<Map<String, Object>> versionRows() {
+            return jdbcTemplate.queryForList("SELECT file_id, version_number, original_name, file_type, file_size, " +
+                    "checksum, upload_date, storage, blob_path, stored_size FROM file_versions " +
+                    "ORDER BY file_id, version_number");
+        }
+
+        private void writeBlob(String path, byte[] content) throws IOException {
+            Path target = dir.resolve(path);
+            Files.createDirectories(target.getParent());
+            storage.writeBlob(target, content);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.demo.service;
+
+import com.example.demo.config.FileBatchConfig;
+import com.example.demo.exception.FileStorageException;
+import com.example.demo.model.File;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileBatchWriterTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileBatchWriterTest.class);
+
+    private static final int THREADS = 16;
+    private static final int UPLOADS_PER_THREAD = 250;
+
+    private JdbcTemplate jdbcTemplate;
+    private DataSourceTransactionManager transactionManager;
+    private FileBatchWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:batch-" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE files (id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                "original_name VARCHAR(255) NOT NULL, stored_name VARCHAR(255) NOT NULL UNIQUE, " +
+                "file_path VARCHAR(500) NOT NULL, file_type VARCHAR(100) NOT NULL, detected_type VARCHAR(100), " +
+                "file_size BIGINT NOT NULL, checksum VARCHAR(64), " +
+                "upload_date TIMESTAMP, user_id BIGINT, description TEXT, is_active BOOLEAN, version_number INT, " +
+                "deleted_at TIMESTAMP)");
+        transactionManager = new DataSourceTransactionManager(dataSource);
+
+        writer = new FileBatchWriter(jdbcTemplate, transactionManager, new FileBatchConfig());
+        writer.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        writer.stop();
+    }
+
+    @Test
+    void concurrentInsertsGetDistinctIds() throws Exception {
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        runBurst(file -> ids.add(writer.insert(file).getId()));
+
+        assertEquals(THREADS * UPLOADS_PER_THREAD, ids.size());
+        assertEquals(THREADS * UPLOADS_PER_THREAD, count());
+    }
+
+    @Test
+    void deactivateFlipsActiveFlag() {
+        File file = writer.insert(newFile());
+        assertNotNull(file.getId());
+
+        assertTrue(writer.deactivate(file.getId()));
+        assertFalse(jdbcTemplate.queryForObject("SELECT is_active FROM files WHERE id = ?", Boolean.class, file.getId()));
+        assertFalse(writer.deactivate(Long.MAX_VALUE));
+    }
+
+    @Test
+    void deactivateAllReportsOnlyRowsItFlipped() {
+        File first = writer.insert(newFile());
+        File second = writer.insert(newFile());
+        assertTrue(writer.deactivate(first.getId()));
+
+        assertEquals(List.of(second.getId()),
+                writer.deactivateAll(List.of(first.getId(), second.getId(), Long.MAX_VALUE)));
+    }
+
+    @Test
+    void failingRowDoesNotAffectOthers() {
+        File first = writer.insert(newFile());
+        File duplicate = newFile();
+        duplicate.setStoredName(first.getStoredName());
+
+        assertThrows(FileStorageException.class, () -> writer.insert(duplicate));
+        assertNotNull(writer.insert(newFile()).getId());
+        assertEquals(2, count());
+    }
+
+    @Test
+    void timedOutWriteIsCancelledUnlessItAlreadyStarted() throws Exception {
+        CountDownLatch inTransaction = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        DataSourceTransactionManager stalling = new DataSourceTransactionManager(transactionManager.getDataSource()) {
+            @Override
+            protected void doBegin(Object transaction, TransactionDefinition definition) {
+                inTransaction.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                super.doBegin(transaction, definition);
+            }
+        };
+        FileBatchConfig config = new FileBatchConfig();
+        config.setTimeoutMs(200);
+        FileBatchWriter stalled = new FileBatchWriter(jdbcTemplate, stalling, config);
+        stalled.start();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // The first write is in its transaction when its caller's wait runs out
+            Future<File> started = executor.submit(() -> stalled.insert(newFile()));
+            assertTrue(inTransaction.await(5, TimeUnit.SECONDS));
+
+            // The second is still queued, so giving up cancels it
+            assertThrows(FileStorageException.class, () -> stalled.insert(newFile()));
+            release.countDown();
+
+            assertNotNull(started.get(5, TimeUnit.SECONDS).getId());
+            assertEquals(1, count());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+            stalled.stop();
+        }
+    }
+
+    @Test
+    void insertAllWritesInChunks() {
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            files.add(newFile());
+        }
+        writer.insertAll(files);
+
+        assertEquals(1200, count());
+        assertEquals(1200, files.stream().map(File::getId).distinct().count());
+    }
+
+    // Compares a burst of uploads written one row per transaction (the old
+    // repository.save path) against the same burst through the batch writer
+    @Test
+    @Tag("benchmark")
+    void insertThroughputForUploadBurst() throws Exception {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        long singleNanos = runBurst(file -> transactionTemplate.executeWithoutResult(status ->
+                jdbcTemplate.update(FileBatchWriter.INSERT_SQL, file.getOriginalName(), file.getStoredName(),
+                        file.getFilePath(), file.getFileType(), file.getDetectedType(), file.getFileSize(), file.getChecksum(),
+                        file.getUploadDate(),
+                        file.getUserId(), file.getDescription(), true, file.getVersionNumber())));
+        long batchedNanos = runBurst(writer::insert);
+
+        int total = THREADS * UPLOADS_PER_THREAD;
+        assertEquals(2L * total, count());
+        logger.info("Upload burst of {} rows: row-at-a-time {} rows/s, batched {} rows/s",
+                total, rate(total, singleNanos), rate(total, batchedNanos));
+    }
+
+    private long runBurst(FileConsumer consumer) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < UPLOADS_PER_THREAD; i++) {
+                        consumer.accept(newFile());
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            return System.nanoTime() - start;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private long count() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM files", Long.class);
+    }
+
+    private static long rate(int rows, long nanos) {
+        return rows * 1_000_000_000L / Math.max(1, nanos);
+    }
+
+    private static File newFile() {
+        String storedName = UUID.randomUUID() + ".txt";
+        File file = new File("notes.txt", storedName, "2024/01/15/" + storedName, "text/plain", 128L);
+        file.setUserId(1L);
+        return file;
+    }
+
+    private interface FileConsumer {
+        void accept(File file) throws Exception;
+    }
+}
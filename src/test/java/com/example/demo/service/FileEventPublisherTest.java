@@ -0,0 +1,152 @@
+package com.example.demo.service;
+
+import com.example.demo.cluster.LoopbackTransport;
+import com.example.demo.config.FileEventsConfig;
+import com.example.demo.model.FileEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileEventPublisherTest {
+
+    private FileEventPublisher publisher;
+
+    @AfterEach
+    void tearDown() {
+        publisher.stop();
+    }
+
+    @Test
+    void resumesAfterLastEventIdAndResetsWhenTooFarBehind() throws Exception {
+        publisher = newPublisher(32);
+        FileEvent first = publisher.publish(FileEvent.UPLOADED, 1L, null);
+        publisher.publish(FileEvent.UPLOADED, 2L, null);
+        publisher.publish(FileEvent.DELETED, 1L, null);
+
+        RecordingListener resumed = new RecordingListener();
+        publisher.subscribe(first.getId(), resumed);
+        await(() -> resumed.events.size() == 2);
+        assertEquals(List.of("UPLOADED:2", "DELETED:1"), resumed.events);
+
+        // An id from another run or one that has left the ring means the client must reload
+        RecordingListener stale = new RecordingListener();
+        publisher.subscribe("1-1", stale);
+        await(() -> stale.resets.get() == 1);
+
+        RecordingListener live = new RecordingListener();
+        publisher.subscribe(null, live);
+        for (int batch = 0; batch < 2; batch++) {
+            for (long id = 0; id < 20; id++) {
+                publisher.publish(FileEvent.UPLOADED, 100 + batch * 20 + id, null);
+            }
+            int expected = (batch + 1) * 20;
+            await(() -> live.events.size() == expected);
+        }
+        assertEquals("UPLOADED:139", live.events.get(39));
+        assertEquals(0, live.resets.get());
+
+        RecordingListener behind = new RecordingListener();
+        publisher.subscribe(first.getId(), behind);
+        await(() -> behind.resets.get() == 1);
+        assertTrue(behind.events.isEmpty());
+    }
+
+    @Test
+    void fansOutToThousandsOfIdleSubscribersAndDropsFailedOnes() throws Exception {
+        publisher = newPublisher(1024);
+        List<RecordingListener> listeners = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            RecordingListener listener = new RecordingListener();
+            listeners.add(listener);
+            publisher.subscribe(null, listener);
+        }
+        publisher.subscribe(null, new RecordingListener() {
+            @Override
+            public void onEvent(FileEvent event) {
+                throw new IllegalStateException("client went away");
+            }
+        });
+        assertEquals(5001, publisher.getSubscriberCount());
+
+        publisher.publish(FileEvent.UPLOADED, 7L, null);
+        await(() -> listeners.stream().allMatch(listener -> listener.events.size() == 1));
+        await(() -> publisher.getSubscriberCount() == 5000);
+    }
+
+    @Test
+    void blockedClientHoldsNoDeliveryThreadAndIsResetOnOverflow() throws Exception {
+        FileEventsConfig config = new FileEventsConfig();
+        config.setDeliveryThreads(1);
+        config.setSubscriberQueueSize(4);
+        publisher = new FileEventPublisher(config, new LoopbackTransport("test"));
+
+        CountDownLatch unblock = new CountDownLatch(1);
+        RecordingListener stalled = new RecordingListener() {
+            @Override
+            public void onEvent(FileEvent event) {
+                try {
+                    unblock.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                super.onEvent(event);
+            }
+        };
+        publisher.subscribe(null, publisher.queued(stalled));
+        RecordingListener live = new RecordingListener();
+        publisher.subscribe(null, live);
+
+        for (long id = 1; id <= 20; id++) {
+            publisher.publish(FileEvent.UPLOADED, id, null);
+        }
+        // The single delivery thread keeps serving while the stalled client's write blocks
+        await(() -> live.events.size() == 20);
+
+        unblock.countDown();
+        await(() -> stalled.resets.get() == 1);
+        assertTrue(stalled.events.size() < 20, "missed events are replaced by a reset");
+    }
+
+    private static FileEventPublisher newPublisher(int bufferSize) {
+        FileEventsConfig config = new FileEventsConfig();
+        config.setBufferSize(bufferSize);
+        return new FileEventPublisher(config, new LoopbackTransport("test"));
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met in time");
+            Thread.sleep(5);
+        }
+    }
+
+    private static class RecordingListener implements FileEventPublisher.Listener {
+        final List<String> events = new CopyOnWriteArrayList<>();
+        final AtomicInteger resets = new AtomicInteger();
+
+        @Override
+        public void onEvent(FileEvent event) {
+            events.add(event.getType() + ":" + event.getFileId());
+        }
+
+        @Override
+        public void onReset() {
+            resets.incrementAndGet();
+        }
+
+        @Override
+        public void onHeartbeat() {
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.demo.service;
+
+import com.example.demo.cluster.LoopbackTransport;
+import com.example.demo.config.FileEventsConfig;
+import com.example.demo.model.File;
+import com.example.demo.model.FileEvent;
+import com.example.demo.model.FileQuery;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileFacetIndexTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileFacetIndexTest.class);
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+    private static final String[] TYPES = {"image/png", "image/jpeg", "application/pdf", "text/plain", "video/mp4"};
+
+    private JdbcTemplate jdbcTemplate;
+    private FileEventPublisher publisher;
+    private FileFacetIndex index;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:facets-" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE files (id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                "file_type VARCHAR(100) NOT NULL, detected_type VARCHAR(100), file_size BIGINT NOT NULL, " +
+                "upload_date TIMESTAMP, user_id BIGINT, is_active BOOLEAN)");
+        publisher = new FileEventPublisher(new FileEventsConfig(), new LoopbackTransport("test"));
+        index = new FileFacetIndex(jdbcTemplate, publisher);
+    }
+
+    @AfterEach
+    void tearDown() {
+        index.stop();
+        publisher.stop();
+    }
+
+    @Test
+    void loadsActiveFilesAndFollowsTheChangeFeed() throws Exception {
+        assertThrows(RejectedExecutionException.class, () -> index.query(new FileQuery()));
+
+        insert("image/png", null, 100, START, 1L, true);                       // 1
+        insert("application/octet-stream", "image/jpeg", 5000, START.plusDays(1), 1L, true); // 2
+        insert("application/pdf", null, 300, START.plusDays(2), 2L, true);     // 3
+        insert("text/plain; charset=UTF-8", null, 50, START.plusDays(3), null, true); // 4
+        insert("image/png", null, 999, START.plusDays(4), 2L, false);          // 5, deleted
+        index.start();
+        await(index::isReady);
+
+        FileFacetIndex.Result all = index.query(new FileQuery());
+        assertEquals(4, all.getTotal());
+        assertEquals(List.of(4L, 3L, 2L, 1L), all.getIds());
+        assertEquals(Map.of("image/png", 1L, "image/jpeg", 1L, "application/pdf", 1L, "text/plain", 1L),
+                all.getTypes());
+        assertEquals(2L, all.getCategories().get("image"));
+
+        // Type facets ignore the type filter but honour the others
+        FileQuery images = new FileQuery();
+        images.setTypes(List.of("image"));
+        images.setUserId(1L);
+        images.setSort(FileQuery.SORT_SIZE);
+        images.setAscending(true);
+        FileFacetIndex.Result userImages = index.query(images);
+        assertEquals(List.of(1L, 2L), userImages.getIds());
+        assertEquals(Map.of("image/png", 1L, "image/jpeg", 1L), userImages.getTypes());
+
+        // A file without an owner is not user 0's
+        FileQuery userZero = new FileQuery();
+        userZero.setUserId(0L);
+        assertEquals(0, index.query(userZero).getTotal());
+
+        FileQuery ranged = new FileQuery();
+        ranged.setTypes(List.of("application/pdf", "text/*"));
+        ranged.setMinSize(50L);
+        ranged.setMaxSize(300L);
+        ranged.setFrom(START.plusDays(2));
+        ranged.setTo(START.plusDays(3));
+        assertEquals(List.of(4L, 3L), index.query(ranged).getIds());
+
+        File uploaded = new File();
+        uploaded.setId(6L);
+        uploaded.setFileType("image/png");
+        uploaded.setFileSize(10L);
+        uploaded.setUploadDate(START.plusDays(5));
+        uploaded.setUserId(1L);
+        uploaded.setIsActive(true);
+        publisher.publish(FileEvent.UPLOADED, 6L, uploaded);
+        publisher.publish(FileEvent.DELETED, 2L, null);
+        await(() -> index.size() == 4 && index.query(images).getIds().equals(List.of(6L, 1L)));
+
+        FileQuery secondPage = new FileQuery();
+        secondPage.setSize(3);
+        secondPage.setPage(1);
+        assertEquals(List.of(1L), index.query(secondPage).getIds());
+        assertEquals(4, index.query(secondPage).getTotal());
+    }
+
+    @Test
+    @Tag("benchmark")
+    void facetCountsOverAMillionFiles() {
+        int files = 1_000_000;
+        assertTrue(index.rebuild());
+        long loadStart = System.nanoTime();
+        File file = new File();
+        for (int i = 1; i <= files; i++) {
+            file.setId((long) i);
+            file.setFileType(TYPES[i % TYPES.length]);
+            file.setFileSize((long) (i * 7919L % 10_000_000));
+            file.setUploadDate(START.plusSeconds(i * 31L));
+            file.setUserId((long) (i % 1000));
+            index.upsert(file);
+        }
+        long loadMs = (System.nanoTime() - loadStart) / 1_000_000;
+        // Deletes leave dead slots behind until compaction
+        for (long id = 1; id <= files; id += 3) {
+            index.remove(id);
+        }
+        int remaining = files - (files + 2) / 3;
+        assertEquals(remaining, index.size());
+
+        FileQuery facetsOnly = new FileQuery();
+        facetsOnly.setSize(20);
+        FileQuery filtered = new FileQuery();
+        filtered.setTypes(List.of("image"));
+        filtered.setMinSize(1_000_000L);
+        filtered.setFrom(START.plusDays(30));
+        filtered.setSort(FileQuery.SORT_SIZE);
+        filtered.setSize(20);
+
+        FileFacetIndex.Result result = null;
+        long best = Long.MAX_VALUE;
+        long bestFiltered = Long.MAX_VALUE;
+        for (int round = 0; round < 10; round++) {
+            long start = System.nanoTime();
+            result = index.query(facetsOnly);
+            best = Math.min(best, System.nanoTime() - start);
+            start = System.nanoTime();
+            index.query(filtered);
+            bestFiltered = Math.min(bestFiltered, System.nanoTime() - start);
+        }
+
+        assertEquals(remaining, result.getTotal());
+        assertEquals(remaining, result.getTypes().values().stream().mapToLong(Long::longValue).sum());
+        assertEquals(20, result.getIds().size());
+        logger.info("{} files indexed in {} ms; all facets in {} ms, filtered and sorted by size in {} ms",
+                files, loadMs, best / 1_000_000.0, bestFiltered / 1_000_000.0);
+    }
+
+    private void insert(String type, String detectedType, long size, LocalDateTime uploaded, Long userId,
+                        boolean active) {
+        jdbcTemplate.update("INSERT INTO files (file_type, detected_type, file_size, upload_date, user_id, is_active) " +
+                "VALUES (?, ?, ?, ?, ?, ?)", type, detectedType, size, uploaded, userId, active);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met in time");
+            Thread.sleep(10);
+        }
+    }
+}
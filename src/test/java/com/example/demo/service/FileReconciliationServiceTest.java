@@ -0,0 +1,107 @@
+package com.example.demo.service;
+
+import com.example.demo.cluster.FileCache;
+import com.example.demo.config.EncryptionConfig;
+import com.example.demo.config.FileStorageConfig;
+import com.example.demo.config.ReconciliationConfig;
+import com.example.demo.model.File;
+import com.example.demo.model.FileEvent;
+import com.example.demo.model.ReconciliationReport;
+import com.example.demo.repository.FileRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class FileReconciliationServiceTest {
+
+    @TempDir
+    Path uploadDir;
+
+    @Test
+    void fullPassQuarantinesOrphansAndDeactivatesDanglingRows() throws Exception {
+        Path day = Files.createDirectories(uploadDir.resolve("2024/01/15"));
+        Files.writeString(day.resolve("known.txt"), "known");
+        Files.writeString(day.resolve("orphan.txt"), "orphan");
+        Files.createDirectories(uploadDir.resolve("notes"));
+        Files.writeString(uploadDir.resolve("notes/ignored.txt"), "outside the date tree");
+
+        File known = row(1L, "2024/01/15/known.txt");
+        File dangling = row(2L, "2024/01/15/missing.txt");
+        File deletedMeanwhile = row(3L, "2024/01/15/gone.txt"); // a user delete flips it first
+
+        FileRepository repository = mock(FileRepository.class);
+        when(repository.findFilePathsIn(anyCollection())).thenAnswer(invocation -> {
+            Collection<String> paths = invocation.getArgument(0);
+            return paths.stream().filter(known.getFilePath()::equals).toList();
+        });
+        when(repository.findActiveAfterId(eq(0L), any())).thenReturn(List.of(known, dangling, deletedMeanwhile));
+        FileBatchWriter batchWriter = mock(FileBatchWriter.class);
+        when(batchWriter.deactivateAll(List.of(2L, 3L))).thenReturn(List.of(2L));
+        FileVersionService versions = mock(FileVersionService.class);
+        when(versions.getStoredSize(2L)).thenReturn(5L);
+        UserQuotaService quotas = mock(UserQuotaService.class);
+
+        FileStorageConfig storageConfig = new FileStorageConfig();
+        storageConfig.setUploadDir(uploadDir.toString());
+        ReconciliationConfig config = new ReconciliationConfig();
+        config.setGracePeriodMs(0);
+        config.setWatchEnabled(false);
+
+        FileStorageService storage = new FileStorageService(storageConfig, new BlobCipher(new EncryptionConfig()));
+        FileEventPublisher events = mock(FileEventPublisher.class);
+        FileReconciliationService service = new FileReconciliationService(repository, storage, batchWriter, quotas,
+                versions, events, mock(FileCache.class), config);
+        ReconciliationReport report = service.startFullPass("test", true);
+        while (report.isRunning()) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(null, report.getError());
+        assertEquals(2, report.getBlobsScanned());
+        assertEquals(3, report.getRowsChecked());
+        assertEquals(List.of("2024/01/15/orphan.txt"), report.getOrphanedBlobSample());
+        assertEquals(List.of(2L, 3L), report.getDanglingRowSample());
+        assertEquals(2, report.getFixed());
+
+        assertFalse(Files.exists(day.resolve("orphan.txt")));
+        assertTrue(Files.exists(uploadDir.resolve(".orphans/2024/01/15/orphan.txt")));
+        assertTrue(Files.exists(uploadDir.resolve("notes/ignored.txt")));
+        verify(quotas).releaseStorage(7L, 15L);
+        verify(quotas, times(1)).releaseStorage(anyLong(), anyLong());
+        verify(events).publish(FileEvent.DELETED, 2L, null);
+        verify(events, never()).publish(FileEvent.DELETED, 3L, null);
+
+        // The next pass runs on the same scan pool
+        ReconciliationReport next = service.startFullPass("test", false);
+        while (next.isRunning()) {
+            Thread.sleep(10);
+        }
+        assertEquals(null, next.getError());
+        assertEquals(1, next.getBlobsScanned());
+        service.stop();
+    }
+
+    private static File row(Long id, String filePath) {
+        File file = new File("name.txt", filePath.substring(filePath.lastIndexOf('/') + 1), filePath, "text/plain", 10L);
+        file.setId(id);
+        file.setUserId(7L);
+        return file;
+    }
+}
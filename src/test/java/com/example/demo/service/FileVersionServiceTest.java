@@ -0,0 +1,158 @@
+package com.example.demo.service;
+
+import com.example.demo.exception.QuotaExceededException;
+import com.example.demo.model.File;
+import com.example.demo.model.FileUploadResponse;
+import com.example.demo.model.FileVersion;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.Resource;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {"file.versions.full-copy-interval=3", "file.user-quota-bytes=1000000"})
+@ActiveProfiles("test")
+class FileVersionServiceTest {
+
+    @Autowired
+    private FileService fileService;
+
+    @Autowired
+    private FileVersionService fileVersionService;
+
+    @Autowired
+    private UserQuotaService userQuotaService;
+
+    @Test
+    void everyVersionCanBeRebuiltAndLatestStaysAPlainFile() {
+        List<byte[]> contents = new ArrayList<>();
+        StringBuilder csv = new StringBuilder("id,value\n");
+        for (int i = 0; i < 5_000; i++) {
+            csv.append(i).append(',').append(i * 31 % 977).append('\n');
+        }
+        contents.add(bytes(csv));
+
+        FileUploadResponse response = fileService.uploadFile(csv("data.csv", contents.get(0)), 11L);
+        assertTrue(response.isSuccess(), response.getMessage());
+        Long id = response.getData().getId();
+
+        for (int v = 2; v <= 6; v++) {
+            csv.append(5_000 + v).append(",edited-").append(v).append('\n');
+            contents.add(bytes(csv));
+            assertTrue(fileService.uploadVersion(id, csv("data.csv", contents.get(v - 1))).isSuccess());
+        }
+
+        File current = fileService.getFileById(id);
+        assertEquals(6, current.getVersionNumber());
+        assertEquals(contents.get(5).length, current.getFileSize());
+
+        List<FileVersion> versions = fileVersionService.getVersions(id);
+        assertEquals(List.of(6, 5, 4, 3, 2, 1), versions.stream().map(FileVersion::getVersionNumber).toList());
+        // Version 3 is a full copy; the others are small deltas
+        assertEquals(FileVersion.FULL, versions.get(3).getStorage());
+        assertEquals(FileVersion.DELTA, versions.get(1).getStorage());
+        assertTrue(versions.get(1).getStoredSize() < contents.get(4).length / 20);
+
+        for (int v = 1; v <= 6; v++) {
+            assertArrayEquals(contents.get(v - 1), download(id, v), "version " + v);
+        }
+    }
+
+    @Test
+    void olderVersionIsRebuiltIntoATempFileThatGoesAwayOnRelease() throws Exception {
+        byte[] first = bytes("first\n".repeat(1000));
+        byte[] second = bytes("first\n".repeat(1000) + "second\n");
+        Long id = fileService.uploadFile(csv("notes.csv", first), 13L).getData().getId();
+        assertTrue(fileService.uploadVersion(id, csv("notes.csv", second)).isSuccess());
+
+        assertFalse(fileVersionService.loadVersionAsResource(id, 2) instanceof RebuiltVersionResource,
+                "the latest version is served from its blob");
+        Resource rebuilt = fileVersionService.loadVersionAsResource(id, 1);
+        assertInstanceOf(RebuiltVersionResource.class, rebuilt);
+        assertEquals(first.length, rebuilt.contentLength());
+        // Multi-range responses open it once per range
+        for (int i = 0; i < 2; i++) {
+            try (InputStream in = rebuilt.getInputStream()) {
+                assertArrayEquals(first, in.readAllBytes());
+            }
+        }
+        ((RebuiltVersionResource) rebuilt).release();
+        assertFalse(rebuilt.exists());
+    }
+
+    private byte[] download(Long id, int version) {
+        Resource resource = fileVersionService.loadVersionAsResource(id, version);
+        try (InputStream in = resource.getInputStream()) {
+            return in.readAllBytes();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            if (resource instanceof RebuiltVersionResource) {
+                ((RebuiltVersionResource) resource).release();
+            }
+        }
+    }
+
+    @Test
+    void olderVersionsCountAgainstTheQuota() {
+        Long owner = 12L;
+        byte[] content = new byte[300_000];
+        Random random = new Random(12);
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) ('a' + random.nextInt(26));
+        }
+        FileUploadResponse response = fileService.uploadFile(text(content), owner);
+        assertTrue(response.isSuccess(), response.getMessage());
+        Long id = response.getData().getId();
+
+        // Small edits are cheap deltas, but every third version is a full copy; the
+        // user runs out of quota long before ten versions
+        assertThrows(QuotaExceededException.class, () -> {
+            for (int v = 2; v <= 10; v++) {
+                content[v] = (byte) 'z';
+                fileService.uploadVersion(id, text(content.clone()));
+            }
+        });
+
+        List<FileVersion> versions = fileVersionService.getVersions(id);
+        long onDisk = fileService.getFileById(id).getFileSize();
+        for (FileVersion version : versions.subList(1, versions.size())) {
+            onDisk += version.getStoredSize();
+        }
+        assertTrue(versions.size() < 10);
+        assertEquals(onDisk, userQuotaService.getStorageUsed(owner));
+        assertTrue(onDisk <= 1_000_000);
+
+        // Deleting the file releases its versions as well
+        assertTrue(fileService.deleteFile(id));
+        assertEquals(0, userQuotaService.getStorageUsed(owner));
+    }
+
+    private static MockMultipartFile text(byte[] content) {
+        return new MockMultipartFile("file", "letters.txt", "text/plain", content);
+    }
+
+    private static MockMultipartFile csv(String name, byte[] content) {
+        return new MockMultipartFile("file", name, "text/csv", content);
+    }
+
+    private static byte[] bytes(CharSequence text) {
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
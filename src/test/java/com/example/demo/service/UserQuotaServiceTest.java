@@ -0,0 +1,151 @@
+package com.example.demo.service;
+
+import com.example.demo.cluster.ClusterMessage;
+import com.example.demo.cluster.ClusterTransport;
+import com.example.demo.cluster.LoopbackTransport;
+import com.example.demo.config.FileStorageConfig;
+import com.example.demo.exception.QuotaExceededException;
+import com.example.demo.exception.RateLimitExceededException;
+import com.example.demo.repository.FileRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserQuotaServiceTest {
+
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+
+    @Test
+    void seedsUsageAndEnforcesQuota() {
+        FileStorageConfig config = new FileStorageConfig();
+        config.setUserQuotaBytes(1000);
+        FileRepository repository = mock(FileRepository.class);
+        when(repository.sumFileSizeByUser()).thenReturn(List.of(
+                new Object[]{1L, 900L},
+                new Object[]{null, 50L}));
+
+        UserQuotaService quotas = new UserQuotaService(config, repository, new LoopbackTransport("test"), transactionManager);
+        quotas.afterSingletonsInstantiated();
+
+        assertEquals(900L, quotas.getStorageUsed(1L));
+        assertEquals(50L, quotas.getStorageUsed(null));
+        assertThrows(QuotaExceededException.class, () -> quotas.reserveStorage(1L, 101));
+
+        quotas.reserveStorage(1L, 100);
+        quotas.releaseStorage(1L, 500);
+        quotas.reserveStorage(1L, 400);
+        assertEquals(900L, quotas.getStorageUsed(1L));
+
+        // Seeding again replaces the counters instead of adding to them
+        quotas.seedFromDatabase();
+        assertEquals(900L, quotas.getStorageUsed(1L));
+        assertEquals(50L, quotas.getStorageUsed(null));
+    }
+
+    @Test
+    void usageOnOneNodeCountsAgainstTheQuotaOnTheOthers() {
+        FileStorageConfig config = new FileStorageConfig();
+        config.setUserQuotaBytes(1000);
+        PairedTransport transportA = new PairedTransport("a");
+        PairedTransport transportB = new PairedTransport("b");
+        transportA.peer = transportB;
+        transportB.peer = transportA;
+        UserQuotaService nodeA = new UserQuotaService(config, mock(FileRepository.class), transportA, transactionManager);
+        UserQuotaService nodeB = new UserQuotaService(config, mock(FileRepository.class), transportB, transactionManager);
+
+        nodeA.reserveStorage(1L, 800);
+        assertEquals(800L, nodeB.getStorageUsed(1L));
+        assertThrows(QuotaExceededException.class, () -> nodeB.reserveStorage(1L, 300));
+
+        nodeA.releaseStorage(1L, 500);
+        nodeB.reserveStorage(1L, 300);
+        assertEquals(600L, nodeA.getStorageUsed(1L));
+        assertEquals(600L, nodeB.getStorageUsed(1L));
+    }
+
+    @Test
+    void resyncCorrectsCountersThatDriftedFromTheDatabase() {
+        FileStorageConfig config = new FileStorageConfig();
+        FileRepository repository = mock(FileRepository.class);
+        when(repository.sumFileSizeByUser()).thenReturn(List.<Object[]>of(new Object[]{1L, 900L}));
+        when(repository.sumVersionStorageByUser()).thenReturn(List.<Object[]>of(new Object[]{1L, 100L}));
+        UserQuotaService quotas = new UserQuotaService(config, repository, new LoopbackTransport("test"),
+                transactionManager);
+        quotas.seedFromDatabase();
+        assertEquals(1000L, quotas.getStorageUsed(1L));
+
+        // Another node's release was lost, and a row of user 2 appeared without a message
+        when(repository.sumFileSizeByUser()).thenReturn(List.of(new Object[]{1L, 400L}, new Object[]{2L, 50L}));
+        quotas.reserveStorage(3L, 70);
+        quotas.releaseStorage(3L, 70);
+        quotas.resyncFromDatabase();
+
+        assertEquals(500L, quotas.getStorageUsed(1L));
+        assertEquals(50L, quotas.getStorageUsed(2L));
+        assertEquals(0L, quotas.getStorageUsed(3L));
+        verify(transactionManager, times(2)).getTransaction(any());
+    }
+
+    @Test
+    void rateLimitAllowsBurstThenAsksToRetry() {
+        FileStorageConfig config = new FileStorageConfig();
+        config.setUploadRateBytesPerSecond(1000);
+        config.setRateLimitBurstSeconds(1);
+        UserQuotaService quotas = new UserQuotaService(config, mock(FileRepository.class),
+                new LoopbackTransport("test"), transactionManager);
+
+        // A single request larger than the bucket is admitted, the next one waits
+        quotas.acquireUpload(1L, 5000);
+        RateLimitExceededException ex = assertThrows(RateLimitExceededException.class,
+                () -> quotas.acquireUpload(1L, 1));
+        assertTrue(ex.getRetryAfterSeconds() >= 4);
+
+        // Other users have their own bucket
+        quotas.acquireUpload(2L, 1);
+    }
+
+    // Delivers every broadcast to the peer synchronously
+    private static class PairedTransport implements ClusterTransport {
+        private final String nodeId;
+        private final List<Consumer<ClusterMessage>> handlers = new ArrayList<>();
+        private PairedTransport peer;
+
+        PairedTransport(String nodeId) {
+            this.nodeId = nodeId;
+        }
+
+        @Override
+        public String getNodeId() {
+            return nodeId;
+        }
+
+        @Override
+        public void broadcast(String type, String key, String value) {
+            ClusterMessage message = new ClusterMessage(nodeId, type, key, value);
+            for (Consumer<ClusterMessage> handler : peer.handlers) {
+                handler.accept(message);
+            }
+        }
+
+        @Override
+        public void subscribe(Consumer<ClusterMessage> handler) {
+            handlers.add(handler);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
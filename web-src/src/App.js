@@ -7,6 +7,15 @@ import FileList from './components/FileList';
 import Popup from './components/Popup';
 import ConfirmationPopup from './components/ConfirmationPopup';
 
+// Patch the file list with one change feed event, keeping newest uploads first
+const applyFileEvent = (files, event) => {
+  const others = files.filter(f => f.id !== event.fileId);
+  if (event.type === 'DELETED') {
+    return others;
+  }
+  return [...others, event.file].sort((a, b) => new Date(b.uploadDate) - new Date(a.uploadDate));
+};
+
 function App() {
   const [files, setFiles] = useState([]);
   const [uploadProgress, setUploadProgress] = useState(0);
@@ -55,7 +64,18 @@ function App() {
   };
 
   useEffect(() => {
+    // Subscribe before the first fetch so no change slips in between; the
+    // browser reconnects on its own and resumes from the last event id
+    const events = new EventSource('/api/files/events');
+    events.addEventListener('file', (message) => {
+      const event = JSON.parse(message.data);
+      setFiles(prevFiles => applyFileEvent(prevFiles, event));
+    });
+    // Sent when the server can't replay what was missed
+    events.addEventListener('reset', () => fetchFiles());
+
     fetchFiles();
+    return () => events.close();
   }, []);
 
   // Helper function to show popup
@@ -128,8 +148,7 @@ function App() {
       setUploadProgress(100);
 
       if (response.data.success) {
-        // Refresh files list
-        await fetchFiles();
+        // The change feed adds the new file to the list
         showPopup('Success!', 'File uploaded successfully!', 'success');
       } else {
         showPopup('Upload Failed', 'Upload failed: ' + response.data.message, 'error');
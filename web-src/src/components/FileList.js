@@ -23,7 +23,7 @@ const FileList = ({
   // Filter files
   const filteredFiles = files.filter(file => {
     const matchesSearch = file.originalName.toLowerCase().includes(searchTerm.toLowerCase());
-    const matchesFilter = filterType === 'all' || file.fileType.startsWith(filterType);
+    const matchesFilter = filterType === 'all' || (file.effectiveType || file.fileType).startsWith(filterType);
     return matchesSearch && matchesFilter;
   });
 
@@ -72,7 +72,7 @@ const FileList = ({
                 className="file-card"
                 onClick={() => onFileClick(file)}
               >
-                <div className="file-icon">{getFileIcon(file.fileType)}</div>
+                <div className="file-icon">{getFileIcon(file.effectiveType || file.fileType)}</div>
                 <div className="file-info">
                   <h4 className="file-name">{file.originalName}</h4>
                   <p className="file-meta">{file.formattedFileSize} • {new Date(file.uploadDate).toLocaleDateString()}</p>